@@ -68,7 +68,7 @@ CREATE TABLE ACCOUNTPROFILE
 (
     PROFILEID INTEGER NOT NULL,
     ADDRESS VARCHAR(250),
-    AUTHTOKEN VARCHAR(100),
+    AUTHTOKEN VARCHAR(600),
     CREDITCARD VARCHAR(250),
     EMAIL VARCHAR(250),
     FULLNAME VARCHAR(250),
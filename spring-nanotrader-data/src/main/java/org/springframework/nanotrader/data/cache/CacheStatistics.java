@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hits, misses and puts of every second-level cache region, entity and query regions alike, since
+ * the statistics were last reset.
+ */
+@Component
+public class CacheStatistics {
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics() {
+		return ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
+	}
+
+	public List<RegionStatistics> getRegions() {
+		Statistics statistics = statistics();
+		String[] names = statistics.getSecondLevelCacheRegionNames();
+		Arrays.sort(names);
+		List<RegionStatistics> regions = new ArrayList<RegionStatistics>(names.length);
+		for (String name : names) {
+			regions.add(new RegionStatistics(name, statistics.getSecondLevelCacheStatistics(name)));
+		}
+		return regions;
+	}
+
+	public RegionStatistics region(String name) {
+		return new RegionStatistics(name, statistics().getSecondLevelCacheStatistics(name));
+	}
+
+	public void reset() {
+		statistics().clear();
+	}
+
+	public static class RegionStatistics {
+
+		private final String name;
+
+		private final long hits;
+
+		private final long misses;
+
+		private final long puts;
+
+		private final long entries;
+
+		RegionStatistics(String name, SecondLevelCacheStatistics statistics) {
+			this.name = name;
+			this.hits = statistics.getHitCount();
+			this.misses = statistics.getMissCount();
+			this.puts = statistics.getPutCount();
+			this.entries = statistics.getElementCountInMemory();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getPuts() {
+			return puts;
+		}
+
+		public long getEntries() {
+			return entries;
+		}
+
+		public double getHitRatio() {
+			long reads = hits + misses;
+			return reads == 0 ? 0 : (double) hits / reads;
+		}
+	}
+}
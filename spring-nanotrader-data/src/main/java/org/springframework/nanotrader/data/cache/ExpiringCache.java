@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.Timestamper;
+
+/**
+ * One region of the {@link ExpiringCacheProvider}. Expired entries are dropped when they are read, or
+ * when the region is full; a full region of live entries stops caching new keys rather than evicting.
+ */
+@SuppressWarnings({ "deprecation", "rawtypes" })
+class ExpiringCache implements Cache {
+
+	private final String regionName;
+
+	private final long ttlNanos;
+
+	private final int maxEntries;
+
+	private final ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+
+	ExpiringCache(String regionName, long ttlMillis, int maxEntries) {
+		this.regionName = regionName;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxEntries = maxEntries;
+	}
+
+	public Object read(Object key) throws CacheException {
+		return get(key);
+	}
+
+	public Object get(Object key) throws CacheException {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.value;
+	}
+
+	public void put(Object key, Object value) throws CacheException {
+		if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+			purge();
+			if (entries.size() >= maxEntries) {
+				return;
+			}
+		}
+		entries.put(key, new Entry(value, ttlNanos == 0 ? 0 : System.nanoTime() + ttlNanos));
+	}
+
+	public void update(Object key, Object value) throws CacheException {
+		put(key, value);
+	}
+
+	public void remove(Object key) throws CacheException {
+		entries.remove(key);
+	}
+
+	public void clear() throws CacheException {
+		entries.clear();
+	}
+
+	public void destroy() throws CacheException {
+		entries.clear();
+	}
+
+	public void lock(Object key) throws CacheException {
+	}
+
+	public void unlock(Object key) throws CacheException {
+	}
+
+	public long nextTimestamp() {
+		return Timestamper.next();
+	}
+
+	public int getTimeout() {
+		return Timestamper.ONE_MS * 60000;
+	}
+
+	public String getRegionName() {
+		return regionName;
+	}
+
+	public long getSizeInMemory() {
+		return -1;
+	}
+
+	public long getElementCountInMemory() {
+		return entries.size();
+	}
+
+	public long getElementCountOnDisk() {
+		return 0;
+	}
+
+	public Map toMap() {
+		long now = System.nanoTime();
+		Map<Object, Object> live = new HashMap<Object, Object>();
+		for (Map.Entry<Object, Entry> entry : entries.entrySet()) {
+			if (!entry.getValue().isExpired(now)) {
+				live.put(entry.getKey(), entry.getValue().value);
+			}
+		}
+		return live;
+	}
+
+	private void purge() {
+		long now = System.nanoTime();
+		for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().isExpired(now)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final Object value;
+
+		/** System.nanoTime() after which the entry is gone, or 0 for never */
+		private final long expires;
+
+		Entry(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+
+		boolean isExpired(long now) {
+			return expires != 0 && now - expires >= 0;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.cache;
+
+import java.util.Properties;
+
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CacheProvider;
+import org.hibernate.cache.Timestamper;
+
+/**
+ * In-memory second-level cache whose regions can bound how stale an entry may get. Other processes
+ * (the asynch order and quote consumers) write to the same tables, so Hibernate's own invalidation only
+ * covers writes made here; the time to live covers the rest.
+ * <p>
+ * Regions are configured through the Hibernate properties nanotrader.cache.&lt;region&gt;.ttl in
+ * milliseconds (0, the default, never expires) and nanotrader.cache.&lt;region&gt;.max_entries.
+ */
+@SuppressWarnings("deprecation")
+public class ExpiringCacheProvider implements CacheProvider {
+
+	public static final String PREFIX = "nanotrader.cache.";
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	public Cache buildCache(String regionName, Properties properties) throws CacheException {
+		long ttl = Long.parseLong(properties.getProperty(PREFIX + regionName + ".ttl", "0"));
+		int maxEntries = Integer.parseInt(properties.getProperty(PREFIX + regionName + ".max_entries",
+				String.valueOf(DEFAULT_MAX_ENTRIES)));
+		return new ExpiringCache(regionName, ttl, maxEntries);
+	}
+
+	public long nextTimestamp() {
+		return Timestamper.next();
+	}
+
+	public void start(Properties properties) throws CacheException {
+	}
+
+	public void stop() {
+	}
+
+	public boolean isMinimalPutsEnabledByDefault() {
+		return false;
+	}
+}
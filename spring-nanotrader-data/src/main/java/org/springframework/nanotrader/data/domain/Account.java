@@ -23,7 +23,6 @@ import java.util.Set;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -34,11 +33,15 @@ import javax.persistence.TemporalType;
 import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 @SuppressWarnings("serial")
 @Entity
 @Table(name = "ACCOUNT")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "account")
 @org.hibernate.annotations.Entity(dynamicUpdate=true)
 public class Account implements Serializable {
 
@@ -145,7 +148,8 @@ public class Account implements Serializable {
 	}
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.TABLE)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "org.springframework.nanotrader.data.util.PooledIdGenerator")
 	// , generator="ACCOUNT_SEQ")
 	// @SequenceGenerator(name="ACCOUNT_SEQ", sequenceName="ACCOUNT_SEQUENCE")
 	@Column(name = "accountid")
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.domain;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * A running per-account count (holdings, orders, orders in a given status) maintained by the
+ * order lifecycle so collection totals can be served without a COUNT(*) over the base tables.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(name = "ACCOUNT_COUNTER")
+public class AccountCounter implements Serializable {
+
+	@EmbeddedId
+	private AccountCounterId id;
+
+	@Column(name = "countervalue")
+	private Long value;
+
+	public AccountCounter() {
+	}
+
+	public AccountCounter(Integer accountid, String name, Long value) {
+		this.id = new AccountCounterId(accountid, name);
+		this.value = value;
+	}
+
+	public AccountCounterId getId() {
+		return id;
+	}
+
+	public void setId(AccountCounterId id) {
+		this.id = id;
+	}
+
+	public Long getValue() {
+		return value;
+	}
+
+	public void setValue(Long value) {
+		this.value = value;
+	}
+
+	@Override
+	public String toString() {
+		return "AccountCounter [accountid=" + id.getAccountid() + ", name=" + id.getName() + ", value=" + value + "]";
+	}
+
+	@Embeddable
+	public static class AccountCounterId implements Serializable {
+
+		@Column(name = "account_accountid")
+		private Integer accountid;
+
+		@Column(name = "countername", length = 250)
+		private String name;
+
+		public AccountCounterId() {
+		}
+
+		public AccountCounterId(Integer accountid, String name) {
+			this.accountid = accountid;
+			this.name = name;
+		}
+
+		public Integer getAccountid() {
+			return accountid;
+		}
+
+		public void setAccountid(Integer accountid) {
+			this.accountid = accountid;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (accountid == null ? 0 : accountid.hashCode()) + (name == null ? 0 : name.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AccountCounterId)) {
+				return false;
+			}
+			AccountCounterId other = (AccountCounterId) obj;
+			return (accountid == null ? other.accountid == null : accountid.equals(other.accountid))
+					&& (name == null ? other.name == null : name.equals(other.name));
+		}
+	}
+}
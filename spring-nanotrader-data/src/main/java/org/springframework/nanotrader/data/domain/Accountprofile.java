@@ -21,18 +21,23 @@ import java.util.Set;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+
 @SuppressWarnings("serial")
 @Entity
 @Table(name = "ACCOUNTPROFILE")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "accountprofile")
 public class Accountprofile implements Serializable {
 	@Id
-    @GeneratedValue(strategy = GenerationType.TABLE)
+    @GeneratedValue(generator = "pooled")
+    @GenericGenerator(name = "pooled", strategy = "org.springframework.nanotrader.data.util.PooledIdGenerator")
     @Column(name = "profileid")
     private Integer profileid;
 
@@ -67,7 +72,7 @@ public class Accountprofile implements Serializable {
     private String fullname;
 	
 	
-	@Column(name = "authtoken", length = 100)
+	@Column(name = "authtoken", length = 600)
     private String authtoken;
 
 	public String getAuthtoken() {
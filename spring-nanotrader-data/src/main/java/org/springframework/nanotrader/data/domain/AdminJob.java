@@ -0,0 +1,210 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * State of a background admin job, kept in the database so that any node can report on it and
+ * request its cancellation. Only the node that runs a job updates its progress.
+ * <p>
+ * An exclusive job holds its group in exclusivegroup until it finishes. The column is unique, so a
+ * second unfinished job of the same group cannot be inserted by any node. The node running a job
+ * renews its heartbeat, so the other nodes can tell when that node has gone.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(name = "ADMIN_JOB")
+public class AdminJob implements Serializable {
+
+	@Id
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "org.springframework.nanotrader.data.util.PooledIdGenerator")
+	@Column(name = "jobid")
+	private Integer jobid;
+
+	@Column(name = "type", length = 50)
+	private String type;
+
+	@Column(name = "exclusivegroup", length = 50, unique = true)
+	private String exclusivegroup;
+
+	@Column(name = "description", length = 250)
+	private String description;
+
+	@Column(name = "status", length = 20)
+	private String status;
+
+	@Column(name = "node", length = 250)
+	private String node;
+
+	@Column(name = "done")
+	private Long done;
+
+	@Column(name = "total")
+	private Long total;
+
+	@Column(name = "message", length = 1000)
+	private String message;
+
+	@Column(name = "cancelrequested")
+	private Boolean cancelrequested;
+
+	@Column(name = "created")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date created;
+
+	@Column(name = "started")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date started;
+
+	@Column(name = "finished")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date finished;
+
+	@Column(name = "heartbeat")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date heartbeat;
+
+	public Integer getJobid() {
+		return jobid;
+	}
+
+	public void setJobid(Integer jobid) {
+		this.jobid = jobid;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getExclusivegroup() {
+		return exclusivegroup;
+	}
+
+	public void setExclusivegroup(String exclusivegroup) {
+		this.exclusivegroup = exclusivegroup;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	public void setNode(String node) {
+		this.node = node;
+	}
+
+	public Long getDone() {
+		return done;
+	}
+
+	public void setDone(Long done) {
+		this.done = done;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+
+	public void setTotal(Long total) {
+		this.total = total;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public Boolean getCancelrequested() {
+		return cancelrequested;
+	}
+
+	public void setCancelrequested(Boolean cancelrequested) {
+		this.cancelrequested = cancelrequested;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public void setStarted(Date started) {
+		this.started = started;
+	}
+
+	public Date getFinished() {
+		return finished;
+	}
+
+	public void setFinished(Date finished) {
+		this.finished = finished;
+	}
+
+	public Date getHeartbeat() {
+		return heartbeat;
+	}
+
+	public void setHeartbeat(Date heartbeat) {
+		this.heartbeat = heartbeat;
+	}
+
+	@Override
+	public String toString() {
+		return "AdminJob [jobid=" + jobid + ", type=" + type + ", status=" + status + ", node=" + node + ", done=" + done
+				+ ", total=" + total + "]";
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.domain;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Completed order history moved out of ORDERS. Rows are immutable copies of the original
+ * order keyed by the same orderid; account and quote are kept as plain columns so the
+ * archive carries no foreign keys into the hot tables.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(name = "ORDERS_ARCHIVE")
+public class ArchivedOrder implements Serializable {
+
+	@Id
+	@Column(name = "orderid")
+	private Integer orderid;
+
+	@Column(name = "account_accountid")
+	private Integer accountid;
+
+	@Column(name = "quote_symbol", length = 250)
+	private String quoteSymbol;
+
+	@Column(name = "orderfee", precision = 14, scale = 2)
+	private BigDecimal orderfee;
+
+	@Column(name = "completiondate")
+	@Temporal(TemporalType.DATE)
+	private Date completiondate;
+
+	@Column(name = "ordertype", length = 250)
+	private String ordertype;
+
+	@Column(name = "orderstatus", length = 250)
+	private String orderstatus;
+
+	@Column(name = "price", precision = 14, scale = 2)
+	private BigDecimal price;
+
+	@Column(name = "quantity")
+	private BigDecimal quantity;
+
+	@Column(name = "opendate")
+	@Temporal(TemporalType.DATE)
+	private Date opendate;
+
+	public ArchivedOrder() {
+	}
+
+	public ArchivedOrder(Order order) {
+		this.orderid = order.getOrderid();
+		this.accountid = order.getAccountAccountid() == null ? null : order.getAccountAccountid().getAccountid();
+		this.quoteSymbol = order.getQuote() == null ? null : order.getQuote().getSymbol();
+		this.orderfee = order.getOrderfee();
+		this.completiondate = order.getCompletiondate();
+		this.ordertype = order.getOrdertype();
+		this.orderstatus = order.getOrderstatus();
+		this.price = order.getPrice();
+		this.quantity = order.getQuantity();
+		this.opendate = order.getOpendate();
+	}
+
+	public Integer getOrderid() {
+		return orderid;
+	}
+
+	public void setOrderid(Integer orderid) {
+		this.orderid = orderid;
+	}
+
+	public Integer getAccountid() {
+		return accountid;
+	}
+
+	public void setAccountid(Integer accountid) {
+		this.accountid = accountid;
+	}
+
+	public String getQuoteSymbol() {
+		return quoteSymbol;
+	}
+
+	public void setQuoteSymbol(String quoteSymbol) {
+		this.quoteSymbol = quoteSymbol;
+	}
+
+	public BigDecimal getOrderfee() {
+		return orderfee;
+	}
+
+	public void setOrderfee(BigDecimal orderfee) {
+		this.orderfee = orderfee;
+	}
+
+	public Date getCompletiondate() {
+		return completiondate;
+	}
+
+	public void setCompletiondate(Date completiondate) {
+		this.completiondate = completiondate;
+	}
+
+	public String getOrdertype() {
+		return ordertype;
+	}
+
+	public void setOrdertype(String ordertype) {
+		this.ordertype = ordertype;
+	}
+
+	public String getOrderstatus() {
+		return orderstatus;
+	}
+
+	public void setOrderstatus(String orderstatus) {
+		this.orderstatus = orderstatus;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public void setPrice(BigDecimal price) {
+		this.price = price;
+	}
+
+	public BigDecimal getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(BigDecimal quantity) {
+		this.quantity = quantity;
+	}
+
+	public Date getOpendate() {
+		return opendate;
+	}
+
+	public void setOpendate(Date opendate) {
+		this.opendate = opendate;
+	}
+
+	@Override
+	public String toString() {
+		return "ArchivedOrder [orderid=" + orderid + ", accountid=" + accountid + ", quoteSymbol=" + quoteSymbol
+				+ ", ordertype=" + ordertype + ", orderstatus=" + orderstatus + ", completiondate=" + completiondate + "]";
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A revocation of signed auth tokens, shared by every node through the home shard. The key names a
+ * single token by its signature, every token of a profile, or every token; the latter two cover the
+ * tokens expiring up to expiry, that is those issued before the revocation.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(name = "AUTH_TOKEN_REVOCATION")
+public class AuthTokenRevocation implements Serializable {
+
+	@Id
+	@Column(name = "revocationkey", length = 64)
+	private String revocationkey;
+
+	// seconds since the epoch, as in the token
+	@Column(name = "expiry")
+	private Long expiry;
+
+	@Column(name = "revoked")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date revoked;
+
+	public AuthTokenRevocation() {
+	}
+
+	public AuthTokenRevocation(String revocationkey, Long expiry, Date revoked) {
+		this.revocationkey = revocationkey;
+		this.expiry = expiry;
+		this.revoked = revoked;
+	}
+
+	public String getRevocationkey() {
+		return revocationkey;
+	}
+
+	public void setRevocationkey(String revocationkey) {
+		this.revocationkey = revocationkey;
+	}
+
+	public Long getExpiry() {
+		return expiry;
+	}
+
+	public void setExpiry(Long expiry) {
+		this.expiry = expiry;
+	}
+
+	public Date getRevoked() {
+		return revoked;
+	}
+
+	public void setRevoked(Date revoked) {
+		this.revoked = revoked;
+	}
+}
@@ -23,7 +23,6 @@ import java.util.Set;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
@@ -31,6 +30,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 @SuppressWarnings("serial")
@@ -38,7 +38,8 @@ import org.springframework.format.annotation.DateTimeFormat;
 @Table(name = "HOLDING")
 public class Holding implements Serializable {
 	@Id
-    @GeneratedValue(strategy = GenerationType.TABLE) 
+    @GeneratedValue(generator = "pooled")
+    @GenericGenerator(name = "pooled", strategy = "org.springframework.nanotrader.data.util.PooledIdGenerator")
     @Column(name = "holdingid")
     private Integer holdingid;
 
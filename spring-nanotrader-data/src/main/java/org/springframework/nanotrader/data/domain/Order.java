@@ -22,7 +22,6 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -31,6 +30,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 @SuppressWarnings("serial")
@@ -39,7 +39,8 @@ import org.springframework.format.annotation.DateTimeFormat;
 @org.hibernate.annotations.Entity(dynamicUpdate=true)
 public class Order implements Serializable {
 	@Id
-    @GeneratedValue(strategy = GenerationType.TABLE) 
+    @GeneratedValue(generator = "pooled")
+    @GenericGenerator(name = "pooled", strategy = "org.springframework.nanotrader.data.util.PooledIdGenerator")
     @Column(name = "orderid")
     private Integer orderid;
 
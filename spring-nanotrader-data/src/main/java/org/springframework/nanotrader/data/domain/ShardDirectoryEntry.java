@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.domain;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Names the shard holding a user, profile or opaque auth token, kept on the home shard so that a
+ * lookup by any of them goes straight to one shard.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(name = "SHARD_DIRECTORY")
+public class ShardDirectoryEntry implements Serializable {
+
+	@Id
+	@Column(name = "directorykey", length = 255)
+	private String directorykey;
+
+	@Column(name = "shard")
+	private Integer shard;
+
+	public ShardDirectoryEntry() {
+	}
+
+	public ShardDirectoryEntry(String directorykey, Integer shard) {
+		this.directorykey = directorykey;
+		this.shard = shard;
+	}
+
+	public String getDirectorykey() {
+		return directorykey;
+	}
+
+	public void setDirectorykey(String directorykey) {
+		this.directorykey = directorykey;
+	}
+
+	public Integer getShard() {
+		return shard;
+	}
+
+	public void setShard(Integer shard) {
+		this.shard = shard;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Connection checkouts and statement executions recorded by {@link InstrumentedDataSource}, kept until
+ * {@link #reset()}. Wait is the time spent getting a connection from the pool, hold the time until it
+ * was closed again. Statements are grouped by {@link SqlFingerprint}; up to maxFingerprints groups are
+ * kept and the rest are counted under "other".
+ * <p>
+ * Every statement is logged at debug level, which replaces hibernate.show_sql. Statements that take
+ * at least datasource.slowQueryMillis are logged as warnings with their number of bind parameters.
+ */
+@Component
+public class DataSourceStatistics {
+
+	private static Logger log = LoggerFactory.getLogger(DataSourceStatistics.class);
+
+	private static final String OTHER = "other";
+
+	private static final int MAX_CACHED_SQL = 2000;
+
+	@Value("${datasource.slowQueryMillis:200}")
+	private long slowQueryMillis = 200;
+
+	@Value("${datasource.maxFingerprints:500}")
+	private int maxFingerprints = 500;
+
+	private final AtomicLong checkouts = new AtomicLong();
+
+	private final AtomicLong checkoutFailures = new AtomicLong();
+
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	private final AtomicLong releases = new AtomicLong();
+
+	private final AtomicLong holdNanos = new AtomicLong();
+
+	private final AtomicLong maxHoldNanos = new AtomicLong();
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final ConcurrentMap<String, StatementStatistics> statements = new ConcurrentHashMap<String, StatementStatistics>();
+
+	/** Hibernate and the repositories reuse a small set of SQL strings, so their fingerprints are cached */
+	private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+
+	private volatile DataSource pool;
+
+	@Autowired(required = false)
+	private ReplicationLagMonitor replication;
+
+	public void setSlowQueryMillis(long slowQueryMillis) {
+		this.slowQueryMillis = slowQueryMillis;
+	}
+
+	public long getSlowQueryMillis() {
+		return slowQueryMillis;
+	}
+
+	public void setMaxFingerprints(int maxFingerprints) {
+		this.maxFingerprints = maxFingerprints;
+	}
+
+	void setPool(DataSource pool) {
+		this.pool = pool;
+	}
+
+	void checkedOut(long nanos) {
+		checkouts.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+		max(maxWaitNanos, nanos);
+		active.incrementAndGet();
+	}
+
+	void checkoutFailed(long nanos) {
+		checkoutFailures.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+		max(maxWaitNanos, nanos);
+	}
+
+	void released(long nanos) {
+		releases.incrementAndGet();
+		holdNanos.addAndGet(nanos);
+		max(maxHoldNanos, nanos);
+		active.decrementAndGet();
+	}
+
+	void executed(String sql, long nanos, int binds, boolean failed) {
+		String fingerprint = fingerprint(sql);
+		boolean slow = nanos >= TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+		statistics(fingerprint).executed(nanos, slow, failed);
+		if (slow) {
+			log.warn("Slow query (" + millis(nanos) + " ms, " + binds + " binds" + (failed ? ", failed" : "") + "): "
+					+ fingerprint);
+		}
+		else if (log.isDebugEnabled()) {
+			log.debug(millis(nanos) + " ms: " + sql);
+		}
+	}
+
+	private String fingerprint(String sql) {
+		if (sql == null) {
+			return OTHER;
+		}
+		String fingerprint = fingerprints.get(sql);
+		if (fingerprint == null) {
+			fingerprint = SqlFingerprint.of(sql);
+			if (fingerprints.size() < MAX_CACHED_SQL) {
+				fingerprints.put(sql, fingerprint);
+			}
+		}
+		return fingerprint;
+	}
+
+	private StatementStatistics statistics(String fingerprint) {
+		StatementStatistics statistics = statements.get(fingerprint);
+		if (statistics == null) {
+			if (statements.size() >= maxFingerprints) {
+				fingerprint = OTHER;
+			}
+			StatementStatistics created = new StatementStatistics(fingerprint);
+			statistics = statements.putIfAbsent(fingerprint, created);
+			if (statistics == null) {
+				statistics = created;
+			}
+		}
+		return statistics;
+	}
+
+	public void reset() {
+		checkouts.set(0);
+		checkoutFailures.set(0);
+		waitNanos.set(0);
+		maxWaitNanos.set(0);
+		releases.set(0);
+		holdNanos.set(0);
+		maxHoldNanos.set(0);
+		statements.clear();
+		if (replication != null) {
+			replication.reset();
+		}
+	}
+
+	public long getCheckouts() {
+		return checkouts.get();
+	}
+
+	public long getCheckoutFailures() {
+		return checkoutFailures.get();
+	}
+
+	public double getMeanWaitMillis() {
+		long attempts = checkouts.get() + checkoutFailures.get();
+		return attempts == 0 ? 0 : millis(waitNanos.get() / attempts);
+	}
+
+	public double getMaxWaitMillis() {
+		return millis(maxWaitNanos.get());
+	}
+
+	public double getMeanHoldMillis() {
+		long count = releases.get();
+		return count == 0 ? 0 : millis(holdNanos.get() / count);
+	}
+
+	public double getMaxHoldMillis() {
+		return millis(maxHoldNanos.get());
+	}
+
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Idle connections in the pool, primaries and replicas of every shard together, or -1 when the pools
+	 * do not say.
+	 */
+	public int getIdle() {
+		return idle(pool);
+	}
+
+	private static int sumIdle(int idle, int more) {
+		return idle < 0 || more < 0 ? Math.max(idle, more) : idle + more;
+	}
+
+	private int idle(DataSource target) {
+		if (target instanceof ShardedDataSource) {
+			int idle = -1;
+			for (DataSource shard : ((ShardedDataSource) target).getShards()) {
+				idle = sumIdle(idle, idle(shard));
+			}
+			return idle;
+		}
+		if (target instanceof ReadWriteRoutingDataSource) {
+			ReadWriteRoutingDataSource routing = (ReadWriteRoutingDataSource) target;
+			int primary = idle(routing.getPrimary());
+			if (routing.getReplica() == null || routing.getReplica() == routing.getPrimary()) {
+				return primary;
+			}
+			return sumIdle(primary, idle(routing.getReplica()));
+		}
+		if (target != null) {
+			BeanWrapperImpl wrapper = new BeanWrapperImpl(target);
+			if (wrapper.isReadableProperty("numIdle")) {
+				return ((Number) wrapper.getPropertyValue("numIdle")).intValue();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Replica lag and how many read-only transactions it served, when reads are routed to a replica.
+	 */
+	public ReplicationLagMonitor getReplication() {
+		return replication;
+	}
+
+	/**
+	 * Statement groups, the most time consuming first.
+	 */
+	public List<StatementStatistics> getStatements() {
+		List<StatementStatistics> sorted = new ArrayList<StatementStatistics>(statements.values());
+		Collections.sort(sorted, new Comparator<StatementStatistics>() {
+			public int compare(StatementStatistics a, StatementStatistics b) {
+				long difference = b.totalNanos() - a.totalNanos();
+				return difference > 0 ? 1 : difference < 0 ? -1 : 0;
+			}
+		});
+		return sorted;
+	}
+
+	static void max(AtomicLong max, long value) {
+		for (long current = max.get(); value > current; current = max.get()) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Times connection checkouts, how long each connection is held and every statement executed on it,
+ * recording them in {@link DataSourceStatistics}. Connections and statements are wrapped in JDK
+ * proxies, so whatever pool is underneath keeps working unchanged.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+	private final DataSourceStatistics statistics;
+
+	public InstrumentedDataSource(DataSource target, DataSourceStatistics statistics) {
+		super(target);
+		this.statistics = statistics;
+		statistics.setPool(target);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return checkedOut(getTargetDataSource().getConnection(), start);
+		}
+		catch (SQLException e) {
+			statistics.checkoutFailed(System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return checkedOut(getTargetDataSource().getConnection(username, password), start);
+		}
+		catch (SQLException e) {
+			statistics.checkoutFailed(System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	private Connection checkedOut(Connection connection, long start) {
+		long now = System.nanoTime();
+		statistics.checkedOut(now - start);
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				new ConnectionHandler(connection, now));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private final long checkedOut;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		ConnectionHandler(Connection target, long checkedOut) {
+			this.target = target;
+			this.checkedOut = checkedOut;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("close")) {
+				try {
+					return InstrumentedDataSource.invoke(target, method, args);
+				}
+				finally {
+					if (closed.compareAndSet(false, true)) {
+						statistics.released(System.nanoTime() - checkedOut);
+					}
+				}
+			}
+			Object result = InstrumentedDataSource.invoke(target, method, args);
+			if (result instanceof Statement) {
+				String sql = name.startsWith("prepare") ? (String) args[0] : null;
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { statementType(result) },
+						new StatementHandler((Statement) result, (Connection) proxy, sql));
+			}
+			return result;
+		}
+
+		private Class<?> statementType(Object statement) {
+			if (statement instanceof CallableStatement) {
+				return CallableStatement.class;
+			}
+			return statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+		}
+	}
+
+	private class StatementHandler implements InvocationHandler {
+
+		private final Statement target;
+
+		private final Connection connection;
+
+		private final String sql;
+
+		private int binds;
+
+		StatementHandler(Statement target, Connection connection, String sql) {
+			this.target = target;
+			this.connection = connection;
+			this.sql = sql;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("getConnection")) {
+				return connection;
+			}
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+				binds = Math.max(binds, (Integer) args[0]);
+			}
+			else if (name.equals("clearParameters")) {
+				binds = 0;
+			}
+			else if (name.startsWith("execute")) {
+				return execute(method, args);
+			}
+			return InstrumentedDataSource.invoke(target, method, args);
+		}
+
+		private Object execute(Method method, Object[] args) throws Throwable {
+			String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+			long start = System.nanoTime();
+			boolean failed = true;
+			try {
+				Object result = InstrumentedDataSource.invoke(target, method, args);
+				failed = false;
+				return result;
+			}
+			finally {
+				statistics.executed(executed, System.nanoTime() - start, binds, failed);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends connections for read-only transactions to the replica while the {@link ReplicationLagMonitor}
+ * says it is caught up, and everything else to the primary.
+ * <p>
+ * The transaction manager asks for its connection before the transaction is marked read-only, so this
+ * must sit behind a LazyConnectionDataSourceProxy, which defers the lookup to the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	static final String PRIMARY = "primary";
+
+	static final String REPLICA = "replica";
+
+	private DataSource primary;
+
+	private DataSource replica;
+
+	private ReplicationLagMonitor lagMonitor;
+
+	public void setPrimary(DataSource primary) {
+		this.primary = primary;
+	}
+
+	public DataSource getPrimary() {
+		return primary;
+	}
+
+	public void setReplica(DataSource replica) {
+		this.replica = replica;
+	}
+
+	public DataSource getReplica() {
+		return replica;
+	}
+
+	public void setLagMonitor(ReplicationLagMonitor lagMonitor) {
+		this.lagMonitor = lagMonitor;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(PRIMARY, primary);
+		targets.put(REPLICA, replica != null ? replica : primary);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		super.afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || replica == null || replica == primary) {
+			return PRIMARY;
+		}
+		if (lagMonitor.isReplicaUsable()) {
+			lagMonitor.replicaRead();
+			return REPLICA;
+		}
+		lagMonitor.primaryFallback();
+		return PRIMARY;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures how far the replica is behind the primary with a heartbeat row: each {@link #heartbeat()}
+ * reads the last beat that reached the replica, then writes a new one to the primary. The lag is the
+ * age of the replica's beat relative to the last beat written, so it is only as fine as the heartbeat
+ * interval. The replica is used while the lag is at most maxLagMillis; until the first heartbeat, or
+ * when the replica cannot be read, every read stays on the primary.
+ */
+public class ReplicationLagMonitor {
+
+	private static Logger log = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+	static final String HEARTBEAT_TABLE = "REPLICATION_HEARTBEAT";
+
+	private DataSource primary;
+
+	private DataSource replica;
+
+	private long maxLagMillis = 5000;
+
+	private long lastBeat;
+
+	private volatile long lagMillis = -1;
+
+	private volatile boolean replicaUsable;
+
+	private final AtomicLong replicaReads = new AtomicLong();
+
+	private final AtomicLong primaryFallbacks = new AtomicLong();
+
+	public void setPrimary(DataSource primary) {
+		this.primary = primary;
+	}
+
+	public void setReplica(DataSource replica) {
+		this.replica = replica;
+	}
+
+	public void setMaxLagMillis(long maxLagMillis) {
+		this.maxLagMillis = maxLagMillis;
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis;
+	}
+
+	public synchronized void heartbeat() {
+		if (replica == null || replica == primary) {
+			lagMillis = 0;
+			replicaUsable = true;
+			return;
+		}
+		long lag;
+		try {
+			Long replicated = new JdbcTemplate(replica).queryForObject("SELECT BEAT FROM " + HEARTBEAT_TABLE
+					+ " WHERE ID = 1", Long.class);
+			lag = lastBeat == 0 ? -1 : Math.max(0, lastBeat - replicated);
+		}
+		catch (DataAccessException e) {
+			log.debug("ReplicationLagMonitor.heartbeat: cannot read the replica heartbeat", e);
+			lag = -1;
+		}
+		long beat = System.currentTimeMillis();
+		try {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(primary);
+			if (jdbcTemplate.update("UPDATE " + HEARTBEAT_TABLE + " SET BEAT = ? WHERE ID = 1", beat) == 0) {
+				jdbcTemplate.update("INSERT INTO " + HEARTBEAT_TABLE + " (ID, BEAT) VALUES (1, ?)", beat);
+			}
+			lastBeat = beat;
+		}
+		catch (DataAccessException e) {
+			log.warn("ReplicationLagMonitor.heartbeat: cannot write the primary heartbeat: " + e.getMessage());
+		}
+		update(lag);
+	}
+
+	private void update(long lag) {
+		boolean usable = lag >= 0 && lag <= maxLagMillis;
+		if (usable != replicaUsable) {
+			if (usable) {
+				log.info("ReplicationLagMonitor: replica caught up (" + lag + " ms behind), sending reads to it");
+			}
+			else {
+				log.warn("ReplicationLagMonitor: replica " + (lag < 0 ? "unavailable" : lag + " ms behind")
+						+ ", sending reads to the primary");
+			}
+		}
+		lagMillis = lag;
+		replicaUsable = usable;
+	}
+
+	void replicaRead() {
+		replicaReads.incrementAndGet();
+	}
+
+	void primaryFallback() {
+		primaryFallbacks.incrementAndGet();
+	}
+
+	public boolean isReplicaUsable() {
+		return replicaUsable;
+	}
+
+	/**
+	 * Lag at the last heartbeat, or -1 when it is not known.
+	 */
+	public long getLagMillis() {
+		return lagMillis;
+	}
+
+	/**
+	 * Read-only transactions served by the replica.
+	 */
+	public long getReplicaReads() {
+		return replicaReads.get();
+	}
+
+	/**
+	 * Read-only transactions sent to the primary because the replica was behind or unavailable.
+	 */
+	public long getPrimaryFallbacks() {
+		return primaryFallbacks.get();
+	}
+
+	public void reset() {
+		replicaReads.set(0);
+		primaryFallbacks.set(0);
+	}
+}
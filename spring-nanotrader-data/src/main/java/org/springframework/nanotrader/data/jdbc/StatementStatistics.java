@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executions of the statements sharing one {@link SqlFingerprint}.
+ */
+public class StatementStatistics {
+
+	private final String fingerprint;
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	private final AtomicLong slow = new AtomicLong();
+
+	private final AtomicLong errors = new AtomicLong();
+
+	StatementStatistics(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	void executed(long nanos, boolean isSlow, boolean failed) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		DataSourceStatistics.max(maxNanos, nanos);
+		if (isSlow) {
+			slow.incrementAndGet();
+		}
+		if (failed) {
+			errors.incrementAndGet();
+		}
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getTotalMillis() {
+		return DataSourceStatistics.millis(totalNanos.get());
+	}
+
+	public double getMeanMillis() {
+		long executions = count.get();
+		return executions == 0 ? 0 : DataSourceStatistics.millis(totalNanos.get() / executions);
+	}
+
+	public double getMaxMillis() {
+		return DataSourceStatistics.millis(maxNanos.get());
+	}
+
+	public long getSlow() {
+		return slow.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	long totalNanos() {
+		return totalNanos.get();
+	}
+}
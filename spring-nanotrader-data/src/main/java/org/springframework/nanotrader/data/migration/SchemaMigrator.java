@@ -0,0 +1,266 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.nanotrader.data.shard.ShardContext;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Applies versioned SQL scripts at startup and records them in SCHEMA_VERSION. Scripts are named
+ * <code>V&lt;version&gt;__&lt;description&gt;.sql</code> and are read from <code>common</code> and from
+ * a directory named after the database (<code>h2</code>, <code>postgresql</code>, <code>mysql</code>)
+ * under the configured location; a database specific script replaces the common one with the same
+ * version. Each script runs in its own transaction.
+ * <p>
+ * The CRC32 checksum of every applied script is stored, and startup fails if an applied script has
+ * changed since. When Hibernate recreates the schema on startup the recorded history no longer
+ * matches the tables, so <code>schemaRecreated</code> clears it at startup and every script is
+ * applied again.
+ */
+public class SchemaMigrator implements InitializingBean {
+
+	private static Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+	private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+	static final String HISTORY_TABLE = "SCHEMA_VERSION";
+
+	private DataSource dataSource;
+
+	private String location = "classpath*:/db/migration";
+
+	private boolean schemaRecreated;
+
+	private ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Integer outer = ShardContext.set(ShardContext.REPLICATED);
+		try {
+			if (schemaRecreated) {
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+				createHistoryTable(jdbcTemplate);
+				jdbcTemplate.update("DELETE FROM " + HISTORY_TABLE);
+			}
+			migrate();
+		}
+		finally {
+			ShardContext.set(outer);
+		}
+	}
+
+	/**
+	 * Applies all pending migrations, on every shard, and returns the number applied.
+	 */
+	public int migrate() throws SQLException, IOException {
+		Integer outer = ShardContext.set(ShardContext.REPLICATED);
+		try {
+			return applyPending();
+		}
+		finally {
+			ShardContext.set(outer);
+		}
+	}
+
+	private int applyPending() throws SQLException, IOException {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		String vendor = databaseVendor();
+		createHistoryTable(jdbcTemplate);
+
+		Map<Integer, Long> applied = new TreeMap<Integer, Long>();
+		for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT VERSION, CHECKSUM FROM " + HISTORY_TABLE)) {
+			applied.put(((Number) value(row, "VERSION")).intValue(), ((Number) value(row, "CHECKSUM")).longValue());
+		}
+
+		int count = 0;
+		for (Migration migration : findMigrations(vendor).values()) {
+			Long checksum = applied.get(migration.version);
+			if (checksum != null) {
+				if (checksum.longValue() != migration.checksum) {
+					throw new IllegalStateException("SchemaMigrator: checksum mismatch for applied migration "
+							+ migration.script + " (recorded " + checksum + ", found " + migration.checksum + ")");
+				}
+				continue;
+			}
+			apply(migration);
+			count++;
+		}
+		log.info("SchemaMigrator.migrate: applied " + count + " migrations to " + vendor + " database");
+		return count;
+	}
+
+	Map<Integer, Migration> findMigrations(String vendor) throws IOException {
+		Map<Integer, Migration> migrations = new TreeMap<Integer, Migration>();
+		for (String directory : new String[] { "common", vendor }) {
+			for (Resource resource : resolver.getResources(location + "/" + directory + "/*.sql")) {
+				Matcher matcher = SCRIPT_NAME.matcher(resource.getFilename());
+				if (!matcher.matches()) {
+					throw new IllegalStateException("SchemaMigrator: unexpected script name " + resource.getFilename());
+				}
+				Migration migration = new Migration(Integer.valueOf(matcher.group(1)), matcher.group(2).replace('_', ' '),
+						directory + "/" + resource.getFilename(), resource, checksum(resource));
+				migrations.put(migration.version, migration);
+			}
+		}
+		return migrations;
+	}
+
+	private void apply(Migration migration) throws SQLException {
+		long start = System.currentTimeMillis();
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		boolean autoCommit = connection.getAutoCommit();
+		try {
+			connection.setAutoCommit(false);
+			ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+			populator.addScript(migration.resource);
+			populator.populate(connection);
+			new JdbcTemplate(new SingleConnectionDataSource(connection, true)).update("INSERT INTO " + HISTORY_TABLE
+					+ " (VERSION, DESCRIPTION, SCRIPT, CHECKSUM, INSTALLED_ON, EXECUTION_TIME) VALUES (?, ?, ?, ?, ?, ?)",
+					migration.version, migration.description, migration.script, migration.checksum,
+					new Timestamp(new Date().getTime()), (int) (System.currentTimeMillis() - start));
+			connection.commit();
+		}
+		catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			connection.rollback();
+			throw e;
+		}
+		finally {
+			connection.setAutoCommit(autoCommit);
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+		log.info("SchemaMigrator.apply: applied " + migration.script + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void createHistoryTable(JdbcTemplate jdbcTemplate) throws SQLException {
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			DatabaseMetaData metaData = connection.getMetaData();
+			for (String name : new String[] { HISTORY_TABLE, HISTORY_TABLE.toLowerCase() }) {
+				ResultSet tables = metaData.getTables(null, null, name, null);
+				try {
+					if (tables.next()) {
+						return;
+					}
+				}
+				finally {
+					tables.close();
+				}
+			}
+		}
+		finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+		jdbcTemplate.execute("CREATE TABLE " + HISTORY_TABLE + " (VERSION INTEGER NOT NULL PRIMARY KEY, "
+				+ "DESCRIPTION VARCHAR(200), SCRIPT VARCHAR(200) NOT NULL, CHECKSUM BIGINT NOT NULL, "
+				+ "INSTALLED_ON TIMESTAMP NOT NULL, EXECUTION_TIME INTEGER NOT NULL)");
+	}
+
+	private String databaseVendor() throws SQLException {
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			return connection.getMetaData().getDatabaseProductName().toLowerCase().replace(" ", "");
+		}
+		finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+
+	private static Object value(Map<String, Object> row, String column) {
+		Object value = row.get(column);
+		return value != null ? value : row.get(column.toLowerCase());
+	}
+
+	// line endings are normalized so a checkout with different line endings keeps the same checksum
+	static long checksum(Resource resource) throws IOException {
+		InputStream in = resource.getInputStream();
+		byte[] content = FileCopyUtils.copyToByteArray(in);
+		CRC32 crc = new CRC32();
+		for (byte b : content) {
+			if (b != '\r') {
+				crc.update(b);
+			}
+		}
+		return crc.getValue();
+	}
+
+	public List<Map<String, Object>> getAppliedMigrations() {
+		return new JdbcTemplate(dataSource).queryForList("SELECT * FROM " + HISTORY_TABLE + " ORDER BY VERSION");
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public void setLocation(String location) {
+		this.location = location;
+	}
+
+	public void setSchemaRecreated(boolean schemaRecreated) {
+		this.schemaRecreated = schemaRecreated;
+	}
+
+	static class Migration {
+
+		final Integer version;
+
+		final String description;
+
+		final String script;
+
+		final Resource resource;
+
+		final long checksum;
+
+		Migration(Integer version, String description, String script, Resource resource, long checksum) {
+			this.version = version;
+			this.description = description;
+			this.script = script;
+			this.resource = resource;
+			this.checksum = checksum;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.stereotype.Repository;
+
+/**
+ * Per-account counters backing the collection totals. Counter names are {@link #HOLDINGS},
+ * {@link #ORDERS} and {@link #ORDERS} + ":" + status for the per-status order counts.
+ * <p>
+ * Every counter of an account is created at zero along with the account, so increments only ever
+ * update a row and concurrent first orders of an account cannot both try to insert it.
+ */
+@Repository
+public interface AccountCounterRepository {
+
+	static String HOLDINGS = "holdings";
+
+	static String ORDERS = "orders";
+
+	static List<String> NAMES = Arrays.asList(HOLDINGS, ORDERS, ORDERS + ":open", ORDERS + ":closed",
+			ORDERS + ":completed", ORDERS + ":cancelled");
+
+	/**
+	 * Creates every counter of a new account at zero.
+	 */
+	abstract void create(Integer accountId);
+
+	abstract void increment(Integer accountId, String counter, long delta);
+
+	/**
+	 * Returns the current value of the counter, or zero if it has never been incremented.
+	 */
+	abstract Long findCount(Integer accountId, String counter);
+
+	/**
+	 * Recomputes the counters of one account, or of every account when accountId is null,
+	 * from HOLDING, ORDERS and ORDERS_ARCHIVE. Counters with nothing to count are created at zero.
+	 */
+	abstract void rebuild(Integer accountId);
+
+	abstract int deleteByAccountId(Integer accountId);
+
+	abstract int deleteAll();
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.nanotrader.data.domain.AccountCounter;
+import org.springframework.nanotrader.data.domain.AccountCounter.AccountCounterId;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class AccountCounterRepositoryImpl implements AccountCounterRepository {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	public void setEntityManager(EntityManager em) {
+		this.em = em;
+	}
+
+	@Override
+	public void create(Integer accountId) {
+		List<AccountCounter> accountCounters = new ArrayList<AccountCounter>(NAMES.size());
+		for (String name : NAMES) {
+			AccountCounter accountCounter = new AccountCounter(accountId, name, 0L);
+			em.persist(accountCounter);
+			accountCounters.add(accountCounter);
+		}
+		em.flush();
+		for (AccountCounter accountCounter : accountCounters) {
+			em.detach(accountCounter);
+		}
+	}
+
+	@Override
+	public void increment(Integer accountId, String counter, long delta) {
+		int updated = em.createQuery("UPDATE AccountCounter c SET c.value = c.value + :delta WHERE c.id.accountid = :accountId AND c.id.name = :name")
+				.setParameter("delta", delta)
+				.setParameter("accountId", accountId)
+				.setParameter("name", counter)
+				.executeUpdate();
+		if (updated == 0) {
+			// only accounts created before their counters were seeded get here, and they are not
+			// safe against a concurrent first increment until repairAccountCounters has run
+			AccountCounter accountCounter = new AccountCounter(accountId, counter, delta);
+			em.persist(accountCounter);
+			em.flush();
+			// later increments go through bulk updates, so don't keep a stale copy around
+			em.detach(accountCounter);
+		}
+	}
+
+	@Override
+	public Long findCount(Integer accountId, String counter) {
+		List<?> values = em.createQuery("SELECT c.value FROM AccountCounter c WHERE c.id.accountid = :accountId AND c.id.name = :name")
+				.setParameter("accountId", accountId)
+				.setParameter("name", counter)
+				.getResultList();
+		return values.isEmpty() ? Long.valueOf(0) : (Long) values.get(0);
+	}
+
+	@Override
+	public void rebuild(Integer accountId) {
+		if (accountId == null) {
+			deleteAll();
+		}
+		else {
+			deleteByAccountId(accountId);
+		}
+		Map<AccountCounterId, Long> counters = new HashMap<AccountCounterId, Long>();
+		for (Integer id : accountId != null ? Collections.singletonList(accountId) : em.createQuery(
+				"SELECT a.accountid FROM Account a", Integer.class).getResultList()) {
+			for (String name : NAMES) {
+				add(counters, id, name, 0L);
+			}
+		}
+		for (Object[] row : aggregate("SELECT h.accountAccountid, count(h) FROM Holding h", "h.accountAccountid", "h.accountAccountid", accountId)) {
+			add(counters, (Integer) row[0], HOLDINGS, (Long) row[1]);
+		}
+		for (Object[] row : aggregate("SELECT o.accountAccountid.accountid, count(o), o.orderstatus FROM Order o", "o.accountAccountid.accountid",
+				"o.accountAccountid.accountid, o.orderstatus", accountId)) {
+			add(counters, (Integer) row[0], ORDERS, (Long) row[1]);
+			add(counters, (Integer) row[0], ORDERS + ":" + row[2], (Long) row[1]);
+		}
+		for (Object[] row : aggregate("SELECT a.accountid, count(a), a.orderstatus FROM ArchivedOrder a", "a.accountid", "a.accountid, a.orderstatus", accountId)) {
+			add(counters, (Integer) row[0], ORDERS, (Long) row[1]);
+			add(counters, (Integer) row[0], ORDERS + ":" + row[2], (Long) row[1]);
+		}
+		List<AccountCounter> accountCounters = new ArrayList<AccountCounter>(counters.size());
+		for (Map.Entry<AccountCounterId, Long> entry : counters.entrySet()) {
+			AccountCounter accountCounter = new AccountCounter(entry.getKey().getAccountid(), entry.getKey().getName(), entry.getValue());
+			em.persist(accountCounter);
+			accountCounters.add(accountCounter);
+		}
+		em.flush();
+		for (AccountCounter accountCounter : accountCounters) {
+			em.detach(accountCounter);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> aggregate(String select, String accountColumn, String groupBy, Integer accountId) {
+		Query query = em.createQuery(select + (accountId != null ? " WHERE " + accountColumn + " = :accountId" : "") + " GROUP BY " + groupBy);
+		if (accountId != null) {
+			query.setParameter("accountId", accountId);
+		}
+		return query.getResultList();
+	}
+
+	private void add(Map<AccountCounterId, Long> counters, Integer accountId, String name, Long value) {
+		if (accountId == null) {
+			return;
+		}
+		AccountCounterId id = new AccountCounterId(accountId, name);
+		Long current = counters.get(id);
+		counters.put(id, current == null ? value : current + value);
+	}
+
+	@Override
+	public int deleteByAccountId(Integer accountId) {
+		return em.createQuery("DELETE FROM AccountCounter c WHERE c.id.accountid = :accountId")
+				.setParameter("accountId", accountId)
+				.executeUpdate();
+	}
+
+	@Override
+	public int deleteAll() {
+		return em.createQuery("DELETE FROM AccountCounter c").executeUpdate();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.nanotrader.data.domain.AdminJob;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Admin job state. A job is inserted once and then only changed with the bulk updates below, so the
+ * node running it and a node asking to cancel it never overwrite each other's columns. Finishing a
+ * job releases its exclusive group.
+ */
+@Repository
+public interface AdminJobRepository extends JpaRepository<AdminJob, Integer> {
+
+	@Query("SELECT j FROM AdminJob j ORDER BY j.jobid DESC")
+	public List<AdminJob> findLatest(Pageable pageable);
+
+	@Query("SELECT j FROM AdminJob j WHERE j.type IN (?1) ORDER BY j.jobid DESC")
+	public List<AdminJob> findLatestOfTypes(List<String> types, Pageable pageable);
+
+	public AdminJob findByExclusivegroup(String exclusivegroup);
+
+	@Query("SELECT j.cancelrequested FROM AdminJob j WHERE j.jobid = ?1")
+	public Boolean findCancelRequested(Integer jobId);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.status = ?2, j.started = ?3 WHERE j.jobid = ?1")
+	public int updateStarted(Integer jobId, String status, Date started);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.done = ?2, j.total = ?3, j.message = ?4 WHERE j.jobid = ?1")
+	public int updateProgress(Integer jobId, Long done, Long total, String message);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.status = ?2, j.done = ?3, j.total = ?4, j.message = ?5, j.finished = ?6, j.exclusivegroup = NULL WHERE j.jobid = ?1")
+	public int updateFinished(Integer jobId, String status, Long done, Long total, String message, Date finished);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.cancelrequested = true WHERE j.jobid = ?1 AND j.finished IS NULL")
+	public int requestCancel(Integer jobId);
+
+	/**
+	 * Renews the lease of the jobs the node has not finished yet.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.heartbeat = ?2 WHERE j.node = ?1 AND j.finished IS NULL")
+	public int renewLeases(String node, Date heartbeat);
+
+	/**
+	 * Finishes the jobs whose node stopped renewing their lease before expiredBefore.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.status = ?2, j.message = ?3, j.finished = ?4, j.exclusivegroup = NULL "
+			+ "WHERE j.finished IS NULL AND (j.heartbeat IS NULL OR j.heartbeat < ?1)")
+	public int abandonExpired(Date expiredBefore, String status, String message, Date finished);
+
+	/**
+	 * Finishes the job if its node stopped renewing its lease before expiredBefore.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE AdminJob j SET j.status = ?3, j.message = ?4, j.finished = ?5, j.exclusivegroup = NULL "
+			+ "WHERE j.jobid = ?1 AND j.finished IS NULL AND (j.heartbeat IS NULL OR j.heartbeat < ?2)")
+	public int abandonIfExpired(Integer jobId, Date expiredBefore, String status, String message, Date finished);
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.nanotrader.data.domain.AuthTokenRevocation;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Auth token revocations, kept on the home shard and read back by every node.
+ */
+@Repository
+public interface AuthTokenRevocationRepository extends JpaRepository<AuthTokenRevocation, String> {
+
+	@Query("SELECT r FROM AuthTokenRevocation r WHERE r.revoked >= ?1")
+	public List<AuthTokenRevocation> findRevokedSince(Date since);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM AuthTokenRevocation r WHERE r.expiry < ?1")
+	public int deleteExpired(Long now);
+
+}
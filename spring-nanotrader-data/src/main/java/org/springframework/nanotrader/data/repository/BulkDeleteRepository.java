@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import org.springframework.stereotype.Repository;
+
+/**
+ * Set-based deletes that never load the rows they remove. Each call removes a bounded chunk, so a
+ * caller deleting millions of rows can commit as it goes instead of holding one huge transaction.
+ */
+@Repository
+public interface BulkDeleteRepository {
+
+	/**
+	 * Deletes the rows of the entity with the chunkSize lowest values of key, or all of them when there
+	 * are fewer, keeping to rows whose filter property equals value when filter is not null. Returns
+	 * the number of rows deleted, which exceeds chunkSize only when key is not unique.
+	 */
+	abstract int deleteChunk(Class<?> entity, String key, String filter, Object value, int chunkSize);
+
+	/**
+	 * Empties the table with TRUNCATE TABLE, which is only allowed on tables no foreign key refers to.
+	 */
+	abstract void truncate(String table);
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class BulkDeleteRepositoryImpl implements BulkDeleteRepository {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	public void setEntityManager(EntityManager em) {
+		this.em = em;
+	}
+
+	@Override
+	public int deleteChunk(Class<?> entity, String key, String filter, Object value, int chunkSize) {
+		String where = filter != null ? " WHERE e." + filter + " = :value" : "";
+		Query bound = em.createQuery("SELECT e." + key + " FROM " + entity.getSimpleName() + " e" + where + " ORDER BY e." + key)
+				.setFirstResult(chunkSize - 1)
+				.setMaxResults(1);
+		if (filter != null) {
+			bound.setParameter("value", value);
+		}
+		List<?> last = bound.getResultList();
+		Query delete = em.createQuery("DELETE FROM " + entity.getSimpleName() + " e" + where
+				+ (last.isEmpty() ? "" : (filter != null ? " AND" : " WHERE") + " e." + key + " <= :last"));
+		if (filter != null) {
+			delete.setParameter("value", value);
+		}
+		if (!last.isEmpty()) {
+			delete.setParameter("last", last.get(0));
+		}
+		return delete.executeUpdate();
+	}
+
+	@Override
+	public void truncate(String table) {
+		em.createNativeQuery("TRUNCATE TABLE " + table).executeUpdate();
+	}
+}
@@ -34,6 +34,9 @@ public interface HoldingRepository extends JpaSpecificationExecutor<Holding>, Jp
 	
 	public List<Holding> findByAccountAccountid(Integer accountId, Pageable pageable);
 	
+	@Query("SELECT h FROM Holding h WHERE h.accountAccountid = ?1 AND h.holdingid < ?2 ORDER BY h.holdingid DESC")
+	public List<Holding> findByAccountAccountidAfter(Integer accountId, Integer afterHoldingId, Pageable pageable);
+	
 	public Holding findByHoldingidAndAccountAccountid(Integer holdingId, Integer accountId);
 	
 	@Query("SELECT count(h) FROM Holding h WHERE h.accountAccountid = ?1")
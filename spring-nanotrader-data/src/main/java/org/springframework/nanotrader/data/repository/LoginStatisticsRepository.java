@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.stereotype.Repository;
+
+/**
+ * Adds batched login and logout counts to ACCOUNT. The updates leave the @Version column alone, so
+ * they never conflict with order processing, and only evict the accounts they touch from the
+ * second-level cache rather than the whole account region.
+ */
+@Repository
+public interface LoginStatisticsRepository {
+
+	abstract int addLoginStatistics(Integer logins, Integer logouts, Date lastlogin, List<Integer> accountIds);
+
+	abstract int addLogoutCount(Integer logouts, List<Integer> accountIds);
+
+}
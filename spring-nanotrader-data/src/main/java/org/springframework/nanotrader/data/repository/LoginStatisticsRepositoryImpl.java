@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A bulk JPQL update makes Hibernate drop every cached entity of the updated type, which emptied the
+ * account region on each flush of the login statistics. These updates are native SQL in a query space
+ * no entity maps to, so nothing is invalidated on their behalf; the updated accounts are evicted once
+ * the update has committed.
+ */
+@Repository
+public class LoginStatisticsRepositoryImpl implements LoginStatisticsRepository {
+
+	static final String QUERY_SPACE = "ACCOUNT_LOGIN_STATISTICS";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	public void setEntityManager(EntityManager em) {
+		this.em = em;
+	}
+
+	@Override
+	@Transactional
+	public int addLoginStatistics(Integer logins, Integer logouts, Date lastlogin, List<Integer> accountIds) {
+		SQLQuery query = createQuery("UPDATE ACCOUNT SET logincount = logincount + :logins, logoutcount = logoutcount + :logouts,"
+				+ " lastlogin = :lastlogin WHERE accountid IN (:accountIds)");
+		query.setInteger("logins", logins);
+		query.setInteger("logouts", logouts);
+		query.setDate("lastlogin", lastlogin);
+		return update(query, accountIds);
+	}
+
+	@Override
+	@Transactional
+	public int addLogoutCount(Integer logouts, List<Integer> accountIds) {
+		SQLQuery query = createQuery("UPDATE ACCOUNT SET logoutcount = logoutcount + :logouts WHERE accountid IN (:accountIds)");
+		query.setInteger("logouts", logouts);
+		return update(query, accountIds);
+	}
+
+	private SQLQuery createQuery(String sql) {
+		SQLQuery query = em.unwrap(Session.class).createSQLQuery(sql);
+		query.addSynchronizedQuerySpace(QUERY_SPACE);
+		return query;
+	}
+
+	private int update(SQLQuery query, final List<Integer> accountIds) {
+		query.setParameterList("accountIds", accountIds);
+		int updated = query.executeUpdate();
+		final Cache cache = em.getEntityManagerFactory().getCache();
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				for (Integer accountId : accountIds) {
+					cache.evict(Account.class, accountId);
+				}
+			}
+		});
+		return updated;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.nanotrader.data.domain.ArchivedOrder;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Access to the ORDERS_ARCHIVE table. An account's orders are only ever archived below its
+ * oldest order that must stay hot, so every archived orderid of an account is lower than
+ * every orderid it still has in ORDERS and the archive can simply be appended after the
+ * hot rows when reading newest-first.
+ */
+@Repository
+public interface OrderArchiveRepository {
+
+	/**
+	 * Copies up to batchSize orders into the archive and deletes them from ORDERS. An order is
+	 * moved when it and every lower order of its account have an archivable status and were
+	 * completed before completedBefore. Returns the number of orders moved.
+	 */
+	abstract int archiveOrders(List<String> archivableStatuses, Date completedBefore, int batchSize);
+
+	abstract List<ArchivedOrder> findOrders(Integer accountId, String status, int firstResult, int maxResults);
+
+	abstract List<ArchivedOrder> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, int maxResults);
+
+	abstract ArchivedOrder findOrder(Integer orderId, Integer accountId);
+
+	abstract int deleteByAccountId(Integer accountId);
+
+	abstract int deleteAll();
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.repository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.springframework.nanotrader.data.domain.ArchivedOrder;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class OrderArchiveRepositoryImpl implements OrderArchiveRepository {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	public void setEntityManager(EntityManager em) {
+		this.em = em;
+	}
+
+	@Override
+	public int archiveOrders(List<String> archivableStatuses, Date completedBefore, int batchSize) {
+		// the lowest ids come first, so a batch never leaves a lower order of an account behind
+		List<Order> orders = em.createQuery("SELECT o FROM Order o WHERE o.orderstatus IN (:statuses)"
+				+ " AND o.completiondate < :completedBefore AND NOT EXISTS (SELECT h.orderid FROM Order h"
+				+ " WHERE h.accountAccountid = o.accountAccountid AND h.orderid < o.orderid AND (h.orderstatus NOT IN (:statuses)"
+				+ " OR h.completiondate IS NULL OR h.completiondate >= :completedBefore)) ORDER BY o.orderid", Order.class)
+				.setParameter("statuses", archivableStatuses)
+				.setParameter("completedBefore", completedBefore)
+				.setMaxResults(batchSize)
+				.getResultList();
+		if (orders.isEmpty()) {
+			return 0;
+		}
+		List<Integer> orderIds = new ArrayList<Integer>(orders.size());
+		for (Order order : orders) {
+			em.persist(new ArchivedOrder(order));
+			orderIds.add(order.getOrderid());
+		}
+		em.flush();
+		int deleted = em.createQuery("DELETE FROM Order o WHERE o.orderid IN (:orderIds)")
+				.setParameter("orderIds", orderIds)
+				.executeUpdate();
+		for (Order order : orders) {
+			em.detach(order);
+		}
+		return deleted;
+	}
+
+	@Override
+	public List<ArchivedOrder> findOrders(Integer accountId, String status, int firstResult, int maxResults) {
+		TypedQuery<ArchivedOrder> query = em.createQuery("SELECT a FROM ArchivedOrder a WHERE a.accountid = :accountId"
+				+ (status != null ? " AND a.orderstatus = :status" : "") + " ORDER BY a.orderid DESC", ArchivedOrder.class);
+		query.setParameter("accountId", accountId);
+		if (status != null) {
+			query.setParameter("status", status);
+		}
+		return query.setFirstResult(firstResult).setMaxResults(maxResults).getResultList();
+	}
+
+	@Override
+	public List<ArchivedOrder> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, int maxResults) {
+		TypedQuery<ArchivedOrder> query = em.createQuery("SELECT a FROM ArchivedOrder a WHERE a.accountid = :accountId AND a.orderid < :afterOrderId"
+				+ (status != null ? " AND a.orderstatus = :status" : "") + " ORDER BY a.orderid DESC", ArchivedOrder.class);
+		query.setParameter("accountId", accountId);
+		query.setParameter("afterOrderId", afterOrderId);
+		if (status != null) {
+			query.setParameter("status", status);
+		}
+		return query.setMaxResults(maxResults).getResultList();
+	}
+
+	@Override
+	public ArchivedOrder findOrder(Integer orderId, Integer accountId) {
+		List<ArchivedOrder> orders = em.createQuery("SELECT a FROM ArchivedOrder a WHERE a.orderid = :orderId AND a.accountid = :accountId", ArchivedOrder.class)
+				.setParameter("orderId", orderId)
+				.setParameter("accountId", accountId)
+				.getResultList();
+		return orders.isEmpty() ? null : orders.get(0);
+	}
+
+	@Override
+	public int deleteByAccountId(Integer accountId) {
+		return em.createQuery("DELETE FROM ArchivedOrder a WHERE a.accountid = :accountId")
+				.setParameter("accountId", accountId)
+				.executeUpdate();
+	}
+
+	@Override
+	public int deleteAll() {
+		return em.createQuery("DELETE FROM ArchivedOrder a").executeUpdate();
+	}
+}
@@ -34,10 +34,13 @@ import org.springframework.transaction.annotation.Transactional;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpecificationExecutor<Order> {
 		
-	@Modifying 
+	@Query("SELECT o.orderid, o.accountAccountid.accountid FROM Order o WHERE o.orderstatus = ?1 order by o.orderid")
+	public List<Object[]> findOrderIdsAndAccountIdsByStatus(String status, Pageable pageable);
+
+	@Modifying(clearAutomatically = true)
 	@Transactional
-	@Query(value="UPDATE Order o SET o.orderstatus = 'completed' WHERE o.accountAccountid.accountid = ?1 AND o.orderstatus = 'closed'")
-	public int updateClosedOrders(Integer accountId);
+	@Query(value="UPDATE Order o SET o.orderstatus = ?4 WHERE o.accountAccountid.accountid = ?1 AND o.orderid IN (?2) AND o.orderstatus = ?3")
+	public int updateOrderStatus(Integer accountId, List<Integer> orderIds, String fromStatus, String toStatus);
 	
 	@Query("SELECT o FROM Order o WHERE o.orderstatus = ?2 AND o.accountAccountid.accountid  = ?1 order by orderid DESC")
 	public List<Order> findOrdersByStatus(Integer accountId, String status, Pageable pageable);
@@ -45,6 +48,12 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
 	@Query("SELECT o FROM Order o WHERE o.accountAccountid.accountid  = ?1 order by orderid DESC")
 	public List<Order> findOrdersByAccountAccountid_Accountid(Integer accountId, Pageable pageable);
 
+	@Query("SELECT o FROM Order o WHERE o.orderstatus = ?2 AND o.accountAccountid.accountid  = ?1 AND o.orderid < ?3 order by orderid DESC")
+	public List<Order> findOrdersByStatusAfter(Integer accountId, String status, Integer afterOrderId, Pageable pageable);
+
+	@Query("SELECT o FROM Order o WHERE o.accountAccountid.accountid  = ?1 AND o.orderid < ?2 order by orderid DESC")
+	public List<Order> findOrdersByAccountAccountid_AccountidAfter(Integer accountId, Integer afterOrderId, Pageable pageable);
+
 	@Query("SELECT o FROM Order o WHERE o.orderid = ?1 AND o.accountAccountid.accountid  = ?2")
 	public Order findByOrderidAndAccountAccountid(Integer orderId, Integer accountId);
 
@@ -18,8 +18,12 @@ package org.springframework.nanotrader.data.repository;
 import java.util.List;
 import java.util.Set;
 
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.nanotrader.data.domain.Quote;
 import org.springframework.stereotype.Repository;
 
@@ -30,9 +34,19 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface QuoteRepository extends JpaSpecificationExecutor<Quote>, JpaRepository<Quote, Integer> {
-	
+
+	/** query cache region for symbol lookups, which only hold ids; prices come from the quote region */
+	public static final String QUERY_CACHE_REGION = "quote.query";
+
+	// derived queries ignore @QueryHints, so these spell out the JPQL they used to generate
+	@Query("SELECT q FROM Quote q WHERE q.symbol = ?1")
+	@QueryHints({ @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+			@QueryHint(name = "org.hibernate.cacheRegion", value = QUERY_CACHE_REGION) })
 	public Quote findBySymbol(String  symbol);
-	
+
+	@Query("SELECT q FROM Quote q WHERE q.symbol IN (?1)")
+	@QueryHints({ @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+			@QueryHint(name = "org.hibernate.cacheRegion", value = QUERY_CACHE_REGION) })
 	public List<Quote> findBySymbolIn(Set<String> symbols);
 	
 
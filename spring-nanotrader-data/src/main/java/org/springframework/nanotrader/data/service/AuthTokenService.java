@@ -0,0 +1,393 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.nanotrader.data.domain.AuthTokenRevocation;
+import org.springframework.nanotrader.data.repository.AuthTokenRevocationRepository;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Issues and verifies self-describing auth tokens. A signed token carries the profile id, account id,
+ * role, expiry and user id together with an HMAC-SHA256 over those fields, so a request can be
+ * authenticated without a cache or database lookup.
+ * <p>
+ * Logging out revokes the token, deleting an account revokes every token of its profile and deleting
+ * every account revokes every token issued so far. Revocations are written to AUTH_TOKEN_REVOCATION on
+ * the home shard and kept in memory until the tokens they cover would have expired; each node reads
+ * the new ones every auth.token.revocationRefreshMillis (1000), and all of them when it starts, so a
+ * revoked token is refused everywhere within that delay.
+ * <p>
+ * Signing is off by default (<code>auth.token.mode=opaque</code>), in which case login keeps issuing
+ * random tokens that are resolved through the authorization cache.
+ */
+@Component
+public class AuthTokenService {
+
+	public static final String ROLE_API_USER = "ROLE_API_USER";
+
+	public static final String ROLE_API_ADMIN = "ROLE_API_ADMIN";
+
+	public static final String SIGNED_MODE = "signed";
+
+	private static final String PREFIX = "s1.";
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final int SIGNATURE_BYTES = 16;
+
+	private static final int PURGE_THRESHOLD = 1024;
+
+	private static final String ALL_TOKENS = "*";
+
+	// revocations are read back with this much overlap, for commits that land late and clock skew
+	private static final long REFRESH_OVERLAP_MILLIS = 60000;
+
+	private static final long TABLE_PURGE_INTERVAL_MILLIS = 600000;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static Logger log = LoggerFactory.getLogger(AuthTokenService.class);
+
+	@Value("${auth.token.mode:opaque}")
+	private String mode;
+
+	@Value("${auth.token.secret:}")
+	private String secret;
+
+	@Value("${auth.token.ttlSeconds:28800}")
+	private long ttlSeconds;
+
+	@Autowired
+	private AuthTokenRevocationRepository revocationRepository;
+
+	@Autowired
+	private Shards shards;
+
+	private SecretKeySpec key;
+
+	private final SecureRandom random = new SecureRandom();
+
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+
+	// revocation key -> expiry of the last token covered, entries are dropped once that has passed
+	private final Map<String, Long> revoked = new ConcurrentHashMap<String, Long>();
+
+	private volatile long refreshedAt;
+
+	private volatile long tablePurgedAt;
+
+	@PostConstruct
+	public void init() {
+		byte[] keyBytes;
+		if (secret == null || secret.length() == 0) {
+			keyBytes = new byte[32];
+			random.nextBytes(keyBytes);
+			if (isEnabled()) {
+				log.warn("AuthTokenService.init: auth.token.secret is not set, using a random key; "
+						+ "tokens will not survive a restart or verify on other nodes");
+			}
+		}
+		else {
+			keyBytes = utf8(secret);
+		}
+		key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+		macs.remove();
+		if (isEnabled()) {
+			refreshRevocations();
+		}
+	}
+
+	public boolean isEnabled() {
+		return SIGNED_MODE.equalsIgnoreCase(mode);
+	}
+
+	public boolean isSignedToken(String token) {
+		return token != null && token.startsWith(PREFIX);
+	}
+
+	public static String roleFor(String userid) {
+		return "admin".equals(userid) ? ROLE_API_ADMIN : ROLE_API_USER;
+	}
+
+	public String issue(Integer profileId, Integer accountId, String userid) {
+		long expiry = System.currentTimeMillis() / 1000 + ttlSeconds;
+		String role = ROLE_API_ADMIN.equals(roleFor(userid)) ? "a" : "u";
+		StringBuilder payload = new StringBuilder(PREFIX).append(profileId).append('.').append(accountId)
+				.append('.').append(role).append('.').append(Long.toString(expiry, 36)).append('.')
+				.append(hex(utf8(userid))).append('.').append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+		String signature = sign(payload.toString());
+		return payload.append('.').append(signature).toString();
+	}
+
+	/**
+	 * Returns the claims of a signed token, or <code>null</code> if the token is malformed, carries a bad
+	 * signature, has expired or was revoked.
+	 */
+	public Claims verify(String token) {
+		if (!isSignedToken(token)) {
+			return null;
+		}
+		int split = token.lastIndexOf('.');
+		String[] fields = token.substring(PREFIX.length(), split).split("\\.");
+		if (fields.length != 6) {
+			return null;
+		}
+		String signature = token.substring(split + 1);
+		if (!MessageDigest.isEqual(utf8(signature), utf8(sign(token.substring(0, split))))) {
+			return null;
+		}
+		try {
+			long expiry = Long.parseLong(fields[3], 36);
+			Integer profileId = Integer.valueOf(fields[0]);
+			if (expiry <= System.currentTimeMillis() / 1000 || isRevoked(signature, profileId, expiry)) {
+				return null;
+			}
+			return new Claims(profileId, Integer.valueOf(fields[1]), "a".equals(fields[2]) ? ROLE_API_ADMIN
+					: ROLE_API_USER, new String(unhex(fields[4]), "UTF-8"), expiry);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private boolean isRevoked(String signature, Integer profileId, long expiry) {
+		if (revoked.containsKey(signature)) {
+			return true;
+		}
+		Long profileRevoked = revoked.get("p" + profileId);
+		Long allRevoked = revoked.get(ALL_TOKENS);
+		return (profileRevoked != null && expiry <= profileRevoked) || (allRevoked != null && expiry <= allRevoked);
+	}
+
+	public void revoke(String token) {
+		Claims claims = verify(token);
+		if (claims == null) {
+			return;
+		}
+		record(token.substring(token.lastIndexOf('.') + 1), claims.getExpiry());
+	}
+
+	/**
+	 * Revokes every token issued to the profile so far.
+	 */
+	public void revokeProfile(Integer profileId) {
+		if (isEnabled()) {
+			record("p" + profileId, System.currentTimeMillis() / 1000 + ttlSeconds);
+		}
+	}
+
+	/**
+	 * Revokes every token issued so far.
+	 */
+	public void revokeAll() {
+		if (isEnabled()) {
+			record(ALL_TOKENS, System.currentTimeMillis() / 1000 + ttlSeconds);
+		}
+	}
+
+	private void record(String key, long expiry) {
+		remember(key, expiry);
+		final AuthTokenRevocation revocation = new AuthTokenRevocation(key, expiry, new Date());
+		shards.onShard(ShardedDataSource.HOME_SHARD, new ShardCallback<AuthTokenRevocation>() {
+			public AuthTokenRevocation doInShard(int shard) {
+				return revocationRepository.save(revocation);
+			}
+		});
+	}
+
+	private void remember(String key, long expiry) {
+		if (revoked.size() >= PURGE_THRESHOLD) {
+			purgeExpired();
+		}
+		Long known = revoked.get(key);
+		if (known == null || known < expiry) {
+			revoked.put(key, expiry);
+		}
+	}
+
+	/**
+	 * Picks up the revocations other nodes have written since the last refresh, and now and then deletes
+	 * the ones that have run out.
+	 */
+	public void refreshRevocations() {
+		if (!isEnabled()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		final Date since = new Date(refreshedAt == 0 ? 0 : refreshedAt - REFRESH_OVERLAP_MILLIS);
+		List<AuthTokenRevocation> revocations = shards.onShard(ShardedDataSource.HOME_SHARD,
+				new ShardCallback<List<AuthTokenRevocation>>() {
+					public List<AuthTokenRevocation> doInShard(int shard) {
+						return revocationRepository.findRevokedSince(since);
+					}
+				});
+		if (revocations != null) {
+			for (AuthTokenRevocation revocation : revocations) {
+				remember(revocation.getRevocationkey(), revocation.getExpiry());
+			}
+		}
+		refreshedAt = now;
+		if (now - tablePurgedAt > TABLE_PURGE_INTERVAL_MILLIS) {
+			tablePurgedAt = now;
+			final long nowSeconds = now / 1000;
+			int deleted = shards.onShard(ShardedDataSource.HOME_SHARD, new ShardCallback<Integer>() {
+				public Integer doInShard(int shard) {
+					return revocationRepository.deleteExpired(nowSeconds);
+				}
+			});
+			if (deleted > 0 && log.isDebugEnabled()) {
+				log.debug("AuthTokenService.refreshRevocations: deleted " + deleted + " expired revocations");
+			}
+		}
+	}
+
+	public int getRevokedCount() {
+		return revoked.size();
+	}
+
+	void purgeExpired() {
+		long now = System.currentTimeMillis() / 1000;
+		for (Iterator<Long> it = revoked.values().iterator(); it.hasNext();) {
+			if (it.next() <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	private String sign(String payload) {
+		Mac mac = macs.get();
+		try {
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+				macs.set(mac);
+			}
+			byte[] digest = mac.doFinal(utf8(payload));
+			byte[] truncated = new byte[SIGNATURE_BYTES];
+			System.arraycopy(digest, 0, truncated, 0, SIGNATURE_BYTES);
+			return hex(truncated);
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to sign auth token", e);
+		}
+	}
+
+	private static byte[] utf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private static byte[] unhex(String value) {
+		if (value.length() % 2 != 0) {
+			throw new NumberFormatException("Odd length hex value");
+		}
+		byte[] bytes = new byte[value.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(value.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	public void setMode(String mode) {
+		this.mode = mode;
+	}
+
+	public void setSecret(String secret) {
+		this.secret = secret;
+	}
+
+	public void setTtlSeconds(long ttlSeconds) {
+		this.ttlSeconds = ttlSeconds;
+	}
+
+	public static class Claims {
+
+		private final Integer profileId;
+
+		private final Integer accountId;
+
+		private final String role;
+
+		private final String userid;
+
+		private final long expiry;
+
+		Claims(Integer profileId, Integer accountId, String role, String userid, long expiry) {
+			this.profileId = profileId;
+			this.accountId = accountId;
+			this.role = role;
+			this.userid = userid;
+			this.expiry = expiry;
+		}
+
+		public Integer getProfileId() {
+			return profileId;
+		}
+
+		public Integer getAccountId() {
+			return accountId;
+		}
+
+		public String getRole() {
+			return role;
+		}
+
+		public String getUserid() {
+			return userid;
+		}
+
+		public long getExpiry() {
+			return expiry;
+		}
+	}
+}
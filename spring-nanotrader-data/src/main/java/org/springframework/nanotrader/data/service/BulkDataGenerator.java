@@ -0,0 +1,353 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Holding;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.repository.AccountCounterRepository;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.nanotrader.data.util.FinancialUtils;
+import org.springframework.nanotrader.data.util.PooledIdGenerator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the load test users in bulk: <code>admin</code> and <code>user1</code> to
+ * <code>user&lt;count&gt;</code>, each with the password of its userid and one account. A pool of
+ * generator.threads workers builds the rows generator.chunkSize users at a time and writes them with
+ * batched inserts, in one transaction per chunk and shard.
+ * <p>
+ * For every quote passed in each user buys 1000 shares, written straight to the tables as a completed
+ * order with its holding, or as a cancelled order when the balance does not cover it. Nothing goes
+ * through order processing or the broker, so quote prices do not move. Ids are reserved a chunk at a
+ * time from the same sequences Hibernate uses, and the account counters are written with the rows.
+ */
+@Component
+public class BulkDataGenerator {
+
+	private static Logger log = LoggerFactory.getLogger(BulkDataGenerator.class);
+
+	static final BigDecimal OPEN_BALANCE = BigDecimal.valueOf(1000000.00);
+
+	static final BigDecimal QUANTITY = BigDecimal.valueOf(1000);
+
+	private static final String COMPLETED_STATUS = "completed";
+
+	private static final String CANCELLED_STATUS = "cancelled";
+
+	private static final String INSERT_PROFILE = "INSERT INTO ACCOUNTPROFILE (profileid, address, passwd, userid, email, "
+			+ "creditcard, fullname) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_ACCOUNT = "INSERT INTO ACCOUNT (accountid, creationdate, openbalance, logoutcount, "
+			+ "balance, lastlogin, logincount, version, profile_profileid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_HOLDING = "INSERT INTO HOLDING (holdingid, purchaseprice, quantity, purchasedate, "
+			+ "account_accountid, quote_symbol) VALUES (?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_ORDER = "INSERT INTO ORDERS (orderid, orderfee, completiondate, ordertype, orderstatus, "
+			+ "price, quantity, opendate, account_accountid, holding_holdingid, quote_symbol) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_COUNTER = "INSERT INTO ACCOUNT_COUNTER (account_accountid, countername, countervalue) "
+			+ "VALUES (?, ?, ?)";
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final DataSource dataSource;
+
+	private final ShardedDataSource shardedDataSource;
+
+	private final Shards shards;
+
+	private int threads;
+
+	private int chunkSize;
+
+	@Autowired
+	public BulkDataGenerator(EntityManagerFactory entityManagerFactory, DataSource dataSource,
+			ShardedDataSource shardedDataSource, Shards shards, @Value("${generator.threads:4}") int threads,
+			@Value("${generator.chunkSize:500}") int chunkSize) {
+		this.entityManagerFactory = entityManagerFactory;
+		this.dataSource = dataSource;
+		this.shardedDataSource = shardedDataSource;
+		this.shards = shards;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Creates count users besides admin, buying each of the quotes for every one of them, and returns
+	 * once all are written. The listener is called from the workers after every chunk.
+	 */
+	public Result generate(int count, List<Quote> quotes, ProgressListener listener) {
+		long start = System.currentTimeMillis();
+		final Generation generation = new Generation(quotes == null ? Collections.<Quote> emptyList() : quotes, listener);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("generator-"));
+		try {
+			List<Future<?>> chunks = new ArrayList<Future<?>>();
+			for (int first = 0; first <= count; first += chunkSize) {
+				final int from = first;
+				final int to = Math.min(first + chunkSize, count + 1);
+				chunks.add(executor.submit(new Runnable() {
+					public void run() {
+						writeChunk(generation, from, to);
+					}
+				}));
+			}
+			for (Future<?> chunk : chunks) {
+				chunk.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("BulkDataGenerator.generate: interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("BulkDataGenerator.generate: chunk failed", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		Result result = new Result(generation.users.get(), generation.rows.get(), System.currentTimeMillis() - start);
+		log.info("BulkDataGenerator.generate: created " + result.getUsers() + " users, " + result.getRows() + " rows in "
+				+ result.getMillis() + "ms (" + result.getRowsPerSecond() + " rows/s)");
+		return result;
+	}
+
+	private void writeChunk(Generation generation, int from, int to) {
+		int users = to - from;
+		int orders = users * generation.quotes.size();
+		int profileId = reserve(Accountprofile.class, users);
+		int accountId = reserve(Account.class, users);
+		int holdingId = orders > 0 ? reserve(Holding.class, orders) : 0;
+		int orderId = orders > 0 ? reserve(Order.class, orders) : 0;
+
+		Map<Integer, Rows> shardRows = new TreeMap<Integer, Rows>();
+		List<Integer> accountIds = new ArrayList<Integer>(users);
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		for (int i = from; i < to; i++, profileId++, accountId++) {
+			String userid = i == 0 ? "admin" : "user" + i;
+			Integer shard = shards.shardOf(accountId);
+			Rows rows = shardRows.get(shard);
+			if (rows == null) {
+				rows = new Rows();
+				shardRows.put(shard, rows);
+			}
+			rows.profiles.add(new Object[] { profileId, userid + " address", userid, userid, userid + "@nanotrader.com",
+					"1111222233334444", "first_" + userid + " last " + userid });
+
+			BigDecimal balance = OPEN_BALANCE;
+			int holdings = 0;
+			int completed = 0;
+			for (Quote quote : generation.quotes) {
+				BigDecimal price = quote.getPrice().setScale(FinancialUtils.SCALE, FinancialUtils.ROUND);
+				BigDecimal total = QUANTITY.multiply(price).add(TradingServiceImpl.DEFAULT_ORDER_FEE);
+				if (balance.compareTo(total) >= 0) {
+					balance = balance.subtract(total);
+					rows.holdings.add(new Object[] { holdingId, price, QUANTITY, now, accountId, quote.getSymbol() });
+					rows.orders.add(new Object[] { orderId, TradingServiceImpl.DEFAULT_ORDER_FEE, now, TradingService.ORDER_TYPE_BUY,
+							COMPLETED_STATUS, price, QUANTITY, now, accountId, holdingId, quote.getSymbol() });
+					holdings++;
+					completed++;
+				}
+				else {
+					rows.orders.add(new Object[] { orderId, TradingServiceImpl.DEFAULT_ORDER_FEE, now, TradingService.ORDER_TYPE_BUY,
+							CANCELLED_STATUS, price, BigDecimal.ZERO, now, accountId, null, quote.getSymbol() });
+				}
+				holdingId++;
+				orderId++;
+			}
+			rows.accounts.add(new Object[] { accountId, now, OPEN_BALANCE, 0, balance, now, 0, 0, profileId });
+			counter(rows, accountId, AccountCounterRepository.HOLDINGS, holdings);
+			counter(rows, accountId, AccountCounterRepository.ORDERS, generation.quotes.size());
+			counter(rows, accountId, AccountCounterRepository.ORDERS + ":" + COMPLETED_STATUS, completed);
+			counter(rows, accountId, AccountCounterRepository.ORDERS + ":" + CANCELLED_STATUS, generation.quotes.size() - completed);
+			counter(rows, accountId, AccountCounterRepository.ORDERS + ":open", 0);
+			counter(rows, accountId, AccountCounterRepository.ORDERS + ":closed", 0);
+			accountIds.add(accountId);
+		}
+
+		for (Map.Entry<Integer, Rows> entry : shardRows.entrySet()) {
+			final Rows rows = entry.getValue();
+			shards.inShard(entry.getKey(), new ShardCallback<Void>() {
+				public Void doInShard(int shard) {
+					// in foreign key order
+					insert(INSERT_PROFILE, rows.profiles);
+					insert(INSERT_ACCOUNT, rows.accounts);
+					insert(INSERT_HOLDING, rows.holdings);
+					insert(INSERT_ORDER, rows.orders);
+					insert(INSERT_COUNTER, rows.counters);
+					return null;
+				}
+			});
+			generation.rows.addAndGet(rows.size());
+		}
+		int created = generation.users.addAndGet(users);
+		if (generation.listener != null) {
+			generation.listener.usersCreated(created, accountIds);
+		}
+	}
+
+	private void insert(String sql, List<Object[]> rows) {
+		if (!rows.isEmpty()) {
+			new JdbcTemplate(dataSource).batchUpdate(sql, rows);
+		}
+	}
+
+	private void counter(Rows rows, Integer accountId, String name, long value) {
+		rows.counters.add(new Object[] { accountId, name, value });
+	}
+
+	/**
+	 * Reserves ids on the home shard, which holds the sequences, and commits straight away.
+	 */
+	private int reserve(Class<?> entity, int count) {
+		PooledIdGenerator generator = PooledIdGenerator.forEntity(entityManagerFactory, entity);
+		try {
+			Connection connection = shardedDataSource.getShard(ShardedDataSource.HOME_SHARD).getConnection();
+			try {
+				connection.setAutoCommit(false);
+				int first = generator.reserve(connection, count);
+				connection.commit();
+				return first;
+			}
+			catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+			finally {
+				connection.close();
+			}
+		}
+		catch (SQLException e) {
+			throw new DataAccessResourceFailureException("BulkDataGenerator.reserve: unable to reserve " + count + " ids for "
+					+ entity.getSimpleName(), e);
+		}
+	}
+
+	public static interface ProgressListener {
+
+		/**
+		 * Called after each chunk with the number of users written so far, admin included, and the
+		 * accounts of the chunk.
+		 */
+		void usersCreated(int total, List<Integer> accountIds);
+	}
+
+	public static class Result {
+
+		private final int users;
+
+		private final long rows;
+
+		private final long millis;
+
+		Result(int users, long rows, long millis) {
+			this.users = users;
+			this.rows = rows;
+			this.millis = millis;
+		}
+
+		public int getUsers() {
+			return users;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public long getRowsPerSecond() {
+			return rows * 1000 / Math.max(1, millis);
+		}
+	}
+
+	private static class Generation {
+
+		private final List<Quote> quotes;
+
+		private final ProgressListener listener;
+
+		private final AtomicInteger users = new AtomicInteger();
+
+		private final AtomicLong rows = new AtomicLong();
+
+		Generation(List<Quote> quotes, ProgressListener listener) {
+			this.quotes = quotes;
+			this.listener = listener;
+		}
+	}
+
+	private static class Rows {
+
+		private final List<Object[]> profiles = new ArrayList<Object[]>();
+
+		private final List<Object[]> accounts = new ArrayList<Object[]>();
+
+		private final List<Object[]> holdings = new ArrayList<Object[]>();
+
+		private final List<Object[]> orders = new ArrayList<Object[]>();
+
+		private final List<Object[]> counters = new ArrayList<Object[]>();
+
+		int size() {
+			return profiles.size() + accounts.size() + holdings.size() + orders.size() + counters.size();
+		}
+	}
+}
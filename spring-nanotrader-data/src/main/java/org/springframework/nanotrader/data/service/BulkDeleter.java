@@ -0,0 +1,209 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.AccountCounter;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.ArchivedOrder;
+import org.springframework.nanotrader.data.domain.Holding;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.repository.AccountProfileRepository;
+import org.springframework.nanotrader.data.repository.AccountRepository;
+import org.springframework.nanotrader.data.repository.BulkDeleteRepository;
+import org.springframework.nanotrader.data.shard.ShardDirectory;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes accounts with set-based deletes instead of loading and removing every entity. Tables are
+ * emptied children first (counters, archived orders, orders, holdings, accounts, then profiles) in
+ * chunks of bulkDelete.chunkSize rows by ascending key, each chunk in a transaction of its own, so
+ * neither the persistence context nor the undo log grows with the number of rows. When deleting
+ * everything, tables no foreign key refers to are truncated instead unless bulkDelete.truncate is
+ * false. The rows and time taken per table are logged. The signed auth tokens of the deleted accounts
+ * are revoked first, and their entries in the shard directory removed.
+ * <p>
+ * Since every chunk commits, a delete that fails part way leaves the account without some of its
+ * rows; running it again finishes the job.
+ */
+@Component
+public class BulkDeleter {
+
+	private static Logger log = LoggerFactory.getLogger(BulkDeleter.class);
+
+	private static final Target[] TARGETS = {
+			new Target(AccountCounter.class, "ACCOUNT_COUNTER", "id.accountid", "id.accountid", true),
+			new Target(ArchivedOrder.class, "ORDERS_ARCHIVE", "orderid", "accountid", true),
+			new Target(Order.class, "ORDERS", "orderid", "accountAccountid.accountid", true),
+			new Target(Holding.class, "HOLDING", "holdingid", "accountAccountid", false),
+			new Target(Account.class, "ACCOUNT", "accountid", "accountid", false),
+			new Target(Accountprofile.class, "ACCOUNTPROFILE", "profileid", "profileid", false) };
+
+	private final BulkDeleteRepository bulkDeleteRepository;
+
+	private final AccountProfileRepository accountProfileRepository;
+
+	private final AccountRepository accountRepository;
+
+	private final Shards shards;
+
+	private final AuthTokenService authTokenService;
+
+	private final ShardDirectory shardDirectory;
+
+	private int chunkSize;
+
+	private boolean truncate;
+
+	@Autowired
+	public BulkDeleter(BulkDeleteRepository bulkDeleteRepository, AccountProfileRepository accountProfileRepository,
+			AccountRepository accountRepository, Shards shards, AuthTokenService authTokenService, ShardDirectory shardDirectory,
+			@Value("${bulkDelete.chunkSize:10000}") int chunkSize, @Value("${bulkDelete.truncate:true}") boolean truncate) {
+		this.bulkDeleteRepository = bulkDeleteRepository;
+		this.accountProfileRepository = accountProfileRepository;
+		this.accountRepository = accountRepository;
+		this.shards = shards;
+		this.authTokenService = authTokenService;
+		this.shardDirectory = shardDirectory;
+		this.chunkSize = chunkSize;
+		this.truncate = truncate;
+	}
+
+	/**
+	 * Deletes every account on every shard and returns the number of rows deleted.
+	 */
+	public long deleteAll() {
+		long start = System.currentTimeMillis();
+		authTokenService.revokeAll();
+		shardDirectory.clear();
+		long deleted = 0;
+		for (final Target target : TARGETS) {
+			long tableStart = System.currentTimeMillis();
+			long rows = 0;
+			for (int shard = 0; shard < shards.getCount(); shard++) {
+				if (truncate && target.truncatable) {
+					shards.inShard(shard, new ShardCallback<Void>() {
+						public Void doInShard(int shard) {
+							bulkDeleteRepository.truncate(target.table);
+							return null;
+						}
+					});
+				}
+				else {
+					rows += deleteChunks(shard, target, null, null);
+				}
+			}
+			deleted += rows;
+			log.info("BulkDeleter.deleteAll: " + (truncate && target.truncatable ? "truncated " + target.table
+					: "deleted " + rows + " rows from " + target.table) + " in " + (System.currentTimeMillis() - tableStart) + "ms");
+		}
+		log.info("BulkDeleter.deleteAll: completed in " + (System.currentTimeMillis() - start) + "ms");
+		return deleted;
+	}
+
+	/**
+	 * Deletes the user's profile, account, holdings, orders, archived orders and counters, however many
+	 * there are, and returns the number of rows deleted, or zero when there is no such user.
+	 */
+	public long deleteAccount(final String userid) {
+		long start = System.currentTimeMillis();
+		Integer[] ids = null;
+		final String[] authtoken = new String[1];
+		for (int shard = 0; shard < shards.getCount() && ids == null; shard++) {
+			ids = shards.inShard(shard, new ShardCallback<Integer[]>() {
+				public Integer[] doInShard(int shard) {
+					Accountprofile profile = accountProfileRepository.findByUserid(userid);
+					if (profile == null) {
+						return null;
+					}
+					Account account = accountRepository.findByProfileProfileid(profile);
+					authtoken[0] = profile.getAuthtoken();
+					return new Integer[] { shard, profile.getProfileid(), account == null ? null : account.getAccountid() };
+				}
+			});
+		}
+		if (ids == null) {
+			log.warn("BulkDeleter.deleteAccount: no user " + userid);
+			return 0;
+		}
+		authTokenService.revokeProfile(ids[1]);
+		shardDirectory.remove(ShardDirectory.userKey(userid), ShardDirectory.profileKey(ids[1]),
+				ShardDirectory.tokenKey(String.valueOf(authtoken[0])));
+		long deleted = 0;
+		StringBuilder timings = new StringBuilder();
+		for (Target target : TARGETS) {
+			long tableStart = System.currentTimeMillis();
+			Integer value = target.entity == Accountprofile.class ? ids[1] : ids[2];
+			long rows = value == null ? 0 : deleteChunks(ids[0], target, target.ownerProperty, value);
+			deleted += rows;
+			timings.append(timings.length() == 0 ? "" : ", ").append(target.table).append(' ').append(rows).append(" rows ")
+					.append(System.currentTimeMillis() - tableStart).append("ms");
+		}
+		log.info("BulkDeleter.deleteAccount: deleted " + userid + " in " + (System.currentTimeMillis() - start) + "ms ("
+				+ timings + ")");
+		return deleted;
+	}
+
+	private long deleteChunks(int shard, final Target target, final String filter, final Integer value) {
+		long deleted = 0;
+		while (true) {
+			int rows = shards.inShard(shard, new ShardCallback<Integer>() {
+				public Integer doInShard(int shard) {
+					return bulkDeleteRepository.deleteChunk(target.entity, target.key, filter, value, chunkSize);
+				}
+			});
+			deleted += rows;
+			if (rows < chunkSize) {
+				return deleted;
+			}
+		}
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setTruncate(boolean truncate) {
+		this.truncate = truncate;
+	}
+
+	private static class Target {
+
+		private final Class<?> entity;
+
+		private final String table;
+
+		private final String key;
+
+		private final String ownerProperty;
+
+		private final boolean truncatable;
+
+		Target(Class<?> entity, String table, String key, String ownerProperty, boolean truncatable) {
+			this.entity = entity;
+			this.table = table;
+			this.key = key;
+			this.ownerProperty = ownerProperty;
+			this.truncatable = truncatable;
+		}
+	}
+}
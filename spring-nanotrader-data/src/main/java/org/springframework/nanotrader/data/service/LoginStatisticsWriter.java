@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.nanotrader.data.repository.LoginStatisticsRepository;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Accumulates login and logout counts per account and writes them to ACCOUNT in batches. Accounts on
+ * the same shard with the same pending counts are updated with a single set-based UPDATE, and the bulk
+ * updates do not touch the account version, so a burst of logins no longer competes with order
+ * processing for account rows.
+ * <p>
+ * <code>lastlogin</code> is set to the latest login among the accounts updated together, so it can be
+ * ahead of an individual account's real login time by up to one flush interval.
+ */
+@Component
+public class LoginStatisticsWriter {
+
+	private static Logger log = LoggerFactory.getLogger(LoginStatisticsWriter.class);
+
+	@Autowired
+	private LoginStatisticsRepository loginStatisticsRepository;
+
+	@Autowired
+	private Shards shards;
+
+	@Value("${login.statistics.batchSize:500}")
+	private int batchSize;
+
+	private final ConcurrentMap<Integer, Delta> pending = new ConcurrentHashMap<Integer, Delta>();
+
+	public void recordLogin(Integer accountId, Date when) {
+		while (!delta(accountId).add(1, 0, when)) {
+			// delta was drained by a concurrent flush, retry with a new one
+		}
+	}
+
+	public void recordLogout(Integer accountId) {
+		while (!delta(accountId).add(0, 1, null)) {
+			// delta was drained by a concurrent flush, retry with a new one
+		}
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Writes all pending counts and returns the number of accounts updated. Counts that fail to be
+	 * written are put back and retried on the next flush.
+	 */
+	public int flush() {
+		if (pending.isEmpty()) {
+			return 0;
+		}
+
+		// accounts on the same shard with the same counts share one UPDATE
+		Map<String, Delta> groups = new HashMap<String, Delta>();
+		for (Integer accountId : pending.keySet()) {
+			// removed before it is drained, so a recorder that finds it drained starts a new delta
+			// that the next flush picks up
+			Delta removed = pending.remove(accountId);
+			if (removed == null) {
+				continue;
+			}
+			Delta delta = removed.drain();
+			delta.shard = shards.shardOf(accountId);
+			String key = delta.shard + ":" + delta.logins + ":" + delta.logouts;
+			Delta group = groups.get(key);
+			if (group == null) {
+				group = delta;
+				groups.put(key, group);
+			}
+			else {
+				group.add(0, 0, delta.lastLogin);
+			}
+			group.accountIds.add(accountId);
+		}
+
+		int updated = 0;
+		for (final Delta delta : groups.values()) {
+			List<Integer> accountIds = delta.accountIds;
+			for (int from = 0; from < accountIds.size(); from += batchSize) {
+				final List<Integer> batch = accountIds.subList(from, Math.min(from + batchSize, accountIds.size()));
+				try {
+					updated += shards.onShard(delta.shard, new ShardCallback<Integer>() {
+						public Integer doInShard(int shard) {
+							if (delta.logins > 0) {
+								return loginStatisticsRepository.addLoginStatistics(delta.logins, delta.logouts,
+										delta.lastLogin, batch);
+							}
+							return loginStatisticsRepository.addLogoutCount(delta.logouts, batch);
+						}
+					});
+				}
+				catch (RuntimeException e) {
+					log.warn("LoginStatisticsWriter.flush: failed to update " + batch.size() + " accounts, will retry", e);
+					for (Integer accountId : batch) {
+						while (!delta(accountId).add(delta.logins, delta.logouts, delta.lastLogin)) {
+							// retry with a new delta
+						}
+					}
+				}
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("LoginStatisticsWriter.flush: updated " + updated + " accounts in " + groups.size() + " groups");
+		}
+		return updated;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		try {
+			flush();
+		}
+		catch (RuntimeException e) {
+			log.warn("LoginStatisticsWriter.shutdown: unable to write " + pending.size() + " pending accounts", e);
+		}
+	}
+
+	private Delta delta(Integer accountId) {
+		Delta delta = pending.get(accountId);
+		if (delta == null) {
+			Delta created = new Delta();
+			delta = pending.putIfAbsent(accountId, created);
+			if (delta == null) {
+				delta = created;
+			}
+		}
+		return delta;
+	}
+
+	public void setLoginStatisticsRepository(LoginStatisticsRepository loginStatisticsRepository) {
+		this.loginStatisticsRepository = loginStatisticsRepository;
+	}
+
+	public void setShards(Shards shards) {
+		this.shards = shards;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	private static class Delta {
+
+		private int logins;
+
+		private int logouts;
+
+		private Date lastLogin;
+
+		private int shard;
+
+		private boolean drained;
+
+		private final List<Integer> accountIds = new ArrayList<Integer>();
+
+		synchronized boolean add(int logins, int logouts, Date lastLogin) {
+			if (drained) {
+				return false;
+			}
+			this.logins += logins;
+			this.logouts += logouts;
+			if (lastLogin != null && (this.lastLogin == null || lastLogin.after(this.lastLogin))) {
+				this.lastLogin = lastLogin;
+			}
+			return true;
+		}
+
+		/**
+		 * Stops further updates to this delta and returns a copy of its counts to be written.
+		 */
+		synchronized Delta drain() {
+			drained = true;
+			Delta copy = new Delta();
+			copy.logins = logins;
+			copy.logouts = logouts;
+			copy.lastLogin = lastLogin;
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically moves finished orders older than a configurable age from ORDERS into
+ * ORDERS_ARCHIVE, so the hot table tracks active trading rather than total history.
+ * Each batch runs in its own transaction. Like the {@link OrderCompletionSweeper}, it only runs in the
+ * process with orders.maintenance.enabled.
+ */
+@Component
+public class OrderArchiver {
+
+	private static Logger log = LoggerFactory.getLogger(OrderArchiver.class);
+
+	private static long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Value("${orders.maintenance.enabled:true}")
+	private boolean enabled;
+
+	@Value("${orders.archive.ageInDays:30}")
+	private int ageInDays;
+
+	@Value("${orders.archive.batchSize:500}")
+	private int batchSize;
+
+	@Value("${orders.archive.maxBatches:20}")
+	private int maxBatches;
+
+	public int archive() {
+		if (!enabled) {
+			return 0;
+		}
+		Date completedBefore = new Date(System.currentTimeMillis() - ageInDays * MILLIS_PER_DAY);
+		int archived = 0;
+		try {
+			for (int i = 0; i < maxBatches; i++) {
+				int count = tradingService.archiveOrders(completedBefore, batchSize);
+				archived += count;
+				if (count < batchSize) {
+					break;
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			log.warn("OrderArchiver.archive: failed after archiving " + archived + " orders", e);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("OrderArchiver.archive: archived " + archived + " orders completed before " + completedBefore);
+		}
+		return archived;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setAgeInDays(int ageInDays) {
+		this.ageInDays = ageInDays;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setMaxBatches(int maxBatches) {
+		this.maxBatches = maxBatches;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically moves closed orders to the completed status. This used to happen as a side effect
+ * of every order read; sweeping in the background keeps the read paths free of writes.
+ * Each batch runs in its own transaction so row locks are held only briefly. Only the process with
+ * orders.maintenance.enabled (true by default) sweeps, so the web applications sharing the database
+ * don't race for the same orders.
+ */
+@Component
+public class OrderCompletionSweeper {
+
+	private static Logger log = LoggerFactory.getLogger(OrderCompletionSweeper.class);
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Value("${orders.maintenance.enabled:true}")
+	private boolean enabled;
+
+	@Value("${orders.sweeper.batchSize:500}")
+	private int batchSize;
+
+	@Value("${orders.sweeper.maxBatches:20}")
+	private int maxBatches;
+
+	public int sweep() {
+		if (!enabled) {
+			return 0;
+		}
+		int completed = 0;
+		try {
+			for (int i = 0; i < maxBatches; i++) {
+				int count = tradingService.completeClosedOrders(batchSize);
+				completed += count;
+				if (count < batchSize) {
+					break;
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			log.warn("OrderCompletionSweeper.sweep: failed after completing " + completed + " orders", e);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("OrderCompletionSweeper.sweep: completed " + completed + " orders");
+		}
+		return completed;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setMaxBatches(int maxBatches) {
+		this.maxBatches = maxBatches;
+	}
+}
@@ -19,10 +19,14 @@ import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.nanotrader.data.domain.Quote;
 import org.springframework.nanotrader.data.repository.QuoteRepository;
+import org.springframework.nanotrader.data.shard.Shards;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 
+/**
+ * QUOTE is copied to every shard, so the writes here are bound to all of them.
+ */
 @Service
 @Transactional
 public class QuoteServiceImpl implements QuoteService {
@@ -30,32 +34,41 @@ public class QuoteServiceImpl implements QuoteService {
 	@Autowired
     QuoteRepository quoteRepository;
 
-	
+	@Autowired
+	Shards shards;
+
+	@Transactional(readOnly = true)
 	public long countAllQuotes() {
         return quoteRepository.count();
     }
 
 	public void deleteQuote(Quote quote) {
+        shards.bindReplicated();
         quoteRepository.delete(quote);
     }
 
+	@Transactional(readOnly = true)
 	public Quote findQuote(Integer id) {
         return quoteRepository.findOne(id);
     }
 
+	@Transactional(readOnly = true)
 	public List<Quote> findAllQuotes() {
         return quoteRepository.findAll();
     }
 
+	@Transactional(readOnly = true)
 	public List<Quote> findQuoteEntries(int firstResult, int maxResults) {
         return quoteRepository.findAll(new org.springframework.data.domain.PageRequest(firstResult / maxResults, maxResults)).getContent();
     }
 
 	public void saveQuote(Quote quote) {
+        shards.bindReplicated();
         quoteRepository.save(quote);
     }
 
 	public Quote updateQuote(Quote quote) {
+        shards.bindReplicated();
         return quoteRepository.save(quote);
     }
 }
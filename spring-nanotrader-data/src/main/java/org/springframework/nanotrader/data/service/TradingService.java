@@ -15,6 +15,7 @@
  */
 package org.springframework.nanotrader.data.service;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
@@ -69,6 +70,33 @@ public interface TradingService {
 	public abstract List<Order> findOrders(Integer accountId, Integer page, Integer pageSize);
 
 	public abstract List<Holding> findHoldingsByAccountId(Integer accountId, Integer page, Integer pageSize);
+
+	/**
+	 * Keyset (seek) variants of the paged finders: return up to pageSize rows, ordered by id descending,
+	 * whose id is strictly less than the supplied id. A null id starts from the newest row.
+	 */
+	public abstract List<Order> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, Integer pageSize);
+
+	public abstract List<Holding> findHoldingsByAccountIdAfter(Integer accountId, Integer afterHoldingId, Integer pageSize);
+
+	/**
+	 * Moves up to batchSize closed orders, across all accounts, to the completed status.
+	 * Returns the number of orders updated so callers can keep sweeping until nothing is left.
+	 */
+	public abstract int completeClosedOrders(Integer batchSize);
+
+	/**
+	 * Moves up to batchSize completed or cancelled orders finished before the given date into the
+	 * order archive. The order finders and counts read through to the archive, so archiving is
+	 * invisible to callers. Returns the number of orders archived.
+	 */
+	public abstract int archiveOrders(Date completedBefore, Integer batchSize);
+
+	/**
+	 * Recomputes the per-account holding and order counters behind the count finders from the
+	 * base tables, correcting any drift.
+	 */
+	public abstract void repairAccountCounters();
 	
 	public abstract List<Quote> findRandomQuotes(Integer count);
 
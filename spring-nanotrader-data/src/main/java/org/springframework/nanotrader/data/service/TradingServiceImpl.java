@@ -17,10 +17,14 @@ package org.springframework.nanotrader.data.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -34,23 +38,31 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.nanotrader.data.domain.Account;
 import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.ArchivedOrder;
 import org.springframework.nanotrader.data.domain.Holding;
 import org.springframework.nanotrader.data.domain.HoldingSummary;
 import org.springframework.nanotrader.data.domain.MarketSummary;
 import org.springframework.nanotrader.data.domain.Order;
 import org.springframework.nanotrader.data.domain.PortfolioSummary;
 import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.repository.AccountCounterRepository;
 import org.springframework.nanotrader.data.repository.AccountProfileRepository;
 import org.springframework.nanotrader.data.repository.AccountRepository;
 import org.springframework.nanotrader.data.repository.ChaosProceduresRepository;
 import org.springframework.nanotrader.data.repository.HoldingAggregateRepository;
 import org.springframework.nanotrader.data.repository.HoldingRepository;
 import org.springframework.nanotrader.data.repository.MarketSummaryRepository;
+import org.springframework.nanotrader.data.repository.OrderArchiveRepository;
 import org.springframework.nanotrader.data.repository.OrderRepository;
 import org.springframework.nanotrader.data.repository.PortfolioSummaryRepository;
 import org.springframework.nanotrader.data.repository.QuoteRepository;
+import org.springframework.nanotrader.data.shard.ShardDirectory;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
 import org.springframework.nanotrader.data.util.FinancialUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -71,6 +83,12 @@ public class TradingServiceImpl implements TradingService {
 
 	private static String CANCELLED_STATUS = "cancelled";
 
+	private static String CLOSED_STATUS = "closed";
+
+	private static String COMPLETED_STATUS = "completed";
+
+	private static List<String> ARCHIVABLE_STATUSES = Arrays.asList(COMPLETED_STATUS, CANCELLED_STATUS);
+
 	private static Integer TOP_N = 3;
 
 	@Autowired
@@ -82,12 +100,21 @@ public class TradingServiceImpl implements TradingService {
 	@Autowired
 	private OrderRepository orderRepository;
 
+	@Autowired
+	private OrderArchiveRepository orderArchiveRepository;
+
 	@Autowired
 	private AccountRepository accountRepository;
 
+	@Autowired
+	private AccountCounterRepository accountCounterRepository;
+
 	@Autowired
 	private QuoteRepository quoteRepository;
 
+	@Autowired
+	private BulkDeleter bulkDeleter;
+
 	@Autowired
 	private PortfolioSummaryRepository portfolioSummaryRepository;
 
@@ -103,17 +130,45 @@ public class TradingServiceImpl implements TradingService {
 	@Autowired
 	QuotePublisher quotePublisher;
 
+	@Autowired
+	AuthTokenService authTokenService;
+
+	@Autowired
+	LoginStatisticsWriter loginStatisticsWriter;
+
+	@Autowired
+	Shards shards;
+
+	@Autowired
+	ShardDirectory shardDirectory;
+
 	@Override
 	public Accountprofile login(String username, String password) {
+		bindUserShard(username);
 		Accountprofile accountProfile = accountProfileRepository.findByUseridAndPasswd(username, password);
 		if (accountProfile != null) {
-			accountProfile.setAuthtoken(UUID.randomUUID().toString());
-			accountProfile = accountProfileRepository.save(accountProfile); // persist new auth token
 			Set<Account> accounts = accountProfile.getAccounts();
+			if (authTokenService.isEnabled()) {
+				Integer accountId = null;
+				for (Account account : accounts) {
+					accountId = account.getAccountid();
+				}
+				accountProfile.setAuthtoken(authTokenService.issue(accountProfile.getProfileid(), accountId, accountProfile.getUserid()));
+			}
+			else {
+				if (accountProfile.getAuthtoken() != null) {
+					shardDirectory.remove(ShardDirectory.tokenKey(accountProfile.getAuthtoken()));
+				}
+				accountProfile.setAuthtoken(UUID.randomUUID().toString());
+				for (Account account : accounts) {
+					shardDirectory.putAfterCommit(ShardDirectory.tokenKey(accountProfile.getAuthtoken()),
+							shards.shardOf(account.getAccountid()));
+				}
+			}
+			accountProfile = accountProfileRepository.save(accountProfile); // persist new auth token
+			Date now = new Date();
 			for (Account account : accounts) {
-				account.setLogincount(account.getLogincount() + 1);
-				account.setLastlogin(new Date());
-				accountRepository.save(account);
+				loginStatisticsWriter.recordLogin(account.getAccountid(), now); // written in batches
 			}
 			return accountProfile;
 		}
@@ -122,23 +177,29 @@ public class TradingServiceImpl implements TradingService {
 
 	@Override
 	public void logout(String authtoken) {
+		bindTokenShard(authtoken); // before the token is revoked
+		if (authTokenService.isSignedToken(authtoken)) {
+			authTokenService.revoke(authtoken);
+		}
 		Accountprofile accountProfile = accountProfileRepository.findByAuthtoken(authtoken);
 		if (accountProfile != null) {
 	 		accountProfile.setAuthtoken(null); // remove token
 			accountProfileRepository.save(accountProfile);
+			shardDirectory.remove(ShardDirectory.tokenKey(authtoken));
 			Set<Account> accounts = accountProfile.getAccounts();
 			for (Account account : accounts) {
-				account.setLogoutcount(account.getLogoutcount() + 1);
-				accountRepository.save(account);
-			}			
+				loginStatisticsWriter.recordLogout(account.getAccountid());
+			}
 		}
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Accountprofile findAccountProfile(Integer id) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findAccountProfile: accountProfileId=" + id);
 		}
+		bindProfileShard(id);
 		Accountprofile accountProfile = accountProfileRepository.findOne(id);
 		if (accountProfile != null) {
 			accountProfile.getAccounts().iterator(); // fetch accounts
@@ -166,6 +227,13 @@ public class TradingServiceImpl implements TradingService {
 			log.debug("TradingServices.saveAccountProfile: accountProfile saved.");
 		}
 		accountRepository.save(account);
+		// the ids are allocated on persist and nothing is written until the flush, so the new
+		// account's shard can still be chosen here
+		shards.bindAccount(account.getAccountid());
+		accountCounterRepository.create(account.getAccountid());
+		int shard = shards.shardOf(account.getAccountid());
+		shardDirectory.putAfterCommit(ShardDirectory.userKey(createdAccountProfile.getUserid()), shard);
+		shardDirectory.putAfterCommit(ShardDirectory.profileKey(createdAccountProfile.getProfileid()), shard);
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.saveAccountProfile: completed successfully.");
 		}
@@ -175,6 +243,7 @@ public class TradingServiceImpl implements TradingService {
 	@Override
 	public Accountprofile updateAccountProfile(Accountprofile accountProfile, String username) {
 		Accountprofile accountProfileResponse = null;
+		bindUserShard(username);
 		Accountprofile acctProfile = accountProfileRepository.findByUserid(username);
 		// make sure that the primary key hasn't been altered
 		if (acctProfile != null) {
@@ -185,11 +254,13 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Long findCountOfHoldingsByAccountId(Integer accountId) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHoldingsByAccountId: accountId=" + accountId);
 		}
-		Long countOfHoldings = holdingRepository.findCountOfHoldings(accountId);
+		shards.bindAccount(accountId);
+		Long countOfHoldings = accountCounterRepository.findCount(accountId, AccountCounterRepository.HOLDINGS);
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHoldingsByAccountId: completed successfully.");
 		}
@@ -197,10 +268,12 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Holding> findHoldingsByAccountId(Integer accountId, Integer page, Integer pageSize) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHoldingsByAccountId: accountId=" + accountId);
 		}
+		shards.bindAccount(accountId);
 		List<Holding> holdings = holdingRepository.findByAccountAccountid(accountId, new PageRequest(page, pageSize));
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHoldingsByAccountId: completed successfully.");
@@ -209,10 +282,26 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
+	public List<Holding> findHoldingsByAccountIdAfter(Integer accountId, Integer afterHoldingId, Integer pageSize) {
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.findHoldingsByAccountIdAfter: accountId=" + accountId + " afterHoldingId=" + afterHoldingId);
+		}
+		shards.bindAccount(accountId);
+		List<Holding> holdings = holdingRepository.findByAccountAccountidAfter(accountId, seekFrom(afterHoldingId), new PageRequest(0, pageSize));
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.findHoldingsByAccountIdAfter: completed successfully.");
+		}
+		return holdings;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
 	public Holding findHolding(Integer id, Integer accountId) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHolding: holdingId=" + id + " accountid=" + accountId);
 		}
+		shards.bindAccount(accountId);
 		Holding holding = holdingRepository.findByHoldingidAndAccountAccountid(id, accountId);
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findHolding: completed successfully.");
@@ -225,7 +314,12 @@ public class TradingServiceImpl implements TradingService {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.saveHolding: holding=" + holding.toString());
 		}
+		shards.bindAccount(holding.getAccountAccountid());
+		boolean isNew = holding.getHoldingid() == null;
 		holdingRepository.save(holding);
+		if (isNew) {
+			accountCounterRepository.increment(holding.getAccountAccountid(), AccountCounterRepository.HOLDINGS, 1);
+		}
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.saveHolding: completed successfully.");
 		}
@@ -236,6 +330,7 @@ public class TradingServiceImpl implements TradingService {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.updateHolding: holding=" + holding.toString());
 		}
+		shards.bindAccount(holding.getAccountAccountid());
 		Holding h = holdingRepository.save(holding);
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.updateHolding:  completed successfully.");
@@ -245,11 +340,19 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Order findOrder(Integer id, Integer accountId) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrder: orderId=" + id);
 		}
+		shards.bindAccount(accountId);
 		Order order = orderRepository.findByOrderidAndAccountAccountid(id, accountId);
+		if (order == null) {
+			ArchivedOrder archivedOrder = orderArchiveRepository.findOrder(id, accountId);
+			if (archivedOrder != null) {
+				order = fromArchive(Arrays.asList(archivedOrder), accountId).get(0);
+			}
+		}
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrder: completed successfully.");
 		}
@@ -263,6 +366,7 @@ public class TradingServiceImpl implements TradingService {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.saveOrder: order=" + order.toString());
 		}
+		shards.bindAccount(order.getAccountAccountid().getAccountid());
 		if (ORDER_TYPE_BUY.equals(order.getOrdertype())) {
 			createdOrder = buy(order);
 		} else if (ORDER_TYPE_SELL.equals(order.getOrdertype())) {
@@ -301,6 +405,7 @@ public class TradingServiceImpl implements TradingService {
 			// cancel order
 			createdOrder.setCompletiondate(new Date());
 			createdOrder.setOrderstatus(CANCELLED_STATUS);
+			countStatusChange(createdOrder.getAccountAccountid().getAccountid(), OPEN_STATUS, CANCELLED_STATUS, 1);
 		}
 
 		return createdOrder;
@@ -336,6 +441,8 @@ public class TradingServiceImpl implements TradingService {
 		order.setPrice(quote.getPrice().setScale(FinancialUtils.SCALE, FinancialUtils.ROUND));
 		order.setHoldingHoldingid(holding);
 		createdOrder = orderRepository.save(order);
+		accountCounterRepository.increment(account.getAccountid(), AccountCounterRepository.ORDERS, 1);
+		accountCounterRepository.increment(account.getAccountid(), orderCounter(OPEN_STATUS), 1);
 		return createdOrder;
 	}
 
@@ -354,13 +461,15 @@ public class TradingServiceImpl implements TradingService {
 				holding.setOrders(orders);
 				order.setHoldingHoldingid(holding);
 				holdingRepository.save(holding);
+				accountCounterRepository.increment(holding.getAccountAccountid(), AccountCounterRepository.HOLDINGS, 1);
 				updateAccount(order);
 			}
 		}
 		else {
 			updateAccount(order);
 		}
-		order.setOrderstatus("closed");
+		countStatusChange(order.getAccountAccountid().getAccountid(), order.getOrderstatus(), CLOSED_STATUS, 1);
+		order.setOrderstatus(CLOSED_STATUS);
 		order.setCompletiondate(new Date());
 
 			
@@ -395,6 +504,7 @@ public class TradingServiceImpl implements TradingService {
 			Integer holdingId = order.getHoldingHoldingid().getHoldingid();
 			order.setHoldingHoldingid(null);
 			holdingRepository.delete(holdingId);
+			accountCounterRepository.increment(account.getAccountid(), AccountCounterRepository.HOLDINGS, -1);
 		}
 		accountRepository.save(account);
 	}
@@ -428,11 +538,14 @@ public class TradingServiceImpl implements TradingService {
 			quoteToPublish.setPrice(newPrice);
 			quoteToPublish.setVolume(quote.getVolume().add(sharesTraded));
 			quoteToPublish.setChange1(newPrice.subtract(quote.getOpen1()));
+			// the consumer writes the new price, and the quote region's time to live bounds how long
+			// this process can still read the old one
 			this.quotePublisher.publishQuote(quoteToPublish);
 	}
 	
 	@Transactional
 	public void updateQuote(Quote quote) { 
+		shards.bindReplicated();
 		quoteRepository.save(quote);
 	}
 	
@@ -448,10 +561,11 @@ public class TradingServiceImpl implements TradingService {
 			}
 			
 		}
+		shards.bindAccount(order.getAccountAccountid().getAccountid());
 		// Ensure that customers can't update another customers order record
 		Order originalOrder = orderRepository.findByOrderidAndAccountAccountid(order.getOrderid(), order.getAccountAccountid().getAccountid());
 
-		if (originalOrder!= null && !"completed".equals(originalOrder.getOrderstatus())) {
+		if (originalOrder!= null && !COMPLETED_STATUS.equals(originalOrder.getOrderstatus())) {
 			if (originalOrder != null) {
 				if (log.isDebugEnabled()) {
 					log.debug("TradingServices.updateOrder: An order in the respository matched the requested order id and account ");
@@ -473,17 +587,14 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Long findCountOfOrders(Integer accountId, String status) {
 		Long countOfOrders = null;
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findCountOfHoldings: accountId=" + accountId + " status=" + status);
 		}
-		if (status != null) {
-			countOfOrders = orderRepository.findCountOfOrders(accountId, status);
-		}
-		else {
-			countOfOrders = orderRepository.findCountOfOrders(accountId);
-		}
+		shards.bindAccount(accountId);
+		countOfOrders = accountCounterRepository.findCount(accountId, status != null ? orderCounter(status) : AccountCounterRepository.ORDERS);
 
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findCountOfHoldings: completed successfully.");
@@ -492,15 +603,17 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Order> findOrdersByStatus(Integer accountId, String status, Integer page, Integer pageSize) {
 		List<Order> orders = null;
 
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrdersByStatus: accountId=" + accountId + " status=" + status);
 		}
-		
+		shards.bindAccount(accountId);
 		orders = orderRepository.findOrdersByStatus(accountId, status, new PageRequest(page, pageSize));
-		orders = processOrderResults(orders, accountId);
+		orders = processOrderResults(orders);
+		orders = appendArchivedOrders(orders, accountId, status, page, pageSize);
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrdersByStatus: completed successfully.");
 		}
@@ -509,14 +622,16 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
-	@Transactional
+	@Transactional(readOnly = true)
 	public List<Order> findOrders(Integer accountId, Integer page, Integer pageSize) {
 		List<Order> orders = null;
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrders: accountId=" + accountId);
 		}
+		shards.bindAccount(accountId);
 		orders = orderRepository.findOrdersByAccountAccountid_Accountid(accountId, new PageRequest(page, pageSize));
-		orders = processOrderResults(orders, accountId);
+		orders = processOrderResults(orders);
+		orders = appendArchivedOrders(orders, accountId, null, page, pageSize);
 
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findOrders: completed successfully.");
@@ -525,54 +640,250 @@ public class TradingServiceImpl implements TradingService {
 		return orders;
 	}
 
-	private List<Order> processOrderResults(List<Order> orders, Integer accountId) { 
+	@Override
+	@Transactional(readOnly = true)
+	public List<Order> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, Integer pageSize) {
+		List<Order> orders = null;
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.findOrdersAfter: accountId=" + accountId + " status=" + status + " afterOrderId=" + afterOrderId);
+		}
+		shards.bindAccount(accountId);
+		// Always page 0: the seek predicate replaces the offset so deep pages cost the same as the first one
+		if (status != null) {
+			orders = orderRepository.findOrdersByStatusAfter(accountId, status, seekFrom(afterOrderId), new PageRequest(0, pageSize));
+		}
+		else {
+			orders = orderRepository.findOrdersByAccountAccountid_AccountidAfter(accountId, seekFrom(afterOrderId), new PageRequest(0, pageSize));
+		}
+		orders = processOrderResults(orders);
+		if (orders.size() < pageSize) {
+			// past the hot set: every archived order is older than every hot one
+			Integer archiveFrom = orders.isEmpty() ? seekFrom(afterOrderId) : orders.get(orders.size() - 1).getOrderid();
+			orders = new ArrayList<Order>(orders);
+			orders.addAll(fromArchive(orderArchiveRepository.findOrdersAfter(accountId, status, archiveFrom, pageSize - orders.size()), accountId));
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.findOrdersAfter: completed successfully.");
+		}
+		return orders;
+	}
+
+	private String orderCounter(String status) {
+		return AccountCounterRepository.ORDERS + ":" + status;
+	}
+
+	private void countStatusChange(Integer accountId, String fromStatus, String toStatus, int orders) {
+		if (fromStatus != null) {
+			accountCounterRepository.increment(accountId, orderCounter(fromStatus), -orders);
+		}
+		accountCounterRepository.increment(accountId, orderCounter(toStatus), orders);
+	}
+
+	@Override
+	public void repairAccountCounters() {
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.repairAccountCounters: recomputing account counters");
+		}
+		shards.onEachShard(new ShardCallback<Void>() {
+			public Void doInShard(int shard) {
+				accountCounterRepository.rebuild(null);
+				return null;
+			}
+		});
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.repairAccountCounters: completed successfully.");
+		}
+	}
+
+	/**
+	 * Completes a page of hot orders with archived ones once the page reaches past the hot set.
+	 */
+	private List<Order> appendArchivedOrders(List<Order> orders, Integer accountId, String status, Integer page, Integer pageSize) {
+		if (orders.size() >= pageSize) {
+			return orders;
+		}
+		long hotCount;
+		if (orders.size() > 0) {
+			hotCount = (long) page * pageSize + orders.size();
+		}
+		else if (status != null) {
+			hotCount = orderRepository.findCountOfOrders(accountId, status);
+		}
+		else {
+			hotCount = orderRepository.findCountOfOrders(accountId);
+		}
+		int firstResult = (int) Math.max(0, (long) page * pageSize - hotCount);
+		List<Order> result = new ArrayList<Order>(orders);
+		result.addAll(fromArchive(orderArchiveRepository.findOrders(accountId, status, firstResult, pageSize - orders.size()), accountId));
+		return result;
+	}
+
+	/**
+	 * Rebuilds read-only Order instances from archived rows. They are never attached to the
+	 * persistence context, so they must not be passed back to the order repository.
+	 */
+	private List<Order> fromArchive(List<ArchivedOrder> archivedOrders, Integer accountId) {
+		List<Order> orders = new ArrayList<Order>(archivedOrders.size());
+		if (archivedOrders.isEmpty()) {
+			return orders;
+		}
+		Account account = accountRepository.findOne(accountId);
+		Set<String> symbols = new HashSet<String>();
+		for (ArchivedOrder archivedOrder : archivedOrders) {
+			symbols.add(archivedOrder.getQuoteSymbol());
+		}
+		Map<String, Quote> quotes = new HashMap<String, Quote>();
+		for (Quote quote : quoteRepository.findBySymbolIn(symbols)) {
+			quotes.put(quote.getSymbol(), quote);
+		}
+		for (ArchivedOrder archivedOrder : archivedOrders) {
+			Order order = new Order();
+			order.setOrderid(archivedOrder.getOrderid());
+			order.setAccountAccountid(account);
+			order.setQuote(quotes.get(archivedOrder.getQuoteSymbol()));
+			order.setOrderfee(archivedOrder.getOrderfee());
+			order.setCompletiondate(archivedOrder.getCompletiondate());
+			order.setOrdertype(archivedOrder.getOrdertype());
+			order.setOrderstatus(archivedOrder.getOrderstatus());
+			order.setPrice(archivedOrder.getPrice());
+			order.setQuantity(archivedOrder.getQuantity());
+			order.setOpendate(archivedOrder.getOpendate());
+			orders.add(order);
+		}
+		return orders;
+	}
+
+	@Override
+	public int archiveOrders(final Date completedBefore, final Integer batchSize) {
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.archiveOrders: completedBefore=" + completedBefore + " batchSize=" + batchSize);
+		}
+		int archived = 0;
+		for (int shardArchived : shards.onEachShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				// Only orders below their account's oldest order that must stay hot are moved, which
+				// keeps every archived orderid of an account lower than every orderid it has left in ORDERS.
+				return orderArchiveRepository.archiveOrders(ARCHIVABLE_STATUSES, completedBefore, batchSize);
+			}
+		})) {
+			archived += shardArchived;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.archiveOrders: archived " + archived + " orders.");
+		}
+		return archived;
+	}
+
+	private Integer seekFrom(Integer afterId) {
+		return afterId == null ? Integer.MAX_VALUE : afterId;
+	}
+
+	private List<Order> processOrderResults(List<Order> orders) { 
 		if (orders != null && orders.size() > 0) {
 			// Loop over the orders to populate the lazy quote fields
 			for (Order order : orders) {
 				order.getQuote();
 			}
-			orderRepository.updateClosedOrders(accountId);
 		}
 		return orders;
 	}
+
+	@Override
+	public int completeClosedOrders(final Integer batchSize) {
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.completeClosedOrders: batchSize=" + batchSize);
+		}
+		int completed = 0;
+		for (int shardCompleted : shards.onEachShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return completeClosedOrdersInShard(batchSize);
+			}
+		})) {
+			completed += shardCompleted;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("TradingServices.completeClosedOrders: completed " + completed + " orders.");
+		}
+		return completed;
+	}
+
+	private int completeClosedOrdersInShard(Integer batchSize) {
+		int completed = 0;
+		List<Object[]> closedOrders = orderRepository.findOrderIdsAndAccountIdsByStatus(CLOSED_STATUS, new PageRequest(0, batchSize));
+		// sorted, so concurrent sweepers lock the accounts' counters in the same order
+		Map<Integer, List<Integer>> ordersPerAccount = new TreeMap<Integer, List<Integer>>();
+		for (Object[] closedOrder : closedOrders) {
+			Integer accountId = (Integer) closedOrder[1];
+			List<Integer> orderIds = ordersPerAccount.get(accountId);
+			if (orderIds == null) {
+				orderIds = new ArrayList<Integer>();
+				ordersPerAccount.put(accountId, orderIds);
+			}
+			orderIds.add((Integer) closedOrder[0]);
+		}
+		for (Map.Entry<Integer, List<Integer>> entry : ordersPerAccount.entrySet()) {
+			// only the orders this update moved are counted, so a sweeper racing for the same orders
+			// never counts them twice
+			int updated = orderRepository.updateOrderStatus(entry.getKey(), entry.getValue(), CLOSED_STATUS,
+					COMPLETED_STATUS);
+			if (updated > 0) {
+				countStatusChange(entry.getKey(), CLOSED_STATUS, COMPLETED_STATUS, updated);
+			}
+			completed += updated;
+		}
+		return completed;
+	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public Quote findQuoteBySymbol(String symbol) {
 		return quoteRepository.findBySymbol(symbol);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Quote> findQuotesBySymbols(Set<String> symbols) {
 		return quoteRepository.findBySymbolIn(symbols);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Quote> findRandomQuotes(Integer count) {
 		return quoteRepository.findAll().subList(0, count.intValue());
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Quote> findAllQuotes() {
 		return quoteRepository.findAll();
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Account findAccount(Integer accountId) {
+		shards.bindAccount(accountId);
 		return accountRepository.findOne(accountId);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Account findAccountByProfile(Accountprofile ap) {
+		if (ap != null) {
+			bindProfileShard(ap.getProfileid());
+		}
 		return accountRepository.findByProfileProfileid(ap);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public PortfolioSummary findPortfolioSummary(Integer accountId) {
+		shards.bindAccount(accountId);
 		PortfolioSummary portfolioSummary = portfolioSummaryRepository.findPortfolioSummary(accountId);
 		return portfolioSummary;
 	}
 
 	// TODO: Defensive coding
+	@Transactional(readOnly = true)
 	public MarketSummary findMarketSummary() {
 		MarketSummary marketSummary = marketSummaryRepository.findMarketSummary();
 		// get top losing stocks
@@ -596,21 +907,28 @@ public class TradingServiceImpl implements TradingService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public HoldingSummary findHoldingSummary(Integer accountId) {
+		shards.bindAccount(accountId);
 		HoldingSummary summary = holdingAggregateRepository.findHoldingAggregated(accountId);
 		return summary;
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public Accountprofile findAccountByUserId(String id) {
+		bindUserShard(id);
 		return accountProfileRepository.findByUserid(id);
 	}
 
+	// not read-only: a token is looked up on the request right after the login that wrote it, which a
+	// lagging replica may not have seen yet
 	@Override
 	public Accountprofile findByAuthtoken(String token) {
 		if (log.isDebugEnabled()) {
 			log.debug("TradingServices.findByAuthtoken: token=" + token);
 		}
+		bindTokenShard(token);
 
 		Accountprofile accountProfile = accountProfileRepository.findByAuthtoken(token);
 		if (accountProfile != null) {
@@ -628,32 +946,68 @@ public class TradingServiceImpl implements TradingService {
 		return null;
 	}
 
+	/**
+	 * Deletes in chunks that commit on their own, see {@link BulkDeleter}.
+	 */
 	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void deleteAll() {
-		
-		orderRepository.deleteAll();
-		holdingRepository.deleteAll();
-		accountRepository.deleteAll();
-		accountProfileRepository.deleteAll();
+		bulkDeleter.deleteAll();
 	}
 	
+	/**
+	 * Deletes in chunks that commit on their own, see {@link BulkDeleter}.
+	 */
 	@Override
-	@Transactional
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void deleteAccountByUserid(String userId) {
-		Accountprofile ap = findAccountByUserId(userId);
-		Account ac = findAccountByProfile(ap);
-		// Fix maximum number 10000 to page size 
-		List<Holding> holdings = findHoldingsByAccountId(ac.getAccountid(), 0, 10000);
-		List<Order> orders = findOrders(ac.getAccountid(), 0, 10000);
-		orderRepository.delete(orders);
-		holdingRepository.delete(holdings);
-		accountRepository.delete(ac);
-		accountProfileRepository.delete(ap);
+		bulkDeleter.deleteAccount(userId);
 	}
 
 	public void killServer() { 
+		shards.bind(ShardedDataSource.HOME_SHARD);
 		chaosProceduresRepository.killServer();
 	}
+
+	/**
+	 * Binds the transaction to the shard holding the user's profile, or to the home shard when there is
+	 * no such user, so the lookups that follow find nothing there. The shard directory names the shard;
+	 * every shard is asked only for a user it does not know yet.
+	 */
+	private void bindUserShard(final String userid) {
+		shardDirectory.locateAndBind(ShardDirectory.userKey(userid), new ShardCallback<Boolean>() {
+			public Boolean doInShard(int shard) {
+				return accountProfileRepository.findByUserid(userid) != null;
+			}
+		});
+	}
+
+	private void bindProfileShard(final Integer profileId) {
+		shardDirectory.locateAndBind(ShardDirectory.profileKey(profileId), new ShardCallback<Boolean>() {
+			public Boolean doInShard(int shard) {
+				return accountProfileRepository.exists(profileId);
+			}
+		});
+	}
+
+	private void bindTokenShard(final String token) {
+		if (shards.getCount() == 1) {
+			return;
+		}
+		if (authTokenService.isSignedToken(token)) {
+			// signed tokens carry the account id, which saves asking every shard
+			AuthTokenService.Claims claims = authTokenService.verify(token);
+			if (claims != null && claims.getAccountId() != null) {
+				shards.bindAccount(claims.getAccountId());
+				return;
+			}
+		}
+		shardDirectory.locateAndBind(ShardDirectory.tokenKey(token), new ShardCallback<Boolean>() {
+			public Boolean doInShard(int shard) {
+				return accountProfileRepository.findByAuthtoken(token) != null;
+			}
+		});
+	}
 	public static interface QuotePublisher {
 
 		void publishQuote(Quote quote);
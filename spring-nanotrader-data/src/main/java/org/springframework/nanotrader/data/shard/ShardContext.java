@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.shard;
+
+import org.springframework.core.NamedThreadLocal;
+
+/**
+ * Holds the shard the current thread's transaction is bound to. {@link Shards} binds it for the length
+ * of a transaction; code that must reach a particular shard, or every shard, for a moment sets it and
+ * restores the previous value afterwards.
+ */
+public final class ShardContext {
+
+	/**
+	 * Bound in place of a shard when statements go to every shard, as they must for QUOTE, the schema
+	 * and the migrations.
+	 */
+	public static final int REPLICATED = -1;
+
+	private static final ThreadLocal<Integer> current = new NamedThreadLocal<Integer>("Current shard");
+
+	private ShardContext() {
+	}
+
+	/**
+	 * The bound shard, {@link #REPLICATED} when statements go to every shard, or null when unbound.
+	 */
+	public static Integer current() {
+		return current.get();
+	}
+
+	/**
+	 * Binds the given shard, or unbinds when it is null, and returns the previous binding.
+	 */
+	public static Integer set(Integer shard) {
+		Integer previous = current.get();
+		if (shard == null) {
+			current.remove();
+		}
+		else {
+			current.set(shard);
+		}
+		return previous;
+	}
+}
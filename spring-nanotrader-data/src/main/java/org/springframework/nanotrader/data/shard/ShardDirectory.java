@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.shard;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.nanotrader.data.domain.ShardDirectoryEntry;
+import org.springframework.nanotrader.data.repository.ShardDirectoryRepository;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Remembers which shard holds a user, a profile or an opaque auth token, in SHARD_DIRECTORY on the
+ * home shard, so that a lookup by one of them costs a single query there instead of a query on every
+ * shard. Entries are written when a profile is created or logs in and removed when it is deleted or
+ * logs out. A key the directory does not know, such as a profile loaded in bulk, is looked for on
+ * every shard as {@link Shards#locateAndBind} does, and recorded once found.
+ * <p>
+ * With a single shard the directory is not used.
+ */
+@Component
+public class ShardDirectory {
+
+	private static Logger log = LoggerFactory.getLogger(ShardDirectory.class);
+
+	private static final int MAX_KEY_LENGTH = 255;
+
+	@Autowired
+	private ShardDirectoryRepository repository;
+
+	@Autowired
+	private Shards shards;
+
+	public static String userKey(String userid) {
+		return "u:" + userid;
+	}
+
+	public static String profileKey(Integer profileId) {
+		return "p:" + profileId;
+	}
+
+	public static String tokenKey(String token) {
+		return "t:" + token;
+	}
+
+	/**
+	 * Binds the current transaction to the shard the directory names for the key. When it names none,
+	 * asks each shard in turn whether it holds what the finder looks for and records the one that does.
+	 * Returns false, leaving the transaction bound to the home shard, when no shard does.
+	 * With a single shard, or when the transaction is bound already, neither is asked.
+	 */
+	public boolean locateAndBind(final String key, ShardCallback<Boolean> finder) {
+		if (shards.getCount() == 1 || ShardContext.current() != null) {
+			return true;
+		}
+		ShardDirectoryEntry entry = shards.inShard(ShardedDataSource.HOME_SHARD,
+				new ShardCallback<ShardDirectoryEntry>() {
+					public ShardDirectoryEntry doInShard(int shard) {
+						return repository.findOne(key);
+					}
+				});
+		if (entry != null) {
+			shards.bind(entry.getShard());
+			return true;
+		}
+		if (!shards.locateAndBind(finder)) {
+			return false;
+		}
+		put(key, ShardContext.current());
+		return true;
+	}
+
+	/**
+	 * Records the key's shard once the current transaction commits, or straight away outside one.
+	 */
+	public void putAfterCommit(final String key, final int shard) {
+		if (shards.getCount() == 1) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			put(key, shard);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				put(key, shard);
+			}
+		});
+	}
+
+	public void remove(final String... keys) {
+		if (shards.getCount() == 1) {
+			return;
+		}
+		shards.inShard(ShardedDataSource.HOME_SHARD, new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.deleteKeys(Arrays.asList(keys));
+			}
+		});
+	}
+
+	public void clear() {
+		if (shards.getCount() == 1) {
+			return;
+		}
+		shards.inShard(ShardedDataSource.HOME_SHARD, new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.deleteAllEntries();
+			}
+		});
+	}
+
+	/**
+	 * Entries only save lookups, so one that cannot be written, for instance because another node wrote
+	 * it first, is left out.
+	 */
+	private void put(String key, final int shard) {
+		if (key.length() > MAX_KEY_LENGTH) {
+			return;
+		}
+		final ShardDirectoryEntry entry = new ShardDirectoryEntry(key, shard);
+		try {
+			shards.inShard(ShardedDataSource.HOME_SHARD, new ShardCallback<ShardDirectoryEntry>() {
+				public ShardDirectoryEntry doInShard(int home) {
+					return repository.saveAndFlush(entry);
+				}
+			});
+		}
+		catch (DataAccessException e) {
+			log.warn("ShardDirectory.put: could not record " + key + " on shard " + shard, e);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.shard;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Spreads the database over several shards. A transaction bound to a shard through {@link Shards} gets
+ * a connection to that shard. An unbound read-only transaction reads the home shard, which holds the
+ * id sequences and a full copy of the replicated tables. Code bound to {@link ShardContext#REPLICATED},
+ * through {@link Shards#replicated} or for a moment with {@link ShardContext#set}, gets a connection
+ * to every shard: writes, commits and rollbacks go to all of them, and queries are answered by the
+ * home shard. That is how QUOTE, the schema and the migrations stay the same on every shard. Until
+ * the application context has been refreshed, connections taken outside a transaction are treated
+ * the same way, so Hibernate creates or validates the schema on every shard. Any other unbound
+ * connection is refused, so a write that forgot to bind fails instead of reaching every shard.
+ * <p>
+ * The shards are committed one after the other, so a broadcast write that fails on one shard can
+ * leave the others committed. Savepoints are not supported on broadcast connections, and stream
+ * parameters cannot be broadcast because a stream can only be read once.
+ * <p>
+ * With a single shard every connection comes straight from it.
+ */
+public class ShardedDataSource extends AbstractDataSource implements InitializingBean,
+		ApplicationListener<ContextRefreshedEvent> {
+
+	public static final int HOME_SHARD = 0;
+
+	private List<DataSource> shards;
+
+	private volatile boolean started;
+
+	public void setShards(List<DataSource> shards) {
+		this.shards = shards;
+	}
+
+	public List<DataSource> getShards() {
+		return shards;
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	public DataSource getShard(int shard) {
+		return shards.get(shard);
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Assert.notEmpty(shards, "At least one shard is required");
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		started = true;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (shards.size() == 1) {
+			return shards.get(HOME_SHARD).getConnection();
+		}
+		Integer shard = ShardContext.current();
+		if (shard != null) {
+			return shard == ShardContext.REPLICATED ? broadcast() : getShard(shard).getConnection();
+		}
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return getShard(HOME_SHARD).getConnection();
+		}
+		if (!started && !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return broadcast();
+		}
+		throw new IllegalStateException("ShardedDataSource.getConnection: a read-write connection must be bound to a "
+				+ "shard, or to every shard for replicated tables");
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new UnsupportedOperationException("ShardedDataSource: shards are configured with their own credentials");
+	}
+
+	private Connection broadcast() throws SQLException {
+		List<Connection> connections = new ArrayList<Connection>(shards.size());
+		try {
+			for (DataSource shard : shards) {
+				connections.add(shard.getConnection());
+			}
+		}
+		catch (SQLException e) {
+			for (Connection connection : connections) {
+				JdbcUtils.closeConnection(connection);
+			}
+			throw e;
+		}
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				new BroadcastConnectionHandler(connections));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	/**
+	 * Invokes the method on every target, even when one of them fails, and rethrows the first failure.
+	 */
+	private static List<Object> invokeAll(List<?> targets, Method method, Object[] args) throws Throwable {
+		List<Object> results = new ArrayList<Object>(targets.size());
+		Throwable failure = null;
+		for (Object target : targets) {
+			try {
+				results.add(invoke(target, method, args));
+			}
+			catch (Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	private static boolean isBroadcast(String name) {
+		return name.startsWith("set") || name.startsWith("clear") || name.equals("close") || name.equals("commit")
+				|| name.equals("rollback") || name.equals("addBatch") || name.equals("cancel")
+				|| name.equals("registerOutParameter");
+	}
+
+	private static class BroadcastConnectionHandler implements InvocationHandler {
+
+		private final List<Connection> targets;
+
+		BroadcastConnectionHandler(List<Connection> targets) {
+			this.targets = targets;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("toString")) {
+				return "Broadcast connection to " + targets.size() + " shards";
+			}
+			if (name.contains("Savepoint") || (name.equals("rollback") && args != null)) {
+				throw new SQLFeatureNotSupportedException("Savepoints are not supported across shards");
+			}
+			if (name.equals("createStatement") || name.startsWith("prepare")) {
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { method.getReturnType() },
+						new BroadcastStatementHandler(invokeAll(targets, method, args), (Connection) proxy));
+			}
+			if (isBroadcast(name)) {
+				return invokeAll(targets, method, args).get(HOME_SHARD);
+			}
+			return ShardedDataSource.invoke(targets.get(HOME_SHARD), method, args);
+		}
+	}
+
+	private static class BroadcastStatementHandler implements InvocationHandler {
+
+		private final List<Object> targets;
+
+		private final Connection connection;
+
+		BroadcastStatementHandler(List<Object> targets, Connection connection) {
+			this.targets = targets;
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("getConnection")) {
+				return connection;
+			}
+			if (name.equals("executeUpdate")) {
+				int count = 0;
+				for (Object result : invokeAll(targets, method, args)) {
+					count = Math.max(count, (Integer) result);
+				}
+				return count;
+			}
+			if (name.equals("executeBatch")) {
+				int[] counts = null;
+				for (Object result : invokeAll(targets, method, args)) {
+					int[] shardCounts = (int[]) result;
+					if (counts == null) {
+						counts = shardCounts.clone();
+					}
+					else {
+						for (int i = 0; i < counts.length && i < shardCounts.length; i++) {
+							counts[i] = Math.max(counts[i], shardCounts[i]);
+						}
+					}
+				}
+				return counts;
+			}
+			if (name.equals("execute") || isBroadcast(name)) {
+				return invokeAll(targets, method, args).get(HOME_SHARD);
+			}
+			// executeQuery and the results of an execute come from the home shard
+			return ShardedDataSource.invoke(targets.get(HOME_SHARD), method, args);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.shard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Places accounts on shards and binds transactions to them. An account, its profile, holdings, orders,
+ * archived orders and counters all live on the shard picked by the hash of the account id, so every
+ * account-scoped operation runs against a single database once it has called {@link #bindAccount}.
+ * Lookups by userid or token scatter over the shards with {@link #locateAndBind}, admin operations
+ * run once per shard with {@link #onEachShard}, and writes to the replicated tables go to every shard
+ * with {@link #replicated}.
+ * <p>
+ * A transaction must be bound before its first statement; after that its connection has been chosen.
+ * With a single shard binding does nothing and callbacks run in the caller's transaction.
+ */
+@Component
+public class Shards {
+
+	@Autowired
+	private ShardedDataSource dataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	public int getCount() {
+		return dataSource.getShardCount();
+	}
+
+	public int shardOf(Integer accountId) {
+		int count = getCount();
+		return count == 1 ? ShardedDataSource.HOME_SHARD : (accountId.hashCode() & Integer.MAX_VALUE) % count;
+	}
+
+	public void bindAccount(Integer accountId) {
+		bind(shardOf(accountId));
+	}
+
+	/**
+	 * Binds the current transaction to every shard, for writes to the replicated tables.
+	 */
+	public void bindReplicated() {
+		bind(ShardContext.REPLICATED);
+	}
+
+	/**
+	 * Binds the current transaction to the shard until it completes. Binding again to the same shard
+	 * is allowed, to another one is not.
+	 */
+	public void bind(int shard) {
+		if (getCount() == 1) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Shards.bind: shard " + shard + " can only be bound inside a transaction");
+		}
+		Integer bound = ShardContext.current();
+		if (bound != null) {
+			if (bound != shard) {
+				throw new IllegalStateException("Shards.bind: transaction is bound to " + describe(bound) + ", not "
+						+ describe(shard));
+			}
+			return;
+		}
+		ShardContext.set(shard);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				ShardContext.set(null);
+			}
+		});
+	}
+
+	/**
+	 * Runs the callback on every shard in turn, each in a transaction of its own, and returns the
+	 * results in shard order.
+	 */
+	public <T> List<T> onEachShard(ShardCallback<T> callback) {
+		List<T> results = new ArrayList<T>(getCount());
+		if (getCount() == 1) {
+			results.add(callback.doInShard(ShardedDataSource.HOME_SHARD));
+			return results;
+		}
+		for (int shard = 0; shard < getCount(); shard++) {
+			results.add(inShard(shard, callback));
+		}
+		return results;
+	}
+
+	/**
+	 * Asks each shard in turn whether it holds what the finder looks for, and binds the current
+	 * transaction to the first that does. Returns false when none does, binding the transaction to the
+	 * home shard so that the lookups that follow find nothing and any write fails there rather than
+	 * reaching every shard.
+	 * With a single shard, or when the transaction is bound already, the finder is not asked.
+	 */
+	public boolean locateAndBind(ShardCallback<Boolean> finder) {
+		if (getCount() == 1 || ShardContext.current() != null) {
+			return true;
+		}
+		Integer found = null;
+		for (int shard = 0; shard < getCount() && found == null; shard++) {
+			if (Boolean.TRUE.equals(inShard(shard, finder))) {
+				found = shard;
+			}
+		}
+		bind(found == null ? ShardedDataSource.HOME_SHARD : found);
+		return found != null;
+	}
+
+	/**
+	 * Runs the callback on the given shard, in a transaction of its own. With a single shard it runs in
+	 * the caller's transaction, as {@link #onEachShard} does.
+	 */
+	public <T> T onShard(int shard, ShardCallback<T> callback) {
+		if (getCount() == 1) {
+			return callback.doInShard(shard);
+		}
+		return inShard(shard, callback);
+	}
+
+	/**
+	 * Runs the callback in a new transaction whose writes go to every shard. Only the replicated tables
+	 * may be written this way; queries are answered by the home shard.
+	 */
+	public <T> T replicated(ShardCallback<T> callback) {
+		return inShard(ShardContext.REPLICATED, callback);
+	}
+
+	/**
+	 * Runs the callback in a new transaction bound to the given shard. The caller's transaction may be
+	 * bound to another shard; it is bound to that shard again once the callback returns.
+	 */
+	public <T> T inShard(final int shard, final ShardCallback<T> callback) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		Integer outer = ShardContext.set(null);
+		try {
+			return template.execute(new TransactionCallback<T>() {
+				public T doInTransaction(TransactionStatus status) {
+					bind(shard);
+					return callback.doInShard(shard);
+				}
+			});
+		}
+		finally {
+			ShardContext.set(outer);
+		}
+	}
+
+	private static String describe(int shard) {
+		return shard == ShardContext.REPLICATED ? "every shard" : "shard " + shard;
+	}
+
+	public static interface ShardCallback<T> {
+
+		T doInShard(int shard);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.snapshot;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads back the rows of a {@link CsvWriter} file one at a time. Quoted fields may hold commas, quotes
+ * and line breaks; an empty unquoted field is returned as null.
+ */
+class CsvReader implements Closeable {
+
+	private final Reader in;
+
+	private final List<String> fields = new ArrayList<String>();
+
+	private final StringBuilder field = new StringBuilder();
+
+	CsvReader(File file) throws IOException {
+		this.in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 65536),
+				"UTF-8"), 65536);
+	}
+
+	/**
+	 * Returns the next row, or null at the end of the file.
+	 */
+	String[] readRow() throws IOException {
+		int c = in.read();
+		if (c == -1) {
+			return null;
+		}
+		fields.clear();
+		boolean quoted = false;
+		while (true) {
+			if (c == '"' && !quoted && field.length() == 0) {
+				quoted = true;
+				while (true) {
+					c = in.read();
+					if (c == -1) {
+						throw new IOException("CsvReader.readRow: unterminated quoted field");
+					}
+					if (c == '"') {
+						c = in.read();
+						if (c != '"') {
+							break;
+						}
+					}
+					field.append((char) c);
+				}
+				continue;
+			}
+			if (c == ',' || c == '\n' || c == -1) {
+				fields.add(quoted || field.length() > 0 ? field.toString() : null);
+				field.setLength(0);
+				quoted = false;
+				if (c != ',') {
+					return fields.toArray(new String[fields.size()]);
+				}
+			}
+			else if (c != '\r') {
+				field.append((char) c);
+			}
+			c = in.read();
+		}
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.snapshot;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes rows to a gzipped CSV file. Strings are always quoted, so an empty unquoted field reads back
+ * as null; decimals are written in plain notation and dates and timestamps as epoch milliseconds, which
+ * keeps the files independent of the time zone of either end.
+ */
+class CsvWriter implements Closeable {
+
+	private final Writer out;
+
+	CsvWriter(File file) throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), 65536),
+				"UTF-8"), 65536);
+	}
+
+	void writeRow(Object[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			write(values[i]);
+		}
+		out.write('\n');
+	}
+
+	private void write(Object value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value instanceof BigDecimal) {
+			out.write(((BigDecimal) value).toPlainString());
+		}
+		else if (value instanceof Date) {
+			out.write(Long.toString(((Date) value).getTime()));
+		}
+		else if (value instanceof Number || value instanceof Boolean) {
+			out.write(value.toString());
+		}
+		else {
+			String string = value.toString();
+			out.write('"');
+			for (int i = 0; i < string.length(); i++) {
+				char c = string.charAt(i);
+				if (c == '"') {
+					out.write('"');
+				}
+				out.write(c);
+			}
+			out.write('"');
+		}
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Holding;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.nanotrader.data.util.PooledIdGenerator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies the trading dataset (QUOTE, ACCOUNTPROFILE, ACCOUNT, HOLDING, ORDERS and ORDERS_ARCHIVE) to a
+ * directory of gzipped CSV files and loads it back, so production sized datasets can be moved between environments.
+ * <p>
+ * Each table is exported shard by shard in primary key order, snapshot.partRows rows per file, reading
+ * through a cursor that fetches snapshot.batchSize rows at a time; QUOTE, which every shard holds, comes
+ * from the home shard only. A part is only renamed into place once it is complete, and
+ * <code>snapshot.properties</code> records the parts written and the last key of each, so an interrupted
+ * export resumes with the next part. The export is not a consistent point-in-time copy; take it from a
+ * database nothing is writing to.
+ * <p>
+ * An import loads the parts in foreign key order with batched inserts, one transaction per part, and
+ * records its progress in <code>import.properties</code> next to them; a part whose first row is already
+ * there was committed before the progress was, and is skipped. The database needs as many shards as the
+ * exported one, and a fresh import first deletes its accounts and quotes, since the rows keep their ids.
+ * Once all
+ * parts are in, the id sequences are moved past the imported ids and the second-level cache is cleared;
+ * archived orders keep the ids ORDERS gave them, so the order sequence is moved past those as well.
+ * ACCOUNT_COUNTER is not part of the snapshot; rebuild it with
+ * {@link TradingService#repairAccountCounters()}.
+ */
+@Component
+public class DatasetSnapshot {
+
+	private static Logger log = LoggerFactory.getLogger(DatasetSnapshot.class);
+
+	static final String MANIFEST = "snapshot.properties";
+
+	static final String IMPORT_STATE = "import.properties";
+
+	private static final Table[] TABLES = { new Table("QUOTE", "quoteid", Quote.class, false),
+			new Table("ACCOUNTPROFILE", "profileid", Accountprofile.class, true),
+			new Table("ACCOUNT", "accountid", Account.class, true),
+			new Table("HOLDING", "holdingid", Holding.class, true),
+			new Table("ORDERS", "orderid", Order.class, true),
+			new Table("ORDERS_ARCHIVE", "orderid", Order.class, true) };
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final DataSource dataSource;
+
+	private final ShardedDataSource shardedDataSource;
+
+	private final Shards shards;
+
+	private final TradingService tradingService;
+
+	private int partRows;
+
+	private int batchSize;
+
+	@Autowired
+	public DatasetSnapshot(EntityManagerFactory entityManagerFactory, DataSource dataSource,
+			ShardedDataSource shardedDataSource, Shards shards, TradingService tradingService,
+			@Value("${snapshot.partRows:100000}") int partRows, @Value("${snapshot.batchSize:1000}") int batchSize) {
+		this.entityManagerFactory = entityManagerFactory;
+		this.dataSource = dataSource;
+		this.shardedDataSource = shardedDataSource;
+		this.shards = shards;
+		this.tradingService = tradingService;
+		this.partRows = partRows;
+		this.batchSize = batchSize;
+	}
+
+	public void setPartRows(int partRows) {
+		this.partRows = partRows;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Exports the dataset into the directory, resuming an export left unfinished there. Does nothing when
+	 * the directory holds a complete export.
+	 */
+	public Result exportTo(File directory, ProgressListener listener) {
+		long start = System.currentTimeMillis();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalStateException("DatasetSnapshot.exportTo: unable to create " + directory);
+		}
+		SnapshotManifest manifest = new SnapshotManifest(new File(directory, MANIFEST));
+		if (manifest.isEmpty()) {
+			manifest.set("shards", shards.getCount());
+			manifest.set("partRows", partRows);
+			manifest.save();
+		}
+		else if (manifest.getInt("shards") != shards.getCount()) {
+			throw new IllegalStateException("DatasetSnapshot.exportTo: unfinished export in " + directory + " has "
+					+ manifest.getInt("shards") + " shards, the database " + shards.getCount());
+		}
+		Run run = new Run(listener, manifest.getLong("rows", 0));
+		if (!manifest.getBoolean("complete")) {
+			for (Table table : TABLES) {
+				for (int shard = 0; shard < (table.sharded ? shards.getCount() : 1); shard++) {
+					exportUnit(directory, manifest, table, shard, run);
+				}
+			}
+			manifest.set("complete", true);
+			manifest.save();
+		}
+		Result result = new Result(run.total, run.rows, System.currentTimeMillis() - start);
+		log.info("DatasetSnapshot.exportTo: exported " + result.getRows() + " rows to " + directory + " in "
+				+ result.getMillis() + "ms (" + result.getRowsPerSecond() + " rows/s)");
+		return result;
+	}
+
+	/**
+	 * Imports the export in the directory, resuming an import left unfinished from it. A completed import
+	 * is started again.
+	 */
+	public Result importFrom(File directory, ProgressListener listener) {
+		long start = System.currentTimeMillis();
+		SnapshotManifest manifest = new SnapshotManifest(new File(directory, MANIFEST));
+		if (!manifest.getBoolean("complete")) {
+			throw new IllegalStateException("DatasetSnapshot.importFrom: " + directory + " holds no complete export");
+		}
+		if (manifest.getInt("shards") != shards.getCount()) {
+			throw new IllegalStateException("DatasetSnapshot.importFrom: export has " + manifest.getInt("shards")
+					+ " shards, the database " + shards.getCount());
+		}
+		SnapshotManifest state = new SnapshotManifest(new File(directory, IMPORT_STATE));
+		if (state.getBoolean("complete")) {
+			state.clear();
+		}
+		if (state.isEmpty()) {
+			prepareImport();
+			state.set("started", System.currentTimeMillis());
+			state.save();
+		}
+		Run run = new Run(listener, state.getLong("rows", 0));
+		for (Table table : TABLES) {
+			for (int shard = 0; shard < (table.sharded ? shards.getCount() : 1); shard++) {
+				importUnit(directory, manifest, state, table, shard, run);
+			}
+		}
+		for (Table table : TABLES) {
+			long maxId = Long.MIN_VALUE;
+			for (int shard = 0; shard < (table.sharded ? shards.getCount() : 1); shard++) {
+				maxId = Math.max(maxId, manifest.getLong(table.unit(shard) + ".lastKey", Long.MIN_VALUE));
+			}
+			if (maxId != Long.MIN_VALUE) {
+				advance(table.entity, maxId);
+			}
+		}
+		entityManagerFactory.getCache().evictAll();
+		state.set("complete", true);
+		state.save();
+		Result result = new Result(run.total, run.rows, System.currentTimeMillis() - start);
+		log.info("DatasetSnapshot.importFrom: imported " + result.getRows() + " rows from " + directory + " in "
+				+ result.getMillis() + "ms (" + result.getRowsPerSecond() + " rows/s)");
+		return result;
+	}
+
+	private void exportUnit(File directory, SnapshotManifest manifest, final Table table, int shard, Run run) {
+		final String unit = table.unit(shard);
+		while (!manifest.getBoolean(unit + ".complete")) {
+			int part = manifest.getInt(unit + ".parts");
+			final long lastKey = manifest.getLong(unit + ".lastKey", Long.MIN_VALUE);
+			File file = table.file(directory, shard, part);
+			final File tmp = new File(file.getPath() + ".tmp");
+			long[] written = shards.inShard(shard, new ShardCallback<long[]>() {
+				public long[] doInShard(int shard) {
+					return exportPart(table, lastKey, tmp);
+				}
+			});
+			if (written[0] == 0) {
+				tmp.delete();
+			}
+			else if (!tmp.renameTo(file)) {
+				throw new IllegalStateException("DatasetSnapshot.exportUnit: unable to rename " + tmp + " to " + file);
+			}
+			else {
+				manifest.set(unit + ".parts", part + 1);
+				manifest.set(unit + ".lastKey", written[1]);
+				manifest.set(unit + ".rows", manifest.getLong(unit + ".rows", 0) + written[0]);
+			}
+			manifest.set(unit + ".complete", written[0] < partRows);
+			manifest.set("rows", run.add(table, written[0]));
+			manifest.save();
+		}
+	}
+
+	/**
+	 * Writes the next part of the table, from the row after lastKey, and returns the rows written and
+	 * the key of the last.
+	 */
+	private long[] exportPart(final Table table, long lastKey, File file) {
+		final long[] written = { 0, lastKey };
+		try {
+			final CsvWriter writer = new CsvWriter(file);
+			try {
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+				jdbcTemplate.setFetchSize(batchSize);
+				jdbcTemplate.setMaxRows(partRows);
+				jdbcTemplate.query("SELECT * FROM " + table.name + " WHERE " + table.key + " > ? ORDER BY " + table.key,
+						new Object[] { lastKey }, new RowCallbackHandler() {
+							public void processRow(ResultSet rs) throws SQLException {
+								ResultSetMetaData metaData = rs.getMetaData();
+								Object[] values = new Object[metaData.getColumnCount()];
+								try {
+									if (written[0] == 0) {
+										for (int i = 0; i < values.length; i++) {
+											values[i] = metaData.getColumnName(i + 1);
+										}
+										writer.writeRow(values);
+									}
+									for (int i = 0; i < values.length; i++) {
+										values[i] = rs.getObject(i + 1);
+									}
+									writer.writeRow(values);
+								}
+								catch (IOException e) {
+									throw new DataAccessResourceFailureException("DatasetSnapshot.exportPart: unable to write "
+											+ table.name, e);
+								}
+								written[0]++;
+								written[1] = rs.getLong(table.key);
+							}
+						});
+			}
+			finally {
+				writer.close();
+			}
+		}
+		catch (IOException e) {
+			throw new DataAccessResourceFailureException("DatasetSnapshot.exportPart: unable to write " + file, e);
+		}
+		return written;
+	}
+
+	private void prepareImport() {
+		tradingService.deleteAll();
+		shards.replicated(new ShardCallback<Void>() {
+			public Void doInShard(int shard) {
+				new JdbcTemplate(dataSource).update("DELETE FROM QUOTE");
+				return null;
+			}
+		});
+	}
+
+	private void importUnit(File directory, SnapshotManifest manifest, SnapshotManifest state, final Table table,
+			int shard, Run run) {
+		String unit = table.unit(shard);
+		int parts = manifest.getInt(unit + ".parts");
+		for (int part = state.getInt(unit + ".parts"); part < parts; part++) {
+			final File file = table.file(directory, shard, part);
+			ShardCallback<Long> importer = new ShardCallback<Long>() {
+				public Long doInShard(int shard) {
+					return importPart(table, file);
+				}
+			};
+			long rows = table.sharded ? shards.inShard(shard, importer) : shards.replicated(importer);
+			state.set(unit + ".parts", part + 1);
+			state.set("rows", run.add(table, rows));
+			state.save();
+		}
+	}
+
+	/**
+	 * Inserts the rows of the part in batches, in the current transaction, and returns how many it holds.
+	 */
+	private long importPart(Table table, File file) {
+		try {
+			CsvReader reader = new CsvReader(file);
+			try {
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+				String[] header = reader.readRow();
+				final int[] types = columnTypes(jdbcTemplate, table, header);
+				StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.name).append(" (");
+				StringBuilder values = new StringBuilder();
+				int key = -1;
+				for (int i = 0; i < header.length; i++) {
+					sql.append(i == 0 ? "" : ", ").append(header[i]);
+					values.append(i == 0 ? "?" : ", ?");
+					if (header[i].equalsIgnoreCase(table.key)) {
+						key = i;
+					}
+				}
+				sql.append(") VALUES (").append(values).append(')');
+
+				String[] row = reader.readRow();
+				if (row != null
+						&& jdbcTemplate.queryForObject("SELECT count(*) FROM " + table.name + " WHERE " + table.key + " = ?",
+								Long.class, convert(row[key], types[key])) > 0) {
+					log.info("DatasetSnapshot.importPart: " + file.getName() + " was imported already");
+					long rows = 0;
+					for (; row != null; row = reader.readRow()) {
+						rows++;
+					}
+					return rows;
+				}
+				long rows = 0;
+				final List<String[]> batch = new ArrayList<String[]>(batchSize);
+				for (; row != null; row = reader.readRow()) {
+					batch.add(row);
+					if (batch.size() == batchSize) {
+						insert(jdbcTemplate, sql.toString(), batch, types);
+						rows += batch.size();
+						batch.clear();
+					}
+				}
+				insert(jdbcTemplate, sql.toString(), batch, types);
+				return rows + batch.size();
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException e) {
+			throw new DataAccessResourceFailureException("DatasetSnapshot.importPart: unable to read " + file, e);
+		}
+	}
+
+	private void insert(JdbcTemplate jdbcTemplate, String sql, final List<String[]> rows, final int[] types) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				String[] row = rows.get(i);
+				for (int column = 0; column < row.length; column++) {
+					Object value = convert(row[column], types[column]);
+					if (value == null) {
+						ps.setNull(column + 1, types[column]);
+					}
+					else {
+						ps.setObject(column + 1, value, types[column]);
+					}
+				}
+			}
+
+			public int getBatchSize() {
+				return rows.size();
+			}
+		});
+	}
+
+	/**
+	 * Looks up the SQL types of the columns in the target table, so values are bound as the database
+	 * expects them whatever it was exported from.
+	 */
+	private int[] columnTypes(JdbcTemplate jdbcTemplate, Table table, String[] header) {
+		Map<String, Integer> byName = jdbcTemplate.query("SELECT * FROM " + table.name + " WHERE 1 = 0",
+				new ResultSetExtractor<Map<String, Integer>>() {
+					public Map<String, Integer> extractData(ResultSet rs) throws SQLException {
+						ResultSetMetaData metaData = rs.getMetaData();
+						Map<String, Integer> types = new HashMap<String, Integer>();
+						for (int i = 1; i <= metaData.getColumnCount(); i++) {
+							types.put(metaData.getColumnName(i).toUpperCase(Locale.ENGLISH), metaData.getColumnType(i));
+						}
+						return types;
+					}
+				});
+		int[] types = new int[header.length];
+		for (int i = 0; i < header.length; i++) {
+			Integer type = byName.get(header[i].toUpperCase(Locale.ENGLISH));
+			if (type == null) {
+				throw new IllegalStateException("DatasetSnapshot.columnTypes: " + table.name + " has no column " + header[i]);
+			}
+			types[i] = type;
+		}
+		return types;
+	}
+
+	static Object convert(String value, int type) {
+		if (value == null) {
+			return null;
+		}
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			return Integer.valueOf(value);
+		case Types.BIGINT:
+			return Long.valueOf(value);
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return new BigDecimal(value);
+		case Types.DATE:
+			return new java.sql.Date(Long.parseLong(value));
+		case Types.TIME:
+			return new Time(Long.parseLong(value));
+		case Types.TIMESTAMP:
+			return new Timestamp(Long.parseLong(value));
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return Boolean.valueOf(value);
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * Moves the entity's id sequence, kept on the home shard, past the imported ids.
+	 */
+	private void advance(Class<?> entity, long maxId) {
+		PooledIdGenerator generator = PooledIdGenerator.forEntity(entityManagerFactory, entity);
+		try {
+			Connection connection = shardedDataSource.getShard(ShardedDataSource.HOME_SHARD).getConnection();
+			try {
+				connection.setAutoCommit(false);
+				generator.advance(connection, maxId);
+				connection.commit();
+			}
+			catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+			finally {
+				connection.close();
+			}
+		}
+		catch (SQLException e) {
+			throw new DataAccessResourceFailureException("DatasetSnapshot.advance: unable to advance the ids of "
+					+ entity.getSimpleName() + " past " + maxId, e);
+		}
+	}
+
+	public static interface ProgressListener {
+
+		/**
+		 * Called after each part with the table it belonged to and the rows exported or imported so far,
+		 * counting those of an earlier, interrupted run.
+		 */
+		void partDone(String table, long rows);
+	}
+
+	public static class Result {
+
+		private final long rows;
+
+		private final long rowsThisRun;
+
+		private final long millis;
+
+		Result(long rows, long rowsThisRun, long millis) {
+			this.rows = rows;
+			this.rowsThisRun = rowsThisRun;
+			this.millis = millis;
+		}
+
+		/**
+		 * Rows exported or imported, counting those of an earlier, interrupted run.
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public long getRowsPerSecond() {
+			return rowsThisRun * 1000 / Math.max(1, millis);
+		}
+	}
+
+	private static class Run {
+
+		private final ProgressListener listener;
+
+		private long total;
+
+		private long rows;
+
+		Run(ProgressListener listener, long total) {
+			this.listener = listener;
+			this.total = total;
+		}
+
+		long add(Table table, long count) {
+			rows += count;
+			total += count;
+			if (listener != null) {
+				listener.partDone(table.name, total);
+			}
+			return total;
+		}
+	}
+
+	private static class Table {
+
+		private final String name;
+
+		private final String key;
+
+		// the entity whose id sequence hands out the keys
+		private final Class<?> entity;
+
+		private final boolean sharded;
+
+		Table(String name, String key, Class<?> entity, boolean sharded) {
+			this.name = name;
+			this.key = key;
+			this.entity = entity;
+			this.sharded = sharded;
+		}
+
+		String unit(int shard) {
+			return name + "." + shard;
+		}
+
+		File file(File directory, int shard, int part) {
+			return new File(directory, String.format("%s-%d-%05d.csv.gz", name, shard, part));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Properties file recording how far an export or import got. It is rewritten to a temporary file and
+ * renamed over the old one, so a crash leaves either the previous or the new state behind.
+ */
+class SnapshotManifest {
+
+	private final File file;
+
+	private final Properties properties = new Properties();
+
+	SnapshotManifest(File file) {
+		this.file = file;
+		if (file.exists()) {
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					properties.load(in);
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("SnapshotManifest: unable to read " + file, e);
+			}
+		}
+	}
+
+	boolean isEmpty() {
+		return properties.isEmpty();
+	}
+
+	String get(String key) {
+		return properties.getProperty(key);
+	}
+
+	int getInt(String key) {
+		String value = properties.getProperty(key);
+		return value == null ? 0 : Integer.parseInt(value);
+	}
+
+	long getLong(String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+
+	boolean getBoolean(String key) {
+		return Boolean.parseBoolean(properties.getProperty(key));
+	}
+
+	void set(String key, Object value) {
+		properties.setProperty(key, String.valueOf(value));
+	}
+
+	void clear() {
+		properties.clear();
+	}
+
+	void save() {
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				properties.store(out, null);
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("SnapshotManifest.save: unable to write " + tmp, e);
+		}
+		if (!tmp.renameTo(file)) {
+			throw new IllegalStateException("SnapshotManifest.save: unable to rename " + tmp + " to " + file);
+		}
+	}
+}
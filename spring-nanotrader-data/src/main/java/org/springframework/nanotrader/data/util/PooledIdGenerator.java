@@ -0,0 +1,205 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.util;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.type.Type;
+import org.springframework.nanotrader.data.shard.ShardContext;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+
+/**
+ * Table generator that hands out ids from blocks of <code>nanotrader.id.allocation_size</code> (a system
+ * property, 50 by default) so that HIBERNATE_SEQUENCES is read and updated once per block instead of
+ * once per insert. It keeps the row per entity table of the hi/lo generator it replaces, but the row now
+ * holds the next id to allocate (pooled-lo), so any number of nodes and allocation sizes can share it.
+ * <p>
+ * Migration V4 converts the hi values left by the old generator. When an entity has no row yet, the
+ * first block starts after the highest id already in its table, which covers rows loaded by import
+ * scripts.
+ * <p>
+ * When the database is sharded the blocks are always taken from the home shard, so ids stay unique
+ * across shards.
+ */
+public class PooledIdGenerator extends TableGenerator {
+
+	public static final String ALLOCATION_SIZE_PROPERTY = "nanotrader.id.allocation_size";
+
+	static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+	private String entityTable;
+
+	private String entityKey;
+
+	private boolean seeded;
+
+	private long floor;
+
+	/**
+	 * Returns the generator Hibernate uses for the entity.
+	 */
+	public static PooledIdGenerator forEntity(EntityManagerFactory entityManagerFactory, Class<?> entity) {
+		return (PooledIdGenerator) ((SessionFactoryImplementor) ((HibernateEntityManagerFactory) entityManagerFactory)
+				.getSessionFactory()).getIdentifierGenerator(entity.getName());
+	}
+
+	@Override
+	public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+		Properties pooled = new Properties();
+		pooled.putAll(params);
+		setDefault(pooled, TABLE_PARAM, "hibernate_sequences");
+		setDefault(pooled, SEGMENT_COLUMN_PARAM, "sequence_name");
+		setDefault(pooled, VALUE_COLUMN_PARAM, "sequence_next_hi_value");
+		setDefault(pooled, CONFIG_PREFER_SEGMENT_PER_ENTITY, "true");
+		setDefault(pooled, INCREMENT_PARAM,
+				String.valueOf(Integer.getInteger(ALLOCATION_SIZE_PROPERTY, DEFAULT_ALLOCATION_SIZE)));
+		setDefault(pooled, OPT_PARAM, OptimizerFactory.POOL_LO);
+		super.configure(type, pooled, dialect);
+		entityTable = params.getProperty(PersistentIdentifierGenerator.TABLE);
+		entityKey = params.getProperty(PersistentIdentifierGenerator.PK);
+	}
+
+	@Override
+	public synchronized Serializable generate(SessionImplementor session, Object obj) {
+		Integer bound = ShardContext.set(ShardedDataSource.HOME_SHARD);
+		try {
+			Serializable id;
+			do {
+				id = super.generate(session, obj);
+			}
+			while (((Number) id).longValue() <= floor);
+			return id;
+		}
+		finally {
+			ShardContext.set(bound);
+		}
+	}
+
+	/**
+	 * Runs in its own transaction whenever a block is used up.
+	 */
+	@Override
+	public Serializable doWorkInCurrentTransaction(Connection connection, String sql) throws SQLException {
+		if (!seeded && entityTable != null && entityKey != null) {
+			seed(connection);
+			seeded = true;
+		}
+		return super.doWorkInCurrentTransaction(connection, sql);
+	}
+
+	/**
+	 * Takes <code>count</code> consecutive ids straight from the table and returns the first, for bulk
+	 * loads that insert rows without Hibernate. Runs on the given connection, which the caller commits;
+	 * the blocks already handed out are not affected.
+	 */
+	public synchronized int reserve(Connection connection, int count) throws SQLException {
+		seed(connection);
+		PreparedStatement select = connection.prepareStatement("select " + getValueColumnName() + " from "
+				+ getTableName() + " where " + getSegmentColumnName() + " = ?");
+		PreparedStatement update = connection.prepareStatement("update " + getTableName() + " set "
+				+ getValueColumnName() + " = ? where " + getSegmentColumnName() + " = ? and " + getValueColumnName()
+				+ " = ?");
+		try {
+			select.setString(1, getSegmentValue());
+			update.setString(2, getSegmentValue());
+			while (true) {
+				ResultSet rs = select.executeQuery();
+				rs.next();
+				long first = rs.getLong(1);
+				rs.close();
+				update.setLong(1, first + count);
+				update.setLong(3, first);
+				if (update.executeUpdate() == 1) {
+					return (int) first;
+				}
+				// another node took ids in between, try again from the new value
+			}
+		}
+		finally {
+			select.close();
+			update.close();
+		}
+	}
+
+	/**
+	 * Moves the next id to allocate past <code>maxId</code>, for bulk loads that insert rows with ids of
+	 * their own, and skips whatever is left up to it of the block this generator holds. Runs on the
+	 * given connection, which the caller commits. Blocks held by other nodes are not affected.
+	 */
+	public synchronized void advance(Connection connection, long maxId) throws SQLException {
+		seed(connection);
+		PreparedStatement update = connection.prepareStatement("update " + getTableName() + " set "
+				+ getValueColumnName() + " = ? where " + getSegmentColumnName() + " = ? and " + getValueColumnName()
+				+ " <= ?");
+		try {
+			update.setLong(1, maxId + 1);
+			update.setString(2, getSegmentValue());
+			update.setLong(3, maxId);
+			update.executeUpdate();
+		}
+		finally {
+			update.close();
+		}
+		floor = Math.max(floor, maxId);
+	}
+
+	private void seed(Connection connection) throws SQLException {
+		PreparedStatement select = connection.prepareStatement("select count(*) from " + getTableName() + " where "
+				+ getSegmentColumnName() + " = ?");
+		try {
+			select.setString(1, getSegmentValue());
+			ResultSet rs = select.executeQuery();
+			rs.next();
+			if (rs.getLong(1) > 0) {
+				return;
+			}
+		}
+		finally {
+			select.close();
+		}
+		PreparedStatement insert = connection.prepareStatement("insert into " + getTableName() + " ("
+				+ getSegmentColumnName() + ", " + getValueColumnName() + ") select ?, coalesce(max(" + entityKey
+				+ "), 0) + 1 from " + entityTable);
+		try {
+			insert.setString(1, getSegmentValue());
+			insert.executeUpdate();
+		}
+		finally {
+			insert.close();
+		}
+	}
+
+	private static void setDefault(Properties params, String name, String value) {
+		if (params.getProperty(name) == null) {
+			params.setProperty(name, value);
+		}
+	}
+}
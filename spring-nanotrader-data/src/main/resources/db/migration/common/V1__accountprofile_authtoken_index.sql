@@ -0,0 +1,2 @@
+-- findByAuthtoken runs on every authenticated request that misses the authorization cache
+CREATE INDEX ACCOUNTPROFILE_AUTHTOKEN ON ACCOUNTPROFILE (AUTHTOKEN);
@@ -0,0 +1,2 @@
+-- holding lookups by account and symbol (portfolio summary, sell, holding aggregates)
+CREATE INDEX HOLDING_ACCOUNT_QUOTE ON HOLDING (ACCOUNT_ACCOUNTID, QUOTE_SYMBOL);
@@ -0,0 +1,2 @@
+-- findOrdersByStatus and the keyset order pages filter on account and status and sort by id
+CREATE INDEX ORDERS_ACCOUNT_STATUS_ID ON ORDERS (ACCOUNT_ACCOUNTID, ORDERSTATUS, ORDERID);
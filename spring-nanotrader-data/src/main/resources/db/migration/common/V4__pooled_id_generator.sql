@@ -0,0 +1,3 @@
+-- PooledIdGenerator keeps the next id to allocate where the hi/lo generator kept its next hi value, and that
+-- generator handed out blocks of 32768 ids (max_lo 32767), so the first id it has not used is hi * 32768
+UPDATE hibernate_sequences SET sequence_next_hi_value = sequence_next_hi_value * 32768;
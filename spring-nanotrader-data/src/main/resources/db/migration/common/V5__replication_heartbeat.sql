@@ -0,0 +1,3 @@
+-- ReplicationLagMonitor writes the time to the primary and reads it back from the replica to measure lag.
+-- Not an entity, so it survives create-drop and may already exist when the history is reset
+CREATE TABLE IF NOT EXISTS REPLICATION_HEARTBEAT (ID INTEGER NOT NULL PRIMARY KEY, BEAT BIGINT NOT NULL);
@@ -0,0 +1,4 @@
+-- archiveOrders picks completed orders by completion date and checks that no lower order of the same
+-- account must stay hot, which walks that account's orders by id
+CREATE INDEX ORDERS_COMPLETIONDATE ON ORDERS (COMPLETIONDATE);
+CREATE INDEX ORDERS_ACCOUNT_ID ON ORDERS (ACCOUNT_ACCOUNTID, ORDERID);
@@ -0,0 +1,3 @@
+-- InnoDB limits index keys to 767 bytes, so only a prefix of the token is indexed; opaque tokens fit
+-- entirely and signed tokens start with the profile and account ids and the expiry
+CREATE INDEX ACCOUNTPROFILE_AUTHTOKEN ON ACCOUNTPROFILE (AUTHTOKEN(64));
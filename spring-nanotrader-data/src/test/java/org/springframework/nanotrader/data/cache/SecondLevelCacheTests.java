@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.domain.test.AccountDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.AccountprofileDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.QuoteDataOnDemand;
+import org.springframework.nanotrader.data.repository.QuoteRepository;
+import org.springframework.nanotrader.data.service.LoginStatisticsWriter;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Not transactional: the second-level cache only sees committed data, so each test removes what it
+ * created.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/applicationContext*.xml")
+public class SecondLevelCacheTests {
+
+	private static int sequence;
+
+	@Autowired
+	private AccountDataOnDemand accountDataOnDemand;
+
+	@Autowired
+	private AccountprofileDataOnDemand accountprofileDataOnDemand;
+
+	@Autowired
+	private QuoteDataOnDemand quoteDataOnDemand;
+
+	@Autowired
+	private QuoteRepository quoteRepository;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private CacheStatistics cacheStatistics;
+
+	@Autowired
+	private LoginStatisticsWriter loginStatisticsWriter;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	@Value("${cache.quote.maxStalenessMillis:1000}")
+	private long quoteStalenessMillis;
+
+	private Account account;
+
+	private Quote quote;
+
+	@Before
+	public void createAccountAndQuote() {
+		int index = 400 + sequence++;
+		Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(index);
+		profile.setUserid("secondlevelcache" + index);
+		account = accountDataOnDemand.getNewTransientAccount(index);
+		account.setBalance(BigDecimal.valueOf(1000000));
+		profile.setAccounts(Collections.singleton(account));
+		tradingService.saveAccountProfile(profile);
+
+		quote = quoteDataOnDemand.getNewTransientQuote(index);
+		quote.setSymbol("CACHE" + index);
+		quote.setPrice(BigDecimal.valueOf(10));
+		quote = quoteRepository.save(quote);
+	}
+
+	@After
+	public void deleteAccountAndQuote() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		Integer accountId = account.getAccountid();
+		jdbcTemplate.update("DELETE FROM ORDERS WHERE account_accountid = ?", accountId);
+		jdbcTemplate.update("DELETE FROM HOLDING WHERE account_accountid = ?", accountId);
+		jdbcTemplate.update("DELETE FROM ACCOUNT_COUNTER WHERE account_accountid = ?", accountId);
+		jdbcTemplate.update("DELETE FROM ACCOUNT WHERE accountid = ?", accountId);
+		jdbcTemplate.update("DELETE FROM ACCOUNTPROFILE WHERE profileid = ?", account.getProfileProfileid().getProfileid());
+		jdbcTemplate.update("DELETE FROM QUOTE WHERE quoteid = ?", quote.getQuoteid());
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	public void testSymbolLookupsAreServedFromTheCache() {
+		quoteRepository.findBySymbol(quote.getSymbol());
+		cacheStatistics.reset();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(quote.getQuoteid(), quoteRepository.findBySymbol(quote.getSymbol()).getQuoteid());
+		}
+		CacheStatistics.RegionStatistics queries = cacheStatistics.region(QuoteRepository.QUERY_CACHE_REGION);
+		CacheStatistics.RegionStatistics quotes = cacheStatistics.region("quote");
+		assertEquals(3, queries.getHits());
+		assertEquals(3, quotes.getHits());
+		assertEquals(0, quotes.getMisses());
+		assertEquals(1.0, quotes.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testOrderPricingUsesUpdatedQuote() {
+		quoteRepository.findBySymbol(quote.getSymbol());
+		quote.setPrice(BigDecimal.valueOf(42));
+		tradingService.updateQuote(quote);
+
+		assertEquals(0, BigDecimal.valueOf(42).compareTo(buy().getPrice()));
+	}
+
+	@Test
+	public void testOrderPricingSeesOutsideUpdatesWithinTheStalenessBound() throws Exception {
+		quoteRepository.findBySymbol(quote.getSymbol());
+		// as the asynch quote consumer would, from another process
+		new JdbcTemplate(dataSource).update("UPDATE QUOTE SET price = ? WHERE symbol = ?", BigDecimal.valueOf(17),
+				quote.getSymbol());
+		assertEquals(0, BigDecimal.TEN.compareTo(quoteRepository.findBySymbol(quote.getSymbol()).getPrice()));
+
+		Thread.sleep(quoteStalenessMillis + 50);
+		assertEquals(0, BigDecimal.valueOf(17).compareTo(buy().getPrice()));
+	}
+
+	@Test
+	public void testLoginStatisticsOnlyEvictTheAccountsWritten() {
+		Integer accountId = account.getAccountid();
+		Integer otherId = accountDataOnDemand.getRandomAccount().getAccountid();
+		tradingService.findAccount(accountId);
+		tradingService.findAccount(otherId);
+		loginStatisticsWriter.recordLogout(accountId);
+		loginStatisticsWriter.flush();
+
+		cacheStatistics.reset();
+		assertEquals(Integer.valueOf(1), tradingService.findAccount(accountId).getLogoutcount());
+		tradingService.findAccount(otherId);
+		CacheStatistics.RegionStatistics accounts = cacheStatistics.region("account");
+		assertEquals(1, accounts.getMisses());
+		assertEquals(1, accounts.getHits());
+	}
+
+	private Order buy() {
+		Order order = new Order();
+		order.setAccountAccountid(account);
+		order.setQuote(quote);
+		order.setOrdertype(TradingService.ORDER_TYPE_BUY);
+		order.setQuantity(BigDecimal.ONE);
+		return tradingService.saveOrder(order);
+	}
+}
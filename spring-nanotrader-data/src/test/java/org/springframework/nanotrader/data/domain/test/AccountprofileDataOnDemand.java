@@ -26,6 +26,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.nanotrader.data.domain.Accountprofile;
 import org.springframework.nanotrader.data.repository.AccountProfileRepository;
+import org.springframework.nanotrader.data.shard.ShardContext;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
 import org.springframework.stereotype.Component;
 
 
@@ -135,6 +137,17 @@ public class AccountprofileDataOnDemand {
         }
         
         data = new ArrayList<Accountprofile>();
+        // these profiles have no account to place them, so they are written to the home shard
+        Integer bound = ShardContext.set(ShardedDataSource.HOME_SHARD);
+        try {
+            insertProfiles();
+        }
+        finally {
+            ShardContext.set(bound);
+        }
+    }
+
+	private void insertProfiles() {
         for (int i = 0; i < 10; i++) {
             Accountprofile obj = getNewTransientAccountprofile(i);
             try {
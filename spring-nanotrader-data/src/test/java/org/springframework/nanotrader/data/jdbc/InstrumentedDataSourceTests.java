@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/applicationContext*.xml")
+public class InstrumentedDataSourceTests {
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private DataSourceStatistics statistics;
+
+	/** behind the lazy proxy, which only checks out a connection once it is used */
+	private DataSource instrumented;
+
+	@Before
+	public void reset() {
+		statistics.setSlowQueryMillis(200);
+		statistics.reset();
+		instrumented = ((LazyConnectionDataSourceProxy) dataSource).getTargetDataSource();
+	}
+
+	@Test
+	public void testDataSourceIsInstrumented() {
+		assertTrue(instrumented instanceof InstrumentedDataSource);
+	}
+
+	@Test
+	public void testCheckoutsAndHoldsAreRecorded() throws Exception {
+		int active = statistics.getActive();
+		Connection connection = instrumented.getConnection();
+		assertEquals(active + 1, statistics.getActive());
+		connection.close();
+		connection.close();
+		assertEquals(active, statistics.getActive());
+		assertEquals(1, statistics.getCheckouts());
+		assertEquals(0, statistics.getCheckoutFailures());
+	}
+
+	@Test
+	public void testStatementsAreGroupedByFingerprint() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.queryForInt("select count(*) from quote where symbol = 'A'");
+		jdbcTemplate.queryForInt("SELECT count(*)  FROM quote WHERE symbol = 'B'");
+		jdbcTemplate.queryForInt("select count(*) from quote where quoteid in (?, ?, ?)", 1, 2, 3);
+		jdbcTemplate.queryForInt("select count(*) from quote where quoteid in (?)", 1);
+
+		StatementStatistics literals = find("select count(*) from quote where symbol = ?");
+		assertEquals(2, literals.getCount());
+		assertEquals(0, literals.getSlow());
+		assertEquals(2, find("select count(*) from quote where quoteid in (?)").getCount());
+	}
+
+	@Test
+	public void testSlowStatementsAndErrorsAreCounted() throws Exception {
+		statistics.setSlowQueryMillis(0);
+		Connection connection = instrumented.getConnection();
+		try {
+			PreparedStatement statement = connection.prepareStatement("select count(*) from quote where symbol = ?");
+			statement.setString(1, "SLOW");
+			statement.executeQuery().close();
+			assertEquals(connection, statement.getConnection());
+			try {
+				connection.createStatement().execute("select nothing from nowhere");
+			}
+			catch (Exception expected) {
+			}
+		}
+		finally {
+			connection.close();
+		}
+		assertEquals(1, find("select count(*) from quote where symbol = ?").getSlow());
+		assertEquals(1, find("select nothing from nowhere").getErrors());
+	}
+
+	@Test
+	public void testFingerprints() {
+		assertEquals("select * from orders where accountid = ? and status in (?) limit ?",
+				SqlFingerprint.of("SELECT * FROM orders\n WHERE accountid = 42 AND status IN ('open', 'closed') LIMIT 10"));
+		assertEquals("update quote set price = ? where symbol = ?",
+				SqlFingerprint.of("update quote set price = 12.50 where symbol = 'it''s'"));
+		assertEquals("select quote0_.quoteid as quoteid1_ from quote quote0_",
+				SqlFingerprint.of("select quote0_.quoteid as quoteid1_ from quote quote0_"));
+	}
+
+	private StatementStatistics find(String fingerprint) {
+		for (StatementStatistics statement : statistics.getStatements()) {
+			if (statement.getFingerprint().equals(fingerprint)) {
+				return statement;
+			}
+		}
+		throw new AssertionError("No statistics for " + fingerprint + " in " + statistics.getStatements());
+	}
+}
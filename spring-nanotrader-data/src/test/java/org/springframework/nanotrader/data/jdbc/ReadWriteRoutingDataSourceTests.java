@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Two H2 databases stand in for the primary and the replica; replication is copying the heartbeat.
+ */
+public class ReadWriteRoutingDataSourceTests {
+
+	private EmbeddedDatabase primary;
+
+	private EmbeddedDatabase replica;
+
+	private ReplicationLagMonitor monitor;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private DataSourceTransactionManager transactionManager;
+
+	@Before
+	public void createDatabases() {
+		primary = database("routing-primary");
+		replica = database("routing-replica");
+
+		monitor = new ReplicationLagMonitor();
+		monitor.setPrimary(primary);
+		monitor.setReplica(replica);
+		monitor.setMaxLagMillis(1000);
+
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+		routing.setPrimary(primary);
+		routing.setReplica(replica);
+		routing.setLagMonitor(monitor);
+		routing.afterPropertiesSet();
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+	}
+
+	private EmbeddedDatabase database(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName(name).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE " + ReplicationLagMonitor.HEARTBEAT_TABLE
+				+ " (ID INTEGER NOT NULL PRIMARY KEY, BEAT BIGINT NOT NULL)");
+		jdbcTemplate.execute("CREATE TABLE SERVER (NAME VARCHAR(20))");
+		jdbcTemplate.update("INSERT INTO SERVER VALUES (?)", name);
+		return database;
+	}
+
+	@After
+	public void shutdown() {
+		primary.shutdown();
+		replica.shutdown();
+	}
+
+	@Test
+	public void testReadsStayOnPrimaryUntilReplicaIsKnownToBeCaughtUp() {
+		assertEquals("routing-primary", server(true));
+		monitor.heartbeat();
+		assertFalse(monitor.isReplicaUsable());
+		assertEquals("routing-primary", server(true));
+		assertEquals(2, monitor.getPrimaryFallbacks());
+	}
+
+	@Test
+	public void testReadOnlyTransactionsGoToCaughtUpReplica() {
+		catchUp();
+		assertEquals(0, monitor.getLagMillis());
+		assertEquals("routing-replica", server(true));
+		assertEquals("routing-primary", server(false));
+		assertEquals(1, monitor.getReplicaReads());
+	}
+
+	@Test
+	public void testLaggingReplicaFallsBackToPrimary() {
+		catchUp();
+		new JdbcTemplate(replica).update("UPDATE " + ReplicationLagMonitor.HEARTBEAT_TABLE + " SET BEAT = BEAT - 2000");
+		monitor.heartbeat();
+		assertTrue(monitor.getLagMillis() >= 2000);
+		assertEquals("routing-primary", server(true));
+		assertEquals(1, monitor.getPrimaryFallbacks());
+
+		catchUp();
+		assertEquals("routing-replica", server(true));
+	}
+
+	@Test
+	public void testUnavailableReplicaFallsBackToPrimary() {
+		catchUp();
+		replica.shutdown();
+		monitor.heartbeat();
+		assertEquals(-1, monitor.getLagMillis());
+		assertEquals("routing-primary", server(true));
+	}
+
+	private void catchUp() {
+		monitor.heartbeat();
+		long beat = new JdbcTemplate(primary).queryForLong("SELECT BEAT FROM " + ReplicationLagMonitor.HEARTBEAT_TABLE);
+		JdbcTemplate replicaTemplate = new JdbcTemplate(replica);
+		replicaTemplate.update("DELETE FROM " + ReplicationLagMonitor.HEARTBEAT_TABLE);
+		replicaTemplate.update("INSERT INTO " + ReplicationLagMonitor.HEARTBEAT_TABLE + " VALUES (1, ?)", beat);
+		monitor.heartbeat();
+		assertTrue(monitor.isReplicaUsable());
+	}
+
+	private String server(boolean readOnly) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(readOnly);
+		return transactionTemplate.execute(new TransactionCallback<String>() {
+			public String doInTransaction(TransactionStatus status) {
+				return jdbcTemplate.queryForObject("SELECT NAME FROM SERVER", String.class);
+			}
+		});
+	}
+}
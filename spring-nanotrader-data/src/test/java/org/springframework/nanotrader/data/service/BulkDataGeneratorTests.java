@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.domain.test.AccountDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.AccountprofileDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.QuoteDataOnDemand;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Generates users over the three shards of ShardingTests. Not transactional, since every chunk commits
+ * on its own; each test deletes what it created.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:/META-INF/spring/applicationContext*.xml",
+		"classpath:/org/springframework/nanotrader/data/shard/ShardingTests-context.xml" })
+public class BulkDataGeneratorTests {
+
+	@Autowired
+	private BulkDataGenerator generator;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private AccountDataOnDemand accountDataOnDemand;
+
+	@Autowired
+	private AccountprofileDataOnDemand accountprofileDataOnDemand;
+
+	@Autowired
+	private QuoteDataOnDemand quoteDataOnDemand;
+
+	@Autowired
+	private QuoteService quoteService;
+
+	@Autowired
+	private ShardedDataSource shardedDataSource;
+
+	@Autowired
+	private Shards shards;
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	private List<Quote> quotes;
+
+	@Before
+	public void createQuotes() {
+		quotes = Arrays.asList(quote(0, "CHEAP", 10), quote(1, "DEAR", 2000));
+		generator.setThreads(3);
+		generator.setChunkSize(4);
+	}
+
+	@After
+	public void deleteAll() {
+		tradingService.deleteAll();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			shard(shard).update("DELETE FROM QUOTE");
+		}
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	public void testUsersAreWrittenToTheirShardsWithTheirOrders() {
+		final List<Integer> accountIds = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger reported = new AtomicInteger();
+		BulkDataGenerator.Result result = generator.generate(9, quotes, new BulkDataGenerator.ProgressListener() {
+			public void usersCreated(int total, List<Integer> chunk) {
+				accountIds.addAll(chunk);
+				synchronized (reported) {
+					reported.set(Math.max(reported.get(), total));
+				}
+			}
+		});
+
+		assertEquals(10, result.getUsers());
+		assertEquals(10, reported.get());
+		assertEquals(10, new HashSet<Integer>(accountIds).size());
+		// profile, account, one holding, two orders and six counters per user
+		assertEquals(110, result.getRows());
+		for (Integer accountId : accountIds) {
+			for (int shard = 0; shard < shards.getCount(); shard++) {
+				assertEquals(shard == shards.shardOf(accountId) ? 1 : 0,
+						shard(shard).queryForInt("SELECT count(*) FROM ACCOUNT WHERE accountid = ?", accountId));
+			}
+		}
+
+		assertNotNull(tradingService.login("admin", "admin"));
+		Accountprofile profile = tradingService.login("user5", "user5");
+		Integer accountId = tradingService.findAccountByProfile(profile).getAccountid();
+		assertEquals(Long.valueOf(2), tradingService.findCountOfOrders(accountId, null));
+		assertEquals(Long.valueOf(1), tradingService.findCountOfOrders(accountId, "completed"));
+		assertEquals(Long.valueOf(1), tradingService.findCountOfOrders(accountId, "cancelled"));
+		assertEquals(2, tradingService.findOrders(accountId, 0, 10).size());
+		assertEquals(1, tradingService.findHoldingsByAccountId(accountId, 0, 10).size());
+		assertEquals(0, new BigDecimal("989989.50").compareTo(tradingService.findAccount(accountId).getBalance()));
+	}
+
+	@Test
+	public void testGeneratedIdsAreNotHandedOutAgain() {
+		final Set<Integer> accountIds = Collections.synchronizedSet(new HashSet<Integer>());
+		BulkDataGenerator.Result result = generator.generate(5, null, new BulkDataGenerator.ProgressListener() {
+			public void usersCreated(int total, List<Integer> chunk) {
+				accountIds.addAll(chunk);
+			}
+		});
+		// profile, account and six counters per user
+		assertEquals(48, result.getRows());
+
+		Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(700);
+		profile.setUserid("aftergenerator");
+		Account account = accountDataOnDemand.getNewTransientAccount(700);
+		profile.setAccounts(Collections.singleton(account));
+		tradingService.saveAccountProfile(profile);
+		assertFalse(accountIds.contains(account.getAccountid()));
+	}
+
+	private Quote quote(int index, String symbol, int price) {
+		Quote quote = quoteDataOnDemand.getNewTransientQuote(700 + index);
+		quote.setSymbol(symbol);
+		quote.setPrice(BigDecimal.valueOf(price));
+		return quoteService.updateQuote(quote);
+	}
+
+	private JdbcTemplate shard(int shard) {
+		return new JdbcTemplate(shardedDataSource.getShard(shard));
+	}
+}
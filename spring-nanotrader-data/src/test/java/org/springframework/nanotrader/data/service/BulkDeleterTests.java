@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.domain.test.QuoteDataOnDemand;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Deletes generated users over the three shards of ShardingTests, one row per chunk so every delete
+ * takes several. Not transactional, since every chunk commits on its own.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:/META-INF/spring/applicationContext*.xml",
+		"classpath:/org/springframework/nanotrader/data/shard/ShardingTests-context.xml" })
+public class BulkDeleterTests {
+
+	private static final String[] TABLES = { "ACCOUNT_COUNTER", "ORDERS", "HOLDING", "ACCOUNT", "ACCOUNTPROFILE" };
+
+	@Autowired
+	private BulkDeleter deleter;
+
+	@Autowired
+	private BulkDataGenerator generator;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private QuoteDataOnDemand quoteDataOnDemand;
+
+	@Autowired
+	private QuoteService quoteService;
+
+	@Autowired
+	private ShardedDataSource shardedDataSource;
+
+	@Autowired
+	private Shards shards;
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	@Before
+	public void generateUsers() {
+		generator.setThreads(2);
+		generator.setChunkSize(4);
+		generator.generate(5, Arrays.asList(quote(0, "CHEAP", 10), quote(1, "DEAR", 2000)), null);
+		deleter.setChunkSize(1);
+	}
+
+	@After
+	public void deleteAll() {
+		deleter.setChunkSize(10000);
+		deleter.setTruncate(true);
+		tradingService.deleteAll();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			shard(shard).update("DELETE FROM QUOTE");
+		}
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	public void testDeleteAccountRemovesAllItsRows() {
+		// profile, account, a holding, two orders and six counters
+		assertEquals(11, deleter.deleteAccount("user3"));
+		assertNull(tradingService.findAccountByUserId("user3"));
+		assertEquals(5 * 11, rows());
+		assertNotNull(tradingService.login("user4", "user4"));
+		assertEquals(0, deleter.deleteAccount("user3"));
+	}
+
+	@Test
+	public void testDeleteAllInChunks() {
+		deleter.setTruncate(false);
+		assertEquals(6 * 11, deleter.deleteAll());
+		assertEquals(0, rows());
+	}
+
+	@Test
+	public void testDeleteAllTruncatesLeafTables() {
+		deleter.setChunkSize(2);
+		// counters and orders are truncated, not counted
+		assertEquals(6 * 3, deleter.deleteAll());
+		assertEquals(0, rows());
+	}
+
+	private long rows() {
+		long rows = 0;
+		for (String table : TABLES) {
+			for (int shard = 0; shard < shards.getCount(); shard++) {
+				rows += shard(shard).queryForObject("SELECT count(*) FROM " + table, Long.class);
+			}
+		}
+		return rows;
+	}
+
+	private Quote quote(int index, String symbol, int price) {
+		Quote quote = quoteDataOnDemand.getNewTransientQuote(900 + index);
+		quote.setSymbol(symbol);
+		quote.setPrice(BigDecimal.valueOf(price));
+		return quoteService.updateQuote(quote);
+	}
+
+	private JdbcTemplate shard(int shard) {
+		return new JdbcTemplate(shardedDataSource.getShard(shard));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+import org.springframework.nanotrader.data.repository.LoginStatisticsRepository;
+import org.springframework.nanotrader.data.shard.Shards;
+
+/**
+ * Records logins and logouts from several threads while another flushes continuously, and checks that
+ * every count recorded is written exactly once. The repository is a plain proxy rather than a mock, which
+ * would record every call and serialize the flushes.
+ */
+public class LoginStatisticsWriterTests {
+
+	private static final int ACCOUNTS = 2000;
+
+	private static final int THREADS = 8;
+
+	private static final int RECORDS = 400000;
+
+	private final AtomicLongArray logins = new AtomicLongArray(ACCOUNTS);
+
+	private final AtomicLongArray logouts = new AtomicLongArray(ACCOUNTS);
+
+	@Test
+	public void testNoCountIsLostToAConcurrentFlush() throws Exception {
+		LoginStatisticsRepository loginStatisticsRepository = (LoginStatisticsRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { LoginStatisticsRepository.class }, new InvocationHandler() {
+					@SuppressWarnings("unchecked")
+					public Object invoke(Object proxy, Method method, Object[] arguments) {
+						if (method.getName().equals("addLoginStatistics")) {
+							return write((Integer) arguments[0], (Integer) arguments[1], (List<Integer>) arguments[3]);
+						}
+						if (method.getName().equals("addLogoutCount")) {
+							return write(0, (Integer) arguments[0], (List<Integer>) arguments[1]);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		final LoginStatisticsWriter writer = new LoginStatisticsWriter();
+		writer.setLoginStatisticsRepository(loginStatisticsRepository);
+		writer.setShards(new Shards() {
+			@Override
+			public int shardOf(Integer accountId) {
+				return accountId % 2;
+			}
+
+			@Override
+			public <T> T onShard(int shard, ShardCallback<T> callback) {
+				return callback.doInShard(shard);
+			}
+		});
+		writer.setBatchSize(50);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean recording = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+		try {
+			Future<?> flusher = executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					start.await();
+					while (recording.get()) {
+						writer.flush();
+					}
+					return null;
+				}
+			});
+			List<Future<?>> recorders = new ArrayList<Future<?>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int thread = t;
+				recorders.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < RECORDS; i++) {
+							Integer accountId = (thread * 7919 + i) % ACCOUNTS;
+							if (i % 3 == 0) {
+								writer.recordLogout(accountId);
+							}
+							else {
+								writer.recordLogin(accountId, new Date());
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> recorder : recorders) {
+				recorder.get();
+			}
+			recording.set(false);
+			flusher.get();
+		}
+		finally {
+			executor.shutdown();
+		}
+		writer.flush();
+
+		long expectedLogouts = THREADS * ((RECORDS + 2) / 3);
+		long writtenLogins = 0;
+		long writtenLogouts = 0;
+		for (int accountId = 0; accountId < ACCOUNTS; accountId++) {
+			writtenLogins += logins.get(accountId);
+			writtenLogouts += logouts.get(accountId);
+		}
+		assertEquals(THREADS * RECORDS - expectedLogouts, writtenLogins);
+		assertEquals(expectedLogouts, writtenLogouts);
+		assertEquals(0, writer.getPendingCount());
+	}
+
+	private int write(int loginCount, int logoutCount, List<Integer> accountIds) {
+		for (Integer accountId : accountIds) {
+			logins.addAndGet(accountId, loginCount);
+			logouts.addAndGet(accountId, logoutCount);
+		}
+		return accountIds.size();
+	}
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.shard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.AdminJob;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.domain.test.AccountDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.AccountprofileDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.QuoteDataOnDemand;
+import org.springframework.nanotrader.data.repository.AccountCounterRepository;
+import org.springframework.nanotrader.data.repository.AdminJobRepository;
+import org.springframework.nanotrader.data.service.LoginStatisticsWriter;
+import org.springframework.nanotrader.data.service.QuoteService;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the trading service over three H2 shards. Not transactional, since admin operations commit on
+ * each shard separately; every test starts from empty shards.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:/META-INF/spring/applicationContext*.xml",
+		"classpath:/org/springframework/nanotrader/data/shard/ShardingTests-context.xml" })
+public class ShardingTests {
+
+	private static final int ACCOUNTS = 6;
+
+	@Autowired
+	private AccountDataOnDemand accountDataOnDemand;
+
+	@Autowired
+	private AccountprofileDataOnDemand accountprofileDataOnDemand;
+
+	@Autowired
+	private QuoteDataOnDemand quoteDataOnDemand;
+
+	@Autowired
+	private QuoteService quoteService;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private AccountCounterRepository accountCounterRepository;
+
+	@Autowired
+	private LoginStatisticsWriter loginStatisticsWriter;
+
+	@Autowired
+	private AdminJobRepository adminJobRepository;
+
+	@Autowired
+	private ShardedDataSource shardedDataSource;
+
+	@Autowired
+	private Shards shards;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	private List<Accountprofile> profiles = new ArrayList<Accountprofile>();
+
+	private Quote quote;
+
+	@Before
+	public void createAccountsAndQuote() {
+		for (int i = 0; i < ACCOUNTS; i++) {
+			Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(600 + i);
+			profile.setUserid("shard" + i);
+			profile.setPasswd("secret" + i);
+			Account account = accountDataOnDemand.getNewTransientAccount(600 + i);
+			account.setBalance(BigDecimal.valueOf(1000000));
+			profile.setAccounts(Collections.singleton(account));
+			profiles.add(tradingService.saveAccountProfile(profile));
+		}
+		quote = quoteDataOnDemand.getNewTransientQuote(600);
+		quote.setSymbol("SHARD");
+		quote.setPrice(BigDecimal.valueOf(10));
+		quote = quoteService.updateQuote(quote);
+	}
+
+	@After
+	public void deleteAll() {
+		tradingService.deleteAll();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			shard(shard).update("DELETE FROM QUOTE");
+		}
+		shard(ShardedDataSource.HOME_SHARD).update("DELETE FROM ADMIN_JOB");
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	public void testAccountsAreWrittenToTheirShardOnly() {
+		Set<Integer> used = new HashSet<Integer>();
+		for (Accountprofile profile : profiles) {
+			Integer accountId = account(profile).getAccountid();
+			int home = shards.shardOf(accountId);
+			used.add(home);
+			for (int shard = 0; shard < shards.getCount(); shard++) {
+				int expected = shard == home ? 1 : 0;
+				assertEquals(expected, shard(shard).queryForInt("SELECT count(*) FROM ACCOUNT WHERE accountid = ?", accountId));
+				assertEquals(expected, shard(shard).queryForInt("SELECT count(*) FROM ACCOUNTPROFILE WHERE profileid = ?",
+						profile.getProfileid()));
+			}
+		}
+		assertEquals(shards.getCount(), used.size());
+	}
+
+	@Test
+	public void testQuotesAreCopiedToEveryShard() {
+		quote.setPrice(BigDecimal.valueOf(12));
+		tradingService.updateQuote(quote);
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			assertEquals(0, BigDecimal.valueOf(12).compareTo(
+					shard(shard).queryForObject("SELECT price FROM QUOTE WHERE symbol = ?", BigDecimal.class, "SHARD")));
+		}
+	}
+
+	@Test
+	public void testAccountScopedOperationsUseTheAccountsShard() {
+		for (Accountprofile profile : profiles) {
+			Account account = account(profile);
+			Order order = buy(account);
+			assertEquals(0, BigDecimal.valueOf(10).compareTo(order.getPrice()));
+
+			Integer accountId = account.getAccountid();
+			assertEquals(1, tradingService.findOrders(accountId, 0, 10).size());
+			assertEquals(1, tradingService.findHoldingsByAccountId(accountId, 0, 10).size());
+			assertEquals(Long.valueOf(1), tradingService.findCountOfOrders(accountId, null));
+			assertEquals(accountId, tradingService.findAccount(accountId).getAccountid());
+			assertEquals(1, shard(shards.shardOf(accountId)).queryForInt("SELECT count(*) FROM ORDERS WHERE account_accountid = ?",
+					accountId));
+		}
+	}
+
+	@Test
+	public void testConcurrentFirstIncrementsOfANewAccount() throws Exception {
+		final Integer accountId = account(profiles.get(0)).getAccountid();
+		final int shard = shards.shardOf(accountId);
+		// the counters exist from the start, so the increments below only ever update them
+		assertEquals(AccountCounterRepository.NAMES.size(),
+				shard(shard).queryForInt("SELECT count(*) FROM ACCOUNT_COUNTER WHERE account_accountid = ?", accountId));
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> increments = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 8; i++) {
+				increments.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						return shards.inShard(shard, new Shards.ShardCallback<Void>() {
+							public Void doInShard(int shard) {
+								accountCounterRepository.increment(accountId, AccountCounterRepository.ORDERS + ":open", 1);
+								return null;
+							}
+						});
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> increment : increments) {
+				increment.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(Long.valueOf(8), tradingService.findCountOfOrders(accountId, "open"));
+	}
+
+	@Test
+	public void testConcurrentSweepersCountEachOrderOnce() throws Exception {
+		for (Accountprofile profile : profiles) {
+			for (int i = 0; i < 3; i++) {
+				buy(account(profile));
+			}
+		}
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		int completed = 0;
+		try {
+			List<Future<Integer>> sweeps = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 4; i++) {
+				sweeps.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						start.await();
+						return tradingService.completeClosedOrders(100);
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Integer> sweep : sweeps) {
+				completed += sweep.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(3 * ACCOUNTS, completed);
+		for (Accountprofile profile : profiles) {
+			Integer accountId = account(profile).getAccountid();
+			assertEquals(Long.valueOf(0), tradingService.findCountOfOrders(accountId, "closed"));
+			assertEquals(Long.valueOf(3), tradingService.findCountOfOrders(accountId, "completed"));
+		}
+	}
+
+	@Test
+	public void testUserLookupsFindTheShard() {
+		for (Accountprofile profile : profiles) {
+			Accountprofile loggedIn = tradingService.login(profile.getUserid(), profile.getPasswd());
+			assertNotNull(loggedIn);
+			assertEquals(profile.getProfileid(), tradingService.findByAuthtoken(loggedIn.getAuthtoken()).getProfileid());
+			assertEquals(profile.getProfileid(), tradingService.findAccountByUserId(profile.getUserid()).getProfileid());
+			assertEquals(account(profile).getAccountid(), tradingService.findAccountByProfile(profile).getAccountid());
+		}
+	}
+
+	@Test
+	public void testShardDirectoryNamesTheShardOfUsersProfilesAndTokens() {
+		JdbcTemplate home = shard(ShardedDataSource.HOME_SHARD);
+		String query = "SELECT shard FROM SHARD_DIRECTORY WHERE directorykey = ?";
+		for (Accountprofile profile : profiles) {
+			int shard = shards.shardOf(account(profile).getAccountid());
+			assertEquals(shard, home.queryForInt(query, ShardDirectory.userKey(profile.getUserid())));
+			assertEquals(shard, home.queryForInt(query, ShardDirectory.profileKey(profile.getProfileid())));
+			String token = tradingService.login(profile.getUserid(), profile.getPasswd()).getAuthtoken();
+			assertEquals(shard, home.queryForInt(query, ShardDirectory.tokenKey(token)));
+			String next = tradingService.login(profile.getUserid(), profile.getPasswd()).getAuthtoken();
+			assertEquals(0, home.queryForInt("SELECT count(*) FROM SHARD_DIRECTORY WHERE directorykey = ?",
+					ShardDirectory.tokenKey(token)));
+			tradingService.logout(next);
+			assertEquals(0, home.queryForInt("SELECT count(*) FROM SHARD_DIRECTORY WHERE directorykey = ?",
+					ShardDirectory.tokenKey(next)));
+		}
+
+		// lookups go by the directory alone while it has an entry ...
+		Accountprofile first = profiles.get(0);
+		int shard = shards.shardOf(account(first).getAccountid());
+		home.update("UPDATE SHARD_DIRECTORY SET shard = ? WHERE directorykey = ?", (shard + 1) % shards.getCount(),
+				ShardDirectory.userKey(first.getUserid()));
+		assertNull(tradingService.findAccountByUserId(first.getUserid()));
+
+		// ... and ask every shard for one it has lost, recording it again
+		home.update("DELETE FROM SHARD_DIRECTORY");
+		assertEquals(first.getProfileid(), tradingService.findAccountByUserId(first.getUserid()).getProfileid());
+		assertEquals(shard, home.queryForInt(query, ShardDirectory.userKey(first.getUserid())));
+
+		tradingService.deleteAccountByUserid(first.getUserid());
+		assertEquals(0, home.queryForInt("SELECT count(*) FROM SHARD_DIRECTORY WHERE directorykey = ?",
+				ShardDirectory.userKey(first.getUserid())));
+	}
+
+	@Test
+	public void testLoginStatisticsAreWrittenToTheAccountsShard() {
+		for (Accountprofile profile : profiles) {
+			tradingService.login(profile.getUserid(), profile.getPasswd());
+		}
+		loginStatisticsWriter.flush();
+		for (Accountprofile profile : profiles) {
+			Integer accountId = account(profile).getAccountid();
+			assertEquals(1, shard(shards.shardOf(accountId)).queryForInt("SELECT logincount FROM ACCOUNT WHERE accountid = ?",
+					accountId));
+		}
+	}
+
+	@Test
+	public void testUnboundWritesAreRefused() {
+		try {
+			new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+				public Integer doInTransaction(TransactionStatus status) {
+					return new JdbcTemplate(dataSource).update("UPDATE QUOTE SET price = 0");
+				}
+			});
+			fail("An unbound write must not reach every shard");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		shards.replicated(new Shards.ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return new JdbcTemplate(dataSource).update("UPDATE QUOTE SET price = 12 WHERE symbol = 'SHARD'");
+			}
+		});
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			assertEquals(0, BigDecimal.valueOf(12).compareTo(
+					shard(shard).queryForObject("SELECT price FROM QUOTE WHERE symbol = ?", BigDecimal.class, "SHARD")));
+		}
+	}
+
+	@Test
+	public void testExclusiveJobGroupIsHeldUntilTheJobFinishes() {
+		final AdminJob running = insertJob("dataset");
+		try {
+			insertJob("dataset");
+			fail("Two unfinished jobs of the group");
+		}
+		catch (DataIntegrityViolationException e) {
+			// expected
+		}
+		insertJob(null);
+		insertJob(null);
+		shards.inShard(ShardedDataSource.HOME_SHARD, new Shards.ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return adminJobRepository.updateFinished(running.getJobid(), "completed", 0L, 0L, null, new Date());
+			}
+		});
+		assertNotNull(insertJob("dataset").getJobid());
+		assertEquals(4, shard(ShardedDataSource.HOME_SHARD).queryForInt("SELECT count(*) FROM ADMIN_JOB"));
+	}
+
+	@Test
+	public void testExpiredJobLeaseReleasesItsGroup() {
+		long now = System.currentTimeMillis();
+		insertJob("dataset", new Date(now - 120000));
+		insertJob("perftest", new Date(now));
+		final Date expiredBefore = new Date(now - 60000);
+		assertEquals(1, shards.inShard(ShardedDataSource.HOME_SHARD, new Shards.ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return adminJobRepository.abandonExpired(expiredBefore, "failed", null, new Date());
+			}
+		}).intValue());
+		insertJob("dataset", new Date(now));
+		try {
+			insertJob("perftest", new Date(now));
+			fail("The perftest job still holds its lease");
+		}
+		catch (DataIntegrityViolationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNestedShardTransactionsLeaveTheOuterBindingInPlace() {
+		final Integer accountId = account(profiles.get(0)).getAccountid();
+		final int shard = shards.shardOf(accountId);
+		final int other = (shard + 1) % shards.getCount();
+		new TransactionTemplate(transactionManager).execute(new TransactionCallback<Void>() {
+			public Void doInTransaction(TransactionStatus status) {
+				shards.bind(shard);
+				assertEquals(0, shards.inShard(other, new Shards.ShardCallback<Integer>() {
+					public Integer doInShard(int shard) {
+						return new JdbcTemplate(dataSource).queryForInt("SELECT count(*) FROM ACCOUNT WHERE accountid = ?",
+								accountId);
+					}
+				}).intValue());
+				shards.replicated(new Shards.ShardCallback<Integer>() {
+					public Integer doInShard(int shard) {
+						return new JdbcTemplate(dataSource).update("UPDATE QUOTE SET price = 11 WHERE symbol = 'SHARD'");
+					}
+				});
+				assertEquals(Integer.valueOf(shard), ShardContext.current());
+				assertEquals(1, new JdbcTemplate(dataSource).queryForInt("SELECT count(*) FROM ACCOUNT WHERE accountid = ?",
+						accountId));
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testAdminOperationsRunOnEveryShard() {
+		for (Accountprofile profile : profiles) {
+			buy(account(profile));
+		}
+		assertEquals(ACCOUNTS, tradingService.completeClosedOrders(100));
+
+		tradingService.deleteAccountByUserid(profiles.get(0).getUserid());
+		tradingService.deleteAll();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			assertEquals(0, shard(shard).queryForInt("SELECT count(*) FROM ACCOUNT"));
+			assertEquals(0, shard(shard).queryForInt("SELECT count(*) FROM ORDERS"));
+			assertEquals(1, shard(shard).queryForInt("SELECT count(*) FROM QUOTE"));
+		}
+	}
+
+	private Order buy(Account account) {
+		Order order = new Order();
+		order.setAccountAccountid(account);
+		order.setQuote(quote);
+		order.setOrdertype(TradingService.ORDER_TYPE_BUY);
+		order.setQuantity(BigDecimal.ONE);
+		return tradingService.saveOrder(order);
+	}
+
+	private AdminJob insertJob(String exclusiveGroup) {
+		return insertJob(exclusiveGroup, new Date());
+	}
+
+	private AdminJob insertJob(String exclusiveGroup, Date heartbeat) {
+		final AdminJob job = new AdminJob();
+		job.setType("test");
+		job.setExclusivegroup(exclusiveGroup);
+		job.setCreated(new Date());
+		job.setHeartbeat(heartbeat);
+		return shards.inShard(ShardedDataSource.HOME_SHARD, new Shards.ShardCallback<AdminJob>() {
+			public AdminJob doInShard(int shard) {
+				return adminJobRepository.saveAndFlush(job);
+			}
+		});
+	}
+
+	private Account account(Accountprofile profile) {
+		return profile.getAccounts().iterator().next();
+	}
+
+	private JdbcTemplate shard(int shard) {
+		return new JdbcTemplate(shardedDataSource.getShard(shard));
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.domain.test.AccountDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.AccountprofileDataOnDemand;
+import org.springframework.nanotrader.data.domain.test.QuoteDataOnDemand;
+import org.springframework.nanotrader.data.service.BulkDataGenerator;
+import org.springframework.nanotrader.data.service.QuoteService;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Exports users generated over the three shards of ShardingTests and imports them back. Not
+ * transactional, since every part commits on its own; each test deletes what it created.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:/META-INF/spring/applicationContext*.xml",
+		"classpath:/org/springframework/nanotrader/data/shard/ShardingTests-context.xml" })
+public class DatasetSnapshotTests {
+
+	private static final String[] TABLES = { "QUOTE", "ACCOUNTPROFILE", "ACCOUNT", "HOLDING", "ORDERS", "ORDERS_ARCHIVE" };
+
+	// two quotes, and a profile, an account, a holding and two orders for each of the ten users
+	private static final long ROWS = 52;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Autowired
+	private DatasetSnapshot snapshot;
+
+	@Autowired
+	private BulkDataGenerator generator;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private AccountDataOnDemand accountDataOnDemand;
+
+	@Autowired
+	private AccountprofileDataOnDemand accountprofileDataOnDemand;
+
+	@Autowired
+	private QuoteDataOnDemand quoteDataOnDemand;
+
+	@Autowired
+	private QuoteService quoteService;
+
+	@Autowired
+	private ShardedDataSource shardedDataSource;
+
+	@Autowired
+	private Shards shards;
+
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+
+	@Before
+	public void generateUsers() {
+		List<Quote> quotes = Arrays.asList(quote(0, "CHEAP", 10), quote(1, "DEAR", 2000));
+		generator.setThreads(2);
+		generator.setChunkSize(4);
+		generator.generate(9, quotes, null);
+		snapshot.setPartRows(3);
+		snapshot.setBatchSize(2);
+	}
+
+	@After
+	public void deleteAll() {
+		tradingService.deleteAll();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			shard(shard).update("DELETE FROM QUOTE");
+		}
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	public void testImportReplacesTheDataset() throws Exception {
+		List<Integer> before = counts();
+		File directory = folder.newFolder("export");
+		assertEquals(ROWS, snapshot.exportTo(directory, null).getRows());
+		assertTrue(new File(directory, "ORDERS-0-00000.csv.gz").exists());
+		assertTrue(new File(directory, DatasetSnapshot.MANIFEST).exists());
+		// a complete export is left alone
+		assertEquals(ROWS, snapshot.exportTo(directory, null).getRows());
+
+		int maxAccountId = 0;
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			maxAccountId = Math.max(maxAccountId,
+					shard(shard).queryForObject("SELECT coalesce(max(accountid), 0) FROM ACCOUNT", Integer.class));
+		}
+		shard(ShardedDataSource.HOME_SHARD).update(
+				"UPDATE hibernate_sequences SET sequence_next_hi_value = 1 WHERE upper(sequence_name) = 'ACCOUNT'");
+		assertEquals(ROWS, snapshot.importFrom(directory, null).getRows());
+
+		assertEquals(before, counts());
+		tradingService.repairAccountCounters();
+		Accountprofile profile = tradingService.login("user5", "user5");
+		assertNotNull(profile);
+		Integer accountId = tradingService.findAccountByProfile(profile).getAccountid();
+		assertEquals(Long.valueOf(1), tradingService.findCountOfOrders(accountId, "completed"));
+		assertEquals(0, new BigDecimal("989989.50").compareTo(tradingService.findAccount(accountId).getBalance()));
+
+		// the id sequences were moved past the imported rows
+		Accountprofile created = accountprofileDataOnDemand.getNewTransientAccountprofile(800);
+		created.setUserid("afterimport");
+		Account account = accountDataOnDemand.getNewTransientAccount(800);
+		created.setAccounts(Collections.singleton(account));
+		tradingService.saveAccountProfile(created);
+		assertTrue(account.getAccountid() > maxAccountId);
+	}
+
+	@Test
+	public void testInterruptedExportAndImportResume() throws Exception {
+		List<Integer> before = counts();
+		File directory = folder.newFolder("resume");
+		try {
+			snapshot.exportTo(directory, new Interruption("ACCOUNT"));
+			fail("export was not interrupted");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("interrupted", e.getMessage());
+		}
+		List<String> tables = new ArrayList<String>();
+		assertEquals(ROWS, snapshot.exportTo(directory, new Recorder(tables)).getRows());
+		assertEquals("ACCOUNT", tables.get(0));
+
+		try {
+			snapshot.importFrom(directory, new Interruption("HOLDING"));
+			fail("import was not interrupted");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("interrupted", e.getMessage());
+		}
+		// the part imported when the import was interrupted is skipped, not inserted twice
+		assertEquals(ROWS, snapshot.importFrom(directory, null).getRows());
+		assertEquals(before, counts());
+	}
+
+	@Test
+	public void testArchivedOrdersAreExportedAndImported() throws Exception {
+		assertEquals(20, tradingService.archiveOrders(new Date(System.currentTimeMillis() + 86400000L), 100));
+		List<Integer> before = counts();
+		List<List<Map<String, Object>>> archived = archivedOrders();
+		File directory = folder.newFolder("archive");
+		// archiving moves the orders, so the dataset holds as many rows as before
+		assertEquals(ROWS, snapshot.exportTo(directory, null).getRows());
+		assertTrue(new File(directory, "ORDERS_ARCHIVE-0-00000.csv.gz").exists());
+
+		int maxOrderId = 0;
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			maxOrderId = Math.max(maxOrderId,
+					shard(shard).queryForObject("SELECT coalesce(max(orderid), 0) FROM ORDERS_ARCHIVE", Integer.class));
+		}
+		shard(ShardedDataSource.HOME_SHARD).update(
+				"UPDATE hibernate_sequences SET sequence_next_hi_value = 1 WHERE upper(sequence_name) = 'ORDERS'");
+		assertEquals(ROWS, snapshot.importFrom(directory, null).getRows());
+
+		assertEquals(before, counts());
+		assertEquals(archived, archivedOrders());
+		// ORDERS is empty, so only the archive moved the order ids past the imported ones
+		tradingService.repairAccountCounters();
+		Accountprofile profile = tradingService.login("user5", "user5");
+		Order order = new Order();
+		order.setAccountAccountid(tradingService.findAccountByProfile(profile));
+		order.setQuote(tradingService.findQuoteBySymbol("CHEAP"));
+		order.setOrdertype(TradingService.ORDER_TYPE_BUY);
+		order.setQuantity(BigDecimal.ONE);
+		assertTrue(tradingService.saveOrder(order).getOrderid() > maxOrderId);
+	}
+
+	@Test
+	public void testCsvRoundTrip() throws Exception {
+		File file = folder.newFile("round-trip.csv.gz");
+		CsvWriter writer = new CsvWriter(file);
+		writer.writeRow(new Object[] { 1, "a, \"quoted\"\nline", null, "", new BigDecimal("1E+3"),
+				new java.sql.Timestamp(1234567890123L) });
+		writer.writeRow(new Object[] { 2 });
+		writer.close();
+
+		CsvReader reader = new CsvReader(file);
+		String[] row = reader.readRow();
+		assertEquals(Arrays.asList("1", "a, \"quoted\"\nline", null, "", "1000", "1234567890123"), Arrays.asList(row));
+		assertEquals(Arrays.asList("2"), Arrays.asList(reader.readRow()));
+		assertNull(reader.readRow());
+		reader.close();
+	}
+
+	/**
+	 * Rows per table and shard.
+	 */
+	private List<Integer> counts() {
+		List<Integer> counts = new ArrayList<Integer>();
+		for (String table : TABLES) {
+			for (int shard = 0; shard < shards.getCount(); shard++) {
+				counts.add(shard(shard).queryForObject("SELECT count(*) FROM " + table, Integer.class));
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * The archived orders of each shard, in orderid order.
+	 */
+	private List<List<Map<String, Object>>> archivedOrders() {
+		List<List<Map<String, Object>>> rows = new ArrayList<List<Map<String, Object>>>();
+		for (int shard = 0; shard < shards.getCount(); shard++) {
+			rows.add(shard(shard).queryForList("SELECT * FROM ORDERS_ARCHIVE ORDER BY orderid"));
+		}
+		return rows;
+	}
+
+	private Quote quote(int index, String symbol, int price) {
+		Quote quote = quoteDataOnDemand.getNewTransientQuote(800 + index);
+		quote.setSymbol(symbol);
+		quote.setPrice(BigDecimal.valueOf(price));
+		return quoteService.updateQuote(quote);
+	}
+
+	private JdbcTemplate shard(int shard) {
+		return new JdbcTemplate(shardedDataSource.getShard(shard));
+	}
+
+	/**
+	 * Fails the first part of the table, after it has been written but before it is recorded, as a
+	 * crash would.
+	 */
+	private static class Interruption implements DatasetSnapshot.ProgressListener {
+
+		private final String table;
+
+		Interruption(String table) {
+			this.table = table;
+		}
+
+		public void partDone(String table, long rows) {
+			if (this.table.equals(table)) {
+				throw new IllegalStateException("interrupted");
+			}
+		}
+	}
+
+	private static class Recorder implements DatasetSnapshot.ProgressListener {
+
+		private final List<String> tables;
+
+		Recorder(List<String> tables) {
+			this.tables = tables;
+		}
+
+		public void partDone(String table, long rows) {
+			tables.add(table);
+		}
+	}
+}
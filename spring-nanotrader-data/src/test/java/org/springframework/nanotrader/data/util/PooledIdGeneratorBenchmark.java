@@ -0,0 +1,220 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.EJB3NamingStrategy;
+import org.hibernate.cfg.Environment;
+import org.hibernate.cfg.NamingStrategy;
+import org.hibernate.cfg.ObjectNameNormalizer;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.MultipleHiLoPerTableGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.impl.SessionFactoryImpl;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.IntegerType;
+
+/**
+ * Compares concurrent insert throughput with the hi/lo generator the entities used before (blocks of
+ * 32768 ids behind a single lock), with a table generator that reads and updates its row on every insert,
+ * and with {@link PooledIdGenerator}. Every insert opens a session, takes an id and inserts a row in its
+ * own transaction. The generators use their own BENCH_SEQUENCES table. Runs on an in-memory H2 database
+ * unless a JDBC url is given:
+ * <code>java ... PooledIdGeneratorBenchmark [threads] [seconds] [allocation size] [url user password dialect]</code>.
+ */
+public class PooledIdGeneratorBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int allocationSize = args.length > 2 ? Integer.parseInt(args[2]) : PooledIdGenerator.DEFAULT_ALLOCATION_SIZE;
+
+		Configuration configuration = new Configuration();
+		configuration.setProperty(Environment.URL, args.length > 3 ? args[3]
+				: "jdbc:h2:mem:idbench;MVCC=TRUE;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1");
+		configuration.setProperty(Environment.USER, args.length > 4 ? args[4] : "sa");
+		configuration.setProperty(Environment.PASS, args.length > 5 ? args[5] : "");
+		configuration.setProperty(Environment.DIALECT, args.length > 6 ? args[6] : "org.hibernate.dialect.H2Dialect");
+		configuration.setProperty(Environment.POOL_SIZE, String.valueOf(threads * 2));
+		SessionFactory sessionFactory = configuration.buildSessionFactory();
+		try {
+			Dialect dialect = ((SessionFactoryImpl) sessionFactory).getDialect();
+			IdentifierGenerator legacy = legacyGenerator(dialect);
+			IdentifierGenerator everyInsert = pooledGenerator(dialect, "BENCH_TABLE", 1);
+			IdentifierGenerator pooled = pooledGenerator(dialect, "BENCH_POOLED", allocationSize);
+			createTables(sessionFactory, dialect, (TableGenerator) pooled);
+
+			run("warm-up", sessionFactory, legacy, threads, 2);
+			System.out.printf("hi/lo, max_lo 32767          : %,d inserts/s%n", run("hilo", sessionFactory, legacy, threads, seconds));
+			run("warm-up", sessionFactory, everyInsert, threads, 2);
+			System.out.printf("table, allocation size 1     : %,d inserts/s%n", run("table", sessionFactory, everyInsert, threads, seconds));
+			run("warm-up", sessionFactory, pooled, threads, 2);
+			System.out.printf("pooled-lo, allocation size %-2d: %,d inserts/s%n", allocationSize,
+					run("pooled", sessionFactory, pooled, threads, seconds));
+			System.out.printf("pooled-lo table accesses     : %,d%n", ((TableGenerator) pooled).getTableAccessCount());
+		}
+		finally {
+			sessionFactory.close();
+		}
+	}
+
+	private static IdentifierGenerator legacyGenerator(Dialect dialect) {
+		MultipleHiLoPerTableGenerator generator = new MultipleHiLoPerTableGenerator();
+		Properties params = params();
+		params.setProperty(MultipleHiLoPerTableGenerator.ID_TABLE, "BENCH_SEQUENCES");
+		params.setProperty(MultipleHiLoPerTableGenerator.PK_VALUE_NAME, "BENCH_HILO");
+		generator.configure(IntegerType.INSTANCE, params, dialect);
+		return generator;
+	}
+
+	private static IdentifierGenerator pooledGenerator(Dialect dialect, String segment, int allocationSize) {
+		PooledIdGenerator generator = new PooledIdGenerator();
+		Properties params = params();
+		params.setProperty(TableGenerator.TABLE_PARAM, "BENCH_SEQUENCES");
+		params.setProperty(TableGenerator.SEGMENT_VALUE_PARAM, segment);
+		params.setProperty(TableGenerator.INCREMENT_PARAM, String.valueOf(allocationSize));
+		generator.configure(IntegerType.INSTANCE, params, dialect);
+		return generator;
+	}
+
+	private static Properties params() {
+		Properties params = new Properties();
+		params.setProperty(PersistentIdentifierGenerator.TABLE, "BENCH_INSERTS");
+		params.setProperty(PersistentIdentifierGenerator.PK, "ID");
+		params.put(PersistentIdentifierGenerator.IDENTIFIER_NORMALIZER, new ObjectNameNormalizer() {
+
+			@Override
+			protected boolean isUseQuotedIdentifiersGlobally() {
+				return false;
+			}
+
+			@Override
+			protected NamingStrategy getNamingStrategy() {
+				return EJB3NamingStrategy.INSTANCE;
+			}
+		});
+		return params;
+	}
+
+	private static void createTables(SessionFactory sessionFactory, final Dialect dialect, final TableGenerator generator) {
+		Session session = sessionFactory.openSession();
+		try {
+			session.doWork(new Work() {
+
+				public void execute(Connection connection) throws SQLException {
+					connection.setAutoCommit(true);
+					String[] sql = { "DROP TABLE IF EXISTS BENCH_INSERTS", "DROP TABLE IF EXISTS BENCH_SEQUENCES",
+							"CREATE TABLE BENCH_INSERTS (ID INTEGER NOT NULL PRIMARY KEY, PAYLOAD VARCHAR(250))" };
+					for (String statement : sql) {
+						connection.createStatement().execute(statement);
+					}
+					for (String statement : generator.sqlCreateStrings(dialect)) {
+						connection.createStatement().execute(statement);
+					}
+				}
+			});
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private static long run(final String name, final SessionFactory sessionFactory, final IdentifierGenerator generator,
+			int threads, int seconds) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final AtomicLong inserts = new AtomicLong();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					long count = 0;
+					try {
+						while (System.nanoTime() < deadline) {
+							insert(sessionFactory, generator, name);
+							count++;
+						}
+					}
+					catch (Exception e) {
+						failure.compareAndSet(null, e);
+					}
+					inserts.addAndGet(count);
+					done.countDown();
+				}
+			}, name + "-" + t);
+			worker.start();
+		}
+		done.await();
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		clear(sessionFactory);
+		return inserts.get() / seconds;
+	}
+
+	private static void insert(SessionFactory sessionFactory, IdentifierGenerator generator, final String payload) {
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			final Integer id = (Integer) generator.generate((SessionImplementor) session, null);
+			session.doWork(new Work() {
+
+				public void execute(Connection connection) throws SQLException {
+					PreparedStatement insert = connection.prepareStatement("INSERT INTO BENCH_INSERTS (ID, PAYLOAD) VALUES (?, ?)");
+					try {
+						insert.setInt(1, id);
+						insert.setString(2, payload);
+						insert.executeUpdate();
+					}
+					finally {
+						insert.close();
+					}
+				}
+			});
+			transaction.commit();
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private static void clear(SessionFactory sessionFactory) {
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			session.createSQLQuery("DELETE FROM BENCH_INSERTS").executeUpdate();
+			transaction.commit();
+		}
+		finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.data.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.cfg.EJB3NamingStrategy;
+import org.hibernate.cfg.NamingStrategy;
+import org.hibernate.cfg.ObjectNameNormalizer;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.type.IntegerType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/applicationContext*.xml")
+public class PooledIdGeneratorTests {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void createTables() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("pooled").build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE ITEM (ITEMID INTEGER PRIMARY KEY)");
+		jdbcTemplate.execute("CREATE TABLE hibernate_sequences (sequence_name VARCHAR(255), sequence_next_hi_value INTEGER)");
+	}
+
+	@After
+	public void dropTables() {
+		database.shutdown();
+	}
+
+	@Test
+	@Transactional
+	public void testEntitiesGetConsecutiveIds() {
+		Quote first = new Quote();
+		first.setSymbol("POOLED-1");
+		entityManager.persist(first);
+		Quote second = new Quote();
+		second.setSymbol("POOLED-2");
+		entityManager.persist(second);
+		assertEquals(first.getQuoteid() + 1, second.getQuoteid().intValue());
+	}
+
+	@Test
+	public void testFirstBlockStartsAfterExistingIds() throws Exception {
+		jdbcTemplate.update("INSERT INTO ITEM (ITEMID) VALUES (41)");
+		PooledIdGenerator generator = generator(50);
+		assertEquals(42, allocate(generator));
+		assertEquals(92, sequenceValue());
+		assertEquals(92, allocate(generator));
+		assertEquals(142, sequenceValue());
+	}
+
+	@Test
+	public void testExistingRowIsTheNextId() throws Exception {
+		// what migration V4 leaves for a hi/lo generator that was at hi 2
+		jdbcTemplate.update("INSERT INTO ITEM (ITEMID) VALUES (65535)");
+		jdbcTemplate.update("INSERT INTO hibernate_sequences VALUES ('ITEM', 65536)");
+		assertEquals(65536, allocate(generator(10)));
+		assertEquals(65546, sequenceValue());
+	}
+
+	@Test
+	public void testAllocationSizeFromSystemProperty() {
+		System.setProperty(PooledIdGenerator.ALLOCATION_SIZE_PROPERTY, "7");
+		try {
+			assertEquals(7, generator(null).getIncrementSize());
+		}
+		finally {
+			System.clearProperty(PooledIdGenerator.ALLOCATION_SIZE_PROPERTY);
+		}
+		assertEquals(PooledIdGenerator.DEFAULT_ALLOCATION_SIZE, generator(null).getIncrementSize());
+	}
+
+	private PooledIdGenerator generator(Integer allocationSize) {
+		Properties params = new Properties();
+		params.setProperty(PersistentIdentifierGenerator.TABLE, "ITEM");
+		params.setProperty(PersistentIdentifierGenerator.PK, "ITEMID");
+		if (allocationSize != null) {
+			params.setProperty(PooledIdGenerator.INCREMENT_PARAM, allocationSize.toString());
+		}
+		params.put(PersistentIdentifierGenerator.IDENTIFIER_NORMALIZER, new ObjectNameNormalizer() {
+
+			@Override
+			protected boolean isUseQuotedIdentifiersGlobally() {
+				return false;
+			}
+
+			@Override
+			protected NamingStrategy getNamingStrategy() {
+				return EJB3NamingStrategy.INSTANCE;
+			}
+		});
+		PooledIdGenerator generator = new PooledIdGenerator();
+		generator.configure(IntegerType.INSTANCE, params, new H2Dialect());
+		return generator;
+	}
+
+	private long allocate(PooledIdGenerator generator) throws Exception {
+		Connection connection = database.getConnection();
+		try {
+			return ((IntegralDataTypeHolder) generator.doWorkInCurrentTransaction(connection, null)).makeValue().longValue();
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	private long sequenceValue() {
+		return jdbcTemplate.queryForLong("SELECT sequence_next_hi_value FROM hibernate_sequences WHERE sequence_name = 'ITEM'");
+	}
+}
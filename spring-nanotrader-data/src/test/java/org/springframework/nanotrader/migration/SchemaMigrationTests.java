@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.nanotrader.data.migration.SchemaMigrator;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/applicationContext*.xml")
+public class SchemaMigrationTests {
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private SchemaMigrator schemaMigrator;
+
+	@Test
+	public void testMigrationsAreRecorded() throws Exception {
+		List<Map<String, Object>> applied = schemaMigrator.getAppliedMigrations();
+		assertEquals(6, applied.size());
+		assertEquals(1, ((Number) applied.get(0).get("VERSION")).intValue());
+		assertEquals(0, schemaMigrator.migrate());
+	}
+
+	/**
+	 * Guards against the indexes being dropped or a query changing shape so it no longer uses them.
+	 */
+	@Test
+	public void testQueryPlansUseIndexes() {
+		assertPlanUses("ACCOUNTPROFILE_AUTHTOKEN", "SELECT * FROM ACCOUNTPROFILE WHERE AUTHTOKEN = 'token'");
+		assertPlanUses("HOLDING_ACCOUNT_QUOTE", "SELECT * FROM HOLDING WHERE ACCOUNT_ACCOUNTID = 1 AND QUOTE_SYMBOL = 'symbol'");
+		assertPlanUses("ORDERS_ACCOUNT_STATUS_ID",
+				"SELECT * FROM ORDERS WHERE ACCOUNT_ACCOUNTID = 1 AND ORDERSTATUS = 'open' AND ORDERID > 10 ORDER BY ORDERID");
+		assertPlanUses("ORDERS_COMPLETIONDATE", "SELECT * FROM ORDERS WHERE COMPLETIONDATE < DATE '2012-01-01'");
+		assertPlanUses("ORDERS_ACCOUNT_ID", "SELECT * FROM ORDERS WHERE ACCOUNT_ACCOUNTID = 1 AND ORDERID < 10");
+	}
+
+	@Test
+	public void testChangedMigrationIsRejected() throws Exception {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("migration").build();
+		try {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+			jdbcTemplate.execute("CREATE TABLE ACCOUNTPROFILE (PROFILEID INTEGER, AUTHTOKEN VARCHAR(600))");
+			jdbcTemplate.execute("CREATE TABLE HOLDING (HOLDINGID INTEGER, ACCOUNT_ACCOUNTID INTEGER, QUOTE_SYMBOL VARCHAR(250))");
+			jdbcTemplate.execute("CREATE TABLE ORDERS (ORDERID INTEGER, ACCOUNT_ACCOUNTID INTEGER, ORDERSTATUS VARCHAR(250), COMPLETIONDATE DATE)");
+			jdbcTemplate.execute("CREATE TABLE hibernate_sequences (sequence_name VARCHAR(255), sequence_next_hi_value INTEGER)");
+			jdbcTemplate.update("INSERT INTO hibernate_sequences VALUES ('ORDERS', 3)");
+			SchemaMigrator migrator = new SchemaMigrator();
+			migrator.setDataSource(database);
+			assertEquals(6, migrator.migrate());
+			// the next hi value of the hi/lo generator is now the first id it never handed out
+			assertEquals(3 * 32768, jdbcTemplate.queryForInt("SELECT sequence_next_hi_value FROM hibernate_sequences"));
+
+			jdbcTemplate.update("UPDATE SCHEMA_VERSION SET CHECKSUM = 0 WHERE VERSION = 2");
+			try {
+				migrator.migrate();
+				fail("Expected a checksum mismatch");
+			}
+			catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("V2__"));
+			}
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	private void assertPlanUses(String index, String sql) {
+		String plan = new JdbcTemplate(dataSource).queryForObject("EXPLAIN " + sql, String.class);
+		assertTrue("Expected " + index + " in plan: " + plan, plan.contains(index));
+	}
+}
@@ -17,10 +17,12 @@ package org.springframework.nanotrader.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,12 +46,18 @@ import org.springframework.nanotrader.data.domain.test.AccountprofileDataOnDeman
 import org.springframework.nanotrader.data.domain.test.HoldingDataOnDemand;
 import org.springframework.nanotrader.data.domain.test.OrderDataOnDemand;
 import org.springframework.nanotrader.data.repository.AccountRepository;
+import org.springframework.nanotrader.data.repository.AuthTokenRevocationRepository;
 import org.springframework.nanotrader.data.repository.HoldingRepository;
+import org.springframework.nanotrader.data.repository.OrderRepository;
 import org.springframework.nanotrader.data.repository.QuoteRepository;
+import org.springframework.nanotrader.data.service.AuthTokenService;
+import org.springframework.nanotrader.data.service.LoginStatisticsWriter;
 import org.springframework.nanotrader.data.service.QuoteService;
 import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.nanotrader.data.shard.Shards;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -79,8 +87,17 @@ public class TradingServiceTests {
 	@Autowired
 	private AccountRepository accountRepository;
 
+	@Autowired
+	private AuthTokenRevocationRepository authTokenRevocationRepository;
+
+	@Autowired
+	private Shards shards;
+
 	@Autowired
 	HoldingRepository holdingRepository;
+
+	@Autowired
+	OrderRepository orderRepository;
 	
 	@Autowired
     QuoteRepository quoteRepository;
@@ -88,6 +105,12 @@ public class TradingServiceTests {
 	@Autowired
     QuoteService quoteService;
 
+	@Autowired
+	AuthTokenService authTokenService;
+
+	@Autowired
+	LoginStatisticsWriter loginStatisticsWriter;
+
 	@PersistenceContext
 	EntityManager entityManager;
 
@@ -129,6 +152,114 @@ public class TradingServiceTests {
 		assertEquals(profile.toString(), newProfile.toString());
 	}
 	
+	@Test
+	public void testSignedAuthTokenLoginAndLogout() {
+		Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(101);
+		profile.setUserid("signedtoken");
+		Account account = accountDataOnDemand.getNewTransientAccount(101);
+		profile.setAccounts(Collections.singleton(account));
+		tradingService.saveAccountProfile(profile);
+		entityManager.flush();
+		entityManager.clear();
+		authTokenService.setMode(AuthTokenService.SIGNED_MODE);
+		try {
+			String token = tradingService.login(profile.getUserid(), profile.getPasswd()).getAuthtoken();
+			AuthTokenService.Claims claims = authTokenService.verify(token);
+			assertNotNull(claims);
+			assertEquals(profile.getProfileid(), claims.getProfileId());
+			assertEquals(account.getAccountid(), claims.getAccountId());
+			assertEquals(profile.getUserid(), claims.getUserid());
+			assertEquals(AuthTokenService.roleFor(profile.getUserid()), claims.getRole());
+
+			assertNull(authTokenService.verify(token.substring(0, token.length() - 1) + (token.endsWith("0") ? "1" : "0")));
+			assertNull(authTokenService.verify(token.replaceFirst("^s1\\.\\d+", "s1.0")));
+
+			tradingService.logout(token);
+			assertNull(authTokenService.verify(token));
+		}
+		finally {
+			authTokenService.setMode("opaque");
+		}
+	}
+
+	@Test
+	public void testRevocationsReachOtherNodes() {
+		Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(103);
+		profile.setUserid("revokedtoken");
+		profile.setAccounts(Collections.singleton(accountDataOnDemand.getNewTransientAccount(103)));
+		tradingService.saveAccountProfile(profile);
+		entityManager.flush();
+		entityManager.clear();
+		AuthTokenService otherNode = new AuthTokenService();
+		ReflectionTestUtils.setField(otherNode, "revocationRepository", authTokenRevocationRepository);
+		ReflectionTestUtils.setField(otherNode, "shards", shards);
+		for (AuthTokenService node : new AuthTokenService[] { authTokenService, otherNode }) {
+			node.setMode(AuthTokenService.SIGNED_MODE);
+			node.setSecret("shared-secret");
+			node.init();
+		}
+		try {
+			String loggedOut = tradingService.login(profile.getUserid(), profile.getPasswd()).getAuthtoken();
+			assertNotNull(otherNode.verify(loggedOut));
+			tradingService.logout(loggedOut);
+			String deleted = tradingService.login(profile.getUserid(), profile.getPasswd()).getAuthtoken();
+			authTokenService.revokeProfile(profile.getProfileid());
+			assertNotNull(otherNode.verify(deleted));
+
+			otherNode.refreshRevocations();
+			assertNull(otherNode.verify(loggedOut));
+			assertNull(otherNode.verify(deleted));
+			// a node that starts later reads them all
+			AuthTokenService restarted = new AuthTokenService();
+			ReflectionTestUtils.setField(restarted, "revocationRepository", authTokenRevocationRepository);
+			ReflectionTestUtils.setField(restarted, "shards", shards);
+			restarted.setMode(AuthTokenService.SIGNED_MODE);
+			restarted.setSecret("shared-secret");
+			restarted.init();
+			assertNull(restarted.verify(loggedOut));
+			assertNull(restarted.verify(deleted));
+		}
+		finally {
+			authTokenService.setMode("opaque");
+			authTokenService.setSecret("");
+			authTokenService.init();
+		}
+	}
+
+	@Test
+	public void testLoginStatisticsAreWrittenInBatches() {
+		Accountprofile profile = accountprofileDataOnDemand.getNewTransientAccountprofile(102);
+		profile.setUserid("loginstatistics");
+		Account account = accountDataOnDemand.getNewTransientAccount(102);
+		profile.setAccounts(Collections.singleton(account));
+		tradingService.saveAccountProfile(profile);
+		entityManager.flush();
+		entityManager.clear();
+		loginStatisticsWriter.flush();
+		account = accountRepository.findOne(account.getAccountid());
+		int logins = account.getLogincount();
+		int logouts = account.getLogoutcount();
+		int version = account.getVersion();
+		entityManager.clear();
+
+		tradingService.login("loginstatistics", profile.getPasswd());
+		String token = tradingService.login("loginstatistics", profile.getPasswd()).getAuthtoken();
+		entityManager.flush();
+		entityManager.clear();
+		assertEquals(Integer.valueOf(logins), accountRepository.findOne(account.getAccountid()).getLogincount());
+		entityManager.clear();
+
+		tradingService.logout(token);
+		entityManager.flush();
+		assertEquals(1, loginStatisticsWriter.flush());
+		entityManager.clear();
+		account = accountRepository.findOne(account.getAccountid());
+		assertEquals(Integer.valueOf(logins + 2), account.getLogincount());
+		assertEquals(Integer.valueOf(logouts + 1), account.getLogoutcount());
+		assertNotNull(account.getLastlogin());
+		assertEquals(version, account.getVersion());
+	}
+
 	@Test
 	public void testFindHoldingsByAccount() {
 		Integer page = 0;
@@ -150,6 +281,29 @@ public class TradingServiceTests {
 		assertNotNull(map.remove(holding101.getHoldingid()));
 	}
 
+	@Test
+	public void testFindHoldingsByAccountAfter() {
+		Holding holding100 = holdingDataOnDemand.getNewTransientHolding(100);
+		Holding holding101 = holdingDataOnDemand.getNewTransientHolding(101);
+		Holding holding102 = holdingDataOnDemand.getNewTransientHolding(102);
+		holding101.setAccountAccountid(holding100.getAccountAccountid());
+		holding102.setAccountAccountid(holding100.getAccountAccountid());
+		holdingRepository.save(holding100);
+		holdingRepository.save(holding101);
+		holdingRepository.save(holding102);
+		entityManager.flush();
+		entityManager.clear(); // force reload
+
+		List<Holding> firstPage = tradingService.findHoldingsByAccountIdAfter(holding100.getAccountAccountid(), null, 2);
+		assertEquals(2, firstPage.size());
+		assertEquals(holding102.getHoldingid(), firstPage.get(0).getHoldingid());
+		assertEquals(holding101.getHoldingid(), firstPage.get(1).getHoldingid());
+
+		List<Holding> secondPage = tradingService.findHoldingsByAccountIdAfter(holding100.getAccountAccountid(), firstPage.get(1).getHoldingid(), 2);
+		assertEquals(1, secondPage.size());
+		assertEquals(holding100.getHoldingid(), secondPage.get(0).getHoldingid());
+	}
+
 	@Test
 	public void testSaveAndFindAndUpdateHolding() {
 		Holding holding = holdingDataOnDemand.getNewTransientHolding(100);
@@ -226,6 +380,147 @@ public class TradingServiceTests {
 		assertEquals(foundOrder.toString(), updatedOrder.toString());
 	}
 	
+	@Test
+	public void testOrderReadsDoNotCompleteClosedOrders() {
+		Order order = orderDataOnDemand.getNewTransientOrder(100);
+		order.setOrderstatus("closed");
+		orderRepository.save(order);
+		entityManager.flush();
+		entityManager.clear(); // force reload
+
+		Integer accountId = order.getAccountAccountid().getAccountid();
+		tradingService.findOrders(accountId, 0, 10);
+		tradingService.findOrdersByStatus(accountId, "closed", 0, 10);
+		entityManager.clear(); // force reload
+		assertEquals("closed", tradingService.findOrder(order.getOrderid(), accountId).getOrderstatus());
+
+		assertTrue(tradingService.completeClosedOrders(100) >= 1);
+		assertEquals("completed", tradingService.findOrder(order.getOrderid(), accountId).getOrderstatus());
+		assertEquals(0, tradingService.completeClosedOrders(100));
+	}
+	
+	@Test
+	public void testArchivedOrdersAreReadThrough() {
+		Account account = accountDataOnDemand.getRandomAccount();
+		Integer accountId = account.getAccountid();
+		for (int i = 0; i < 3; i++) {
+			Order order = orderDataOnDemand.getNewTransientOrder(200 + i);
+			order.setAccountAccountid(account);
+			orderRepository.save(order);
+		}
+		// make every order eligible for archiving
+		entityManager.createQuery("UPDATE Order o SET o.orderstatus = 'completed', o.completiondate = :completed")
+				.setParameter("completed", new java.sql.Date(System.currentTimeMillis() - 7L * 24 * 60 * 60 * 1000))
+				.executeUpdate();
+		entityManager.clear(); // force reload
+		tradingService.repairAccountCounters();
+
+		List<Order> before = tradingService.findOrders(accountId, 0, 100);
+		Long countBefore = tradingService.findCountOfOrders(accountId, null);
+		assertTrue(before.size() >= 3);
+
+		assertEquals(2, tradingService.archiveOrders(new Date(), 2));
+		while (tradingService.archiveOrders(new Date(), 2) > 0) {
+			// drain
+		}
+		assertEquals(Long.valueOf(0), orderRepository.findCountOfOrders(accountId));
+		assertEquals(countBefore, tradingService.findCountOfOrders(accountId, null));
+		assertEquals(countBefore, tradingService.findCountOfOrders(accountId, "completed"));
+
+		List<Order> after = tradingService.findOrders(accountId, 0, 100);
+		assertEquals(before.size(), after.size());
+		for (int i = 0; i < before.size(); i++) {
+			assertEquals(before.get(i).getOrderid(), after.get(i).getOrderid());
+			assertEquals(before.get(i).getQuote().getSymbol(), after.get(i).getQuote().getSymbol());
+		}
+		assertNotNull(tradingService.findOrder(before.get(0).getOrderid(), accountId));
+
+		// a new hot order comes first, followed by the newest archived ones
+		Order hot = orderDataOnDemand.getNewTransientOrder(210);
+		hot.setAccountAccountid(account);
+		hot.setOrderstatus("open");
+		orderRepository.save(hot);
+		entityManager.flush();
+
+		List<Order> firstPage = tradingService.findOrders(accountId, 0, 2);
+		assertEquals(hot.getOrderid(), firstPage.get(0).getOrderid());
+		assertEquals(before.get(0).getOrderid(), firstPage.get(1).getOrderid());
+		List<Order> secondPage = tradingService.findOrders(accountId, 1, 2);
+		assertEquals(before.get(1).getOrderid(), secondPage.get(0).getOrderid());
+		assertEquals(before.get(2).getOrderid(), secondPage.get(1).getOrderid());
+		List<Order> afterCursor = tradingService.findOrdersAfter(accountId, null, firstPage.get(1).getOrderid(), 2);
+		assertEquals(before.get(1).getOrderid(), afterCursor.get(0).getOrderid());
+		assertEquals(before.get(2).getOrderid(), afterCursor.get(1).getOrderid());
+		assertEquals(0, tradingService.archiveOrders(new Date(), 2));
+	}
+	
+	@Test
+	public void testStaleOpenOrderOnlyHoldsBackItsOwnAccount() {
+		Account stale = accountDataOnDemand.getSpecificAccount(0);
+		Account other = accountDataOnDemand.getSpecificAccount(1);
+		entityManager.createQuery("DELETE FROM Order o").executeUpdate();
+		Order open = orderDataOnDemand.getNewTransientOrder(220);
+		open.setAccountAccountid(stale);
+		orderRepository.save(open);
+		for (int i = 0; i < 2; i++) {
+			Order order = orderDataOnDemand.getNewTransientOrder(221 + i);
+			order.setAccountAccountid(i == 0 ? stale : other);
+			orderRepository.save(order);
+		}
+		entityManager.flush();
+		// every order but the oldest one of the stale account is old enough to archive
+		entityManager.createQuery("UPDATE Order o SET o.orderstatus = 'completed', o.completiondate = :completed WHERE o.orderid <> :open")
+				.setParameter("completed", new java.sql.Date(System.currentTimeMillis() - 7L * 24 * 60 * 60 * 1000))
+				.setParameter("open", open.getOrderid())
+				.executeUpdate();
+		entityManager.createQuery("UPDATE Order o SET o.orderstatus = 'open', o.completiondate = NULL WHERE o.orderid = :open")
+				.setParameter("open", open.getOrderid())
+				.executeUpdate();
+		entityManager.clear(); // force reload
+
+		assertEquals(1, tradingService.archiveOrders(new Date(), 10));
+		assertEquals(Long.valueOf(0), orderRepository.findCountOfOrders(other.getAccountid()));
+		assertEquals(Long.valueOf(2), orderRepository.findCountOfOrders(stale.getAccountid()));
+		assertEquals(0, tradingService.archiveOrders(new Date(), 10));
+	}
+	
+	@Test
+	public void testAccountCountersFollowOrderLifecycle() {
+		Account account = accountDataOnDemand.getRandomAccount();
+		account.setBalance(BigDecimal.valueOf(1000000000));
+		accountRepository.save(account);
+		entityManager.flush();
+		tradingService.repairAccountCounters();
+		Integer accountId = account.getAccountid();
+		Long orders = tradingService.findCountOfOrders(accountId, null);
+		Long completed = tradingService.findCountOfOrders(accountId, "completed");
+		Long holdings = tradingService.findCountOfHoldingsByAccountId(accountId);
+
+		Order order = orderDataOnDemand.getNewTransientOrder(300);
+		order.setAccountAccountid(account);
+		order.setOrdertype(TradingService.ORDER_TYPE_BUY);
+		order.setQuantity(BigDecimal.ONE);
+		tradingService.saveOrder(order);
+		entityManager.flush();
+
+		assertEquals(Long.valueOf(orders + 1), tradingService.findCountOfOrders(accountId, null));
+		assertEquals(Long.valueOf(1), tradingService.findCountOfOrders(accountId, "closed"));
+		assertEquals(Long.valueOf(0), tradingService.findCountOfOrders(accountId, "open"));
+		assertEquals(Long.valueOf(holdings + 1), tradingService.findCountOfHoldingsByAccountId(accountId));
+
+		while (tradingService.completeClosedOrders(100) > 0) {
+			// drain
+		}
+		assertEquals(Long.valueOf(0), tradingService.findCountOfOrders(accountId, "closed"));
+		assertEquals(Long.valueOf(completed + 1), tradingService.findCountOfOrders(accountId, "completed"));
+
+		// the counters agree with a recount from the base tables
+		tradingService.repairAccountCounters();
+		assertEquals(Long.valueOf(orders + 1), tradingService.findCountOfOrders(accountId, null));
+		assertEquals(Long.valueOf(completed + 1), tradingService.findCountOfOrders(accountId, "completed"));
+		assertEquals(holdingRepository.findCountOfHoldings(accountId), tradingService.findCountOfHoldingsByAccountId(accountId));
+	}
+	
 	@Test
 
 	public void testFindMarketSummary() {
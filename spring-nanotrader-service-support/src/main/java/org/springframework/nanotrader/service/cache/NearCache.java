@@ -0,0 +1,270 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * Bounded per-JVM cache kept in front of a distributed region. Entries are evicted in LRU order once
+ * <code>maxEntries</code> is reached and expire <code>timeToLiveSeconds</code> after they were loaded,
+ * which bounds how stale an entry can get if an invalidation event is missed.
+ * <p>
+ * Entries live in a ConcurrentHashMap and a hit only stamps the entry with its access time, so reads
+ * never take a lock. The recency order is worked out by the put that takes the cache over
+ * <code>maxEntries</code>: it sorts the entries by access time and evicts the least recently used,
+ * along with a tenth of <code>maxEntries</code> more so that the next puts need not sort again.
+ * <p>
+ * The generation counter lets callers detect that an invalidation happened while they were loading a
+ * value from the backing region, so a value evicted on another node is never re-populated locally.
+ */
+public class NearCache {
+
+	private final String name;
+
+	private int maxEntries = 10000;
+
+	private long timeToLiveNanos = TimeUnit.SECONDS.toNanos(60);
+
+	private static final int EVICTION_HEADROOM_DIVISOR = 10;
+
+	private final ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+
+	private final Object evictionLock = new Object();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong expirations = new AtomicLong();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public NearCache(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the cached value for the key, or <code>null</code> on a miss or an expired entry.
+	 */
+	public ValueWrapper get(Object key) {
+		long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (now - entry.loaded < timeToLiveNanos) {
+				entry.accessed = now;
+				hits.incrementAndGet();
+				return entry.value;
+			}
+			if (entries.remove(key, entry)) {
+				expirations.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Stores the value unless an invalidation happened after <code>expectedGeneration</code> was read.
+	 * An invalidation bumps the generation before it removes the key, so one that races with this put
+	 * either removes the stored entry itself or is seen by the check after the store.
+	 */
+	public void put(Object key, Object value, long expectedGeneration) {
+		if (generation.get() != expectedGeneration) {
+			return;
+		}
+		Entry entry = new Entry(value, System.nanoTime());
+		entries.put(key, entry);
+		if (generation.get() != expectedGeneration) {
+			entries.remove(key, entry);
+			return;
+		}
+		evictIfFull();
+	}
+
+	public void put(Object key, Object value) {
+		entries.put(key, new Entry(value, System.nanoTime()));
+		evictIfFull();
+	}
+
+	public void invalidate(Object key) {
+		generation.incrementAndGet();
+		if (entries.remove(key) != null) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	public void clear() {
+		generation.incrementAndGet();
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			it.next();
+			it.remove();
+			invalidations.incrementAndGet();
+		}
+	}
+
+	public void purgeExpired() {
+		long now = System.nanoTime();
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			if (now - it.next().loaded >= timeToLiveNanos) {
+				it.remove();
+				expirations.incrementAndGet();
+			}
+		}
+	}
+
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Evicts the least recently used entries once there are more than <code>maxEntries</code>. Only one
+	 * put sorts at a time; the others find the cache back under its bound when they get the lock.
+	 */
+	private void evictIfFull() {
+		if (entries.size() <= maxEntries) {
+			return;
+		}
+		synchronized (evictionLock) {
+			int excess = entries.size() - maxEntries;
+			if (excess <= 0) {
+				return;
+			}
+			// hits keep stamping entries while they are sorted, so the order goes by a copy of the stamps
+			List<Candidate> candidates = new ArrayList<Candidate>(entries.size());
+			for (Map.Entry<Object, Entry> entry : entries.entrySet()) {
+				candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+			}
+			Collections.sort(candidates);
+			int evict = Math.min(candidates.size(), excess + maxEntries / EVICTION_HEADROOM_DIVISOR);
+			for (int i = 0; i < evict; i++) {
+				Candidate candidate = candidates.get(i);
+				if (entries.remove(candidate.key, candidate.entry)) {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		expirations.set(0);
+		invalidations.set(0);
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+		this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+	}
+
+	@Override
+	public String toString() {
+		return "NearCache [name=" + name + ", size=" + getSize() + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + ", expirations=" + expirations + ", invalidations=" + invalidations + "]";
+	}
+
+	private static class Entry {
+
+		final ValueWrapper value;
+
+		final long loaded;
+
+		volatile long accessed;
+
+		Entry(Object value, long loaded) {
+			this.value = new SimpleValueWrapper(value);
+			this.loaded = loaded;
+			this.accessed = loaded;
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+
+		final Object key;
+
+		final Entry entry;
+
+		final long accessed;
+
+		Candidate(Object key, Entry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.accessed = entry.accessed;
+		}
+
+		public int compareTo(Candidate other) {
+			long difference = accessed - other.accessed;
+			return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gemstone.gemfire.cache.EntryEvent;
+import com.gemstone.gemfire.cache.RegionEvent;
+import com.gemstone.gemfire.cache.util.CacheListenerAdapter;
+
+/**
+ * Region listener that drops entries from a {@link NearCache} when they are updated, invalidated or
+ * destroyed in the distributed region, whether the change originated on this member or another one.
+ */
+public class NearCacheInvalidator extends CacheListenerAdapter<Object, Object> {
+
+	private static Logger log = LoggerFactory.getLogger(NearCacheInvalidator.class);
+
+	private NearCache nearCache;
+
+	@Override
+	public void afterUpdate(EntryEvent<Object, Object> event) {
+		invalidate(event);
+	}
+
+	@Override
+	public void afterInvalidate(EntryEvent<Object, Object> event) {
+		invalidate(event);
+	}
+
+	@Override
+	public void afterDestroy(EntryEvent<Object, Object> event) {
+		invalidate(event);
+	}
+
+	@Override
+	public void afterRegionClear(RegionEvent<Object, Object> event) {
+		nearCache.clear();
+	}
+
+	@Override
+	public void afterRegionInvalidate(RegionEvent<Object, Object> event) {
+		nearCache.clear();
+	}
+
+	@Override
+	public void afterRegionDestroy(RegionEvent<Object, Object> event) {
+		nearCache.clear();
+	}
+
+	private void invalidate(EntryEvent<Object, Object> event) {
+		if (log.isDebugEnabled()) {
+			log.debug("NearCacheInvalidator.invalidate(): " + nearCache.getName() + " [" + event.getKey() + "] remote="
+					+ event.isOriginRemote());
+		}
+		nearCache.invalidate(event.getKey());
+	}
+
+	public void setNearCache(NearCache nearCache) {
+		this.nearCache = nearCache;
+	}
+}
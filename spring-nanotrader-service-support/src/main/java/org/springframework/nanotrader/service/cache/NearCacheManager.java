@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * CacheManager that layers a {@link NearCache} over the caches of a distributed cache manager. Reads
+ * are served locally when possible; writes and evictions go to both layers. Caches without a
+ * configured near cache are returned from the delegate unchanged.
+ */
+public class NearCacheManager implements CacheManager {
+
+	private CacheManager cacheManager;
+
+	private Map<String, NearCache> nearCaches = new HashMap<String, NearCache>();
+
+	private final Map<String, Cache> caches = new ConcurrentHashMap<String, Cache>();
+
+	@Override
+	public Cache getCache(String name) {
+		Cache cache = caches.get(name);
+		if (cache == null) {
+			Cache target = cacheManager.getCache(name);
+			NearCache nearCache = nearCaches.get(name);
+			if (target == null || nearCache == null) {
+				return target;
+			}
+			cache = new NearCachingCache(target, nearCache);
+			caches.put(name, cache);
+		}
+		return cache;
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return cacheManager.getCacheNames();
+	}
+
+	public NearCache getNearCache(String name) {
+		return nearCaches.get(name);
+	}
+
+	public Collection<NearCache> getNearCaches() {
+		return nearCaches.values();
+	}
+
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public void setNearCaches(List<NearCache> nearCaches) {
+		Map<String, NearCache> byName = new HashMap<String, NearCache>();
+		for (NearCache nearCache : nearCaches) {
+			byName.put(nearCache.getName(), nearCache);
+		}
+		this.nearCaches = byName;
+	}
+
+	static class NearCachingCache implements Cache {
+
+		private final Cache target;
+
+		private final NearCache nearCache;
+
+		NearCachingCache(Cache target, NearCache nearCache) {
+			this.target = target;
+			this.nearCache = nearCache;
+		}
+
+		@Override
+		public String getName() {
+			return target.getName();
+		}
+
+		@Override
+		public Object getNativeCache() {
+			return target.getNativeCache();
+		}
+
+		@Override
+		public ValueWrapper get(Object key) {
+			ValueWrapper value = nearCache.get(key);
+			if (value != null) {
+				return value;
+			}
+			long generation = nearCache.getGeneration();
+			value = target.get(key);
+			if (value != null) {
+				nearCache.put(key, value.get(), generation);
+			}
+			return value;
+		}
+
+		@Override
+		public void put(Object key, Object value) {
+			target.put(key, value);
+			nearCache.put(key, value);
+		}
+
+		@Override
+		public void evict(Object key) {
+			nearCache.invalidate(key);
+			target.evict(key);
+		}
+
+		@Override
+		public void clear() {
+			nearCache.clear();
+			target.clear();
+		}
+	}
+}
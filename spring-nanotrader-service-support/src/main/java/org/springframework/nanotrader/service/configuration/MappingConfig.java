@@ -20,21 +20,34 @@ import java.util.List;
 
 import org.dozer.DozerBeanMapper;
 import org.dozer.Mapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.nanotrader.service.mapping.DomainMapper;
 
 /**
+ * Mappings are done by {@link DomainMapper}, which falls back to Dozer for anything it does not
+ * cover. Set <code>mapping.dozer=true</code> to map everything with Dozer instead.
+ * 
  * @author Brian Dussault
  *
  */
 @Configuration
 public class MappingConfig {
+
+		@Autowired
+		private Environment environment;
+
 		@Bean
 		public Mapper mapper() {
 			DozerBeanMapper mapper = new DozerBeanMapper();
 			List<String> mappingFiles = new ArrayList<String>();
 			mappingFiles.add("dozer-bean-mappings.xml");
 			mapper.setMappingFiles(mappingFiles);
-			return mapper;
+			if (environment.getProperty("mapping.dozer", Boolean.class, Boolean.FALSE)) {
+				return mapper;
+			}
+			return new DomainMapper(mapper);
 		}
 }
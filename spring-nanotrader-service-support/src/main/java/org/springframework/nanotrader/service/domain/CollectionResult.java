@@ -19,12 +19,13 @@ import java.util.List;
 
 import org.codehaus.jackson.annotate.JsonPropertyOrder;
 
-@JsonPropertyOrder(value={"page", "pageSize", "totalRecords", "results"})
+@JsonPropertyOrder(value={"page", "pageSize", "totalRecords", "next", "results"})
 public class CollectionResult {
 	
 	private Long totalRecords = null;
 	private Integer page = null;
 	private Integer pageSize = null;
+	private String next = null;
 	private List<?> results = null;
 	
 	public Integer getPage() {
@@ -46,6 +47,17 @@ public class CollectionResult {
 		this.totalRecords = totalRecords;
 	}
 	
+	/**
+	 * Opaque cursor for the following page when the collection was fetched with keyset
+	 * pagination; null when there are no more rows.
+	 */
+	public String getNext() {
+		return next;
+	}
+	public void setNext(String next) {
+		this.next = next;
+	}
+	
 	public List<?> getResults() {
 		return results;
 	}
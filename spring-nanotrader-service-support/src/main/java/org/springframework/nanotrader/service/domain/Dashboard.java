@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.domain;
+
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
+
+/**
+ * Everything the dashboard renders for one account, returned by a single request.
+ */
+@JsonPropertyOrder(value={"account", "portfolioSummary", "holdingSummary", "orders"})
+public class Dashboard {
+
+	private Account account;
+	private PortfolioSummary portfolioSummary;
+	private HoldingSummary holdingSummary;
+	private CollectionResult orders;
+
+	public Account getAccount() {
+		return account;
+	}
+	public void setAccount(Account account) {
+		this.account = account;
+	}
+	public PortfolioSummary getPortfolioSummary() {
+		return portfolioSummary;
+	}
+	public void setPortfolioSummary(PortfolioSummary portfolioSummary) {
+		this.portfolioSummary = portfolioSummary;
+	}
+	public HoldingSummary getHoldingSummary() {
+		return holdingSummary;
+	}
+	public void setHoldingSummary(HoldingSummary holdingSummary) {
+		this.holdingSummary = holdingSummary;
+	}
+	public CollectionResult getOrders() {
+		return orders;
+	}
+	public void setOrders(CollectionResult orders) {
+		this.orders = orders;
+	}
+
+	@Override
+	public String toString() {
+		return "Dashboard [account=" + account + ", portfolioSummary=" + portfolioSummary
+				+ ", holdingSummary=" + holdingSummary + ", orders=" + orders + "]";
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Response body wrapper for a background admin job, with its throughput and estimated time to
+ * completion while it runs
+ */
+
+@SuppressWarnings("serial")
+public class Job implements Serializable {
+
+	private Integer jobid;
+
+	private String type;
+
+	private String description;
+
+	private String status;
+
+	private String node;
+
+	private Long done;
+
+	private Long total;
+
+	private Double ratepersecond;
+
+	private Long etaseconds;
+
+	private String message;
+
+	private Boolean cancelrequested;
+
+	private Date created;
+
+	private Date started;
+
+	private Date finished;
+
+	public Integer getJobid() {
+		return this.jobid;
+	}
+
+	public void setJobid(Integer jobid) {
+		this.jobid = jobid;
+	}
+
+	public String getType() {
+		return this.type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getDescription() {
+		return this.description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getNode() {
+		return this.node;
+	}
+
+	public void setNode(String node) {
+		this.node = node;
+	}
+
+	public Long getDone() {
+		return this.done;
+	}
+
+	public void setDone(Long done) {
+		this.done = done;
+	}
+
+	public Long getTotal() {
+		return this.total;
+	}
+
+	public void setTotal(Long total) {
+		this.total = total;
+	}
+
+	public Double getRatepersecond() {
+		return this.ratepersecond;
+	}
+
+	public void setRatepersecond(Double ratepersecond) {
+		this.ratepersecond = ratepersecond;
+	}
+
+	public Long getEtaseconds() {
+		return this.etaseconds;
+	}
+
+	public void setEtaseconds(Long etaseconds) {
+		this.etaseconds = etaseconds;
+	}
+
+	public String getMessage() {
+		return this.message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public Boolean getCancelrequested() {
+		return this.cancelrequested;
+	}
+
+	public void setCancelrequested(Boolean cancelrequested) {
+		this.cancelrequested = cancelrequested;
+	}
+
+	public Date getCreated() {
+		return this.created;
+	}
+
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+
+	public Date getStarted() {
+		return this.started;
+	}
+
+	public void setStarted(Date started) {
+		this.started = started;
+	}
+
+	public Date getFinished() {
+		return this.finished;
+	}
+
+	public void setFinished(Date finished) {
+		this.finished = finished;
+	}
+
+	@Override
+	public String toString() {
+		return "Job [jobid=" + jobid + ", type=" + type + ", status=" + status + ", done=" + done + ", total=" + total
+				+ ", ratepersecond=" + ratepersecond + ", etaseconds=" + etaseconds + ", message=" + message + "]";
+	}
+}
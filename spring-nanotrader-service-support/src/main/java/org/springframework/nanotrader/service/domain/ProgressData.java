@@ -18,15 +18,39 @@ package org.springframework.nanotrader.service.domain;
 import java.io.Serializable;
 
 /**
- * Response body wrapper for userdata creation progress 
+ * Response body wrapper for userdata creation progress, taken from the latest user data job
  * @author Ilayaperumal Gopinathan
  */
 
 @SuppressWarnings("serial")
 public class ProgressData implements Serializable {
 
+	private Integer jobid;
+
+	private String status;
+
 	private Integer usercount;
 
+	private Double ratepersecond;
+
+	private Long etaseconds;
+
+	public Integer getJobid() {
+		return this.jobid;
+	}
+
+	public void setJobid(Integer jobid) {
+		this.jobid = jobid;
+	}
+
+	public String getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
 	public Integer getUsercount() {
 		return this.usercount;
 	}
@@ -35,8 +59,25 @@ public class ProgressData implements Serializable {
 		this.usercount = usercount;
 	}
 
+	public Double getRatepersecond() {
+		return this.ratepersecond;
+	}
+
+	public void setRatepersecond(Double ratepersecond) {
+		this.ratepersecond = ratepersecond;
+	}
+
+	public Long getEtaseconds() {
+		return this.etaseconds;
+	}
+
+	public void setEtaseconds(Long etaseconds) {
+		this.etaseconds = etaseconds;
+	}
+
 	@Override
 	public String toString() {
-		return "ProgressData [usercount=" + usercount + "]";
+		return "ProgressData [jobid=" + jobid + ", status=" + status + ", usercount=" + usercount
+				+ ", ratepersecond=" + ratepersecond + ", etaseconds=" + etaseconds + "]";
 	}
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.domain;
+
+import java.util.List;
+
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.springframework.nanotrader.service.repository.RowHandler;
+
+/**
+ * A {@link CollectionResult} whose rows are produced while the response is written rather
+ * than collected into a list first. It serializes to the same JSON as a CollectionResult.
+ */
+@JsonSerialize(using = StreamingCollectionResultSerializer.class)
+public abstract class StreamingCollectionResult {
+
+	private Long totalRecords = null;
+	private Integer page = null;
+	private Integer pageSize = null;
+
+	public Integer getPage() {
+		return page;
+	}
+	public void setPage(Integer page) {
+		this.page = page;
+	}
+	public Integer getPageSize() {
+		return pageSize;
+	}
+	public void setPageSize(Integer pageSize) {
+		this.pageSize = pageSize;
+	}
+	public Long getTotalRecords() {
+		return totalRecords;
+	}
+	public void setTotalRecords(Long totalRecords) {
+		this.totalRecords = totalRecords;
+	}
+
+	/**
+	 * Passes every row to the handler in order. Called once, while the response is written.
+	 */
+	public abstract void writeResults(RowHandler<Object> handler);
+
+	/**
+	 * Wraps an already materialized result.
+	 */
+	public static StreamingCollectionResult of(final CollectionResult collectionResult) {
+		StreamingCollectionResult result = new StreamingCollectionResult() {
+			@Override
+			public void writeResults(RowHandler<Object> handler) {
+				List<?> results = collectionResult.getResults();
+				if (results != null) {
+					for (Object row : results) {
+						handler.handleRow(row);
+					}
+				}
+			}
+		};
+		result.setPage(collectionResult.getPage());
+		result.setPageSize(collectionResult.getPageSize());
+		result.setTotalRecords(collectionResult.getTotalRecords());
+		return result;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.domain;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+import org.springframework.nanotrader.service.repository.RowHandler;
+
+/**
+ * Writes a {@link StreamingCollectionResult} with the field order of {@link CollectionResult},
+ * serializing each row straight to the generator as it is produced.
+ */
+public class StreamingCollectionResultSerializer extends JsonSerializer<StreamingCollectionResult> {
+
+	@Override
+	public void serialize(StreamingCollectionResult value, final JsonGenerator jgen, final SerializerProvider provider)
+			throws IOException, JsonProcessingException {
+		jgen.writeStartObject();
+		provider.defaultSerializeField("page", value.getPage(), jgen);
+		provider.defaultSerializeField("pageSize", value.getPageSize(), jgen);
+		provider.defaultSerializeField("totalRecords", value.getTotalRecords(), jgen);
+		provider.defaultSerializeField("next", null, jgen);
+		jgen.writeArrayFieldStart("results");
+		try {
+			value.writeResults(new RowHandler<Object>() {
+				public void handleRow(Object row) {
+					try {
+						provider.defaultSerializeValue(row, jgen);
+					}
+					catch (IOException e) {
+						throw new WriteFailedException(e);
+					}
+				}
+			});
+		}
+		catch (WriteFailedException e) {
+			throw e.getCause();
+		}
+		jgen.writeEndArray();
+		jgen.writeEndObject();
+	}
+
+	/**
+	 * Carries an IOException out of the row handler.
+	 */
+	@SuppressWarnings("serial")
+	private static class WriteFailedException extends RuntimeException {
+
+		WriteFailedException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
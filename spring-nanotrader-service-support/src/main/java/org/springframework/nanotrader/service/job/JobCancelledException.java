@@ -13,21 +13,15 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.springframework.nanotrader.service.cache;
+package org.springframework.nanotrader.service.job;
 
-import org.springframework.stereotype.Service;
-
-@Service
-public class DataCreationProgressCache {
-
-	private Integer progresscount;
-
-	public Integer getProgresscount() {
-		return progresscount;
-	}
+/**
+ * Thrown out of a job's task to stop it once its cancellation has been requested.
+ */
+@SuppressWarnings("serial")
+public class JobCancelledException extends RuntimeException {
 
-	public void setProgresscount(Integer progresscount) {
-		this.progresscount = progresscount;
+	public JobCancelledException(Integer jobId) {
+		super("Job " + jobId + " was cancelled");
 	}
-
 }
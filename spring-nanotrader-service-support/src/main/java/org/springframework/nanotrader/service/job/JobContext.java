@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.job;
+
+import org.springframework.nanotrader.data.repository.AdminJobRepository;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+
+/**
+ * Handed to a running job's task to report progress and learn of cancellation. Progress is kept here
+ * and written to ADMIN_JOB at most once per update interval, which is also when a cancellation
+ * requested by another node is picked up. Safe to call from several threads.
+ */
+public class JobContext {
+
+	private final Integer jobId;
+
+	private final AdminJobRepository repository;
+
+	private final JobService jobService;
+
+	private final long updateIntervalMillis;
+
+	private volatile long done;
+
+	private volatile Long total;
+
+	private volatile String message;
+
+	private volatile boolean cancelled;
+
+	private long lastUpdate;
+
+	JobContext(Integer jobId, AdminJobRepository repository, JobService jobService, long updateIntervalMillis) {
+		this.jobId = jobId;
+		this.repository = repository;
+		this.jobService = jobService;
+		this.updateIntervalMillis = updateIntervalMillis;
+	}
+
+	public Integer getJobId() {
+		return jobId;
+	}
+
+	public long getDone() {
+		return done;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * Records that done of total units of work are finished, total being null when unknown, and throws
+	 * {@link JobCancelledException} if the job has been cancelled.
+	 */
+	public void progress(long done, Long total) {
+		this.done = done;
+		this.total = total;
+		update();
+		checkCancelled();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void checkCancelled() {
+		if (cancelled) {
+			throw new JobCancelledException(jobId);
+		}
+	}
+
+	void cancel() {
+		cancelled = true;
+	}
+
+	private synchronized void update() {
+		long now = System.currentTimeMillis();
+		if (now - lastUpdate < updateIntervalMillis) {
+			return;
+		}
+		lastUpdate = now;
+		jobService.onHomeShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.updateProgress(jobId, done, total, message);
+			}
+		});
+		if (Boolean.TRUE.equals(repository.findCancelRequested(jobId))) {
+			cancelled = true;
+		}
+	}
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.job;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.nanotrader.data.domain.AdminJob;
+import org.springframework.nanotrader.data.repository.AdminJobRepository;
+import org.springframework.nanotrader.data.shard.ShardedDataSource;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.nanotrader.service.domain.Job;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs long admin operations in the background so they never hold a servlet thread. Jobs run on
+ * admin.jobs.threads threads (2 by default) with at most admin.jobs.queueSize (20) waiting; beyond that
+ * a submission is refused. Every job gets an id and a row in ADMIN_JOB, so any node can report on it
+ * and cancel it, and the throughput and time to completion are derived from its progress. ADMIN_JOB
+ * is kept on the home shard, so every write to it is bound there.
+ * <p>
+ * Cancellation is cooperative: a waiting job is dropped, a running one stops the next time its task
+ * reports progress or checks for it.
+ * <p>
+ * Every instance runs as a node of its own, named after admin.jobs.node (the host name by default)
+ * with a random suffix, and renews the lease of its unfinished jobs three times per
+ * admin.jobs.leaseSeconds (60). Any node marks a job whose lease has expired as failed, which releases
+ * its exclusive group, and cancelling such a job finishes it straight away. The nodes' clocks must
+ * agree to well within the lease.
+ * <p>
+ * Jobs submitted with an exclusive group are refused while another job of that group is unfinished.
+ * The check is the unique ADMIN_JOB.exclusivegroup column, so it holds across nodes.
+ */
+@Service
+public class JobService {
+
+	private static Logger log = LoggerFactory.getLogger(JobService.class);
+
+	public static final String QUEUED = "queued";
+
+	public static final String RUNNING = "running";
+
+	public static final String COMPLETED = "completed";
+
+	public static final String FAILED = "failed";
+
+	public static final String CANCELLED = "cancelled";
+
+	private final AdminJobRepository repository;
+
+	private final Shards shards;
+
+	private final Environment environment;
+
+	private final Map<Integer, Execution> executions = new ConcurrentHashMap<Integer, Execution>();
+
+	private ThreadPoolExecutor executor;
+
+	private ScheduledExecutorService leaseRenewer;
+
+	private String node;
+
+	private long updateIntervalMillis;
+
+	private long leaseMillis;
+
+	@Autowired
+	public JobService(AdminJobRepository repository, Shards shards, Environment environment) {
+		this.repository = repository;
+		this.shards = shards;
+		this.environment = environment;
+	}
+
+	@PostConstruct
+	public void start() {
+		node = environment.getProperty("admin.jobs.node", hostName()) + "-"
+				+ UUID.randomUUID().toString().substring(0, 8);
+		int threads = environment.getProperty("admin.jobs.threads", Integer.class, 2);
+		int queueSize = environment.getProperty("admin.jobs.queueSize", Integer.class, 20);
+		updateIntervalMillis = environment.getProperty("admin.jobs.updateIntervalMillis", Long.class, 1000L);
+		leaseMillis = environment.getProperty("admin.jobs.leaseSeconds", Long.class, 60L) * 1000;
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+				queueSize), new CustomizableThreadFactory("admin-job-"));
+		reclaimExpired();
+		leaseRenewer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("admin-job-lease-"));
+		leaseRenewer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				renewLeases();
+			}
+		}, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		leaseRenewer.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	private void renewLeases() {
+		try {
+			onHomeShard(new ShardCallback<Integer>() {
+				public Integer doInShard(int shard) {
+					return repository.renewLeases(node, new Date());
+				}
+			});
+			reclaimExpired();
+		}
+		catch (RuntimeException e) {
+			log.warn("JobService.renewLeases: could not renew the leases of " + node, e);
+		}
+	}
+
+	/**
+	 * Marks the jobs whose node has gone as failed.
+	 */
+	private void reclaimExpired() {
+		final Date expiredBefore = leaseExpiry();
+		int abandoned = onHomeShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.abandonExpired(expiredBefore, FAILED, "Abandoned, its node stopped renewing the lease",
+						new Date());
+			}
+		});
+		if (abandoned > 0) {
+			log.warn("JobService.reclaimExpired: marked " + abandoned + " jobs whose node has gone as failed");
+		}
+	}
+
+	private Date leaseExpiry() {
+		return new Date(System.currentTimeMillis() - leaseMillis);
+	}
+
+	/**
+	 * Queues the task and returns its job straight away.
+	 * @throws IllegalStateException when the queue is full
+	 */
+	public Job submit(String type, String description, JobTask task) {
+		return queue(null, type, description, task);
+	}
+
+	/**
+	 * Queues the task unless a job of the same group has not finished yet.
+	 * @throws IllegalStateException when a job of the group is unfinished or the queue is full
+	 */
+	public Job submitExclusive(String group, String type, String description, JobTask task) {
+		return queue(group, type, description, task);
+	}
+
+	private Job queue(final String group, String type, String description, JobTask task) {
+		if (group != null) {
+			// a group held by a job whose node has gone is released first
+			reclaimExpired();
+		}
+		final AdminJob job = new AdminJob();
+		job.setType(type);
+		job.setExclusivegroup(group);
+		job.setDescription(description);
+		job.setStatus(QUEUED);
+		job.setNode(node);
+		job.setDone(0L);
+		job.setCancelrequested(false);
+		job.setCreated(new Date());
+		job.setHeartbeat(job.getCreated());
+		try {
+			onHomeShard(new ShardCallback<AdminJob>() {
+				public AdminJob doInShard(int shard) {
+					return repository.saveAndFlush(job);
+				}
+			});
+		}
+		catch (DataIntegrityViolationException e) {
+			AdminJob running = onHomeShard(new ShardCallback<AdminJob>() {
+				public AdminJob doInShard(int shard) {
+					return repository.findByExclusivegroup(group);
+				}
+			});
+			if (running == null) {
+				throw new IllegalStateException("Another " + group + " job has not finished yet", e);
+			}
+			throw new IllegalStateException("Job " + running.getJobid() + " (" + running.getDescription()
+					+ ") has not finished yet", e);
+		}
+		Execution execution = new Execution(job.getJobid(), task);
+		executions.put(job.getJobid(), execution);
+		try {
+			execution.future = new FutureTask<Void>(execution, null);
+			executor.execute(execution.future);
+		}
+		catch (RejectedExecutionException e) {
+			executions.remove(job.getJobid());
+			finish(job.getJobid(), FAILED, 0L, null, "Rejected, the job queue is full");
+			throw new IllegalStateException("Too many admin jobs are waiting, " + type + " was not started");
+		}
+		log.info("JobService.submit: queued job " + job.getJobid() + " (" + description + ")");
+		return toJob(job);
+	}
+
+	public Job find(Integer jobId) {
+		AdminJob job = repository.findOne(jobId);
+		return job == null ? null : toJob(job);
+	}
+
+	public List<Job> findLatest(int count) {
+		List<Job> jobs = new ArrayList<Job>();
+		for (AdminJob job : repository.findLatest(new PageRequest(0, count))) {
+			jobs.add(toJob(job));
+		}
+		return jobs;
+	}
+
+	/**
+	 * Returns the most recent job of any of the types, or null when there is none.
+	 */
+	public Job findLatest(String... types) {
+		List<AdminJob> jobs = repository.findLatestOfTypes(Arrays.asList(types), new PageRequest(0, 1));
+		return jobs.isEmpty() ? null : toJob(jobs.get(0));
+	}
+
+	/**
+	 * Requests the job's cancellation and returns it, or null when there is no such job. A job whose
+	 * node has gone is finished here, since nobody else would.
+	 */
+	public Job cancel(final Integer jobId) {
+		Execution execution = executions.get(jobId);
+		if (execution == null) {
+			final Date expiredBefore = leaseExpiry();
+			onHomeShard(new ShardCallback<Integer>() {
+				public Integer doInShard(int shard) {
+					return repository.abandonIfExpired(jobId, expiredBefore, CANCELLED, "Cancelled after its node had gone",
+							new Date());
+				}
+			});
+		}
+		else {
+			execution.context.cancel();
+			// a job still waiting is dropped from the queue, a running one sees the flag
+			if (execution.future != null && executor.remove(execution.future)) {
+				executions.remove(jobId);
+				finish(jobId, CANCELLED, 0L, null, "Cancelled before it started");
+			}
+		}
+		onHomeShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.requestCancel(jobId);
+			}
+		});
+		return find(jobId);
+	}
+
+	private void finish(final Integer jobId, final String status, final Long done, final Long total,
+			final String message) {
+		onHomeShard(new ShardCallback<Integer>() {
+			public Integer doInShard(int shard) {
+				return repository.updateFinished(jobId, status, done, total, message, new Date());
+			}
+		});
+	}
+
+	<T> T onHomeShard(ShardCallback<T> callback) {
+		return shards.inShard(ShardedDataSource.HOME_SHARD, callback);
+	}
+
+	/**
+	 * Copies the job, with the live progress of a job running here, and works out its rate and time to
+	 * completion.
+	 */
+	private Job toJob(AdminJob adminJob) {
+		Job job = new Job();
+		job.setJobid(adminJob.getJobid());
+		job.setType(adminJob.getType());
+		job.setDescription(adminJob.getDescription());
+		job.setStatus(adminJob.getStatus());
+		job.setNode(adminJob.getNode());
+		job.setDone(adminJob.getDone());
+		job.setTotal(adminJob.getTotal());
+		job.setMessage(adminJob.getMessage());
+		job.setCancelrequested(adminJob.getCancelrequested());
+		job.setCreated(adminJob.getCreated());
+		job.setStarted(adminJob.getStarted());
+		job.setFinished(adminJob.getFinished());
+		Execution execution = executions.get(adminJob.getJobid());
+		if (execution != null && execution.started != null && adminJob.getFinished() == null) {
+			job.setStatus(RUNNING);
+			job.setStarted(execution.started);
+			job.setDone(execution.context.getDone());
+			job.setTotal(execution.context.getTotal());
+			job.setMessage(execution.context.getMessage());
+			job.setCancelrequested(Boolean.TRUE.equals(job.getCancelrequested()) || execution.context.isCancelled());
+		}
+		if (job.getStarted() != null && job.getDone() != null) {
+			long end = job.getFinished() != null ? job.getFinished().getTime() : System.currentTimeMillis();
+			double seconds = Math.max(1, end - job.getStarted().getTime()) / 1000.0;
+			job.setRatepersecond(job.getDone() / seconds);
+			if (job.getFinished() == null && job.getTotal() != null && job.getDone() > 0) {
+				job.setEtaseconds((long) Math.ceil((job.getTotal() - job.getDone()) / job.getRatepersecond()));
+			}
+		}
+		return job;
+	}
+
+	private static String hostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		}
+		catch (UnknownHostException e) {
+			return "localhost";
+		}
+	}
+
+	private class Execution implements Runnable {
+
+		private final Integer jobId;
+
+		private final JobTask task;
+
+		private final JobContext context;
+
+		private volatile RunnableFuture<?> future;
+
+		private volatile Date started;
+
+		Execution(Integer jobId, JobTask task) {
+			this.jobId = jobId;
+			this.task = task;
+			this.context = new JobContext(jobId, repository, JobService.this, updateIntervalMillis);
+		}
+
+		public void run() {
+			String status = FAILED;
+			try {
+				if (context.isCancelled() || Boolean.TRUE.equals(repository.findCancelRequested(jobId))) {
+					throw new JobCancelledException(jobId);
+				}
+				started = new Date();
+				onHomeShard(new ShardCallback<Integer>() {
+					public Integer doInShard(int shard) {
+						return repository.updateStarted(jobId, RUNNING, started);
+					}
+				});
+				task.run(context);
+				status = COMPLETED;
+			}
+			catch (JobCancelledException e) {
+				status = CANCELLED;
+				context.setMessage(e.getMessage());
+			}
+			catch (RuntimeException e) {
+				log.error("JobService.run: job " + jobId + " failed", e);
+				context.setMessage(e.getMessage());
+			}
+			finally {
+				finish(jobId, status, context.getDone(), context.getTotal(), context.getMessage());
+				executions.remove(jobId);
+				log.info("JobService.run: job " + jobId + " " + status + " after " + context.getDone() + " of "
+						+ context.getTotal());
+			}
+		}
+	}
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.mapping;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.dozer.Mapper;
+import org.dozer.MappingException;
+import org.springframework.nanotrader.service.domain.Account;
+import org.springframework.nanotrader.service.domain.Accountprofile;
+import org.springframework.nanotrader.service.domain.Holding;
+import org.springframework.nanotrader.service.domain.HoldingAggregate;
+import org.springframework.nanotrader.service.domain.HoldingSummary;
+import org.springframework.nanotrader.service.domain.MarketSummary;
+import org.springframework.nanotrader.service.domain.Order;
+import org.springframework.nanotrader.service.domain.PortfolioSummary;
+import org.springframework.nanotrader.service.domain.Quote;
+
+/**
+ * Hand-written implementation of the mappings in dozer-bean-mappings.xml. Field by field copies
+ * replace Dozer's reflective property access on the read paths, which map every order, quote and
+ * holding returned to the client. Mappings that are not covered here, such as implicit mappings
+ * between other class pairs, are passed on to the Dozer mapper given as the fallback.
+ */
+public class DomainMapper implements Mapper {
+
+	public static final String ACCOUNT_PROFILE = "accountProfile";
+
+	public static final String ACCOUNT_PROFILE_ACCOUNT = "accountProfile.account";
+
+	public static final String ACCOUNT_PROFILE_NO_ACCOUNTS = "accountProfile-no-accounts";
+
+	public static final String ACCOUNT = "account";
+
+	public static final String HOLDING = "holding";
+
+	public static final String ORDER = "order";
+
+	public static final String QUOTE = "quote";
+
+	public static final String PORTFOLIO_SUMMARY = "portfolioSummary";
+
+	public static final String MARKET_SUMMARY = "marketSummary";
+
+	public static final String HOLDING_SUMMARY = "holdingSummary";
+
+	private final Mapper fallback;
+
+	public DomainMapper(Mapper fallback) {
+		this.fallback = fallback;
+	}
+
+	@Override
+	public <T> T map(Object source, Class<T> destinationClass) throws MappingException {
+		return map(source, destinationClass, null);
+	}
+
+	@Override
+	public void map(Object source, Object destination) throws MappingException {
+		map(source, destination, null);
+	}
+
+	@Override
+	public <T> T map(Object source, Class<T> destinationClass, String mapId) throws MappingException {
+		if (source != null) {
+			T destination = newInstance(destinationClass);
+			if (destination != null && mapDirect(source, destination, mapId)) {
+				return destination;
+			}
+		}
+		return mapId == null ? fallback.map(source, destinationClass) : fallback.map(source, destinationClass, mapId);
+	}
+
+	@Override
+	public void map(Object source, Object destination, String mapId) throws MappingException {
+		if (source == null || destination == null || !mapDirect(source, destination, mapId)) {
+			if (mapId == null) {
+				fallback.map(source, destination);
+			}
+			else {
+				fallback.map(source, destination, mapId);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean mapDirect(Object source, Object destination, String mapId) {
+		if (source instanceof org.springframework.nanotrader.data.domain.Order && destination instanceof Order
+				&& ORDER.equals(mapId)) {
+			toOrder((org.springframework.nanotrader.data.domain.Order) source, (Order) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.Quote && destination instanceof Quote
+				&& (mapId == null || QUOTE.equals(mapId))) {
+			toQuote((org.springframework.nanotrader.data.domain.Quote) source, (Quote) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.Holding && destination instanceof Holding
+				&& (mapId == null || HOLDING.equals(mapId))) {
+			// the implicit mapping used by findHolding would walk the lazy orders collection, the
+			// explicit one excludes it; the facade sets the quote on both paths
+			toHolding((org.springframework.nanotrader.data.domain.Holding) source, (Holding) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.Accountprofile
+				&& destination instanceof Accountprofile
+				&& (ACCOUNT_PROFILE.equals(mapId) || ACCOUNT_PROFILE_NO_ACCOUNTS.equals(mapId))) {
+			toAccountprofile((org.springframework.nanotrader.data.domain.Accountprofile) source, (Accountprofile) destination,
+					ACCOUNT_PROFILE.equals(mapId));
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.Account && destination instanceof Account
+				&& ACCOUNT.equals(mapId)) {
+			toAccount((org.springframework.nanotrader.data.domain.Account) source, (Account) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.Account && destination instanceof Map
+				&& ACCOUNT_PROFILE_ACCOUNT.equals(mapId)) {
+			toAccountMap((org.springframework.nanotrader.data.domain.Account) source, (Map<String, Object>) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.PortfolioSummary
+				&& destination instanceof PortfolioSummary && (mapId == null || PORTFOLIO_SUMMARY.equals(mapId))) {
+			toPortfolioSummary((org.springframework.nanotrader.data.domain.PortfolioSummary) source,
+					(PortfolioSummary) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.MarketSummary
+				&& destination instanceof MarketSummary && (mapId == null || MARKET_SUMMARY.equals(mapId))) {
+			toMarketSummary((org.springframework.nanotrader.data.domain.MarketSummary) source, (MarketSummary) destination);
+		}
+		else if (source instanceof org.springframework.nanotrader.data.domain.HoldingSummary
+				&& destination instanceof HoldingSummary && (mapId == null || HOLDING_SUMMARY.equals(mapId))) {
+			toHoldingSummary((org.springframework.nanotrader.data.domain.HoldingSummary) source,
+					(HoldingSummary) destination);
+		}
+		else if (source instanceof Order && destination instanceof org.springframework.nanotrader.data.domain.Order
+				&& ORDER.equals(mapId)) {
+			fromOrder((Order) source, (org.springframework.nanotrader.data.domain.Order) destination);
+		}
+		else if (source instanceof Accountprofile
+				&& destination instanceof org.springframework.nanotrader.data.domain.Accountprofile && mapId == null) {
+			fromAccountprofile((Accountprofile) source, (org.springframework.nanotrader.data.domain.Accountprofile) destination);
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+
+	public void toOrder(org.springframework.nanotrader.data.domain.Order source, Order destination) {
+		destination.setOrderid(source.getOrderid());
+		destination.setAccountid(source.getAccountAccountid() != null ? source.getAccountAccountid().getAccountid() : null);
+		destination.setHoldingid(source.getHoldingHoldingid() != null ? source.getHoldingHoldingid().getHoldingid() : null);
+		destination.setOrderfee(source.getOrderfee());
+		destination.setCompletiondate(source.getCompletiondate());
+		destination.setOrdertype(source.getOrdertype());
+		destination.setOrderstatus(source.getOrderstatus());
+		destination.setPrice(source.getPrice());
+		destination.setQuantity(source.getQuantity());
+		destination.setOpendate(source.getOpendate());
+		destination.setQuote(toQuote(source.getQuote()));
+	}
+
+	public Quote toQuote(org.springframework.nanotrader.data.domain.Quote source) {
+		if (source == null) {
+			return null;
+		}
+		Quote quote = new Quote();
+		toQuote(source, quote);
+		return quote;
+	}
+
+	public void toQuote(org.springframework.nanotrader.data.domain.Quote source, Quote destination) {
+		destination.setQuoteid(source.getQuoteid());
+		destination.setLow(source.getLow());
+		destination.setOpen1(source.getOpen1());
+		destination.setVolume(source.getVolume());
+		destination.setPrice(source.getPrice());
+		destination.setHigh(source.getHigh());
+		destination.setCompanyname(source.getCompanyname());
+		destination.setSymbol(source.getSymbol());
+		destination.setChange1(source.getChange1());
+	}
+
+	public void toHolding(org.springframework.nanotrader.data.domain.Holding source, Holding destination) {
+		destination.setHoldingid(source.getHoldingid());
+		destination.setPurchaseprice(source.getPurchaseprice());
+		destination.setQuantity(source.getQuantity());
+		destination.setPurchasedate(source.getPurchasedate());
+		destination.setAccountAccountid(source.getAccountAccountid());
+		if (source.getQuoteSymbol() != null) {
+			Quote quote = destination.getQuote() != null ? destination.getQuote() : new Quote();
+			quote.setSymbol(source.getQuoteSymbol());
+			destination.setQuote(quote);
+		}
+	}
+
+	public void toAccountprofile(org.springframework.nanotrader.data.domain.Accountprofile source, Accountprofile destination,
+			boolean includeAccounts) {
+		// class-b map-null="false": nulls do not overwrite the destination
+		if (source.getProfileid() != null) {
+			destination.setProfileid(source.getProfileid());
+		}
+		if (source.getAddress() != null) {
+			destination.setAddress(source.getAddress());
+		}
+		if (source.getPasswd() != null) {
+			destination.setPasswd(source.getPasswd());
+		}
+		if (source.getUserid() != null) {
+			destination.setUserid(source.getUserid());
+		}
+		if (source.getEmail() != null) {
+			destination.setEmail(source.getEmail());
+		}
+		if (source.getCreditcard() != null) {
+			destination.setCreditcard(source.getCreditcard());
+		}
+		if (source.getFullname() != null) {
+			destination.setFullname(source.getFullname());
+		}
+		if (includeAccounts && source.getAccounts() != null) {
+			@SuppressWarnings("rawtypes")
+			List<Map> accounts = new ArrayList<Map>(source.getAccounts().size());
+			for (org.springframework.nanotrader.data.domain.Account account : source.getAccounts()) {
+				Map<String, Object> map = new HashMap<String, Object>();
+				toAccountMap(account, map);
+				accounts.add(map);
+			}
+			destination.setAccounts(accounts);
+		}
+	}
+
+	public void toAccountMap(org.springframework.nanotrader.data.domain.Account source, Map<String, Object> destination) {
+		put(destination, "version", source.getVersion());
+		put(destination, "creationdate", source.getCreationdate());
+		put(destination, "openbalance", source.getOpenbalance());
+		put(destination, "logoutcount", source.getLogoutcount());
+		put(destination, "balance", source.getBalance());
+		put(destination, "lastlogin", source.getLastlogin());
+		put(destination, "logincount", source.getLogincount());
+		put(destination, "accountid", source.getAccountid());
+	}
+
+	public void toAccount(org.springframework.nanotrader.data.domain.Account source, Account destination) {
+		destination.setAccountid(source.getAccountid());
+		destination.setCreationdate(source.getCreationdate());
+		destination.setOpenbalance(source.getOpenbalance());
+		destination.setLogoutcount(source.getLogoutcount());
+		destination.setBalance(source.getBalance());
+		destination.setLastlogin(source.getLastlogin());
+		destination.setLogincount(source.getLogincount());
+	}
+
+	public void toPortfolioSummary(org.springframework.nanotrader.data.domain.PortfolioSummary source,
+			PortfolioSummary destination) {
+		destination.setNumberOfHoldings(source.getNumberOfHoldings());
+		destination.setTotalBasis(source.getTotalBasis());
+		destination.setTotalMarketValue(source.getTotalMarketValue());
+	}
+
+	public void toMarketSummary(org.springframework.nanotrader.data.domain.MarketSummary source, MarketSummary destination) {
+		destination.setTradeStockIndexAverage(source.getTradeStockIndexAverage());
+		destination.setTradeStockIndexVolume(source.getTradeStockIndexVolume());
+		destination.setTradeStockIndexOpenAverage(source.getTradeStockIndexOpenAverage());
+		destination.setChange(source.getChange());
+		destination.setPercentGain(source.getPercentGain());
+		destination.setSummaryDate(source.getSummaryDate());
+		destination.setTopLosers(toQuotes(source.getTopLosers()));
+		destination.setTopGainers(toQuotes(source.getTopGainers()));
+	}
+
+	public void toHoldingSummary(org.springframework.nanotrader.data.domain.HoldingSummary source,
+			HoldingSummary destination) {
+		destination.setHoldingsTotalGains(source.getHoldingsTotalGains());
+		if (source.getHoldingRollups() == null) {
+			destination.setHoldingRollups(null);
+			return;
+		}
+		List<HoldingAggregate> rollups = new ArrayList<HoldingAggregate>(source.getHoldingRollups().size());
+		for (org.springframework.nanotrader.data.domain.HoldingAggregate aggregate : source.getHoldingRollups()) {
+			HoldingAggregate rollup = new HoldingAggregate();
+			rollup.setGain(aggregate.getGain());
+			rollup.setPercent(aggregate.getPercent());
+			rollup.setSymbol(aggregate.getSymbol());
+			rollups.add(rollup);
+		}
+		destination.setHoldingRollups(rollups);
+	}
+
+	public void fromOrder(Order source, org.springframework.nanotrader.data.domain.Order destination) {
+		destination.setOrderid(source.getOrderid());
+		if (source.getAccountid() != null) {
+			org.springframework.nanotrader.data.domain.Account account = new org.springframework.nanotrader.data.domain.Account();
+			account.setAccountid(source.getAccountid());
+			destination.setAccountAccountid(account);
+		}
+		if (source.getHoldingid() != null) {
+			org.springframework.nanotrader.data.domain.Holding holding = new org.springframework.nanotrader.data.domain.Holding();
+			holding.setHoldingid(source.getHoldingid());
+			destination.setHoldingHoldingid(holding);
+		}
+		destination.setOrderfee(source.getOrderfee());
+		destination.setCompletiondate(source.getCompletiondate());
+		destination.setOrdertype(source.getOrdertype());
+		destination.setOrderstatus(source.getOrderstatus());
+		destination.setPrice(source.getPrice());
+		destination.setQuantity(source.getQuantity());
+		destination.setOpendate(source.getOpendate());
+		if (source.getQuote() == null) {
+			destination.setQuote(null);
+		}
+		else {
+			org.springframework.nanotrader.data.domain.Quote quote = new org.springframework.nanotrader.data.domain.Quote();
+			Quote from = source.getQuote();
+			quote.setQuoteid(from.getQuoteid());
+			quote.setLow(from.getLow());
+			quote.setOpen1(from.getOpen1());
+			quote.setVolume(from.getVolume());
+			quote.setPrice(from.getPrice());
+			quote.setHigh(from.getHigh());
+			quote.setCompanyname(from.getCompanyname());
+			quote.setSymbol(from.getSymbol());
+			quote.setChange1(from.getChange1());
+			destination.setQuote(quote);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void fromAccountprofile(Accountprofile source, org.springframework.nanotrader.data.domain.Accountprofile destination) {
+		destination.setProfileid(source.getProfileid());
+		destination.setAddress(source.getAddress());
+		destination.setPasswd(source.getPasswd());
+		destination.setUserid(source.getUserid());
+		destination.setEmail(source.getEmail());
+		destination.setCreditcard(source.getCreditcard());
+		destination.setFullname(source.getFullname());
+		if (source.getAccounts() == null) {
+			destination.setAccounts(null);
+			return;
+		}
+		Set<org.springframework.nanotrader.data.domain.Account> accounts = new HashSet<org.springframework.nanotrader.data.domain.Account>();
+		for (Map map : source.getAccounts()) {
+			org.springframework.nanotrader.data.domain.Account account = new org.springframework.nanotrader.data.domain.Account();
+			account.setAccountid(toInteger(map.get("accountid")));
+			account.setCreationdate(toDate(map.get("creationdate")));
+			account.setOpenbalance(toBigDecimal(map.get("openbalance")));
+			account.setLogoutcount(toInteger(map.get("logoutcount")));
+			account.setBalance(toBigDecimal(map.get("balance")));
+			account.setLastlogin(toDate(map.get("lastlogin")));
+			account.setLogincount(toInteger(map.get("logincount")));
+			accounts.add(account);
+		}
+		destination.setAccounts(accounts);
+	}
+
+	private List<Quote> toQuotes(List<org.springframework.nanotrader.data.domain.Quote> source) {
+		if (source == null) {
+			return null;
+		}
+		List<Quote> quotes = new ArrayList<Quote>(source.size());
+		for (org.springframework.nanotrader.data.domain.Quote quote : source) {
+			quotes.add(toQuote(quote));
+		}
+		return quotes;
+	}
+
+	private static void put(Map<String, Object> map, String key, Object value) {
+		if (value != null) {
+			map.put(key, value);
+		}
+	}
+
+	private static Integer toInteger(Object value) {
+		if (value == null || value instanceof Integer) {
+			return (Integer) value;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		try {
+			return Integer.valueOf(value.toString().trim());
+		}
+		catch (NumberFormatException e) {
+			throw new MappingException("Unable to convert [" + value + "] to Integer", e);
+		}
+	}
+
+	private static BigDecimal toBigDecimal(Object value) {
+		if (value == null || value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		try {
+			return new BigDecimal(value.toString().trim());
+		}
+		catch (NumberFormatException e) {
+			throw new MappingException("Unable to convert [" + value + "] to BigDecimal", e);
+		}
+	}
+
+	private static Date toDate(Object value) {
+		if (value == null || value instanceof Date) {
+			return (Date) value;
+		}
+		if (value instanceof Number) {
+			return new Date(((Number) value).longValue());
+		}
+		throw new MappingException("Unable to convert [" + value + "] to Date");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T newInstance(Class<T> type) {
+		if (type == Map.class) {
+			return (T) new HashMap<String, Object>();
+		}
+		if (!type.getName().startsWith("org.springframework.nanotrader.")) {
+			return null;
+		}
+		try {
+			return type.newInstance();
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.nanotrader.service.domain.Account;
+import org.springframework.nanotrader.service.domain.Accountprofile;
+import org.springframework.nanotrader.service.domain.Holding;
+import org.springframework.nanotrader.service.domain.Order;
+import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Read-only queries that project straight into the service domain. Rows are selected as
+ * scalars, so no entity enters the persistence context and nothing is mapped afterwards.
+ * Each method returns what the corresponding {@link org.springframework.nanotrader.data.service.TradingService}
+ * finder returns after mapping, including orders moved to ORDERS_ARCHIVE.
+ */
+@Repository
+public interface TradingReadRepository {
+
+	/**
+	 * Returns the profile with its accounts, or null if there is no such profile.
+	 */
+	abstract Accountprofile findAccountProfile(Integer profileId);
+
+	abstract Account findAccount(Integer accountId);
+
+	/**
+	 * Returns the holding with a quote carrying only its symbol; callers fill in the current quote.
+	 */
+	abstract Holding findHolding(Integer holdingId, Integer accountId);
+
+	abstract List<Holding> findHoldings(Integer accountId, int page, int pageSize);
+
+	abstract List<Holding> findHoldingsAfter(Integer accountId, Integer afterHoldingId, int maxResults);
+
+	abstract Order findOrder(Integer orderId, Integer accountId);
+
+	/**
+	 * Returns a page of orders, newest first, optionally restricted to one status. Archived
+	 * orders follow the hot ones.
+	 */
+	abstract List<Order> findOrders(Integer accountId, String status, int page, int pageSize);
+
+	/**
+	 * Passes the same page as {@link #findOrders} to the handler one order at a time.
+	 */
+	abstract void streamOrders(Integer accountId, String status, int page, int pageSize, RowHandler<? super Order> handler);
+
+	abstract List<Order> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, int maxResults);
+
+	abstract List<Quote> findAllQuotes();
+
+	abstract Long countQuotes();
+
+	/**
+	 * Passes every quote to the handler one at a time.
+	 */
+	abstract void streamAllQuotes(RowHandler<? super Quote> handler);
+
+	abstract Quote findQuote(String symbol);
+
+	/**
+	 * Returns the quotes for the given symbols keyed by symbol. Unknown symbols are left out.
+	 */
+	abstract Map<String, Quote> findQuotes(Set<String> symbols);
+
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.repository;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.nanotrader.service.domain.Account;
+import org.springframework.nanotrader.service.domain.Accountprofile;
+import org.springframework.nanotrader.service.domain.Holding;
+import org.springframework.nanotrader.service.domain.Order;
+import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * JPQL implementation of {@link TradingReadRepository}. The streaming finders read a forward-only,
+ * read-only JDBC cursor on the transaction's connection instead, since scrollable result sets are
+ * disabled for Hibernate. They fetch read.fetchSize rows at a time; MySQL only streams when that
+ * is Integer.MIN_VALUE and buffers the whole result otherwise.
+ * <p>
+ * Account-scoped finders bind the transaction to the account's shard before their first query;
+ * quotes are read from the home shard.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class TradingReadRepositoryImpl implements TradingReadRepository {
+
+	private static final String QUOTE_COLUMNS = "q.quoteid, q.low, q.open1, q.volume, q.price, q.high, q.companyname, q.symbol, q.change1";
+
+	private static final String ACCOUNT_COLUMNS = "SELECT a.accountid, a.creationdate, a.openbalance, a.logoutcount, a.balance, "
+			+ "a.lastlogin, a.logincount, a.version FROM Account a";
+
+	private static final String HOLDING_COLUMNS = "SELECT h.holdingid, h.purchaseprice, h.quantity, h.purchasedate, "
+			+ "h.accountAccountid, h.quoteSymbol FROM Holding h";
+
+	private static final String ORDER_COLUMNS = "SELECT o.orderid, o.accountAccountid.accountid, h.holdingid, o.orderfee, "
+			+ "o.completiondate, o.ordertype, o.orderstatus, o.price, o.quantity, o.opendate, " + QUOTE_COLUMNS
+			+ " FROM Order o LEFT JOIN o.holdingHoldingid h LEFT JOIN o.quote q";
+
+	private static final String SQL_QUOTE_COLUMNS = "q.quoteid, q.low, q.open1, q.volume, q.price, q.high, q.companyname, q.symbol, q.change1";
+
+	private static final String SQL_ORDER_COLUMNS = "SELECT o.orderid, o.account_accountid, o.holding_holdingid, o.orderfee, "
+			+ "o.completiondate, o.ordertype, o.orderstatus, o.price, o.quantity, o.opendate, " + SQL_QUOTE_COLUMNS
+			+ " FROM ORDERS o LEFT OUTER JOIN QUOTE q ON q.symbol = o.quote_symbol";
+
+	private static final String SQL_ARCHIVED_ORDER_COLUMNS = "SELECT a.orderid, a.account_accountid, a.quote_symbol, a.orderfee, "
+			+ "a.completiondate, a.ordertype, a.orderstatus, a.price, a.quantity, a.opendate FROM ORDERS_ARCHIVE a";
+
+	private static final String ARCHIVED_ORDER_COLUMNS = "SELECT a.orderid, a.accountid, a.quoteSymbol, a.orderfee, "
+			+ "a.completiondate, a.ordertype, a.orderstatus, a.price, a.quantity, a.opendate FROM ArchivedOrder a";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private Shards shards;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${read.fetchSize:500}")
+	private int fetchSize = 500;
+
+	public void setEntityManager(EntityManager em) {
+		this.em = em;
+	}
+
+	@Autowired
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	@Override
+	public Accountprofile findAccountProfile(final Integer profileId) {
+		shards.locateAndBind(new ShardCallback<Boolean>() {
+			public Boolean doInShard(int shard) {
+				return !rows(em.createQuery("SELECT p.profileid FROM Accountprofile p WHERE p.profileid = :profileId")
+						.setParameter("profileId", profileId)).isEmpty();
+			}
+		});
+		List<Object[]> rows = rows(em.createQuery("SELECT p.profileid, p.address, p.passwd, p.userid, p.email, p.creditcard, "
+				+ "p.fullname FROM Accountprofile p WHERE p.profileid = :profileId")
+				.setParameter("profileId", profileId));
+		if (rows.isEmpty()) {
+			return null;
+		}
+		Object[] row = rows.get(0);
+		Accountprofile accountProfile = new Accountprofile();
+		accountProfile.setProfileid((Integer) row[0]);
+		accountProfile.setAddress((String) row[1]);
+		accountProfile.setPasswd((String) row[2]);
+		accountProfile.setUserid((String) row[3]);
+		accountProfile.setEmail((String) row[4]);
+		accountProfile.setCreditcard((String) row[5]);
+		accountProfile.setFullname((String) row[6]);
+		@SuppressWarnings("rawtypes")
+		List<Map> accounts = new ArrayList<Map>();
+		for (Object[] account : rows(em.createQuery(ACCOUNT_COLUMNS + " WHERE a.profileProfileid.profileid = :profileId ORDER BY a.accountid")
+				.setParameter("profileId", profileId))) {
+			accounts.add(toAccountMap(account));
+		}
+		accountProfile.setAccounts(accounts);
+		return accountProfile;
+	}
+
+	@Override
+	public Account findAccount(Integer accountId) {
+		shards.bindAccount(accountId);
+		List<Object[]> rows = rows(em.createQuery(ACCOUNT_COLUMNS + " WHERE a.accountid = :accountId")
+				.setParameter("accountId", accountId));
+		return rows.isEmpty() ? null : toAccount(rows.get(0));
+	}
+
+	@Override
+	public Holding findHolding(Integer holdingId, Integer accountId) {
+		shards.bindAccount(accountId);
+		List<Object[]> rows = rows(em.createQuery(HOLDING_COLUMNS + " WHERE h.holdingid = :holdingId AND h.accountAccountid = :accountId")
+				.setParameter("holdingId", holdingId)
+				.setParameter("accountId", accountId));
+		return rows.isEmpty() ? null : toHolding(rows.get(0));
+	}
+
+	@Override
+	public List<Holding> findHoldings(Integer accountId, int page, int pageSize) {
+		shards.bindAccount(accountId);
+		return toHoldings(rows(em.createQuery(HOLDING_COLUMNS + " WHERE h.accountAccountid = :accountId")
+				.setParameter("accountId", accountId)
+				.setFirstResult(page * pageSize)
+				.setMaxResults(pageSize)));
+	}
+
+	@Override
+	public List<Holding> findHoldingsAfter(Integer accountId, Integer afterHoldingId, int maxResults) {
+		shards.bindAccount(accountId);
+		return toHoldings(rows(em.createQuery(HOLDING_COLUMNS + " WHERE h.accountAccountid = :accountId AND h.holdingid < :afterHoldingId"
+				+ " ORDER BY h.holdingid DESC")
+				.setParameter("accountId", accountId)
+				.setParameter("afterHoldingId", seekFrom(afterHoldingId))
+				.setMaxResults(maxResults)));
+	}
+
+	@Override
+	public Order findOrder(Integer orderId, Integer accountId) {
+		shards.bindAccount(accountId);
+		List<Object[]> rows = rows(em.createQuery(ORDER_COLUMNS + " WHERE o.orderid = :orderId AND o.accountAccountid.accountid = :accountId")
+				.setParameter("orderId", orderId)
+				.setParameter("accountId", accountId));
+		if (!rows.isEmpty()) {
+			return toOrder(rows.get(0));
+		}
+		List<Order> archived = toArchivedOrders(rows(em.createQuery(ARCHIVED_ORDER_COLUMNS + " WHERE a.orderid = :orderId AND a.accountid = :accountId")
+				.setParameter("orderId", orderId)
+				.setParameter("accountId", accountId)));
+		return archived.isEmpty() ? null : archived.get(0);
+	}
+
+	@Override
+	public List<Order> findOrders(Integer accountId, String status, int page, int pageSize) {
+		final List<Order> orders = new ArrayList<Order>();
+		streamOrders(accountId, status, page, pageSize, new RowHandler<Order>() {
+			public void handleRow(Order order) {
+				orders.add(order);
+			}
+		});
+		return orders;
+	}
+
+	@Override
+	public void streamOrders(Integer accountId, String status, int page, int pageSize, final RowHandler<? super Order> handler) {
+		shards.bindAccount(accountId);
+		final int[] hotRows = new int[1];
+		stream(SQL_ORDER_COLUMNS + " WHERE o.account_accountid = ?" + (status != null ? " AND o.orderstatus = ?" : "")
+				+ " ORDER BY o.orderid DESC LIMIT ? OFFSET ?", params(accountId, status, pageSize, page * pageSize),
+				new RowHandler<Object[]>() {
+					public void handleRow(Object[] row) {
+						handler.handleRow(toOrder(row));
+						hotRows[0]++;
+					}
+				});
+		if (hotRows[0] >= pageSize) {
+			return;
+		}
+		// same arithmetic as TradingServiceImpl: the archive continues where the hot rows run out
+		long hotCount;
+		if (hotRows[0] > 0) {
+			hotCount = (long) page * pageSize + hotRows[0];
+		}
+		else {
+			hotCount = (Long) bind(em.createQuery("SELECT count(o) FROM Order o WHERE o.accountAccountid.accountid = :accountId"
+					+ (status != null ? " AND o.orderstatus = :status" : "")), accountId, status).getSingleResult();
+		}
+		int firstResult = (int) Math.max(0, (long) page * pageSize - hotCount);
+		final Map<String, Quote> quotes = new HashMap<String, Quote>();
+		stream(SQL_ARCHIVED_ORDER_COLUMNS + " WHERE a.account_accountid = ?" + (status != null ? " AND a.orderstatus = ?" : "")
+				+ " ORDER BY a.orderid DESC LIMIT ? OFFSET ?", params(accountId, status, pageSize - hotRows[0], firstResult),
+				new RowHandler<Object[]>() {
+					public void handleRow(Object[] row) {
+						String symbol = (String) row[2];
+						if (!quotes.containsKey(symbol)) {
+							quotes.put(symbol, findQuote(symbol));
+						}
+						handler.handleRow(toArchivedOrder(row, quotes.get(symbol)));
+					}
+				});
+	}
+
+	@Override
+	public List<Order> findOrdersAfter(Integer accountId, String status, Integer afterOrderId, int maxResults) {
+		shards.bindAccount(accountId);
+		Query query = em.createQuery(ORDER_COLUMNS + " WHERE o.accountAccountid.accountid = :accountId AND o.orderid < :afterOrderId"
+				+ (status != null ? " AND o.orderstatus = :status" : "") + " ORDER BY o.orderid DESC");
+		List<Order> orders = toOrders(rows(bind(query, accountId, status)
+				.setParameter("afterOrderId", seekFrom(afterOrderId))
+				.setMaxResults(maxResults)));
+		if (orders.size() < maxResults) {
+			// past the hot set: every archived order is older than every hot one
+			Integer archiveFrom = orders.isEmpty() ? seekFrom(afterOrderId) : orders.get(orders.size() - 1).getOrderid();
+			query = em.createQuery(ARCHIVED_ORDER_COLUMNS + " WHERE a.accountid = :accountId AND a.orderid < :afterOrderId"
+					+ (status != null ? " AND a.orderstatus = :status" : "") + " ORDER BY a.orderid DESC");
+			orders.addAll(toArchivedOrders(rows(bind(query, accountId, status)
+					.setParameter("afterOrderId", archiveFrom)
+					.setMaxResults(maxResults - orders.size()))));
+		}
+		return orders;
+	}
+
+	@Override
+	public List<Quote> findAllQuotes() {
+		List<Object[]> rows = rows(em.createQuery("SELECT " + QUOTE_COLUMNS + " FROM Quote q"));
+		List<Quote> quotes = new ArrayList<Quote>(rows.size());
+		for (Object[] row : rows) {
+			quotes.add(toQuote(row, 0));
+		}
+		return quotes;
+	}
+
+	@Override
+	public Long countQuotes() {
+		return (Long) em.createQuery("SELECT count(q) FROM Quote q").getSingleResult();
+	}
+
+	@Override
+	public void streamAllQuotes(final RowHandler<? super Quote> handler) {
+		stream("SELECT " + SQL_QUOTE_COLUMNS + " FROM QUOTE q", new Object[0], new RowHandler<Object[]>() {
+			public void handleRow(Object[] row) {
+				handler.handleRow(toQuote(row, 0));
+			}
+		});
+	}
+
+	@Override
+	public Quote findQuote(String symbol) {
+		List<Object[]> rows = rows(em.createQuery("SELECT " + QUOTE_COLUMNS + " FROM Quote q WHERE q.symbol = :symbol")
+				.setParameter("symbol", symbol));
+		return rows.isEmpty() ? null : toQuote(rows.get(0), 0);
+	}
+
+	@Override
+	public Map<String, Quote> findQuotes(Set<String> symbols) {
+		Map<String, Quote> quotes = new HashMap<String, Quote>();
+		if (symbols == null || symbols.isEmpty()) {
+			return quotes;
+		}
+		for (Object[] row : rows(em.createQuery("SELECT " + QUOTE_COLUMNS + " FROM Quote q WHERE q.symbol IN (:symbols)")
+				.setParameter("symbols", symbols))) {
+			Quote quote = toQuote(row, 0);
+			quotes.put(quote.getSymbol(), quote);
+		}
+		return quotes;
+	}
+
+	private Query bind(Query query, Integer accountId, String status) {
+		query.setParameter("accountId", accountId);
+		if (status != null) {
+			query.setParameter("status", status);
+		}
+		return query;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> rows(Query query) {
+		return query.getResultList();
+	}
+
+	private Object[] params(Integer accountId, String status, int limit, int offset) {
+		return status != null ? new Object[] { accountId, status, limit, offset } : new Object[] { accountId, limit, offset };
+	}
+
+	private void stream(final String sql, final Object[] params, final RowHandler<Object[]> handler) {
+		jdbcTemplate.query(new PreparedStatementCreator() {
+			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+				PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(fetchSize);
+				for (int i = 0; i < params.length; i++) {
+					ps.setObject(i + 1, params[i]);
+				}
+				return ps;
+			}
+		}, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				Object[] row = new Object[rs.getMetaData().getColumnCount()];
+				for (int i = 0; i < row.length; i++) {
+					row[i] = rs.getObject(i + 1);
+				}
+				handler.handleRow(row);
+			}
+		});
+	}
+
+	private Integer seekFrom(Integer afterId) {
+		return afterId == null ? Integer.MAX_VALUE : afterId;
+	}
+
+	private Map<String, Object> toAccountMap(Object[] row) {
+		// the keys and null handling of the accountProfile.account mapping
+		Map<String, Object> account = new HashMap<String, Object>();
+		put(account, "version", row[7]);
+		put(account, "creationdate", row[1]);
+		put(account, "openbalance", row[2]);
+		put(account, "logoutcount", row[3]);
+		put(account, "balance", row[4]);
+		put(account, "lastlogin", row[5]);
+		put(account, "logincount", row[6]);
+		put(account, "accountid", row[0]);
+		return account;
+	}
+
+	private Account toAccount(Object[] row) {
+		Account account = new Account();
+		account.setAccountid((Integer) row[0]);
+		account.setCreationdate((Date) row[1]);
+		account.setOpenbalance((BigDecimal) row[2]);
+		account.setLogoutcount((Integer) row[3]);
+		account.setBalance((BigDecimal) row[4]);
+		account.setLastlogin((Date) row[5]);
+		account.setLogincount((Integer) row[6]);
+		return account;
+	}
+
+	private List<Holding> toHoldings(List<Object[]> rows) {
+		List<Holding> holdings = new ArrayList<Holding>(rows.size());
+		for (Object[] row : rows) {
+			holdings.add(toHolding(row));
+		}
+		return holdings;
+	}
+
+	private Holding toHolding(Object[] row) {
+		Holding holding = new Holding();
+		holding.setHoldingid((Integer) row[0]);
+		holding.setPurchaseprice((BigDecimal) row[1]);
+		holding.setQuantity((BigDecimal) row[2]);
+		holding.setPurchasedate((Date) row[3]);
+		holding.setAccountAccountid((Integer) row[4]);
+		if (row[5] != null) {
+			Quote quote = new Quote();
+			quote.setSymbol((String) row[5]);
+			holding.setQuote(quote);
+		}
+		return holding;
+	}
+
+	private List<Order> toOrders(List<Object[]> rows) {
+		List<Order> orders = new ArrayList<Order>(rows.size());
+		for (Object[] row : rows) {
+			orders.add(toOrder(row));
+		}
+		return orders;
+	}
+
+	private Order toOrder(Object[] row) {
+		Order order = new Order();
+		order.setOrderid((Integer) row[0]);
+		order.setAccountid((Integer) row[1]);
+		order.setHoldingid((Integer) row[2]);
+		order.setOrderfee((BigDecimal) row[3]);
+		order.setCompletiondate((Date) row[4]);
+		order.setOrdertype((String) row[5]);
+		order.setOrderstatus((String) row[6]);
+		order.setPrice((BigDecimal) row[7]);
+		order.setQuantity((BigDecimal) row[8]);
+		order.setOpendate((Date) row[9]);
+		order.setQuote(toQuote(row, 10));
+		return order;
+	}
+
+	/**
+	 * Archived rows only keep the symbol, so they are given the current quote like
+	 * TradingServiceImpl does when it rebuilds them.
+	 */
+	private List<Order> toArchivedOrders(List<Object[]> rows) {
+		List<Order> orders = new ArrayList<Order>(rows.size());
+		if (rows.isEmpty()) {
+			return orders;
+		}
+		Set<String> symbols = new HashSet<String>();
+		for (Object[] row : rows) {
+			symbols.add((String) row[2]);
+		}
+		Map<String, Quote> quotes = findQuotes(symbols);
+		for (Object[] row : rows) {
+			orders.add(toArchivedOrder(row, quotes.get(row[2])));
+		}
+		return orders;
+	}
+
+	private Order toArchivedOrder(Object[] row, Quote quote) {
+		Order order = new Order();
+		order.setOrderid((Integer) row[0]);
+		order.setAccountid((Integer) row[1]);
+		order.setQuote(quote);
+		order.setOrderfee((BigDecimal) row[3]);
+		order.setCompletiondate((Date) row[4]);
+		order.setOrdertype((String) row[5]);
+		order.setOrderstatus((String) row[6]);
+		order.setPrice((BigDecimal) row[7]);
+		order.setQuantity((BigDecimal) row[8]);
+		order.setOpendate((Date) row[9]);
+		return order;
+	}
+
+	private Quote toQuote(Object[] row, int offset) {
+		if (row[offset] == null) {
+			// left join found no quote
+			return null;
+		}
+		Quote quote = new Quote();
+		quote.setQuoteid((Integer) row[offset]);
+		quote.setLow((BigDecimal) row[offset + 1]);
+		quote.setOpen1((BigDecimal) row[offset + 2]);
+		quote.setVolume((BigDecimal) row[offset + 3]);
+		quote.setPrice((BigDecimal) row[offset + 4]);
+		quote.setHigh((BigDecimal) row[offset + 5]);
+		quote.setCompanyname((String) row[offset + 6]);
+		quote.setSymbol((String) row[offset + 7]);
+		quote.setChange1((BigDecimal) row[offset + 8]);
+		return quote;
+	}
+
+	private static void put(Map<String, Object> map, String key, Object value) {
+		if (value != null) {
+			map.put(key, value);
+		}
+	}
+}
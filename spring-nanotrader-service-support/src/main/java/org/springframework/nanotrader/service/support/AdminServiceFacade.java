@@ -20,7 +20,11 @@
  */
 package org.springframework.nanotrader.service.support;
 
+import java.util.List;
+
+import org.springframework.nanotrader.service.domain.Job;
 import org.springframework.nanotrader.service.domain.PerfTestData;
+import org.springframework.nanotrader.service.domain.ProgressData;
 
 /**
  * @author Ilayaperumal Gopinathan
@@ -28,12 +32,26 @@ import org.springframework.nanotrader.service.domain.PerfTestData;
  */
 public interface AdminServiceFacade {
 
-	public abstract void recreateData(int count);
+	public abstract Job recreateData(int count);
 	
-	public abstract Integer getProgressCount();
+	public abstract ProgressData getProgress();
 	
-	public abstract void deleteUserAccount(String userid);
+	public abstract Job deleteUserAccount(String userid);
 	
-	public abstract void runPerfTest(PerfTestData perfTestData, String serverUrl);
+	public abstract List<Job> runPerfTest(PerfTestData perfTestData, String serverUrl);
+
+	public abstract Job repairAccountCounters();
+
+	public abstract Job exportSnapshot(String name);
+
+	public abstract Job importSnapshot(String name);
+
+	public abstract Job getSnapshotJob();
+
+	public abstract List<Job> getJobs();
+
+	public abstract Job getJob(Integer jobId);
+
+	public abstract Job cancelJob(Integer jobId);
 	
 }
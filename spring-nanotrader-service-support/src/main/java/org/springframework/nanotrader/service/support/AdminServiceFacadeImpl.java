@@ -15,29 +15,39 @@
  */
 package org.springframework.nanotrader.service.support;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 
 import org.dozer.Mapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.nanotrader.data.domain.Account;
-import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.core.env.Environment;
+import org.springframework.nanotrader.data.service.BulkDataGenerator;
 import org.springframework.nanotrader.data.service.TradingService;
-import org.springframework.nanotrader.service.cache.DataCreationProgressCache;
+import org.springframework.nanotrader.data.snapshot.DatasetSnapshot;
+import org.springframework.nanotrader.service.domain.Job;
 import org.springframework.nanotrader.service.domain.Order;
 import org.springframework.nanotrader.service.domain.PerfTestData;
+import org.springframework.nanotrader.service.domain.ProgressData;
 import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.nanotrader.service.job.JobContext;
+import org.springframework.nanotrader.service.job.JobService;
+import org.springframework.nanotrader.service.job.JobTask;
+import org.springframework.nanotrader.service.support.exception.NoRecordsFoundException;
 import org.springframework.stereotype.Service;
 
 
 
 /**
+ * Every admin operation runs as a background job of {@link JobService} and returns as soon as it is
+ * queued. Jobs that replace or copy the dataset (user data, export and import) are not started while
+ * another of them is unfinished.
  * @author Ilayaperumal Gopinathan
  * 
  */
@@ -46,6 +56,27 @@ public class AdminServiceFacadeImpl implements AdminServiceFacade {
 
 	private static Logger log = LoggerFactory.getLogger(AdminServiceFacadeImpl.class);
 
+	static final String USERDATA = "userdata";
+
+	static final String DELETE_ACCOUNT = "deleteaccount";
+
+	static final String COUNTERS = "counters";
+
+	static final String PERFTEST = "perftest";
+
+	static final String EXPORT = "export";
+
+	static final String IMPORT = "import";
+
+	/**
+	 * Recreating, exporting and importing the dataset exclude each other.
+	 */
+	private static final String DATASET_JOBS = "dataset";
+
+	private static final int LATEST_JOBS = 50;
+
+	private static final Pattern SNAPSHOT_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+
 	@Resource
 	private TradingService tradingService;
 
@@ -53,88 +84,203 @@ public class AdminServiceFacadeImpl implements AdminServiceFacade {
 	private TradingServiceFacade tradingServiceFacade;
 
 	@Resource
-	private DataCreationProgressCache progressCache;
+	private JobService jobService;
 
 	@Resource
 	private Mapper mapper;
 
+	@Resource
+	private BulkDataGenerator bulkDataGenerator;
+
+	@Resource
+	private Environment environment;
+
+	@Resource
+	private DatasetSnapshot datasetSnapshot;
+
+	/**
+	 * Replaces all users with admin and count generated users, each buying 1000 shares of five quotes.
+	 * The users are written in bulk, and so are their orders unless generator.ordersViaBroker is set,
+	 * in which case the orders are sent through the broker and processed as they arrive.
+	 */
 	@Override
-	public void recreateData(int count) {
+	public Job recreateData(final int count) {
+		return jobService.submitExclusive(DATASET_JOBS, USERDATA, "Recreate " + count + " users", new JobTask() {
+			public void run(JobContext context) {
+				createUsers(count, context);
+			}
+		});
+	}
+
+	private void createUsers(final int count, final JobContext context) {
 		tradingService.deleteAll();
-		ArrayList<Quote> quotes = new ArrayList<Quote>();
-		for (org.springframework.nanotrader.data.domain.Quote q : tradingService.findRandomQuotes(5)) {
-			Quote quote = new Quote();
-			mapper.map(q, quote);
-			quotes.add(quote);
+		context.progress(0, (long) count);
+		boolean ordersViaBroker = environment.getProperty("generator.ordersViaBroker", Boolean.class, false);
+		List<org.springframework.nanotrader.data.domain.Quote> quotes = tradingService.findRandomQuotes(5);
+		final List<Quote> brokerQuotes = new ArrayList<Quote>();
+		if (ordersViaBroker) {
+			for (org.springframework.nanotrader.data.domain.Quote q : quotes) {
+				Quote quote = new Quote();
+				mapper.map(q, quote);
+				brokerQuotes.add(quote);
+			}
 		}
 		log.debug("Creating " + count + " users");
-		for (int i = 0; i <= count; i++) {
-			String userid;
-			if (i == 0) {
-				log.debug("Creating admin user");
-				userid = "admin";
+		BulkDataGenerator.Result result = bulkDataGenerator.generate(count, ordersViaBroker ? null : quotes,
+				new BulkDataGenerator.ProgressListener() {
+					public void usersCreated(int total, List<Integer> accountIds) {
+						sendOrders(accountIds, brokerQuotes);
+						context.progress(Math.min(total, count), (long) count);
+					}
+				});
+		context.setMessage("Created " + result.getUsers() + " users at " + result.getRowsPerSecond() + " rows/s");
+		log.info("AdminServiceFacadeImpl.recreateData: created " + result.getUsers() + " users at "
+				+ result.getRowsPerSecond() + " rows/s");
+	}
+
+	private void sendOrders(List<Integer> accountIds, List<Quote> quotes) {
+		Date now = new Date();
+		for (Integer accountId : accountIds) {
+			for (Quote quote : quotes) {
+				Order o = new Order();
+				o.setAccountid(accountId);
+				o.setCompletiondate(now);
+				o.setQuantity(new BigDecimal(1000));
+				o.setOrdertype("buy");
+				o.setQuote(quote);
+				tradingServiceFacade.saveOrder(o, false);
 			}
-			else {
-				userid = "user" + i;
+		}
+	}
+
+	/**
+	 * Progress of the latest user data job, of whichever node runs it.
+	 */
+	@Override
+	public ProgressData getProgress() {
+		ProgressData progress = new ProgressData();
+		Job job = jobService.findLatest(USERDATA);
+		if (job != null) {
+			progress.setJobid(job.getJobid());
+			progress.setStatus(job.getStatus());
+			progress.setUsercount(job.getDone() == null ? null : job.getDone().intValue());
+			progress.setRatepersecond(job.getRatepersecond());
+			progress.setEtaseconds(job.getEtaseconds());
+		}
+		return progress;
+	}
+
+	@Override
+	public Job deleteUserAccount(final String userId) {
+		return jobService.submit(DELETE_ACCOUNT, "Delete the account of " + userId, new JobTask() {
+			public void run(JobContext context) {
+				tradingService.deleteAccountByUserid(userId);
 			}
-			BigDecimal balance = BigDecimal.valueOf(1000000.00);
-			Account ac = new Account();
-			ac.setBalance(balance);
-			Date creationdate = new Date();
-			ac.setCreationdate(creationdate);
-			ac.setLastlogin(creationdate);
-			ac.setLogincount(0);
-			ac.setLogoutcount(0);
-			ac.setOpenbalance(balance);
-			Accountprofile ap = new Accountprofile();
-			ap.setUserid(userid);
-			// Password is same as that of the userid
-			ap.setPasswd(userid);
-			ap.setAddress(userid + " address");
-			ap.setEmail(userid + "@nanotrader.com");
-			ap.setFullname("first_" + userid + " " + "last " + userid);
-			ap.setCreditcard("1111222233334444");
-			Set<Account> accounts = new HashSet<Account>();
-			accounts.add(ac);
-			ap.setAccounts(accounts);
-			tradingService.saveAccountProfile(ap);
-			Order o = new Order();
-			o.setAccountid((tradingService.findAccountByProfile(ap)).getAccountid());
-			o.setCompletiondate(creationdate);
-			o.setQuantity(new BigDecimal(1000));
-			o.setOrdertype("buy");
-			o.setQuote(quotes.get(0));
-			tradingServiceFacade.saveOrder(o, false);
-			o.setQuote(quotes.get(1));
-			tradingServiceFacade.saveOrder(o, false);
-			o.setQuote(quotes.get(2));
-			tradingServiceFacade.saveOrder(o, false);
-			o.setQuote(quotes.get(3));
-			tradingServiceFacade.saveOrder(o, false);
-			o.setQuote(quotes.get(4));
-			tradingServiceFacade.saveOrder(o, false);
-			progressCache.setProgresscount(i);
+		});
+	}
+
+	@Override
+	public Job repairAccountCounters() {
+		return jobService.submit(COUNTERS, "Rebuild the account counters", new JobTask() {
+			public void run(JobContext context) {
+				tradingService.repairAccountCounters();
+			}
+		});
+	}
+
+	/**
+	 * Exports the dataset to the named directory under snapshot.directory, resuming an export left
+	 * unfinished there.
+	 */
+	@Override
+	public Job exportSnapshot(String name) {
+		final File directory = snapshotDirectory(name);
+		return jobService.submitExclusive(DATASET_JOBS, EXPORT, "Export the dataset to " + name, new JobTask() {
+			public void run(JobContext context) {
+				DatasetSnapshot.Result result = datasetSnapshot.exportTo(directory, listener(context));
+				context.setMessage("Exported " + result.getRows() + " rows at " + result.getRowsPerSecond() + " rows/s");
+			}
+		});
+	}
+
+	/**
+	 * Replaces the dataset with the export in the named directory, resuming an import left unfinished
+	 * from it, and rebuilds the account counters the export leaves out.
+	 */
+	@Override
+	public Job importSnapshot(String name) {
+		final File directory = snapshotDirectory(name);
+		return jobService.submitExclusive(DATASET_JOBS, IMPORT, "Import the dataset from " + name, new JobTask() {
+			public void run(JobContext context) {
+				DatasetSnapshot.Result result = datasetSnapshot.importFrom(directory, listener(context));
+				tradingService.repairAccountCounters();
+				context.setMessage("Imported " + result.getRows() + " rows at " + result.getRowsPerSecond() + " rows/s");
+			}
+		});
+	}
+
+	@Override
+	public Job getSnapshotJob() {
+		return jobService.findLatest(EXPORT, IMPORT);
+	}
+
+	private File snapshotDirectory(String name) {
+		if (name == null || !SNAPSHOT_NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid snapshot name '" + name + "'");
+		}
+		return new File(environment.getProperty("snapshot.directory",
+				new File(System.getProperty("java.io.tmpdir"), "nanotrader-snapshots").getPath()), name);
+	}
+
+	/**
+	 * Reports the rows copied so far and the table of the last part, and stops the copy between parts
+	 * once the job is cancelled.
+	 */
+	private DatasetSnapshot.ProgressListener listener(final JobContext context) {
+		return new DatasetSnapshot.ProgressListener() {
+			public void partDone(String table, long rows) {
+				context.setMessage(table);
+				context.progress(rows, null);
+			}
+		};
+	}
+
+	@Override
+	public List<Job> runPerfTest(PerfTestData perfTestData, String serverUrl) {
+		Integer vmCount = Integer.parseInt(perfTestData.getVmcount());
+		List<Job> jobs = new ArrayList<Job>(vmCount);
+		for (int i = 0; i < vmCount; i++) {
+			final PerformanceRunner runner = new PerformanceRunner(perfTestData.getCount(), perfTestData.getType(),
+					perfTestData.getVmnames()[i], perfTestData.getUsernames()[i], perfTestData.getPasswords()[i],
+					perfTestData.getInstallopts()[i], serverUrl);
+			jobs.add(jobService.submit(PERFTEST, "Performance test on " + perfTestData.getVmnames()[i], new JobTask() {
+				public void run(JobContext context) {
+					runner.run();
+				}
+			}));
 		}
-		log.debug("User data creation completed");
+		return jobs;
 	}
 
 	@Override
-	public Integer getProgressCount() {
-		return progressCache.getProgresscount();
+	public List<Job> getJobs() {
+		return jobService.findLatest(LATEST_JOBS);
 	}
 
 	@Override
-	public void deleteUserAccount(String userId) {
-		tradingService.deleteAccountByUserid(userId);
+	public Job getJob(Integer jobId) {
+		return found(jobService.find(jobId));
 	}
 
 	@Override
-	public void runPerfTest(PerfTestData perfTestData, String serverUrl) {
-        Integer vmCount = Integer.parseInt(perfTestData.getVmcount());
-        for (int i = 0; i < vmCount; i++){
-        	new Thread(new PerformanceRunner(perfTestData.getCount(), perfTestData.getType(), perfTestData.getVmnames()[i], perfTestData.getUsernames()[i], perfTestData.getPasswords()[i], perfTestData.getInstallopts()[i], serverUrl)).start();
-        }
-	}
-	
-	
+	public Job cancelJob(Integer jobId) {
+		return found(jobService.cancel(jobId));
+	}
+
+	private Job found(Job job) {
+		if (job == null) {
+			throw new NoRecordsFoundException();
+		}
+		return job;
+	}
 }
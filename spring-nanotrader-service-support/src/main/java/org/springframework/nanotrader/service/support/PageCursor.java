@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.support;
+
+/**
+ * Encodes and decodes the opaque cursors handed out for keyset (seek) pagination.
+ * A cursor carries the id of the last row of the previous page; clients should
+ * treat it as an opaque token and simply echo it back as the <code>after</code> parameter.
+ */
+public final class PageCursor {
+
+	private static final String PREFIX = "k";
+
+	private static final int RADIX = Character.MAX_RADIX;
+
+	private PageCursor() {
+	}
+
+	public static String encode(Integer id) {
+		if (id == null) {
+			return null;
+		}
+		return PREFIX + Integer.toString(id, RADIX);
+	}
+
+	public static Integer decode(String cursor) {
+		if (cursor == null || cursor.length() == 0) {
+			return null;
+		}
+		if (!cursor.startsWith(PREFIX)) {
+			throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+		}
+		try {
+			return Integer.valueOf(cursor.substring(PREFIX.length()), RADIX);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+		}
+	}
+}
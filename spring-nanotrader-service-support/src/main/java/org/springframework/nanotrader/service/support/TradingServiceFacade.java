@@ -27,6 +27,7 @@ import org.springframework.nanotrader.service.domain.MarketSummary;
 import org.springframework.nanotrader.service.domain.Order;
 import org.springframework.nanotrader.service.domain.PortfolioSummary;
 import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.nanotrader.service.domain.StreamingCollectionResult;
 
 /**
  * @author Gary Russell
@@ -55,16 +56,24 @@ public interface TradingServiceFacade {
 
 	CollectionResult findHoldingsByAccountId(Integer accountId, Integer page, Integer pageSize);
 
+	CollectionResult findHoldingsByAccountId(Integer accountId, String after, Integer pageSize, boolean includeCount);
+
 	Order findOrder(Integer orderId, Integer accountId);
 
 	void updateOrder(Order orderRequest);
 
 	CollectionResult findOrders(Integer accountId, String status, Integer page, Integer pageSize);
 
+	CollectionResult findOrders(Integer accountId, String status, String after, Integer pageSize, boolean includeCount);
+
+	StreamingCollectionResult streamOrders(Integer accountId, String status, Integer page, Integer pageSize);
+
 	Quote findQuoteBySymbol(String symbol);
 
 	CollectionResult findQuotes();
 
+	StreamingCollectionResult streamQuotes();
+
 	Account findAccount(Integer id);
 
 	PortfolioSummary findPortfolioSummary(Integer accountId);
@@ -16,6 +16,7 @@
 package org.springframework.nanotrader.service.support;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -40,6 +41,9 @@ import org.springframework.nanotrader.service.domain.MarketSummary;
 import org.springframework.nanotrader.service.domain.Order;
 import org.springframework.nanotrader.service.domain.PortfolioSummary;
 import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.nanotrader.service.domain.StreamingCollectionResult;
+import org.springframework.nanotrader.service.repository.RowHandler;
+import org.springframework.nanotrader.service.repository.TradingReadRepository;
 import org.springframework.nanotrader.service.support.exception.AuthenticationException;
 import org.springframework.nanotrader.service.support.exception.NoRecordsFoundException;
 import org.springframework.stereotype.Service;
@@ -47,7 +51,9 @@ import org.springframework.stereotype.Service;
 /**
 * Facade that, generally, delegates directly to a {@link TradingService},
 * after mapping from service domain to data domain. For {@link #saveOrder(Order, boolean)},
-* and option for synch/asynch processing is provided.
+* and option for synch/asynch processing is provided. Reads are served from a
+* {@link TradingReadRepository} when one is available, which projects straight into the
+* service domain instead of loading and mapping entities.
 * @author Gary Russell
 * @author Brian Dussault
 * @author Kashyap Parikh
@@ -86,6 +92,9 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
     @Autowired(required=false)
     private OrderGateway orderGateway;
 
+    @Autowired(required=false)
+    private TradingReadRepository tradingReadRepository;
+
     @Cacheable(value="authorizationCache")
     public Accountprofile findAccountprofileByAuthtoken(String token) { 
         if (token == null) { 
@@ -157,6 +166,9 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         if (log.isDebugEnabled()) {
             log.debug("TradingServiceFacade.findAccountProfile: id=" + id);
         }
+        if (tradingReadRepository != null) {
+            return found(tradingReadRepository.findAccountProfile(id));
+        }
         org.springframework.nanotrader.data.domain.Accountprofile accountProfile = tradingService.findAccountProfile(id);
         Accountprofile accountProfileResponse = new Accountprofile();
         if (accountProfile == null) {
@@ -200,6 +212,11 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         if (log.isDebugEnabled()) {
             log.debug("TradingServiceFacade.findHolding: id=" + id);
         }
+        if (tradingReadRepository != null) {
+            Holding holding = found(tradingReadRepository.findHolding(id, accountId));
+            withCurrentQuotes(Collections.singletonList(holding));
+            return holding;
+        }
         Holding holdingResponse = new Holding();
         org.springframework.nanotrader.data.domain.Holding holding = tradingService.findHolding(id, accountId);
         if (holding == null) {
@@ -226,10 +243,77 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         }
         
         
-        List<Holding> holdingResponse = new ArrayList<Holding>();
         collectionResults.setTotalRecords(tradingService.findCountOfHoldingsByAccountId(accountId));
-        List<org.springframework.nanotrader.data.domain.Holding> holdings = tradingService.findHoldingsByAccountId(accountId, getPage(page), getPageSize(pageSize));
+        List<Holding> holdingResponse;
+        if (tradingReadRepository != null) {
+            holdingResponse = withCurrentQuotes(tradingReadRepository.findHoldings(accountId, getPage(page), getPageSize(pageSize)));
+        } else {
+            List<org.springframework.nanotrader.data.domain.Holding> holdings = tradingService.findHoldingsByAccountId(accountId, getPage(page), getPageSize(pageSize));
+            holdingResponse = mapHoldings(holdings);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("TradingServiceFacade.findHoldingsByAccountId completed");
+        }
+        collectionResults.setPage(getPage(page));
+        collectionResults.setPageSize(getPageSize(pageSize));
+        collectionResults.setResults(holdingResponse);
+      
+        
+      
+        return collectionResults;
+    }
     
+    public CollectionResult findHoldingsByAccountId(Integer accountId, String after, Integer pageSize, boolean includeCount) {
+        if (log.isDebugEnabled()) {
+            log.debug("TradingServiceFacade.findHoldingsByAccount: id=" + accountId + " after=" + after);
+        }
+        CollectionResult collectionResults = new CollectionResult();
+        Integer size = getPageSize(pageSize);
+        if (includeCount) {
+            collectionResults.setTotalRecords(tradingService.findCountOfHoldingsByAccountId(accountId));
+        }
+        if (tradingReadRepository != null) {
+            List<Holding> holdings = tradingReadRepository.findHoldingsAfter(accountId, PageCursor.decode(after), size + 1);
+            if (holdings.size() > size) {
+                holdings = holdings.subList(0, size);
+                collectionResults.setNext(PageCursor.encode(holdings.get(size - 1).getHoldingid()));
+            }
+            collectionResults.setPageSize(size);
+            collectionResults.setResults(withCurrentQuotes(holdings));
+            return collectionResults;
+        }
+        // fetch one extra row to learn whether another page exists without counting
+        List<org.springframework.nanotrader.data.domain.Holding> holdings = tradingService.findHoldingsByAccountIdAfter(accountId, PageCursor.decode(after), size + 1);
+        if (holdings != null && holdings.size() > size) {
+            holdings = holdings.subList(0, size);
+            collectionResults.setNext(PageCursor.encode(holdings.get(size - 1).getHoldingid()));
+        }
+        collectionResults.setPageSize(size);
+        collectionResults.setResults(mapHoldings(holdings));
+        if (log.isDebugEnabled()) {
+            log.debug("TradingServiceFacade.findHoldingsByAccountId completed");
+        }
+        return collectionResults;
+    }
+    
+    private List<Holding> withCurrentQuotes(List<Holding> holdings) {
+        Set<String> symbols = new HashSet<String>();
+        for (Holding holding : holdings) {
+            if (holding.getQuote() != null) {
+                symbols.add(holding.getQuote().getSymbol());
+            }
+        }
+        Map<String, Quote> currentQuotes = tradingReadRepository.findQuotes(symbols);
+        for (Holding holding : holdings) {
+            if (holding.getQuote() != null) {
+                holding.setQuote(currentQuotes.get(holding.getQuote().getSymbol()));
+            }
+        }
+        return holdings;
+    }
+    
+    private List<Holding> mapHoldings(List<org.springframework.nanotrader.data.domain.Holding> holdings) {
+        List<Holding> holdingResponse = new ArrayList<Holding>();
         if (holdings != null  &&  holdings.size() > 0) {          
             Set<String> symbols = new HashSet<String>();
             for (org.springframework.nanotrader.data.domain.Holding h: holdings) { 
@@ -245,16 +329,7 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
                 holdingResponse.add(holding);
             }
         }
-        if (log.isDebugEnabled()) {
-            log.debug("TradingServiceFacade.findHoldingsByAccountId completed");
-        }
-        collectionResults.setPage(getPage(page));
-        collectionResults.setPageSize(getPageSize(pageSize));
-        collectionResults.setResults(holdingResponse);
-      
-        
-      
-        return collectionResults;
+        return holdingResponse;
     }
     
     
@@ -283,6 +358,9 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         if (log.isDebugEnabled()) {
             log.debug("TradingServiceFacade.findOrder: orderId=" + orderId + " accountId=" + accountId);
         }
+        if (tradingReadRepository != null) {
+            return found(tradingReadRepository.findOrder(orderId, accountId));
+        }
         org.springframework.nanotrader.data.domain.Order order =  tradingService.findOrder(orderId, accountId);
         if (order == null) {
             throw new NoRecordsFoundException();
@@ -309,29 +387,84 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         List<org.springframework.nanotrader.data.domain.Order> orders = null;
         
         collectionResults.setTotalRecords(tradingService.findCountOfOrders(accountId, status));
+        collectionResults.setPage(getPage(page));
+        collectionResults.setPageSize(getPageSize(pageSize));
+        if (tradingReadRepository != null) {
+            collectionResults.setResults(tradingReadRepository.findOrders(accountId, status, getPage(page), getPageSize(pageSize)));
+            return collectionResults;
+        }
         if (status != null) {
             orders = tradingService.findOrdersByStatus(accountId, status, getPage(page), getPageSize(pageSize)); //get by status
         } else {
             orders = tradingService.findOrders(accountId, getPage(page), getPageSize(pageSize)); //get all orders
         }
         
-       
+        collectionResults.setResults(mapOrders(orders));
+        
+        return collectionResults;
+    }
+    
+    public CollectionResult findOrders(Integer accountId, String status, String after, Integer pageSize, boolean includeCount) {
+        if (log.isDebugEnabled()) {
+            log.debug("OrderController.findOrders: accountId=" + accountId + " status" + status + " after=" + after);
+        }
+        CollectionResult collectionResults = new CollectionResult();
+        Integer size = getPageSize(pageSize);
+        if (includeCount) {
+            collectionResults.setTotalRecords(tradingService.findCountOfOrders(accountId, status));
+        }
+        if (tradingReadRepository != null) {
+            List<Order> orders = tradingReadRepository.findOrdersAfter(accountId, status, PageCursor.decode(after), size + 1);
+            if (orders.size() > size) {
+                orders = orders.subList(0, size);
+                collectionResults.setNext(PageCursor.encode(orders.get(size - 1).getOrderid()));
+            }
+            collectionResults.setPageSize(size);
+            collectionResults.setResults(orders);
+            return collectionResults;
+        }
+        // fetch one extra row to learn whether another page exists without counting
+        List<org.springframework.nanotrader.data.domain.Order> orders = tradingService.findOrdersAfter(accountId, status, PageCursor.decode(after), size + 1);
+        if (orders != null && orders.size() > size) {
+            orders = orders.subList(0, size);
+            collectionResults.setNext(PageCursor.encode(orders.get(size - 1).getOrderid()));
+        }
+        collectionResults.setPageSize(size);
+        collectionResults.setResults(mapOrders(orders));
+        return collectionResults;
+    }
+    
+    public StreamingCollectionResult streamOrders(final Integer accountId, final String status, Integer page, Integer pageSize) {
+        if (log.isDebugEnabled()) {
+            log.debug("OrderController.streamOrders: accountId=" + accountId + " status" + status);
+        }
+        if (tradingReadRepository == null) {
+            return StreamingCollectionResult.of(findOrders(accountId, status, page, pageSize));
+        }
+        final int pageNumber = getPage(page);
+        final int size = getPageSize(pageSize);
+        StreamingCollectionResult collectionResults = new StreamingCollectionResult() {
+            @Override
+            public void writeResults(RowHandler<Object> handler) {
+                tradingReadRepository.streamOrders(accountId, status, pageNumber, size, handler);
+            }
+        };
+        collectionResults.setTotalRecords(tradingService.findCountOfOrders(accountId, status));
+        collectionResults.setPage(pageNumber);
+        collectionResults.setPageSize(size);
+        return collectionResults;
+    }
+    
+    private List<Order> mapOrders(List<org.springframework.nanotrader.data.domain.Order> orders) {
         List<Order> responseOrders = new ArrayList<Order>();
         if (orders != null && orders.size() > 0 ) {
-            
-        
             for(org.springframework.nanotrader.data.domain.Order o: orders) {
                 Order order = new Order();
                 mapper.map(o, order, ORDER_MAPPING);
                 responseOrders.add(order);
             }
         }
-        
-        collectionResults.setPage(getPage(page));
-        collectionResults.setPageSize(getPageSize(pageSize));
-        collectionResults.setResults(responseOrders);
-        
-        return collectionResults;
+        return responseOrders;
     }
     
     public CollectionResult findQuotes() {
@@ -339,6 +472,12 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
             log.debug("TradingServiceFacade: findQuotes");
         }
         CollectionResult  collectionResults = new CollectionResult();
+        if (tradingReadRepository != null) {
+            List<Quote> quotes = tradingReadRepository.findAllQuotes();
+            collectionResults.setTotalRecords(new Long(quotes.size()));
+            collectionResults.setResults(quotes);
+            return collectionResults;
+        }
         List<org.springframework.nanotrader.data.domain.Quote> quotes = null;
         Long totalRecords = new Long(tradingService.findAllQuotes().size());
         collectionResults.setTotalRecords(totalRecords);
@@ -355,10 +494,30 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         return collectionResults;
     }
 
+    public StreamingCollectionResult streamQuotes() {
+        if (log.isDebugEnabled()) {
+            log.debug("TradingServiceFacade: streamQuotes");
+        }
+        if (tradingReadRepository == null) {
+            return StreamingCollectionResult.of(findQuotes());
+        }
+        StreamingCollectionResult collectionResults = new StreamingCollectionResult() {
+            @Override
+            public void writeResults(RowHandler<Object> handler) {
+                tradingReadRepository.streamAllQuotes(handler);
+            }
+        };
+        collectionResults.setTotalRecords(tradingReadRepository.countQuotes());
+        return collectionResults;
+    }
+
     public Account findAccount(Integer id) {
         if (log.isDebugEnabled()) {
             log.debug("TradingServiceFacade.findAccount: id=" + id);
         }
+        if (tradingReadRepository != null) {
+            return found(tradingReadRepository.findAccount(id));
+        }
         
         Account accountResponse = new Account();
         org.springframework.nanotrader.data.domain.Account account = tradingService.findAccount(id);
@@ -392,6 +551,9 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
         if (log.isDebugEnabled()) {
             log.debug("TradingServiceFacade.findQuote: quoteId=" + symbol);
         }
+        if (tradingReadRepository != null) {
+            return found(tradingReadRepository.findQuote(symbol));
+        }
         org.springframework.nanotrader.data.domain.Quote quote = tradingService.findQuoteBySymbol(symbol);
         if (quote == null) {
             throw new NoRecordsFoundException();
@@ -447,6 +609,13 @@ public class TradingServiceFacadeImpl implements TradingServiceFacade {
     	tradingService.killServer();
     }
     
+    private static <T> T found(T result) {
+        if (result == null) {
+            throw new NoRecordsFoundException();
+        }
+        return result;
+    }
+    
     private Integer getPageSize(Integer pageSize) { 
         if (pageSize == null) { 
             return DEFAULT_PAGE_SIZE;
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.cache;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.data.gemfire.support.GemfireCache;
+
+import com.gemstone.gemfire.cache.CacheFactory;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.RegionFactory;
+import com.gemstone.gemfire.cache.RegionShortcut;
+import com.gemstone.gemfire.cache.Scope;
+
+/**
+ * Compares authorization lookups per second against a global scope replicated region with and without
+ * the near cache in front of it. Run from the IDE or with
+ * <code>java ... AuthorizationNearCacheBenchmark [threads] [tokens] [seconds]</code>.
+ */
+public class AuthorizationNearCacheBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int tokens = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		com.gemstone.gemfire.cache.Cache gemfire = new CacheFactory().set("mcast-port", "0").set("log-level", "error").create();
+		try {
+			RegionFactory<Object, Object> factory = gemfire.createRegionFactory(RegionShortcut.REPLICATE);
+			factory.setScope(Scope.GLOBAL);
+			Region<Object, Object> region = factory.create("authorizationCache");
+			for (int i = 0; i < tokens; i++) {
+				region.put("token-" + i, "profile-" + i);
+			}
+
+			SimpleCacheManager regionOnly = new SimpleCacheManager();
+			regionOnly.setCaches(Collections.singletonList(new GemfireCache(region)));
+			regionOnly.afterPropertiesSet();
+
+			NearCache nearCache = new NearCache("authorizationCache");
+			nearCache.setMaxEntries(tokens);
+			NearCacheManager nearCached = new NearCacheManager();
+			nearCached.setCacheManager(regionOnly);
+			nearCached.setNearCaches(Collections.singletonList(nearCache));
+
+			run("warm-up", regionOnly, threads, tokens, 2);
+			System.out.printf("region only: %,d lookups/s%n", run("region only", regionOnly, threads, tokens, seconds));
+			run("warm-up", nearCached, threads, tokens, 2);
+			System.out.printf("near cache : %,d lookups/s%n", run("near cache", nearCached, threads, tokens, seconds));
+			System.out.println(nearCache);
+		}
+		finally {
+			gemfire.close();
+		}
+	}
+
+	private static long run(String name, CacheManager cacheManager, int threads, final int tokens, int seconds)
+			throws InterruptedException {
+		final Cache cache = cacheManager.getCache("authorizationCache");
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final AtomicLong lookups = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random();
+					long count = 0;
+					while (System.nanoTime() < deadline) {
+						for (int i = 0; i < 1000; i++) {
+							if (cache.get("token-" + random.nextInt(tokens)) == null) {
+								throw new IllegalStateException("missing token");
+							}
+						}
+						count += 1000;
+					}
+					lookups.addAndGet(count);
+					done.countDown();
+				}
+			}, name + "-" + t);
+			worker.start();
+		}
+		done.await();
+		return lookups.get() / seconds;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+public class NearCacheTests {
+
+	private NearCache nearCache;
+
+	private ConcurrentMapCacheManager backing;
+
+	private Cache cache;
+
+	@Before
+	public void setUp() {
+		nearCache = new NearCache("authorizationCache");
+		nearCache.setMaxEntries(2);
+		backing = new ConcurrentMapCacheManager("authorizationCache");
+		NearCacheManager manager = new NearCacheManager();
+		manager.setCacheManager(backing);
+		manager.setNearCaches(Collections.singletonList(nearCache));
+		cache = manager.getCache("authorizationCache");
+	}
+
+	@Test
+	public void testReadsAreServedLocallyAfterFirstMiss() {
+		backing.getCache("authorizationCache").put("token", "profile");
+		assertEquals("profile", cache.get("token").get());
+		backing.getCache("authorizationCache").evict("token"); // no listener in this test
+		assertEquals("profile", cache.get("token").get());
+		assertEquals(1, nearCache.getHits());
+		assertEquals(1, nearCache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() {
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.get("a");
+		cache.put("c", 3);
+		assertNotNull(nearCache.get("a"));
+		assertNull(nearCache.get("b"));
+		assertEquals(1, nearCache.getEvictions());
+	}
+
+	@Test
+	public void testEvictionMakesHeadroomAndKeepsRecentlyReadEntries() throws InterruptedException {
+		nearCache.setMaxEntries(20);
+		for (int i = 0; i < 20; i++) {
+			nearCache.put(i, i);
+		}
+		Thread.sleep(1); // the access stamps are nanoTime readings
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(nearCache.get(i));
+		}
+		nearCache.put(20, 20);
+		// one entry over the bound, plus a tenth of it
+		assertEquals(3, nearCache.getEvictions());
+		assertEquals(18, nearCache.getSize());
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(nearCache.get(i));
+		}
+		assertNotNull(nearCache.get(20));
+	}
+
+	@Test
+	public void testExpiredEntriesAreReloaded() {
+		nearCache.setTimeToLiveSeconds(0);
+		cache.put("token", "profile");
+		assertNull(nearCache.get("token"));
+		assertEquals(1, nearCache.getExpirations());
+		assertEquals("profile", cache.get("token").get());
+	}
+
+	@Test
+	public void testEvictAndListenerInvalidation() {
+		cache.put("a", 1);
+		cache.evict("a");
+		assertNull(cache.get("a"));
+
+		cache.put("b", 2);
+		nearCache.invalidate("b"); // what NearCacheInvalidator does for a remote destroy
+		assertNull(nearCache.get("b"));
+		assertEquals(2, cache.get("b").get());
+	}
+
+	@Test
+	public void testInvalidationDuringLoadIsNotOverwritten() {
+		long generation = nearCache.getGeneration();
+		nearCache.invalidate("token");
+		nearCache.put("token", "stale", generation);
+		assertNull(nearCache.get("token"));
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.springframework.nanotrader.service.repository.RowHandler;
+
+public class StreamingCollectionResultTests {
+
+	private final ObjectMapper json = new ObjectMapper();
+
+	@Test
+	public void testSameJsonAsCollectionResult() throws Exception {
+		List<Quote> quotes = new ArrayList<Quote>();
+		for (int i = 0; i < 3; i++) {
+			Quote quote = new Quote();
+			quote.setQuoteid(i);
+			quote.setSymbol("S" + i);
+			quote.setPrice(BigDecimal.valueOf(i * 10));
+			quotes.add(quote);
+		}
+		CollectionResult collectionResult = new CollectionResult();
+		collectionResult.setPage(1);
+		collectionResult.setPageSize(3);
+		collectionResult.setTotalRecords(7L);
+		collectionResult.setResults(quotes);
+		assertEquals(json.writeValueAsString(collectionResult),
+				json.writeValueAsString(StreamingCollectionResult.of(collectionResult)));
+		collectionResult.setResults(new ArrayList<Quote>());
+		assertEquals(json.writeValueAsString(collectionResult),
+				json.writeValueAsString(StreamingCollectionResult.of(collectionResult)));
+	}
+
+	@Test
+	public void testRowsAreWrittenAsTheyAreProduced() throws Exception {
+		final CountingOutputStream out = new CountingOutputStream();
+		StreamingCollectionResult result = new StreamingCollectionResult() {
+			@Override
+			public void writeResults(RowHandler<Object> handler) {
+				Quote quote = new Quote();
+				quote.setCompanyname(new String(new char[1000]).replace('\0', 'x'));
+				for (int i = 0; i < 10000; i++) {
+					quote.setQuoteid(i);
+					handler.handleRow(quote);
+				}
+				if (out.count < 1000000) {
+					fail("rows were buffered instead of written through: " + out.count + " bytes written");
+				}
+			}
+		};
+		json.writeValue(out, result);
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) throws IOException {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count += len;
+		}
+	}
+}
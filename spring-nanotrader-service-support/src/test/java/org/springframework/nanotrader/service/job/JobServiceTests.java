@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.nanotrader.data.domain.AdminJob;
+import org.springframework.nanotrader.data.repository.AdminJobRepository;
+import org.springframework.nanotrader.data.shard.Shards;
+import org.springframework.nanotrader.data.shard.Shards.ShardCallback;
+import org.springframework.nanotrader.service.domain.Job;
+
+public class JobServiceTests {
+
+	private AdminJobRepository repository;
+
+	private Shards shards;
+
+	private JobService jobService;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		repository = mock(AdminJobRepository.class);
+		final AtomicInteger ids = new AtomicInteger();
+		when(repository.saveAndFlush(any(AdminJob.class))).thenAnswer(new Answer<AdminJob>() {
+			public AdminJob answer(InvocationOnMock invocation) {
+				AdminJob job = (AdminJob) invocation.getArguments()[0];
+				job.setJobid(ids.incrementAndGet());
+				return job;
+			}
+		});
+		shards = mock(Shards.class);
+		when(shards.inShard(anyInt(), any(ShardCallback.class))).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				return ((ShardCallback<?>) invocation.getArguments()[1]).doInShard((Integer) invocation.getArguments()[0]);
+			}
+		});
+		MockEnvironment environment = new MockEnvironment();
+		environment.setProperty("admin.jobs.node", "test");
+		environment.setProperty("admin.jobs.threads", "1");
+		environment.setProperty("admin.jobs.queueSize", "1");
+		environment.setProperty("admin.jobs.updateIntervalMillis", "0");
+		environment.setProperty("admin.jobs.leaseSeconds", "1");
+		jobService = new JobService(repository, shards, environment);
+		jobService.start();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		jobService.stop();
+	}
+
+	@Test
+	public void testJobRunsInTheBackgroundAndRecordsItsProgress() {
+		Job job = jobService.submit("test", "Count to three", new JobTask() {
+			public void run(JobContext context) {
+				await(release);
+				context.progress(3, 3L);
+				context.setMessage("done");
+			}
+		});
+		assertNull(job.getFinished());
+		release.countDown();
+		verify(repository, timeout(5000)).updateFinished(eq(job.getJobid()), eq(JobService.COMPLETED), eq(3L),
+				eq(3L), eq("done"), any(Date.class));
+		verify(repository).updateStarted(eq(job.getJobid()), eq(JobService.RUNNING), any(Date.class));
+		verify(repository).updateProgress(job.getJobid(), 3L, 3L, null);
+	}
+
+	@Test
+	public void testRunningJobStopsAtItsNextProgressReportOnceCancelled() {
+		final CountDownLatch running = new CountDownLatch(1);
+		Job job = jobService.submit("test", "Count forever", new JobTask() {
+			public void run(JobContext context) {
+				for (long done = 0;; done++) {
+					running.countDown();
+					context.progress(done, null);
+				}
+			}
+		});
+		await(running);
+		jobService.cancel(job.getJobid());
+		verify(repository, timeout(5000)).updateFinished(eq(job.getJobid()), eq(JobService.CANCELLED), any(Long.class),
+				any(Long.class), eq("Job " + job.getJobid() + " was cancelled"), any(Date.class));
+		verify(repository).requestCancel(job.getJobid());
+	}
+
+	@Test
+	public void testWaitingJobIsDroppedOnCancelAndFullQueueRefusesMore() {
+		JobTask blocked = new JobTask() {
+			public void run(JobContext context) {
+				await(release);
+			}
+		};
+		jobService.submit("test", "Running", blocked);
+		Job waiting = jobService.submit("test", "Waiting", blocked);
+		try {
+			jobService.submit("test", "Refused", blocked);
+			fail("The queue holds a single job");
+		}
+		catch (IllegalStateException e) {
+			verify(repository).updateFinished(eq(3), eq(JobService.FAILED), eq(0L), any(Long.class), anyString(),
+					any(Date.class));
+		}
+		jobService.cancel(waiting.getJobid());
+		verify(repository).updateFinished(eq(waiting.getJobid()), eq(JobService.CANCELLED), eq(0L),
+				any(Long.class), anyString(), any(Date.class));
+		release.countDown();
+		verify(repository, timeout(5000)).updateFinished(eq(1), eq(JobService.COMPLETED), any(Long.class),
+				any(Long.class), anyString(), any(Date.class));
+		verify(repository, never()).updateStarted(eq(waiting.getJobid()), anyString(), any(Date.class));
+	}
+
+	@Test
+	public void testExclusiveJobIsRefusedWhileItsGroupIsHeld() {
+		AdminJob running = new AdminJob();
+		running.setJobid(7);
+		running.setDescription("Export");
+		when(repository.findByExclusivegroup("dataset")).thenReturn(running);
+		doThrow(new DataIntegrityViolationException("unique")).when(repository).saveAndFlush(any(AdminJob.class));
+		try {
+			jobService.submitExclusive("dataset", "import", "Import", new JobTask() {
+				public void run(JobContext context) {
+					fail("A refused job must not run");
+				}
+			});
+			fail("The dataset group is held by job 7");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("Job 7 (Export) has not finished yet", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNodesRenewTheirLeasesAndReclaimExpiredOnes() {
+		verify(repository, timeout(5000).atLeast(2)).renewLeases(anyString(), any(Date.class));
+		// once at start and once per renewal
+		verify(repository, timeout(5000).atLeast(3)).abandonExpired(any(Date.class), eq(JobService.FAILED),
+				anyString(), any(Date.class));
+	}
+
+	@Test
+	public void testEveryInstanceRunsAsANodeOfItsOwn() {
+		MockEnvironment environment = new MockEnvironment();
+		environment.setProperty("admin.jobs.node", "test");
+		JobService other = new JobService(repository, shards, environment);
+		other.start();
+		try {
+			JobTask task = new JobTask() {
+				public void run(JobContext context) {
+				}
+			};
+			String node = jobService.submit("test", "Here", task).getNode();
+			assertTrue(node, node.startsWith("test-"));
+			assertFalse(node.equals(other.submit("test", "There", task).getNode()));
+		}
+		finally {
+			other.stop();
+		}
+	}
+
+	@Test
+	public void testCancellingAJobOfAGoneNodeFinishesIt() {
+		jobService.cancel(42);
+		verify(repository).requestCancel(42);
+		verify(repository).abandonIfExpired(eq(42), any(Date.class), eq(JobService.CANCELLED), anyString(),
+				any(Date.class));
+	}
+
+	@Test
+	public void testRateAndTimeToCompletionFollowFromProgress() {
+		AdminJob adminJob = new AdminJob();
+		adminJob.setJobid(7);
+		adminJob.setStatus(JobService.RUNNING);
+		adminJob.setStarted(new Date(System.currentTimeMillis() - 10000));
+		adminJob.setDone(50L);
+		adminJob.setTotal(150L);
+		when(repository.findOne(anyInt())).thenReturn(adminJob);
+		Job job = jobService.find(7);
+		assertEquals(5.0, job.getRatepersecond(), 0.1);
+		assertTrue("eta " + job.getEtaseconds(), job.getEtaseconds() >= 19 && job.getEtaseconds() <= 21);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.dozer.DozerBeanMapper;
+import org.junit.Test;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Holding;
+import org.springframework.nanotrader.data.domain.HoldingAggregate;
+import org.springframework.nanotrader.data.domain.HoldingSummary;
+import org.springframework.nanotrader.data.domain.MarketSummary;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.PortfolioSummary;
+import org.springframework.nanotrader.data.domain.Quote;
+
+/**
+ * Checks that {@link DomainMapper} produces the same JSON as the Dozer mappings it replaces.
+ */
+public class DomainMapperTests {
+
+	private final DozerBeanMapper dozer = new DozerBeanMapper(Collections.singletonList("dozer-bean-mappings.xml"));
+
+	private final DomainMapper mapper = new DomainMapper(dozer);
+
+	private final ObjectMapper json = new ObjectMapper();
+
+	@Test
+	public void testOrderMapping() throws Exception {
+		assertSameMapping(order(), org.springframework.nanotrader.service.domain.Order.class, DomainMapper.ORDER);
+	}
+
+	@Test
+	public void testOrderRequestMapping() throws Exception {
+		org.springframework.nanotrader.service.domain.Order request = new org.springframework.nanotrader.service.domain.Order();
+		request.setAccountid(7);
+		request.setOrdertype("buy");
+		request.setQuantity(BigDecimal.TEN);
+		org.springframework.nanotrader.service.domain.Quote quote = new org.springframework.nanotrader.service.domain.Quote();
+		quote.setSymbol("VMW");
+		request.setQuote(quote);
+		Order expected = dozer.map(request, Order.class, DomainMapper.ORDER);
+		Order actual = mapper.map(request, Order.class, DomainMapper.ORDER);
+		assertEquals(expected.getAccountAccountid().getAccountid(), actual.getAccountAccountid().getAccountid());
+		// Dozer creates an empty Holding for a missing holdingid; buy orders never carry one
+		assertNull(actual.getHoldingHoldingid());
+		assertEquals(expected.getQuote().getSymbol(), actual.getQuote().getSymbol());
+		assertEquals(expected.getQuantity(), actual.getQuantity());
+		assertEquals(expected.getOrdertype(), actual.getOrdertype());
+	}
+
+	@Test
+	public void testQuoteMapping() throws Exception {
+		assertSameMapping(quote("VMW"), org.springframework.nanotrader.service.domain.Quote.class, DomainMapper.QUOTE);
+		assertSameMapping(quote("VMW"), org.springframework.nanotrader.service.domain.Quote.class, null);
+	}
+
+	@Test
+	public void testHoldingMapping() throws Exception {
+		assertSameMapping(holding(), org.springframework.nanotrader.service.domain.Holding.class, DomainMapper.HOLDING);
+	}
+
+	@Test
+	public void testAccountProfileMappings() throws Exception {
+		assertSameMapping(accountProfile(), org.springframework.nanotrader.service.domain.Accountprofile.class,
+				DomainMapper.ACCOUNT_PROFILE);
+		assertSameMapping(accountProfile(), org.springframework.nanotrader.service.domain.Accountprofile.class,
+				DomainMapper.ACCOUNT_PROFILE_NO_ACCOUNTS);
+		assertSameMapping(account(), org.springframework.nanotrader.service.domain.Account.class, DomainMapper.ACCOUNT);
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testAccountProfileRequestMapping() throws Exception {
+		org.springframework.nanotrader.service.domain.Accountprofile request = new org.springframework.nanotrader.service.domain.Accountprofile();
+		request.setUserid("user");
+		request.setPasswd("secret");
+		request.setFullname("Full Name");
+		Map<String, Object> account = new HashMap<String, Object>();
+		account.put("openbalance", "1000.50");
+		List<Map> accounts = new ArrayList<Map>();
+		accounts.add(account);
+		request.setAccounts(accounts);
+		Accountprofile expected = new Accountprofile();
+		dozer.map(request, expected);
+		Accountprofile actual = new Accountprofile();
+		mapper.map(request, actual);
+		assertEquals(expected.getUserid(), actual.getUserid());
+		assertEquals(expected.getFullname(), actual.getFullname());
+		assertEquals(expected.getAccounts().iterator().next().getOpenbalance(), actual.getAccounts().iterator().next()
+				.getOpenbalance());
+	}
+
+	@Test
+	public void testSummaryMappings() throws Exception {
+		PortfolioSummary portfolioSummary = new PortfolioSummary();
+		portfolioSummary.setNumberOfHoldings(3);
+		portfolioSummary.setTotalBasis(BigDecimal.valueOf(100));
+		portfolioSummary.setTotalMarketValue(BigDecimal.valueOf(120));
+		assertSameMapping(portfolioSummary, org.springframework.nanotrader.service.domain.PortfolioSummary.class,
+				DomainMapper.PORTFOLIO_SUMMARY);
+
+		MarketSummary marketSummary = new MarketSummary();
+		marketSummary.setTradeStockIndexAverage(BigDecimal.valueOf(50));
+		marketSummary.setTradeStockIndexOpenAverage(BigDecimal.valueOf(45));
+		marketSummary.setTradeStockIndexVolume(BigDecimal.valueOf(1000));
+		marketSummary.setChange(BigDecimal.valueOf(5));
+		marketSummary.setSummaryDate(new Date(1000000L));
+		marketSummary.setTopGainers(Collections.singletonList(quote("VMW")));
+		marketSummary.setTopLosers(Collections.singletonList(quote("EMC")));
+		assertSameMapping(marketSummary, org.springframework.nanotrader.service.domain.MarketSummary.class,
+				DomainMapper.MARKET_SUMMARY);
+
+		HoldingSummary holdingSummary = new HoldingSummary();
+		HoldingAggregate aggregate = new HoldingAggregate();
+		aggregate.setGain(BigDecimal.ONE);
+		aggregate.setPercent(BigDecimal.TEN);
+		aggregate.setSymbol("VMW");
+		holdingSummary.setHoldingRollups(Collections.singletonList(aggregate));
+		holdingSummary.setHoldingsTotalGains(BigDecimal.ONE);
+		assertSameMapping(holdingSummary, org.springframework.nanotrader.service.domain.HoldingSummary.class,
+				DomainMapper.HOLDING_SUMMARY);
+	}
+
+	private void assertSameMapping(Object source, Class<?> destinationClass, String mapId) throws Exception {
+		Object expected = mapId == null ? dozer.map(source, destinationClass) : dozer.map(source, destinationClass, mapId);
+		Object actual = mapper.map(source, destinationClass, mapId);
+		assertEquals(json.readTree(json.writeValueAsString(expected)), json.readTree(json.writeValueAsString(actual)));
+	}
+
+	static Quote quote(String symbol) {
+		Quote quote = new Quote();
+		quote.setQuoteid(symbol.hashCode());
+		quote.setSymbol(symbol);
+		quote.setCompanyname(symbol + " Inc.");
+		quote.setPrice(BigDecimal.valueOf(40.25));
+		quote.setOpen1(BigDecimal.valueOf(39.5));
+		quote.setHigh(BigDecimal.valueOf(41));
+		quote.setLow(BigDecimal.valueOf(39));
+		quote.setChange1(BigDecimal.valueOf(0.75));
+		quote.setVolume(BigDecimal.valueOf(1200));
+		return quote;
+	}
+
+	static Account account() {
+		Account account = new Account();
+		account.setAccountid(7);
+		account.setBalance(BigDecimal.valueOf(10000));
+		account.setOpenbalance(BigDecimal.valueOf(20000));
+		account.setCreationdate(new Date(1000000L));
+		account.setLogincount(3);
+		account.setLogoutcount(1);
+		return account;
+	}
+
+	static Accountprofile accountProfile() {
+		Accountprofile profile = new Accountprofile();
+		profile.setProfileid(5);
+		profile.setUserid("user");
+		profile.setPasswd("secret");
+		profile.setFullname("Full Name");
+		profile.setEmail("user@example.com");
+		profile.setAuthtoken("token");
+		profile.setAccounts(Collections.singleton(account()));
+		return profile;
+	}
+
+	static Holding holding() {
+		Holding holding = new Holding();
+		holding.setHoldingid(11);
+		holding.setAccountAccountid(7);
+		holding.setQuoteSymbol("VMW");
+		holding.setQuantity(BigDecimal.valueOf(100));
+		holding.setPurchaseprice(BigDecimal.valueOf(38.5));
+		holding.setPurchasedate(new Date(2000000L));
+		return holding;
+	}
+
+	static Order order() {
+		Order order = new Order();
+		order.setOrderid(21);
+		order.setAccountAccountid(account());
+		Holding holding = new Holding();
+		holding.setHoldingid(11);
+		order.setHoldingHoldingid(holding);
+		order.setOrdertype("buy");
+		order.setOrderstatus("open");
+		order.setQuantity(BigDecimal.valueOf(100));
+		order.setPrice(BigDecimal.valueOf(40.25));
+		order.setOrderfee(BigDecimal.valueOf(1));
+		order.setOpendate(new Date(3000000L));
+		order.setQuote(quote("VMW"));
+		return order;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.mapping;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.dozer.DozerBeanMapper;
+import org.dozer.Mapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.domain.Holding;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.domain.Quote;
+
+/**
+ * JMH benchmark of mapping throughput for the Dozer mappings and {@link DomainMapper}. Allocation per
+ * entity is reported as <code>gc.alloc.rate.norm</code> by the GC profiler, which {@link #main} enables.
+ * Run with <code>java ... MapperBenchmark [jmh options]</code> or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+	@Param({ "dozer", "domain" })
+	private String implementation;
+
+	private Mapper mapper;
+
+	private Order order;
+
+	private Quote quote;
+
+	private Holding holding;
+
+	private Accountprofile accountProfile;
+
+	@Setup
+	public void setUp() {
+		DozerBeanMapper dozer = new DozerBeanMapper(Collections.singletonList("dozer-bean-mappings.xml"));
+		mapper = "dozer".equals(implementation) ? dozer : new DomainMapper(dozer);
+		order = DomainMapperTests.order();
+		quote = DomainMapperTests.quote("VMW");
+		holding = DomainMapperTests.holding();
+		accountProfile = DomainMapperTests.accountProfile();
+	}
+
+	@Benchmark
+	public Object order() {
+		return mapper.map(order, org.springframework.nanotrader.service.domain.Order.class, DomainMapper.ORDER);
+	}
+
+	@Benchmark
+	public Object quote() {
+		return mapper.map(quote, org.springframework.nanotrader.service.domain.Quote.class, DomainMapper.QUOTE);
+	}
+
+	@Benchmark
+	public Object holding() {
+		return mapper.map(holding, org.springframework.nanotrader.service.domain.Holding.class, DomainMapper.HOLDING);
+	}
+
+	@Benchmark
+	public Object accountProfile() {
+		return mapper.map(accountProfile, org.springframework.nanotrader.service.domain.Accountprofile.class,
+				DomainMapper.ACCOUNT_PROFILE);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(MapperBenchmark.class.getSimpleName())
+				.addProfiler("gc")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.service.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.dozer.DozerBeanMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportResource;
+import org.springframework.nanotrader.data.domain.ArchivedOrder;
+import org.springframework.nanotrader.data.domain.test.OrderDataOnDemand;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.nanotrader.service.domain.Account;
+import org.springframework.nanotrader.service.domain.Accountprofile;
+import org.springframework.nanotrader.service.domain.Holding;
+import org.springframework.nanotrader.service.domain.Order;
+import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.nanotrader.service.mapping.DomainMapper;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Checks that the projections return the same JSON as loading entities through the
+ * {@link TradingService} and mapping them.
+ */
+@ActiveProfiles("test")
+@ContextConfiguration(loader = AnnotationConfigContextLoader.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+@Transactional
+public class TradingReadRepositoryTests {
+
+	@Configuration
+	@ImportResource({ "classpath:/META-INF/spring/applicationContext.xml", "classpath:/META-INF/spring/applicationContext-jpa.xml" })
+	static class Config {
+
+		@Bean
+		public TradingReadRepository tradingReadRepository() {
+			return new TradingReadRepositoryImpl();
+		}
+	}
+
+	@Autowired
+	private OrderDataOnDemand orderDataOnDemand;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private TradingReadRepository tradingReadRepository;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	private final DomainMapper mapper = new DomainMapper(new DozerBeanMapper(Collections.singletonList("dozer-bean-mappings.xml")));
+
+	private final ObjectMapper json = new ObjectMapper();
+
+	private org.springframework.nanotrader.data.domain.Order order;
+
+	private Integer accountId;
+
+	@Before
+	public void setUp() {
+		order = orderDataOnDemand.getRandomOrder();
+		accountId = order.getAccountAccountid().getAccountid();
+		// compare against what the database returns, not the instances the data on demand just created
+		em.flush();
+		em.clear();
+	}
+
+	@Test
+	public void testFindAccountProfile() throws Exception {
+		Integer profileId = tradingService.findAccount(accountId).getProfileProfileid().getProfileid();
+		em.clear();
+		Accountprofile expected = new Accountprofile();
+		mapper.map(tradingService.findAccountProfile(profileId), expected, DomainMapper.ACCOUNT_PROFILE);
+		// the entity keeps its accounts in a set, the projection reads them in id order
+		Collections.sort(expected.getAccounts(), new Comparator<Map>() {
+			public int compare(Map a, Map b) {
+				return ((Integer) a.get("accountid")).compareTo((Integer) b.get("accountid"));
+			}
+		});
+		em.clear();
+		assertSameJson(expected, tradingReadRepository.findAccountProfile(profileId));
+		assertNull(tradingReadRepository.findAccountProfile(-1));
+	}
+
+	@Test
+	public void testFindAccount() throws Exception {
+		assertSameJson(mapper.map(tradingService.findAccount(accountId), Account.class, DomainMapper.ACCOUNT),
+				tradingReadRepository.findAccount(accountId));
+		assertNull(tradingReadRepository.findAccount(-1));
+	}
+
+	@Test
+	public void testFindHoldings() throws Exception {
+		org.springframework.nanotrader.data.domain.Holding holding = order.getHoldingHoldingid();
+		Integer holdingAccountId = holding.getAccountAccountid();
+		assertSameJson(mapper.map(tradingService.findHolding(holding.getHoldingid(), holdingAccountId), Holding.class, DomainMapper.HOLDING),
+				tradingReadRepository.findHolding(holding.getHoldingid(), holdingAccountId));
+		assertSameJson(mapHoldings(tradingService.findHoldingsByAccountId(holdingAccountId, 0, 5)),
+				tradingReadRepository.findHoldings(holdingAccountId, 0, 5));
+		assertSameJson(mapHoldings(tradingService.findHoldingsByAccountIdAfter(holdingAccountId, null, 5)),
+				tradingReadRepository.findHoldingsAfter(holdingAccountId, null, 5));
+	}
+
+	@Test
+	public void testFindOrders() throws Exception {
+		assertSameJson(mapper.map(tradingService.findOrder(order.getOrderid(), accountId), Order.class, DomainMapper.ORDER),
+				tradingReadRepository.findOrder(order.getOrderid(), accountId));
+		assertSameJson(mapOrders(tradingService.findOrders(accountId, 0, 5)), tradingReadRepository.findOrders(accountId, null, 0, 5));
+		assertSameJson(mapOrders(tradingService.findOrdersByStatus(accountId, order.getOrderstatus(), 0, 5)),
+				tradingReadRepository.findOrders(accountId, order.getOrderstatus(), 0, 5));
+		assertSameJson(mapOrders(tradingService.findOrdersAfter(accountId, null, null, 5)),
+				tradingReadRepository.findOrdersAfter(accountId, null, null, 5));
+	}
+
+	@Test
+	public void testFindArchivedOrders() throws Exception {
+		// archived orderids are always below the hot ones
+		for (int i = 1; i <= 3; i++) {
+			org.springframework.nanotrader.data.domain.Order archived = new org.springframework.nanotrader.data.domain.Order();
+			archived.setOrderid(-i);
+			archived.setAccountAccountid(order.getAccountAccountid());
+			archived.setQuote(order.getQuote());
+			archived.setOrdertype("buy");
+			archived.setOrderstatus("completed");
+			archived.setPrice(BigDecimal.valueOf(10 + i));
+			archived.setQuantity(BigDecimal.valueOf(i));
+			archived.setOrderfee(BigDecimal.ONE);
+			archived.setOpendate(new Date());
+			archived.setCompletiondate(new Date());
+			em.persist(new ArchivedOrder(archived));
+		}
+		em.flush();
+		em.clear();
+		long hot = tradingService.findOrders(accountId, 0, Integer.MAX_VALUE).size() - 3;
+		em.clear();
+		int pageSize = 2;
+		for (int page = 0; page * pageSize < hot + 3; page++) {
+			assertSameJson(mapOrders(tradingService.findOrders(accountId, page, pageSize)),
+					tradingReadRepository.findOrders(accountId, null, page, pageSize));
+			em.clear();
+		}
+		assertSameJson(mapOrders(tradingService.findOrdersAfter(accountId, null, null, (int) hot + 2)),
+				tradingReadRepository.findOrdersAfter(accountId, null, null, (int) hot + 2));
+		Order archived = tradingReadRepository.findOrder(-1, accountId);
+		assertSameJson(mapper.map(tradingService.findOrder(-1, accountId), Order.class, DomainMapper.ORDER), archived);
+		assertEquals(order.getQuote().getSymbol(), archived.getQuote().getSymbol());
+		assertNull(tradingReadRepository.findOrder(-1, accountId + 1));
+	}
+
+	@Test
+	public void testFindQuotes() throws Exception {
+		List<Quote> expected = new ArrayList<Quote>();
+		for (org.springframework.nanotrader.data.domain.Quote quote : tradingService.findAllQuotes()) {
+			expected.add(mapper.map(quote, Quote.class, DomainMapper.QUOTE));
+		}
+		List<Quote> quotes = tradingReadRepository.findAllQuotes();
+		assertFalse(quotes.isEmpty());
+		assertSameJson(expected, quotes);
+		final List<Quote> streamed = new ArrayList<Quote>();
+		tradingReadRepository.streamAllQuotes(new RowHandler<Quote>() {
+			public void handleRow(Quote quote) {
+				streamed.add(quote);
+			}
+		});
+		assertSameJson(expected, streamed);
+		assertEquals(Long.valueOf(expected.size()), tradingReadRepository.countQuotes());
+		String symbol = order.getQuote().getSymbol();
+		assertSameJson(mapper.map(tradingService.findQuoteBySymbol(symbol), Quote.class, DomainMapper.QUOTE),
+				tradingReadRepository.findQuote(symbol));
+		Set<String> symbols = new HashSet<String>();
+		symbols.add(symbol);
+		symbols.add("NO SUCH SYMBOL");
+		assertEquals(Collections.singleton(symbol), tradingReadRepository.findQuotes(symbols).keySet());
+		assertNull(tradingReadRepository.findQuote("NO SUCH SYMBOL"));
+	}
+
+	private List<Holding> mapHoldings(List<org.springframework.nanotrader.data.domain.Holding> holdings) {
+		List<Holding> result = new ArrayList<Holding>();
+		for (org.springframework.nanotrader.data.domain.Holding holding : holdings) {
+			result.add(mapper.map(holding, Holding.class, DomainMapper.HOLDING));
+		}
+		return result;
+	}
+
+	private List<Order> mapOrders(List<org.springframework.nanotrader.data.domain.Order> orders) {
+		List<Order> result = new ArrayList<Order>();
+		for (org.springframework.nanotrader.data.domain.Order order : orders) {
+			result.add(mapper.map(order, Order.class, DomainMapper.ORDER));
+		}
+		return result;
+	}
+
+	private void assertSameJson(Object expected, Object actual) throws Exception {
+		assertEquals(json.writeValueAsString(expected), json.writeValueAsString(actual));
+	}
+}
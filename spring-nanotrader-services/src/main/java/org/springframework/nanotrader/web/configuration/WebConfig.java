@@ -20,17 +20,25 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.codehaus.jackson.map.SerializationConfig.Feature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
 import org.springframework.nanotrader.service.configuration.ServiceConfig;
 import org.springframework.nanotrader.web.exception.ExtendedExceptionHandlerExceptionResolver;
 import org.springframework.nanotrader.web.exception.GlobalExceptionHandler;
+import org.springframework.nanotrader.web.filter.AdmissionLimits;
+import org.springframework.nanotrader.web.metrics.LatencyInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 
 /**
@@ -38,7 +46,14 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupp
  * handling is configured via
  * configureHandlerExceptionResolvers(List<HandlerExceptionResolver>
  * exceptionResolvers) enabling consistent REST exception handling across
- * Controllers.
+ * Controllers. JSON is indented except under the production profile.
+ * Orders are submitted on a bounded orderExecutor (orders.executor.threads,
+ * orders.executor.queue) and async requests time out after orders.timeout ms.
+ * Dashboard sections are read on a bounded dashboardExecutor
+ * (dashboard.executor.threads, dashboard.executor.queue) within
+ * dashboard.timeout ms.
+ * Requests are admitted under the admission.* limits, see AdmissionControlFilter.
+ * Controller latencies are recorded by the LatencyInterceptor.
  * 
  * 
  * @author Brian Dussault
@@ -49,6 +64,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupp
 @Import(ServiceConfig.class)
 public class WebConfig extends WebMvcConfigurationSupport {
 
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private LatencyInterceptor latencyInterceptor;
+
 	@Override
 	public void configureMessageConverters(
 			List<HttpMessageConverter<?>> converters) {
@@ -66,11 +87,53 @@ public class WebConfig extends WebMvcConfigurationSupport {
 		mappingJacksonHttpMessageConverter.getObjectMapper().setDateFormat(
 				format);
 		mappingJacksonHttpMessageConverter.getObjectMapper().configure(
-				Feature.INDENT_OUTPUT, true);
+				Feature.INDENT_OUTPUT, !environment.acceptsProfiles("production"));
 		// mappingJacksonHttpMessageConverter.getObjectMapper().getSerializationConfig().setSerializationInclusion(Inclusion.NON_NULL);
 		converters.add(mappingJacksonHttpMessageConverter);
 	}
 
+	@Bean
+	public ThreadPoolTaskExecutor orderExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		int threads = environment.getProperty("orders.executor.threads", Integer.class, 8);
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(environment.getProperty("orders.executor.queue", Integer.class, 50));
+		executor.setThreadNamePrefix("order-");
+		return executor;
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor dashboardExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		int threads = environment.getProperty("dashboard.executor.threads", Integer.class, 16);
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(environment.getProperty("dashboard.executor.queue", Integer.class, 100));
+		executor.setThreadNamePrefix("dashboard-");
+		return executor;
+	}
+
+	@Bean
+	public AdmissionLimits admissionLimits() {
+		AdmissionLimits limits = new AdmissionLimits();
+		limits.setRequestsPerSecond(environment.getProperty("admission.requestsPerSecond", Double.class, 20d));
+		limits.setBurst(environment.getProperty("admission.burst", Integer.class, 40));
+		limits.setOrderConcurrency(environment.getProperty("admission.orders.concurrency", Integer.class, 8));
+		limits.setReadConcurrency(environment.getProperty("admission.reads.concurrency", Integer.class, 16));
+		return limits;
+	}
+
+	@Override
+	protected void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(latencyInterceptor);
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setDefaultTimeout(environment.getProperty("orders.timeout", Long.class, 10000L));
+	}
+
 	public void configureDefaultServletHandling(
 			DefaultServletHandlerConfigurer configurer) {
 		configurer.enable();
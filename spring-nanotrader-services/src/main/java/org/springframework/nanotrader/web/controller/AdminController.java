@@ -20,69 +20,217 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.Enumeration;
+import java.util.List;
 
+import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.nanotrader.service.domain.Job;
 import org.springframework.nanotrader.service.domain.PerfTestData;
 import org.springframework.nanotrader.service.domain.ProgressData;
 import org.springframework.nanotrader.service.domain.RecreateData;
+import org.springframework.nanotrader.service.domain.SnapshotRequest;
 import org.springframework.nanotrader.service.domain.UserId;
+import org.springframework.nanotrader.web.filter.AdmissionControlFilter;
+import org.springframework.nanotrader.web.filter.AdmissionLimits;
+import org.springframework.nanotrader.web.filter.CompressionFilter;
+import org.springframework.nanotrader.web.filter.CompressionStatistics;
+import org.springframework.nanotrader.web.metrics.LatencyMetrics;
+import org.springframework.nanotrader.web.metrics.MetricsReport;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
- * Provides JSON based REST API to user data creation
+ * Provides JSON based REST API to user data creation. Long operations run as background jobs: they
+ * answer 202 with the queued job, whose progress is read from /admin/jobs/{id}
  * @author Ilayaperumal Gopinathan
  * 
  */
 @Controller
 public class AdminController extends BaseController {
 
+	@Resource
+	private CompressionFilter compressionFilter;
+
+	@Resource
+	private AdmissionControlFilter admissionControlFilter;
+
+	@Resource
+	private LatencyMetrics latencyMetrics;
+
 	/**
 	 * Creates users & buy orders for the (usercount) number of users
 	 * @param recreateDataRequest
+	 * @return Job
 	 */
 	@RequestMapping(value = "/admin/userdata", method = RequestMethod.POST)
-	@ResponseStatus(HttpStatus.CREATED)
-	public void recreateData(@RequestBody
+	public ResponseEntity<Job> recreateData(@RequestBody
 	RecreateData recreateDataRequest) {
-		this.getAdminServiceFacade().recreateData(Integer.parseInt(recreateDataRequest.getUsercount()));
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().recreateData(
+				Integer.parseInt(recreateDataRequest.getUsercount())), getNoCacheHeaders(), HttpStatus.ACCEPTED);
 	}
 
 	/**
-	 * Get the number of users created at the time of request
+	 * Get the number of users created so far by the latest user data job
 	 * @return ProgressData
 	 */
 	@RequestMapping(value = "/admin/userdata", method = RequestMethod.GET)
 	public ResponseEntity<ProgressData> getProgress() {
-		ProgressData progress = new ProgressData();
-		progress.setUsercount(this.getAdminServiceFacade().getProgressCount());
-		return new ResponseEntity<ProgressData>(progress, getNoCacheHeaders(),
+		return new ResponseEntity<ProgressData>(this.getAdminServiceFacade().getProgress(), getNoCacheHeaders(),
 				HttpStatus.OK);
 
 	}
 
 	/**
 	 * Delete the account associated by the given userid
+	 * @return Job
 	 */
 	@RequestMapping(value = "/admin/deleteaccount", method = RequestMethod.DELETE)
-	@ResponseStatus(HttpStatus.OK)
-	public void deleteAccount(@RequestBody
+	public ResponseEntity<Job> deleteAccount(@RequestBody
 	UserId userNameRequest) {
-		this.getAdminServiceFacade().deleteUserAccount(userNameRequest.getUserid());
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().deleteUserAccount(userNameRequest.getUserid()),
+				getNoCacheHeaders(), HttpStatus.ACCEPTED);
 	}
 
 	/**
-	 * Run performance test
+	 * Recompute the per-account holding and order counters from the base tables
+	 * @return Job
 	 */
-	@RequestMapping(value = "/admin/perftest", method = RequestMethod.POST)
+	@RequestMapping(value = "/admin/counters", method = RequestMethod.POST)
+	public ResponseEntity<Job> repairAccountCounters() {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().repairAccountCounters(), getNoCacheHeaders(),
+				HttpStatus.ACCEPTED);
+	}
+
+	/**
+	 * Get the latest admin jobs, most recent first
+	 * @return List<Job>
+	 */
+	@RequestMapping(value = "/admin/jobs", method = RequestMethod.GET)
+	public ResponseEntity<List<Job>> getJobs() {
+		return new ResponseEntity<List<Job>>(this.getAdminServiceFacade().getJobs(), getNoCacheHeaders(),
+				HttpStatus.OK);
+	}
+
+	/**
+	 * Get an admin job with its progress, rate and estimated time to completion
+	 * @return Job
+	 */
+	@RequestMapping(value = "/admin/jobs/{id}", method = RequestMethod.GET)
+	public ResponseEntity<Job> getJob(@PathVariable("id") final Integer jobId) {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().getJob(jobId), getNoCacheHeaders(),
+				HttpStatus.OK);
+	}
+
+	/**
+	 * Cancel an admin job; a running job stops at its next progress report
+	 * @return Job
+	 */
+	@RequestMapping(value = "/admin/jobs/{id}", method = RequestMethod.DELETE)
+	public ResponseEntity<Job> cancelJob(@PathVariable("id") final Integer jobId) {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().cancelJob(jobId), getNoCacheHeaders(),
+				HttpStatus.ACCEPTED);
+	}
+
+	/**
+	 * Export ACCOUNTPROFILE, ACCOUNT, HOLDING, ORDERS and QUOTE as gzipped CSV files to the named
+	 * directory under snapshot.directory, resuming an unfinished export there
+	 * @param snapshotRequest
+	 * @return Job
+	 */
+	@RequestMapping(value = "/admin/snapshot/export", method = RequestMethod.POST)
+	public ResponseEntity<Job> exportSnapshot(@RequestBody
+	SnapshotRequest snapshotRequest) {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().exportSnapshot(snapshotRequest.getName()),
+				getNoCacheHeaders(), HttpStatus.ACCEPTED);
+	}
+
+	/**
+	 * Replace the dataset with the named export, resuming an unfinished import of it
+	 * @param snapshotRequest
+	 * @return Job
+	 */
+	@RequestMapping(value = "/admin/snapshot/import", method = RequestMethod.POST)
+	public ResponseEntity<Job> importSnapshot(@RequestBody
+	SnapshotRequest snapshotRequest) {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().importSnapshot(snapshotRequest.getName()),
+				getNoCacheHeaders(), HttpStatus.ACCEPTED);
+	}
+
+	/**
+	 * Get the job of the running or last dataset export or import
+	 * @return Job
+	 */
+	@RequestMapping(value = "/admin/snapshot", method = RequestMethod.GET)
+	public ResponseEntity<Job> getSnapshotJob() {
+		return new ResponseEntity<Job>(this.getAdminServiceFacade().getSnapshotJob(),
+				getNoCacheHeaders(), HttpStatus.OK);
+	}
+
+	/**
+	 * Get the response compression ratio and the CPU time saved by the shared payload cache
+	 * @return CompressionStatistics
+	 */
+	@RequestMapping(value = "/admin/compression", method = RequestMethod.GET)
+	public ResponseEntity<CompressionStatistics> getCompressionStatistics() {
+		return new ResponseEntity<CompressionStatistics>(compressionFilter.getStatistics(), getNoCacheHeaders(),
+				HttpStatus.OK);
+	}
+
+	/**
+	 * Get the per client rate limit and the concurrency limits requests are admitted under
+	 * @return AdmissionLimits
+	 */
+	@RequestMapping(value = "/admin/limits", method = RequestMethod.GET)
+	public ResponseEntity<AdmissionLimits> getAdmissionLimits() {
+		return new ResponseEntity<AdmissionLimits>(admissionControlFilter.getLimits(), getNoCacheHeaders(),
+				HttpStatus.OK);
+	}
+
+	/**
+	 * Replace the admission limits, effective for the next request
+	 * @param limits
+	 */
+	@RequestMapping(value = "/admin/limits", method = RequestMethod.PUT)
 	@ResponseStatus(HttpStatus.OK)
-	public void runPerfTest(@RequestBody
+	public void updateAdmissionLimits(@RequestBody
+	AdmissionLimits limits) {
+		admissionControlFilter.setLimits(limits);
+	}
+
+	/**
+	 * Get the p50/p99/p999/max latency of every controller method, since the last reset (view=cumulative)
+	 * or since the interval view was last read (view=interval)
+	 * @return MetricsReport
+	 */
+	@RequestMapping(value = "/admin/metrics", method = RequestMethod.GET)
+	public ResponseEntity<MetricsReport> getMetrics(
+			@RequestParam(value = "view", required = false, defaultValue = LatencyMetrics.CUMULATIVE) String view) {
+		return new ResponseEntity<MetricsReport>(latencyMetrics.report(view), getNoCacheHeaders(), HttpStatus.OK);
+	}
+
+	/**
+	 * Clear the latency histograms
+	 */
+	@RequestMapping(value = "/admin/metrics", method = RequestMethod.DELETE)
+	@ResponseStatus(HttpStatus.OK)
+	public void resetMetrics() {
+		latencyMetrics.reset();
+	}
+
+	/**
+	 * Run performance test, one job per VM
+	 * @return List<Job>
+	 */
+	@RequestMapping(value = "/admin/perftest", method = RequestMethod.POST)
+	public ResponseEntity<List<Job>> runPerfTest(@RequestBody
 	PerfTestData perfRequest, HttpServletRequest servletRequest) {
 		String requestUrl = servletRequest.getRequestURL().toString();
 		String serverPort = String.valueOf(servletRequest.getServerPort());
@@ -110,6 +258,7 @@ public class AdminController extends BaseController {
 				throw new RuntimeException(e.getMessage());
 			}
 		}
-		this.getAdminServiceFacade().runPerfTest(perfRequest, serverUrl);
+		return new ResponseEntity<List<Job>>(this.getAdminServiceFacade().runPerfTest(perfRequest, serverUrl),
+				getNoCacheHeaders(), HttpStatus.ACCEPTED);
 	}
 }
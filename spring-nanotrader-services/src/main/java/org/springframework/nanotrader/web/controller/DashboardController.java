@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Resource;
+
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.nanotrader.service.domain.Account;
+import org.springframework.nanotrader.service.domain.CollectionResult;
+import org.springframework.nanotrader.service.domain.Dashboard;
+import org.springframework.nanotrader.service.domain.HoldingSummary;
+import org.springframework.nanotrader.service.domain.PortfolioSummary;
+import org.springframework.nanotrader.web.exception.ServiceUnavailableException;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Provides the dashboard of an account in one JSON response. The sections are
+ * read concurrently on the bounded dashboardExecutor and the time each one took
+ * is reported in the Server-Timing header.
+ */
+@Controller
+public class DashboardController extends BaseController {
+
+	@Resource
+	private AsyncTaskExecutor dashboardExecutor;
+
+	@Resource
+	private Environment environment;
+
+	@RequestMapping(value = "/account/{accountId}/dashboard", method = RequestMethod.GET)
+	public ResponseEntity<Dashboard> findDashboard(
+			@PathVariable("accountId") final Integer accountId,
+			@RequestParam(value = "page", required = false) final Integer page,
+			@RequestParam(value = "pageSize", required = false) final Integer pageSize,
+			@RequestParam(value = "after", required = false) final String after) {
+		this.getSecurityUtil().checkAccount(accountId);
+		long start = System.nanoTime();
+		Section<Account> account = new Section<Account>("account") {
+			Account read() {
+				return getTradingServiceFacade().findAccount(accountId);
+			}
+		};
+		Section<PortfolioSummary> portfolioSummary = new Section<PortfolioSummary>("portfolioSummary") {
+			PortfolioSummary read() {
+				return getTradingServiceFacade().findPortfolioSummary(accountId);
+			}
+		};
+		Section<HoldingSummary> holdingSummary = new Section<HoldingSummary>("holdingSummary") {
+			HoldingSummary read() {
+				return getTradingServiceFacade().findHoldingSummary(accountId);
+			}
+		};
+		Section<CollectionResult> orders = new Section<CollectionResult>("orders") {
+			CollectionResult read() {
+				if (page == null || after != null) {
+					// the first page is read by cursor so the client can seek to the next one
+					return getTradingServiceFacade().findOrders(accountId, null, after != null ? after : "", pageSize, true);
+				}
+				return getTradingServiceFacade().findOrders(accountId, null, page, pageSize);
+			}
+		};
+		List<Section<?>> sections = new ArrayList<Section<?>>();
+		sections.add(account);
+		sections.add(portfolioSummary);
+		sections.add(holdingSummary);
+		sections.add(orders);
+		read(sections, start + TimeUnit.MILLISECONDS.toNanos(environment.getProperty("dashboard.timeout", Long.class, 5000L)));
+
+		Dashboard dashboard = new Dashboard();
+		dashboard.setAccount(account.result);
+		dashboard.setPortfolioSummary(portfolioSummary.result);
+		dashboard.setHoldingSummary(holdingSummary.result);
+		dashboard.setOrders(orders.result);
+		HttpHeaders responseHeaders = getNoCacheHeaders();
+		StringBuilder timing = new StringBuilder();
+		for (Section<?> section : sections) {
+			timing.append(timing(section.name, section.nanos)).append(", ");
+		}
+		timing.append(timing("total", System.nanoTime() - start));
+		responseHeaders.set("Server-Timing", timing.toString());
+		return new ResponseEntity<Dashboard>(dashboard, responseHeaders, HttpStatus.OK);
+	}
+
+	/**
+	 * Runs the sections on the dashboardExecutor and waits for all of them until the deadline.
+	 * The first section that fails fails the dashboard and the rest are cancelled.
+	 */
+	private void read(List<Section<?>> sections, long deadline) {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (Section<?> section : sections) {
+				futures.add(dashboardExecutor.submit(section));
+			}
+			for (Future<?> future : futures) {
+				future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		}
+		catch (TaskRejectedException e) {
+			throw new ServiceUnavailableException("Too many dashboards are being loaded, please retry.");
+		}
+		catch (TimeoutException e) {
+			throw new ServiceUnavailableException("The dashboard took too long to load, please retry.");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceUnavailableException("The dashboard was interrupted while loading, please retry.");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static String timing(String name, long nanos) {
+		return String.format(Locale.ENGLISH, "%s;dur=%.1f", name, nanos / 1000000.0);
+	}
+
+	private abstract static class Section<T> implements Callable<T> {
+
+		private final String name;
+
+		private volatile T result;
+
+		private volatile long nanos;
+
+		Section(String name) {
+			this.name = name;
+		}
+
+		public T call() {
+			long start = System.nanoTime();
+			try {
+				result = read();
+				return result;
+			}
+			finally {
+				nanos = System.nanoTime() - start;
+			}
+		}
+
+		abstract T read();
+	}
+
+}
@@ -50,10 +50,17 @@ public class HoldingController extends BaseController {
 	public ResponseEntity<CollectionResult> findByAccountId(
 			@PathVariable("accountId") final Integer accountId,
 			@RequestParam(value = "page", required = false) Integer page,
-			@RequestParam(value = "pageSize", required = false) Integer pageSize) {
+			@RequestParam(value = "pageSize", required = false) Integer pageSize,
+			@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "count", required = false, defaultValue = "true") boolean includeCount) {
 		this.getSecurityUtil().checkAccount(accountId);
-		return new ResponseEntity<CollectionResult>(getTradingServiceFacade()
-				.findHoldingsByAccountId(accountId, page, pageSize),
+		CollectionResult holdings;
+		if (after != null) { // keyset pagination; an empty cursor is the first page
+			holdings = getTradingServiceFacade().findHoldingsByAccountId(accountId, after, pageSize, includeCount);
+		} else {
+			holdings = getTradingServiceFacade().findHoldingsByAccountId(accountId, page, pageSize);
+		}
+		return new ResponseEntity<CollectionResult>(holdings,
 				getNoCacheHeaders(), HttpStatus.OK);
 
 	}
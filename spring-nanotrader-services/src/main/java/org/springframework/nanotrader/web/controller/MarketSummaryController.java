@@ -15,9 +15,12 @@
  */
 package org.springframework.nanotrader.web.controller;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.nanotrader.service.domain.MarketSummary;
+import org.springframework.nanotrader.web.filter.CompressionFilter;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -33,7 +36,8 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 public class MarketSummaryController extends BaseController {
 
 	@RequestMapping(value = "/marketSummary", method = RequestMethod.GET)
-	public ResponseEntity<MarketSummary> findMarketSummary() {
+	public ResponseEntity<MarketSummary> findMarketSummary(HttpServletRequest request) {
+		CompressionFilter.markShared(request, "marketSummary");
 
 		return new ResponseEntity<MarketSummary>(getTradingServiceFacade().findMarketSummary(), 
 				getNoCacheHeaders(),
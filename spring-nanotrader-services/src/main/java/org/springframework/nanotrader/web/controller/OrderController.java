@@ -15,11 +15,20 @@
  */
 package org.springframework.nanotrader.web.controller;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Resource;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.nanotrader.service.domain.CollectionResult;
 import org.springframework.nanotrader.service.domain.Order;
+import org.springframework.nanotrader.service.domain.StreamingCollectionResult;
+import org.springframework.nanotrader.web.exception.ServiceUnavailableException;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -27,28 +36,41 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.util.UriComponentsBuilder;
 
 /**
- * Provides JSON based REST api to Order repository
+ * Provides JSON based REST api to Order repository. Orders are placed on the
+ * bounded orderExecutor so container threads stay free for reads.
  * 
  * @author Brian Dussault
  */
 @Controller
 public class OrderController extends BaseController {
 
+	@Resource
+	private AsyncTaskExecutor orderExecutor;
+
 	@RequestMapping(value = "/account/{accountId}/orders", method = RequestMethod.GET)
-	public ResponseEntity<CollectionResult> findOrders(
+	public ResponseEntity<?> findOrders(
 			@PathVariable("accountId") final Integer accountId,
 			@RequestParam(value = "status", required = false) final String status,
 			@RequestParam(value = "page", required = false) Integer page,
-			@RequestParam(value = "pageSize", required = false) Integer pageSize) {
+			@RequestParam(value = "pageSize", required = false) Integer pageSize,
+			@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "count", required = false, defaultValue = "true") boolean includeCount) {
 		this.getSecurityUtil().checkAccount(accountId); // verify that the
 														// account on the path
 														// is the same as the
 														// authenticated user
-		return new ResponseEntity<CollectionResult>(getTradingServiceFacade()
-				.findOrders(accountId, status, page, pageSize),
+		if (after != null) { // keyset pagination; an empty cursor is the first page
+			CollectionResult orders = getTradingServiceFacade().findOrders(accountId, status, after, pageSize, includeCount);
+			return new ResponseEntity<CollectionResult>(orders,
+					getNoCacheHeaders(), HttpStatus.OK);
+		}
+		// offset pages are written out row by row while they are read
+		StreamingCollectionResult orders = getTradingServiceFacade().streamOrders(accountId, status, page, pageSize);
+		return new ResponseEntity<StreamingCollectionResult>(orders,
 				getNoCacheHeaders(), HttpStatus.OK);
 	}
 
@@ -66,26 +88,35 @@ public class OrderController extends BaseController {
 
 	@RequestMapping(value = "/account/{accountId}/order", method = RequestMethod.POST)
 	@ResponseStatus(HttpStatus.CREATED)
-	public ResponseEntity<String> save(@RequestBody Order orderRequest,
+	public DeferredResult<ResponseEntity<String>> save(@RequestBody final Order orderRequest,
 			@PathVariable("accountId") final Integer accountId,
-			UriComponentsBuilder builder) {
+			final UriComponentsBuilder builder) {
 		this.getSecurityUtil().checkAccount(accountId);
 		orderRequest.setAccountid(accountId);
-		Integer orderId = getTradingServiceFacade().saveOrder(orderRequest,
-				true);
-		HttpHeaders responseHeaders = new HttpHeaders();
-		responseHeaders.setLocation(builder
-				.path("/account/" + accountId + "/order/{id}")
-				.buildAndExpand(orderId).toUri());
-		return new ResponseEntity<String>(responseHeaders, HttpStatus.CREATED);
+		return submit(new Callable<ResponseEntity<String>>() {
+			public ResponseEntity<String> call() {
+				Integer orderId = getTradingServiceFacade().saveOrder(orderRequest,
+						true);
+				HttpHeaders responseHeaders = new HttpHeaders();
+				responseHeaders.setLocation(builder
+						.path("/account/" + accountId + "/order/{id}")
+						.buildAndExpand(orderId).toUri());
+				return new ResponseEntity<String>(responseHeaders, HttpStatus.CREATED);
+			}
+		});
 	}
 
 	@RequestMapping(value = "/account/{accountId}/order/asynch", method = RequestMethod.POST)
 	@ResponseStatus(HttpStatus.ACCEPTED)
-	public void saveAsynch(@RequestBody Order orderRequest,
+	public DeferredResult<ResponseEntity<String>> saveAsynch(@RequestBody final Order orderRequest,
 			@PathVariable("accountId") final Integer accountId) {
 		orderRequest.setAccountid(accountId);
-		getTradingServiceFacade().saveOrder(orderRequest, false);
+		return submit(new Callable<ResponseEntity<String>>() {
+			public ResponseEntity<String> call() {
+				getTradingServiceFacade().saveOrder(orderRequest, false);
+				return new ResponseEntity<String>(HttpStatus.ACCEPTED);
+			}
+		});
 	}
 
 	@RequestMapping(value = "/account/{accountId}/order/{id}", method = RequestMethod.PUT)
@@ -102,4 +133,43 @@ public class OrderController extends BaseController {
 
 	}
 
+	/**
+	 * Runs the order on the orderExecutor. A full queue is refused with a 503 straight away;
+	 * an order still waiting for a thread at the async timeout is dropped and answered with
+	 * a 503, one that has already started is left to finish.
+	 */
+	private <T> DeferredResult<T> submit(final Callable<T> order) {
+		final DeferredResult<T> result = new DeferredResult<T>();
+		final AtomicBoolean claimed = new AtomicBoolean();
+		try {
+			orderExecutor.execute(new Runnable() {
+				public void run() {
+					if (!claimed.compareAndSet(false, true)) {
+						return; // timed out while queued
+					}
+					try {
+						result.setResult(order.call());
+					}
+					catch (Exception e) {
+						result.setErrorResult(e);
+					}
+				}
+			});
+		}
+		catch (TaskRejectedException e) {
+			throw new ServiceUnavailableException("Too many orders are in progress. The order was not placed, please retry.");
+		}
+		result.onTimeout(new Runnable() {
+			public void run() {
+				if (claimed.compareAndSet(false, true)) {
+					result.setErrorResult(new ServiceUnavailableException("The order timed out waiting to be processed and was not placed, please retry."));
+				}
+				else {
+					result.setErrorResult(new ServiceUnavailableException("The order is taking longer than expected and may still be placed. Check the order list before retrying."));
+				}
+			}
+		});
+		return result;
+	}
+
 }
@@ -15,10 +15,13 @@
  */
 package org.springframework.nanotrader.web.controller;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.nanotrader.service.domain.CollectionResult;
 import org.springframework.nanotrader.service.domain.Quote;
+import org.springframework.nanotrader.service.domain.StreamingCollectionResult;
+import org.springframework.nanotrader.web.filter.CompressionFilter;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -46,8 +49,9 @@ public class QuoteController extends BaseController {
 
 	@RequestMapping(value = "/quotes", method = RequestMethod.GET)
 	@ResponseBody
-	public CollectionResult findQuotes() {
-		return getTradingServiceFacade().findQuotes();
+	public StreamingCollectionResult findQuotes(HttpServletRequest request) {
+		CompressionFilter.markShared(request, "quotes");
+		return getTradingServiceFacade().streamQuotes();
 	}
 
 	@RequestMapping(value = "/quote", method = RequestMethod.POST)
@@ -15,6 +15,8 @@
  */
 package org.springframework.nanotrader.web.exception;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -45,6 +47,7 @@ public class GlobalExceptionHandler {
 	private static final String NO_ACCESS = "Access Denied.";
 	private static final String CANNOT_UPDATE_CLOSED_RECORD = "Update failed since processing status was 'complete'";
 	private static final String CANNOT_RETRIEVE_RECORD = "The record does not exist.";
+	private static final String RETRY_AFTER_SECONDS = "1";
 	
 	@ExceptionHandler(value = NoRecordsFoundException.class)
 	@ResponseStatus( HttpStatus.NOT_FOUND )
@@ -94,6 +97,15 @@ public class GlobalExceptionHandler {
 		return serviceException;
 	}	
 	
+	@ExceptionHandler(value = ServiceUnavailableException.class)
+	@ResponseStatus( HttpStatus.SERVICE_UNAVAILABLE )
+	public @ResponseBody ServiceException handle(ServiceUnavailableException exception, HttpServletResponse response) {
+		logError(exception);
+		response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+		ServiceException serviceException = new ServiceException(exception.getMessage());
+		return serviceException;
+	}	
+	
 	@ExceptionHandler(value = AccessDeniedException.class)
 	@ResponseStatus( HttpStatus.UNAUTHORIZED )
 	public @ResponseBody ServiceException handle(AccessDeniedException exception) {
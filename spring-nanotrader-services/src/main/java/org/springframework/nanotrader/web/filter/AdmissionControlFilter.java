@@ -0,0 +1,272 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.nanotrader.data.service.AuthTokenService;
+import org.springframework.nanotrader.web.exception.ServiceException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * Turns requests away with 429 and a Retry-After header before they reach authentication, so that
+ * one busy client cannot use up the connection pool for everyone else. Each client gets a token
+ * bucket, and order placements and reads each have a cap on the requests in flight across all
+ * clients. Admin requests and CORS preflights are not limited, so the limits can always be changed.
+ * <p>
+ * A client is known by the profile of its API token when that is a signed token that verifies, and
+ * otherwise by its remote address: any other token is only checked by the security chain after this
+ * filter, so keying on it would give a client that sends a new token with every request a new bucket
+ * every time.
+ * <p>
+ * Every bucket is a single AtomicLong holding the time at which it will be full again (the generic
+ * cell rate algorithm), and in flight counts are AtomicIntegers, so admission never takes a lock.
+ * Buckets that have filled up are dropped once there are more than maxBuckets of them.
+ * <p>
+ * An order that goes async stays in flight until its async request completes.
+ */
+@Component
+public class AdmissionControlFilter implements Filter {
+
+	private static Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+	private static final String TOKEN_HEADER = "API_TOKEN";
+
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+	private final AtomicInteger ordersInFlight = new AtomicInteger();
+
+	private final AtomicInteger readsInFlight = new AtomicInteger();
+
+	private final AtomicLong rateLimited = new AtomicLong();
+
+	private final AtomicLong concurrencyLimited = new AtomicLong();
+
+	private volatile AdmissionLimits limits;
+
+	private int maxBuckets = 10000;
+
+	@Autowired(required = false)
+	private AuthTokenService authTokenService;
+
+	public AdmissionLimits getLimits() {
+		return limits;
+	}
+
+	@Autowired
+	public void setLimits(AdmissionLimits limits) {
+		limits.validate();
+		this.limits = limits;
+		// buckets drained under the old rate would hold clients back for longer than the new one allows
+		buckets.clear();
+		log.info("AdmissionControlFilter: " + limits);
+	}
+
+	public void setMaxBuckets(int maxBuckets) {
+		this.maxBuckets = maxBuckets;
+	}
+
+	public void init(FilterConfig filterConfig) {
+	}
+
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		HttpServletResponse response = (HttpServletResponse) res;
+		String path = urlPathHelper.getPathWithinApplication(request);
+		if (request.getDispatcherType() != DispatcherType.REQUEST || "OPTIONS".equals(request.getMethod())
+				|| path.startsWith("/api/admin/")) {
+			chain.doFilter(request, response);
+			return;
+		}
+		AdmissionLimits current = limits;
+		long waitNanos = take(clientKey(request), current, System.nanoTime());
+		if (waitNanos > 0) {
+			rateLimited.incrementAndGet();
+			reject(response, waitNanos, "Too many requests from this client.");
+			return;
+		}
+		boolean order = !"GET".equals(request.getMethod()) && path.matches("/api/account/[^/]+/order(/.*)?");
+		AtomicInteger inFlight = order ? ordersInFlight : readsInFlight;
+		if (!acquire(inFlight, order ? current.getOrderConcurrency() : current.getReadConcurrency())) {
+			concurrencyLimited.incrementAndGet();
+			reject(response, 0, order ? "Too many orders are being placed." : "Too many requests are in progress.");
+			return;
+		}
+		boolean async = false;
+		try {
+			chain.doFilter(request, response);
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new Release(inFlight));
+				async = true;
+			}
+		}
+		finally {
+			if (!async) {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	public void destroy() {
+		log.info("AdmissionControlFilter: rateLimited=" + rateLimited + ", concurrencyLimited=" + concurrencyLimited);
+	}
+
+	public long getRateLimited() {
+		return rateLimited.get();
+	}
+
+	public long getConcurrencyLimited() {
+		return concurrencyLimited.get();
+	}
+
+	private String clientKey(HttpServletRequest request) {
+		String token = request.getHeader(TOKEN_HEADER);
+		if (authTokenService != null && authTokenService.isSignedToken(token)) {
+			AuthTokenService.Claims claims = authTokenService.verify(token);
+			if (claims != null) {
+				return "profile:" + claims.getProfileId();
+			}
+		}
+		return "address:" + request.getRemoteAddr();
+	}
+
+	/**
+	 * Takes a token from the bucket of the given client.
+	 * @return 0 if the request is admitted, otherwise the nanoseconds until the bucket has a token again
+	 */
+	long take(String client, AdmissionLimits current, long now) {
+		AtomicLong bucket = buckets.get(client);
+		if (bucket == null) {
+			AtomicLong created = new AtomicLong(now);
+			bucket = buckets.putIfAbsent(client, created);
+			if (bucket == null) {
+				bucket = created;
+				sweep(now);
+			}
+		}
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / current.getRequestsPerSecond());
+		long tolerance = interval * (current.getBurst() - 1);
+		while (true) {
+			long full = bucket.get();
+			long start = Math.max(full, now);
+			if (start - now > tolerance) {
+				return start - now - tolerance;
+			}
+			if (bucket.compareAndSet(full, start + interval)) {
+				return 0;
+			}
+		}
+	}
+
+	private void sweep(long now) {
+		long next = nextSweep.get();
+		if (buckets.size() <= maxBuckets || now < next || !nextSweep.compareAndSet(next, now + SWEEP_INTERVAL_NANOS)) {
+			return;
+		}
+		for (Iterator<Map.Entry<String, AtomicLong>> entries = buckets.entrySet().iterator(); entries.hasNext();) {
+			if (entries.next().getValue().get() <= now) {
+				entries.remove();
+			}
+		}
+	}
+
+	int bucketCount() {
+		return buckets.size();
+	}
+
+	private static boolean acquire(AtomicInteger inFlight, int limit) {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void reject(HttpServletResponse response, long waitNanos, String detail) throws IOException {
+		long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+		response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+		response.setHeader("Retry-After", String.valueOf(seconds));
+		response.setContentType("application/json");
+		mapper.writeValue(response.getOutputStream(), new ServiceException(detail));
+	}
+
+	/**
+	 * Keeps an async request in flight until it completes; a timeout or an error is followed by onComplete.
+	 */
+	private static class Release implements AsyncListener {
+
+		private final AtomicInteger inFlight;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Release(AtomicInteger inFlight) {
+			this.inFlight = inFlight;
+		}
+
+		public void onComplete(AsyncEvent event) {
+			if (released.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+			}
+		}
+
+		public void onTimeout(AsyncEvent event) {
+		}
+
+		public void onError(AsyncEvent event) {
+		}
+
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+/**
+ * Limits enforced by {@link AdmissionControlFilter}: a token bucket of burst requests refilled at
+ * requestsPerSecond for every client, and the number of order and read requests allowed in
+ * flight at once across all clients. The filter swaps the whole instance when the limits are
+ * changed, so a request is always checked against one consistent set.
+ */
+public class AdmissionLimits {
+
+	private double requestsPerSecond;
+
+	private int burst;
+
+	private int orderConcurrency;
+
+	private int readConcurrency;
+
+	public double getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	public void setRequestsPerSecond(double requestsPerSecond) {
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+	public int getOrderConcurrency() {
+		return orderConcurrency;
+	}
+
+	public void setOrderConcurrency(int orderConcurrency) {
+		this.orderConcurrency = orderConcurrency;
+	}
+
+	public int getReadConcurrency() {
+		return readConcurrency;
+	}
+
+	public void setReadConcurrency(int readConcurrency) {
+		this.readConcurrency = readConcurrency;
+	}
+
+	void validate() {
+		if (!(requestsPerSecond > 0) || burst < 1 || orderConcurrency < 1 || readConcurrency < 1) {
+			throw new IllegalArgumentException("Admission limits must be positive: " + this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AdmissionLimits [requestsPerSecond=" + requestsPerSecond + ", burst=" + burst
+				+ ", orderConcurrency=" + orderConcurrency + ", readConcurrency=" + readConcurrency + "]";
+	}
+}
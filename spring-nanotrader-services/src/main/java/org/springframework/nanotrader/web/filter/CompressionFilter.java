@@ -0,0 +1,443 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Gzips responses of at least minimumSize bytes for clients that accept it. Bodies are held back
+ * until they cross the threshold and compressed while they are written from then on, so streamed
+ * collections stay streamed.
+ * <p>
+ * Payloads that every client receives are marked by their controller with {@link #markShared}.
+ * Those are buffered whole and versioned by an MD5 of the body; each version is compressed once
+ * and then served as a copy of the cached bytes. Only the latest version of each payload is kept.
+ * <p>
+ * When a request goes async the body is written on the ASYNC dispatch, so the filter has to be
+ * mapped for that dispatcher type too; it carries the same wrapper over to the dispatch.
+ */
+@Component
+public class CompressionFilter implements Filter {
+
+	private static Logger log = LoggerFactory.getLogger(CompressionFilter.class);
+
+	private static final String SHARED_PAYLOAD_ATTRIBUTE = CompressionFilter.class.getName() + ".SHARED_PAYLOAD";
+
+	private static final String RESPONSE_ATTRIBUTE = CompressionFilter.class.getName() + ".RESPONSE";
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private int minimumSize = 1024;
+
+	private final ConcurrentMap<String, CompressedPayload> sharedPayloads = new ConcurrentHashMap<String, CompressedPayload>();
+
+	private final CompressionStatistics statistics = new CompressionStatistics();
+
+	/**
+	 * Marks the response to this request as the named shared payload.
+	 */
+	public static void markShared(HttpServletRequest request, String name) {
+		request.setAttribute(SHARED_PAYLOAD_ATTRIBUTE, name);
+	}
+
+	public void setMinimumSize(int minimumSize) {
+		this.minimumSize = minimumSize;
+	}
+
+	public CompressionStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void init(FilterConfig filterConfig) {
+		String size = filterConfig.getInitParameter("minimumSize");
+		if (size != null) {
+			minimumSize = Integer.parseInt(size.trim());
+		}
+	}
+
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		HttpServletResponse response = (HttpServletResponse) res;
+		GzipResponse gzipResponse;
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			gzipResponse = (GzipResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+		}
+		else {
+			response.addHeader("Vary", "Accept-Encoding");
+			gzipResponse = "HEAD".equals(request.getMethod()) || !acceptsGzip(request) ? null : new GzipResponse(request, response);
+		}
+		if (gzipResponse == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		chain.doFilter(request, gzipResponse);
+		if (request.isAsyncStarted()) {
+			request.setAttribute(RESPONSE_ATTRIBUTE, gzipResponse);
+		}
+		else {
+			gzipResponse.finish();
+		}
+	}
+
+	public void destroy() {
+		log.info("CompressionFilter: " + statistics);
+	}
+
+	static boolean acceptsGzip(HttpServletRequest request) {
+		Enumeration<?> values = request.getHeaders("Accept-Encoding");
+		while (values != null && values.hasMoreElements()) {
+			for (String coding : StringUtils.commaDelimitedListToStringArray((String) values.nextElement())) {
+				String[] parts = coding.split(";");
+				if (parts[0].trim().equalsIgnoreCase("gzip")) {
+					// gzip;q=0 means the client refuses it
+					return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+				}
+			}
+		}
+		return false;
+	}
+
+	private static long cpuTime() {
+		if (threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()) {
+			return threads.getCurrentThreadCpuTime();
+		}
+		return System.nanoTime();
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(out) {
+			{
+				// shared payloads are compressed once, so they get the best ratio
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		};
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	private static class CompressedPayload {
+
+		private final String version;
+
+		private final byte[] bytes;
+
+		private final long cpuNanos;
+
+		CompressedPayload(String version, byte[] bytes, long cpuNanos) {
+			this.version = version;
+			this.bytes = bytes;
+			this.cpuNanos = cpuNanos;
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private class GzipResponse extends HttpServletResponseWrapper {
+
+		private final HttpServletRequest request;
+
+		private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				GzipResponse.this.write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				GzipResponse.this.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				GzipResponse.this.flush();
+			}
+		};
+
+		private PrintWriter writer;
+
+		private boolean outputStreamUsed;
+
+		private int contentLength = -1;
+
+		// holds the body until it is known whether it will be compressed
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		private OutputStream body;
+
+		private GZIPOutputStream gzip;
+
+		private CountingOutputStream compressed;
+
+		private long uncompressedBytes;
+
+		private long cpuNanos;
+
+		GzipResponse(HttpServletRequest request, HttpServletResponse response) {
+			super(response);
+			this.request = request;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has already been called for this response");
+			}
+			outputStreamUsed = true;
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (outputStreamUsed) {
+				throw new IllegalStateException("getOutputStream() has already been called for this response");
+			}
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			// only holds for the uncompressed body
+			contentLength = len;
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLength(Integer.parseInt(value));
+			}
+			else {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLength(Integer.parseInt(value));
+			}
+			else {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLength(value);
+			}
+			else {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLength(value);
+			}
+			else {
+				super.addIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (body != null) {
+				flush();
+				super.flushBuffer();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (body == null) {
+				buffer.reset();
+				uncompressedBytes = 0;
+			}
+			else {
+				super.resetBuffer();
+			}
+		}
+
+		@Override
+		public void reset() {
+			resetBuffer();
+			contentLength = -1;
+			super.reset();
+			super.addHeader("Vary", "Accept-Encoding");
+		}
+
+		private String sharedName() {
+			return (String) request.getAttribute(SHARED_PAYLOAD_ATTRIBUTE);
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			uncompressedBytes += len;
+			if (body != null) {
+				writeBody(b, off, len);
+				return;
+			}
+			buffer.write(b, off, len);
+			if (buffer.size() >= minimumSize && sharedName() == null) {
+				startBody(true);
+			}
+		}
+
+		private void flush() throws IOException {
+			// nothing goes out while the body is still held back
+			if (body != null) {
+				body.flush();
+			}
+		}
+
+		private void startBody(boolean compress) throws IOException {
+			ServletOutputStream out = getResponse().getOutputStream();
+			if (compress && !containsHeader("Content-Encoding")) {
+				super.setHeader("Content-Encoding", "gzip");
+				compressed = new CountingOutputStream(out);
+				gzip = new GZIPOutputStream(compressed, 8192);
+				body = gzip;
+			}
+			else {
+				if (contentLength >= 0) {
+					super.setContentLength(contentLength);
+				}
+				body = out;
+			}
+			byte[] held = buffer.toByteArray();
+			buffer = null;
+			writeBody(held, 0, held.length);
+		}
+
+		private void writeBody(byte[] b, int off, int len) throws IOException {
+			if (gzip == null) {
+				body.write(b, off, len);
+				return;
+			}
+			long start = cpuTime();
+			gzip.write(b, off, len);
+			cpuNanos += cpuTime() - start;
+		}
+
+		void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (body == null) {
+				byte[] held = buffer.toByteArray();
+				String name = sharedName();
+				if (name != null && held.length >= minimumSize && !containsHeader("Content-Encoding")) {
+					writeShared(name, held);
+					return;
+				}
+				if (held.length == 0) {
+					if (contentLength >= 0 && !isCommitted()) {
+						super.setContentLength(contentLength);
+					}
+					statistics.uncompressed();
+					return;
+				}
+				startBody(held.length >= minimumSize);
+			}
+			if (gzip != null) {
+				long start = cpuTime();
+				gzip.finish();
+				cpuNanos += cpuTime() - start;
+				statistics.compressed(uncompressedBytes, compressed.count, cpuNanos);
+			}
+			else {
+				statistics.uncompressed();
+			}
+		}
+
+		private void writeShared(String name, byte[] held) throws IOException {
+			String version = DigestUtils.md5DigestAsHex(held);
+			CompressedPayload payload = sharedPayloads.get(name);
+			if (payload != null && payload.version.equals(version)) {
+				statistics.sharedHit(held.length, payload.bytes.length, payload.cpuNanos);
+			}
+			else {
+				long start = cpuTime();
+				byte[] bytes = gzip(held);
+				payload = new CompressedPayload(version, bytes, cpuTime() - start);
+				sharedPayloads.put(name, payload);
+				statistics.compressed(held.length, bytes.length, payload.cpuNanos);
+				if (log.isDebugEnabled()) {
+					log.debug("CompressionFilter: compressed " + name + " version " + version + " from " + held.length
+							+ " to " + bytes.length + " bytes");
+				}
+			}
+			super.setHeader("Content-Encoding", "gzip");
+			super.setContentLength(payload.bytes.length);
+			getResponse().getOutputStream().write(payload.bytes);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of {@link CompressionFilter} over the responses to clients that accept gzip,
+ * whether or not they were large enough to be compressed. CPU times are thread CPU time where the JVM
+ * supports it; cpuSavedMillis is the compression time of every shared payload served from the
+ * cache instead of being compressed again.
+ */
+public class CompressionStatistics {
+
+	private final AtomicLong responses = new AtomicLong();
+
+	private final AtomicLong compressedResponses = new AtomicLong();
+
+	private final AtomicLong bytesIn = new AtomicLong();
+
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	private final AtomicLong compressionNanos = new AtomicLong();
+
+	private final AtomicLong sharedHits = new AtomicLong();
+
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	void uncompressed() {
+		responses.incrementAndGet();
+	}
+
+	void compressed(long in, long out, long nanos) {
+		responses.incrementAndGet();
+		compressedResponses.incrementAndGet();
+		bytesIn.addAndGet(in);
+		bytesOut.addAndGet(out);
+		compressionNanos.addAndGet(nanos);
+	}
+
+	void sharedHit(long in, long out, long nanos) {
+		responses.incrementAndGet();
+		compressedResponses.incrementAndGet();
+		bytesIn.addAndGet(in);
+		bytesOut.addAndGet(out);
+		sharedHits.incrementAndGet();
+		savedNanos.addAndGet(nanos);
+	}
+
+	public long getResponses() {
+		return responses.get();
+	}
+
+	public long getCompressedResponses() {
+		return compressedResponses.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Uncompressed over compressed size of everything that was gzipped.
+	 */
+	public double getCompressionRatio() {
+		long out = bytesOut.get();
+		return out == 0 ? 0 : (double) bytesIn.get() / out;
+	}
+
+	public long getCompressionMillis() {
+		return compressionNanos.get() / 1000000;
+	}
+
+	public long getSharedHits() {
+		return sharedHits.get();
+	}
+
+	public long getCpuSavedMillis() {
+		return savedNanos.get() / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return "CompressionStatistics [responses=" + getResponses() + ", compressedResponses=" + getCompressedResponses()
+				+ ", bytesIn=" + getBytesIn() + ", bytesOut=" + getBytesOut() + ", compressionRatio=" + getCompressionRatio()
+				+ ", compressionMillis=" + getCompressionMillis() + ", sharedHits=" + getSharedHits()
+				+ ", cpuSavedMillis=" + getCpuSavedMillis() + "]";
+	}
+}
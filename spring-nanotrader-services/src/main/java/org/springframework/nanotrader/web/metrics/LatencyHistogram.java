@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency distribution in nanoseconds with the bucket layout of an HdrHistogram: values below 128 get a
+ * bucket each, and every power of two above that is split into 64 buckets, so any recorded value is
+ * known to within 1/64 (about 1.6%) of itself. Values over an hour are counted as an hour.
+ * <p>
+ * Recording is a single increment of an AtomicLongArray slot. Reading copies the counts while
+ * recording carries on, so a snapshot may be missing the values recorded during the copy.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int HALF = SUB_BUCKETS / 2;
+
+	static final long HIGHEST_TRACKABLE = TimeUnit.HOURS.toNanos(1);
+
+	private static final int BUCKETS = index(HIGHEST_TRACKABLE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/** Counts at the start of the current interval, only touched under the LatencyMetrics lock */
+	private long[] intervalStart = new long[BUCKETS];
+
+	void record(long nanos) {
+		counts.incrementAndGet(index(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE))));
+	}
+
+	long[] cumulative() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The counts since the previous call, which starts a new interval.
+	 */
+	long[] interval() {
+		long[] snapshot = cumulative();
+		long[] interval = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			// a reset between two intervals leaves the start above the counts
+			interval[i] = Math.max(0, snapshot[i] - intervalStart[i]);
+		}
+		intervalStart = snapshot;
+		return interval;
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		intervalStart = new long[BUCKETS];
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+	}
+
+	/**
+	 * The largest value that is counted in the given bucket.
+	 */
+	static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / HALF + 1;
+		long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Records how long every controller method took, from the time {@link RequestStartFilter} saw the
+ * request (or from preHandle when the filter is not mapped) until the handler has completed. An async
+ * request is recorded once, when its async dispatch completes.
+ */
+@Component
+public class LatencyInterceptor implements AsyncHandlerInterceptor {
+
+	@Resource
+	private LatencyMetrics latencyMetrics;
+
+	private final ConcurrentMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<Method, LatencyHistogram>();
+
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (request.getAttribute(RequestStartFilter.START_ATTRIBUTE) == null) {
+			request.setAttribute(RequestStartFilter.START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+	}
+
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		// recorded by afterCompletion of the async dispatch
+	}
+
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Long start = (Long) request.getAttribute(RequestStartFilter.START_ATTRIBUTE);
+		if (start != null && handler instanceof HandlerMethod) {
+			histogram((HandlerMethod) handler).record(System.nanoTime() - start);
+		}
+	}
+
+	private LatencyHistogram histogram(HandlerMethod handler) {
+		LatencyHistogram histogram = histograms.get(handler.getMethod());
+		if (histogram == null) {
+			histogram = latencyMetrics.histogram(ClassUtils.getUserClass(handler.getBeanType()).getSimpleName() + "."
+					+ handler.getMethod().getName());
+			histograms.putIfAbsent(handler.getMethod(), histogram);
+		}
+		return histogram;
+	}
+}
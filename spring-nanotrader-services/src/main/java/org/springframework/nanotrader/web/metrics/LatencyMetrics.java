@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.nanotrader.data.cache.CacheStatistics;
+import org.springframework.nanotrader.data.jdbc.DataSourceStatistics;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency histograms by controller method, named like OrderController.save. Recording never locks;
+ * reading the interval view and resetting are serialized so that every interval is counted once.
+ * The interval view is shared, so each read of it starts a new interval for every reader. Reports also
+ * carry the connection pool, statement and second-level cache statistics when the data layer is
+ * present, and a reset clears those too.
+ */
+@Component
+public class LatencyMetrics {
+
+	public static final String CUMULATIVE = "cumulative";
+
+	public static final String INTERVAL = "interval";
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+	@Autowired(required = false)
+	private DataSourceStatistics dataSource;
+
+	@Autowired(required = false)
+	private CacheStatistics cacheStatistics;
+
+	private volatile Date resetTime = new Date();
+
+	private Date intervalTime = resetTime;
+
+	public void record(String name, long nanos) {
+		histogram(name).record(nanos);
+	}
+
+	LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	public MetricsReport report(String view) {
+		if (CUMULATIVE.equals(view)) {
+			List<LatencySummary> endpoints = new ArrayList<LatencySummary>();
+			for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+				endpoints.add(new LatencySummary(entry.getKey(), entry.getValue().cumulative()));
+			}
+			return new MetricsReport(view, resetTime, endpoints, dataSource, caches());
+		}
+		if (INTERVAL.equals(view)) {
+			return interval();
+		}
+		throw new IllegalArgumentException("Unknown metrics view '" + view + "', expected " + CUMULATIVE + " or "
+				+ INTERVAL);
+	}
+
+	private synchronized MetricsReport interval() {
+		List<LatencySummary> endpoints = new ArrayList<LatencySummary>();
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			endpoints.add(new LatencySummary(entry.getKey(), entry.getValue().interval()));
+		}
+		Date since = intervalTime;
+		intervalTime = new Date();
+		return new MetricsReport(INTERVAL, since, endpoints, dataSource, caches());
+	}
+
+	private List<CacheStatistics.RegionStatistics> caches() {
+		return cacheStatistics == null ? null : cacheStatistics.getRegions();
+	}
+
+	public synchronized void reset() {
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		if (dataSource != null) {
+			dataSource.reset();
+		}
+		if (cacheStatistics != null) {
+			cacheStatistics.reset();
+		}
+		resetTime = new Date();
+		intervalTime = resetTime;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
+
+/**
+ * Latency percentiles of one controller method, in milliseconds. Each value is the upper bound of
+ * the histogram bucket it falls in.
+ */
+@JsonPropertyOrder({ "name", "count", "p50", "p99", "p999", "max" })
+public class LatencySummary {
+
+	private final String name;
+
+	private final long count;
+
+	private final double p50;
+
+	private final double p99;
+
+	private final double p999;
+
+	private final double max;
+
+	LatencySummary(String name, long[] counts) {
+		this.name = name;
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		this.count = total;
+		this.p50 = percentile(counts, total, 50.0);
+		this.p99 = percentile(counts, total, 99.0);
+		this.p999 = percentile(counts, total, 99.9);
+		this.max = percentile(counts, total, 100.0);
+	}
+
+	private static double percentile(long[] counts, long total, double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return millis(LatencyHistogram.highestEquivalentValue(i));
+			}
+		}
+		return millis(LatencyHistogram.HIGHEST_TRACKABLE);
+	}
+
+	private static double millis(long nanos) {
+		// microsecond precision is plenty once the bucket error is taken into account
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getP50() {
+		return p50;
+	}
+
+	public double getP99() {
+		return p99;
+	}
+
+	public double getP999() {
+		return p999;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencySummary [name=" + name + ", count=" + count + ", p50=" + p50 + ", p99=" + p99 + ", p999="
+				+ p999 + ", max=" + max + "]";
+	}
+}
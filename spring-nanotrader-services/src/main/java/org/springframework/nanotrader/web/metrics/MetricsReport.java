@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import java.util.Date;
+import java.util.List;
+
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
+import org.springframework.nanotrader.data.cache.CacheStatistics;
+import org.springframework.nanotrader.data.jdbc.DataSourceStatistics;
+
+/**
+ * Latencies of every controller method that has been called, either since the metrics were last reset
+ * (the cumulative view) or since the interval view was last read. The data source and second-level cache
+ * statistics are always cumulative since the last reset, and absent when the data layer is not running
+ * in this context.
+ */
+@JsonPropertyOrder({ "view", "since", "endpoints", "dataSource", "caches" })
+public class MetricsReport {
+
+	private final String view;
+
+	private final Date since;
+
+	private final List<LatencySummary> endpoints;
+
+	private final DataSourceStatistics dataSource;
+
+	private final List<CacheStatistics.RegionStatistics> caches;
+
+	MetricsReport(String view, Date since, List<LatencySummary> endpoints, DataSourceStatistics dataSource,
+			List<CacheStatistics.RegionStatistics> caches) {
+		this.view = view;
+		this.since = since;
+		this.endpoints = endpoints;
+		this.dataSource = dataSource;
+		this.caches = caches;
+	}
+
+	public String getView() {
+		return view;
+	}
+
+	public Date getSince() {
+		return since;
+	}
+
+	public List<LatencySummary> getEndpoints() {
+		return endpoints;
+	}
+
+	public DataSourceStatistics getDataSource() {
+		return dataSource;
+	}
+
+	public List<CacheStatistics.RegionStatistics> getCaches() {
+		return caches;
+	}
+}
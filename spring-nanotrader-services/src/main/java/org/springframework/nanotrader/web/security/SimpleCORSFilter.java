@@ -30,6 +30,7 @@ public class SimpleCORSFilter implements Filter {
 		response.setHeader("Access-Control-Allow-Origin", "*");
 		response.setHeader("Access-Control-Allow-Methods", "POST, GET, DELETE, PUT");
 		response.setHeader("Access-Control-Max-Age", "3600");
+		response.setHeader("Timing-Allow-Origin", "*"); // lets the web app see Server-Timing
 		response.setHeader("Access-Control-Allow-Headers", "x-requested-with,Content-Type,API_TOKEN");
 //		response.setHeader("Access-Control-Allow-Headers", "x-requested-with,Content-Type");
 		
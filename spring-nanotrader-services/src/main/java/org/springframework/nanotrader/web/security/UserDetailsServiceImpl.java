@@ -23,6 +23,8 @@ import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.nanotrader.data.service.AuthTokenService;
 import org.springframework.nanotrader.service.domain.Accountprofile;
 import org.springframework.nanotrader.service.support.TradingServiceFacade;
 import org.springframework.nanotrader.service.support.exception.AuthenticationException;
@@ -47,6 +49,9 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 	
 	@Resource
 	private TradingServiceFacade tradingServiceFacade;
+
+	@Autowired(required = false)
+	private AuthTokenService authTokenService;
 	
 	@Override
 
@@ -55,6 +60,9 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 			log.error("UserDetailsServiceImpl.loadUserByUsername(): User not found with null token");
 			throw new UsernameNotFoundException("UserDetailsServiceImpl.loadUserByUsername(): User not found with null token");
 		}
+		if (authTokenService != null && authTokenService.isSignedToken(token)) {
+			return loadUserBySignedToken(token);
+		}
 		Accountprofile accountProfile = null;
 		try { 
 			accountProfile = tradingServiceFacade.findAccountprofileByAuthtoken(token);
@@ -79,6 +87,24 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 		return user;
 	}
 
+	/**
+	 * Signed tokens carry everything needed to build the principal, so they are checked in-process
+	 * without going through the authorization cache or the database.
+	 */
+	private UserDetails loadUserBySignedToken(String token) {
+		AuthTokenService.Claims claims = authTokenService.verify(token);
+		if (claims == null) {
+			throw new UsernameNotFoundException("UserDetailsServiceImpl.loadUserByUsername(): Invalid or expired token:" + token);
+		}
+		List<GrantedAuthority> authList = new ArrayList<GrantedAuthority>(1);
+		authList.add(new SimpleGrantedAuthority(claims.getRole()));
+		User user = new CustomUser(claims.getUserid(), "", authList, claims.getAccountId(), claims.getProfileId(), token);
+		if (log.isDebugEnabled()) {
+			log.debug("UserDetailsServiceImpl.loadUserBySignedToken(): user=" + user);
+		}
+		return user;
+	}
+
 	private List<GrantedAuthority> getAuthorities(String userId) {
 		List<GrantedAuthority> authList = new ArrayList<GrantedAuthority>(1);
 		if ("admin".equals(userId)) { 
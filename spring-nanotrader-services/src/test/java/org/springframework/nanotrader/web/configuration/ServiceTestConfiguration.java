@@ -43,10 +43,12 @@ import org.springframework.nanotrader.data.domain.MarketSummary;
 import org.springframework.nanotrader.data.domain.Order;
 import org.springframework.nanotrader.data.domain.PortfolioSummary;
 import org.springframework.nanotrader.data.domain.Quote;
+import org.springframework.nanotrader.data.service.BulkDataGenerator;
 import org.springframework.nanotrader.data.service.TradingService;
 import org.springframework.nanotrader.data.service.TradingServiceImpl;
+import org.springframework.nanotrader.data.snapshot.DatasetSnapshot;
 import org.springframework.nanotrader.data.util.FinancialUtils;
-import org.springframework.nanotrader.service.cache.DataCreationProgressCache;
+import org.springframework.nanotrader.service.job.JobService;
 import org.springframework.nanotrader.service.support.AdminServiceFacade;
 import org.springframework.nanotrader.service.support.AdminServiceFacadeImpl;
 import org.springframework.nanotrader.service.support.TradingServiceFacade;
@@ -142,9 +144,12 @@ public class ServiceTestConfiguration  {
 		when(tradingService.updateOrder(any(Order.class))).thenReturn(null);
 		when(tradingService.findOrdersByStatus(eq(ACCOUNT_ID), any(String.class), any(Integer.class), any(Integer.class))).thenReturn(orders());
 		when(tradingService.findOrders(eq(ACCOUNT_ID), any(Integer.class), any(Integer.class))).thenReturn(orders());
+		when(tradingService.findOrdersAfter(eq(ACCOUNT_ID), any(String.class), any(Integer.class), any(Integer.class))).thenReturn(orders());
+		when(tradingService.findHoldingsByAccountIdAfter(eq(ACCOUNT_ID), any(Integer.class), any(Integer.class))).thenReturn(holdings());
 		when(tradingService.findQuoteBySymbol(eq(SYMBOL))).thenReturn(quote());
 		when(tradingService.findRandomQuotes(RANDOM_QUOTES_COUNT)).thenReturn(quotes());
 		when(tradingService.findQuotesBySymbols(anySetOf(String.class))).thenReturn(quotes());
+		when(tradingService.findAllQuotes()).thenReturn(quotes());
 		when(tradingService.findAccount(eq(ACCOUNT_ID))).thenReturn(account());
 		when(tradingService.findAccountByProfile(any(Accountprofile.class))).thenReturn(account());
 		when(tradingService.findPortfolioSummary(eq(ACCOUNT_ID))).thenReturn(portfolioSummary());
@@ -168,8 +173,18 @@ public class ServiceTestConfiguration  {
 	}
 	
 	@Bean
-	public DataCreationProgressCache getProgressCache() {
-		return new DataCreationProgressCache();
+	public JobService jobService() {
+		return Mockito.mock(JobService.class);
+	}
+
+	@Bean
+	public BulkDataGenerator bulkDataGenerator() {
+		return Mockito.mock(BulkDataGenerator.class);
+	}
+
+	@Bean
+	public DatasetSnapshot datasetSnapshot() {
+		return Mockito.mock(DatasetSnapshot.class);
 	}
 
 	@Bean 
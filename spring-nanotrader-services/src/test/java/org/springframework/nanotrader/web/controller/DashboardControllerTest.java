@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+
+/**
+ *  DashboardControllerTest tests the Dashboard REST api
+ */
+public class DashboardControllerTest extends AbstractSecureControllerTest {
+
+	@Test
+	public void getDashboardJson() throws Exception {
+		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/dashboard").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.account.accountid").value(ServiceTestConfiguration.ACCOUNT_ID))
+				.andExpect(jsonPath("$.account.balance").value(ServiceTestConfiguration.ACCOUNT_BALANCE.doubleValue()))
+				.andExpect(jsonPath("$.portfolioSummary.numberOfHoldings").value(ServiceTestConfiguration.HOLDING_COUNT))
+				.andExpect(jsonPath("$.portfolioSummary.totalBasis").value(ServiceTestConfiguration.BASIS.doubleValue()))
+				.andExpect(jsonPath("$.holdingSummary").exists())
+				.andExpect(jsonPath("$.orders.results.[0].orderid").value(ServiceTestConfiguration.ORDER_ID))
+				.andExpect(jsonPath("$.orders.results.[0].orderstatus").value(ServiceTestConfiguration.ORDER_STATUS_CLOSED))
+				.andExpect(header().string("Server-Timing", containsString("account;dur=")))
+				.andExpect(header().string("Server-Timing", containsString("orders;dur=")))
+				.andExpect(header().string("Server-Timing", containsString("total;dur=")))
+				.andDo(print());
+	}
+
+	@Test
+	public void getDashboardByPageJson() throws Exception {
+		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/dashboard").accept(MediaType.APPLICATION_JSON).param("page", "0"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.orders.results.[0].orderid").value(ServiceTestConfiguration.ORDER_ID))
+				.andDo(print());
+	}
+
+	@Test
+	public void getDashboardOfAnotherAccount() throws Exception {
+		mockMvc.perform(get("/account/3/dashboard").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isUnauthorized());
+	}
+
+}
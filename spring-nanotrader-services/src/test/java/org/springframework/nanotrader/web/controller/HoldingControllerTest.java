@@ -75,4 +75,13 @@ public class HoldingControllerTest extends AbstractSecureControllerTest {
 				.andExpect(jsonPath("$.results.[0].quantity").value(QUANTITY)).andDo(print());
 	}
 	
+	@Test
+	public void getHoldingsByAccountIdAfterCursorJson() throws Exception {
+		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/holdings").accept(MediaType.APPLICATION_JSON).param("after", "").param("count", "true")).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.totalRecords").value(ServiceTestConfiguration.RESULT_COUNT.intValue()))
+				.andExpect(jsonPath("$.results.[0].holdingid").value(ServiceTestConfiguration.HOLDING_ID))
+				.andExpect(jsonPath("$.results.[0].quote.symbol").value(ServiceTestConfiguration.SYMBOL)).andDo(print());
+	}
+	
 }
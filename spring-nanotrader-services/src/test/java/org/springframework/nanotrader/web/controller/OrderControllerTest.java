@@ -16,18 +16,40 @@
 package org.springframework.nanotrader.web.controller;
 
 
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.MediaType;
+import org.springframework.nanotrader.data.domain.Order;
+import org.springframework.nanotrader.data.service.TradingService;
 import org.springframework.nanotrader.data.service.TradingServiceImpl;
 import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.FileCopyUtils;
 
 
@@ -41,6 +63,15 @@ import org.springframework.util.FileCopyUtils;
 
 public class OrderControllerTest extends AbstractSecureControllerTest {
 
+	// orders complete on the orderExecutor, so the test waits for them
+	private static final long ASYNC_WAIT = 5000;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private ThreadPoolTaskExecutor orderExecutor;
+
 	@Test
 	public void getOrderByIdJson() throws Exception {
 		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/order/999/").accept(MediaType.APPLICATION_JSON))
@@ -85,6 +116,22 @@ public class OrderControllerTest extends AbstractSecureControllerTest {
 	}
 	
 	
+	@Test
+	public void getOrdersAfterCursor() throws Exception {
+		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/orders").accept(MediaType.APPLICATION_JSON).param("after", "").param("count", "false"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.results.[0].orderid").value(ServiceTestConfiguration.ORDER_ID))
+				.andExpect(jsonPath("$.results.[0].orderstatus").value(ServiceTestConfiguration.ORDER_STATUS_CLOSED))
+				.andDo(print());
+	}
+
+	@Test
+	public void getOrdersInvalidCursor() throws Exception {
+		mockMvc.perform(get("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/orders").accept(MediaType.APPLICATION_JSON).param("after", "not-a-cursor"))
+				.andExpect(status().isBadRequest());
+	}
+	
 	@Test
 	public void getOrdersNoRecordsFoundJson() throws Exception {
 		mockMvc.perform(get("/account/3/orders").accept(MediaType.APPLICATION_JSON))
@@ -114,20 +161,97 @@ public class OrderControllerTest extends AbstractSecureControllerTest {
 	@Test
 	public void createOrderBuyJson() throws Exception {
 		byte[] jsonRequest = FileCopyUtils.copyToByteArray(new ClassPathResource("create-order.json").getFile());
-		mockMvc.perform(
+		MvcResult result = mockMvc.perform(
 				post("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/order").accept(MediaType.APPLICATION_JSON).content(jsonRequest)
-						.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated()) // HTTP 201 - Created
+						.contentType(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult(ASYNC_WAIT);
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isCreated()) // HTTP 201 - Created
 				.andDo(print());
 	}
 
 	@Test
 	public void createOrderSellJson() throws Exception {
 		byte[] jsonRequest = FileCopyUtils.copyToByteArray(new ClassPathResource("create-order-sell.json").getFile());
-		mockMvc.perform(
+		MvcResult result = mockMvc.perform(
 				post("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/order").accept(MediaType.APPLICATION_JSON).content(jsonRequest)
-						.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated()) // HTTP 201 - Created
+						.contentType(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult(ASYNC_WAIT);
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isCreated()) // HTTP 201 - Created
 				.andDo(print());
 	}
 
+	@Test
+	public void createOrderTimesOut() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Order>() {
+			public Order answer(InvocationOnMock invocation) throws Throwable {
+				started.countDown();
+				release.await();
+				return null;
+			}
+		}).when(tradingService).saveOrder(any(Order.class));
+		try {
+			byte[] jsonRequest = FileCopyUtils.copyToByteArray(new ClassPathResource("create-order.json").getFile());
+			MvcResult result = mockMvc.perform(
+					post("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/order").accept(MediaType.APPLICATION_JSON).content(jsonRequest)
+							.contentType(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+			started.await();
+			// what the container does when the async timeout expires
+			AsyncContext asyncContext = (AsyncContext) ReflectionTestUtils.invokeGetterMethod(result.getRequest(), "asyncContext");
+			@SuppressWarnings("unchecked")
+			List<AsyncListener> listeners = (List<AsyncListener>) ReflectionTestUtils.invokeGetterMethod(asyncContext, "listeners");
+			for (AsyncListener listener : listeners) {
+				listener.onTimeout(new AsyncEvent(asyncContext));
+			}
+			result.getAsyncResult(ASYNC_WAIT);
+			mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable()) // HTTP 503 - Service Unavailable
+					.andExpect(jsonPath("$.detail", containsString("may still be placed")))
+					.andDo(print());
+		}
+		finally {
+			release.countDown();
+			doReturn(null).when(tradingService).saveOrder(any(Order.class));
+		}
+	}
+
+	@Test
+	public void createOrderWhenOrderExecutorIsFull() throws Exception {
+		int threads = orderExecutor.getMaxPoolSize();
+		final CountDownLatch running = new CountDownLatch(threads);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable order = new Runnable() {
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		try {
+			for (int i = 0; i < threads; i++) {
+				orderExecutor.execute(order);
+			}
+			running.await();
+			int queueCapacity = orderExecutor.getThreadPoolExecutor().getQueue().remainingCapacity();
+			for (int i = 0; i < queueCapacity; i++) {
+				orderExecutor.execute(order);
+			}
+			byte[] jsonRequest = FileCopyUtils.copyToByteArray(new ClassPathResource("create-order.json").getFile());
+			mockMvc.perform(
+					post("/account/" + ServiceTestConfiguration.ACCOUNT_ID + "/order").accept(MediaType.APPLICATION_JSON).content(jsonRequest)
+							.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isServiceUnavailable()) // HTTP 503 - Service Unavailable
+					.andExpect(header().string("Retry-After", "1"))
+					.andExpect(jsonPath("$.detail", containsString("was not placed")))
+					.andDo(print());
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
 
 }
@@ -49,6 +49,18 @@ public class QuoteControllerTest extends AbstractSecureControllerTest {
 				.andDo(print());
 	}
 	
+	@Test
+	public void getQuotesJson() throws Exception {
+		mockMvc.perform(get("/quotes").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.totalRecords").value(1))
+				.andExpect(jsonPath("$.results.[0].quoteid").value(ServiceTestConfiguration.QUOTE_ID))
+				.andExpect(jsonPath("$.results.[0].symbol").value(ServiceTestConfiguration.SYMBOL))
+				.andExpect(jsonPath("$.results.[0].companyname").value(ServiceTestConfiguration.COMPANY_NAME))
+				.andDo(print());
+	}
+
 	@Test
 	public void getQuoteBySymbolNoRecordsFoundJson() throws Exception {
 		mockMvc.perform(get("/quote/NOT_A_SYMBOL").accept(MediaType.APPLICATION_JSON))
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.nanotrader.data.service.AuthTokenService;
+import org.springframework.nanotrader.service.configuration.MappingConfig;
+import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+import org.springframework.nanotrader.web.configuration.WebConfig;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * AdmissionControlFilterTest checks the per client rate limit, the order and read concurrency limits
+ * and changing the limits through the admin API.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = { WebConfig.class, MappingConfig.class, ServiceTestConfiguration.class })
+@ActiveProfiles("test")
+public class AdmissionControlFilterTest {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private AdmissionControlFilter admissionControlFilter;
+
+	private AdmissionLimits defaults;
+
+	@Before
+	public void setup() {
+		defaults = admissionControlFilter.getLimits();
+	}
+
+	@After
+	public void restoreLimits() {
+		admissionControlFilter.setLimits(defaults);
+	}
+
+	@Test
+	public void clientOverItsBurstIsRateLimited() throws Exception {
+		admissionControlFilter.setLimits(limits(0.5, 2, 1, 1));
+		HttpServlet ok = servlet(null);
+		assertEquals(200, filter(request("GET", "/api/quotes", "token-a", "10.0.0.1"), ok).getStatus());
+		assertEquals(200, filter(request("GET", "/api/quotes", "token-a", "10.0.0.1"), ok).getStatus());
+		MockHttpServletResponse limited = filter(request("GET", "/api/quotes", "token-a", "10.0.0.1"), ok);
+		assertEquals(429, limited.getStatus());
+		assertEquals("2", limited.getHeader("Retry-After"));
+		assertTrue(limited.getContentAsString().contains("\"detail\""));
+		// every client has a bucket of its own
+		assertEquals(200, filter(request("GET", "/api/quotes", "token-a", "10.0.0.2"), ok).getStatus());
+	}
+
+	@Test
+	public void newUnverifiedTokensShareTheBucketOfTheirAddress() throws Exception {
+		admissionControlFilter.setLimits(limits(0.5, 2, 1, 1));
+		HttpServlet ok = servlet(null);
+		assertEquals(200, filter(request("GET", "/api/quotes", "random-1", "10.0.0.3"), ok).getStatus());
+		assertEquals(200, filter(request("GET", "/api/quotes", null, "10.0.0.3"), ok).getStatus());
+		assertEquals(429, filter(request("GET", "/api/quotes", "random-2", "10.0.0.3"), ok).getStatus());
+	}
+
+	@Test
+	public void signedTokensHaveABucketPerProfile() throws Exception {
+		AuthTokenService authTokenService = new AuthTokenService();
+		authTokenService.setSecret("admission-secret");
+		authTokenService.setTtlSeconds(3600);
+		authTokenService.init();
+		ReflectionTestUtils.setField(admissionControlFilter, "authTokenService", authTokenService);
+		try {
+			admissionControlFilter.setLimits(limits(0.5, 1, 1, 1));
+			HttpServlet ok = servlet(null);
+			String first = authTokenService.issue(1, 11, "user1");
+			assertEquals(200, filter(request("GET", "/api/quotes", first, "10.0.0.4"), ok).getStatus());
+			// a profile is limited from wherever it calls, and whichever of its tokens it uses
+			assertEquals(429, filter(request("GET", "/api/quotes", authTokenService.issue(1, 11, "user1"), "10.0.0.5"), ok)
+					.getStatus());
+			// other profiles behind the same address are not held back
+			assertEquals(200, filter(request("GET", "/api/quotes", authTokenService.issue(2, 12, "user2"), "10.0.0.4"), ok)
+					.getStatus());
+			// a forged signature is known by its address only
+			assertEquals(200, filter(request("GET", "/api/quotes", first + "0", "10.0.0.6"), ok).getStatus());
+		}
+		finally {
+			ReflectionTestUtils.setField(admissionControlFilter, "authTokenService", null);
+		}
+	}
+
+	@Test
+	public void readsOverTheConcurrencyLimitAreRejected() throws Exception {
+		admissionControlFilter.setLimits(limits(1000, 1000, 1, 1));
+		final List<Integer> nested = new ArrayList<Integer>();
+		HttpServlet read = servlet(new Runnable() {
+
+			public void run() {
+				nested.add(filter(request("GET", "/api/account/1/holdings", "token-b"), servlet(null)).getStatus());
+				// orders are limited separately
+				nested.add(filter(request("POST", "/api/account/1/order", "token-b"), servlet(null)).getStatus());
+			}
+		});
+		assertEquals(200, filter(request("GET", "/api/quotes", "token-a"), read).getStatus());
+		assertEquals(429, nested.get(0).intValue());
+		assertEquals(200, nested.get(1).intValue());
+		// the read is over, so its slot is free again
+		assertEquals(200, filter(request("GET", "/api/quotes", "token-a"), servlet(null)).getStatus());
+	}
+
+	@Test
+	public void asyncOrderStaysInFlightUntilItCompletes() throws Exception {
+		admissionControlFilter.setLimits(limits(1000, 1000, 1, 1));
+		final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+		MockHttpServletRequest async = request("POST", "/api/account/1/order", "token-a");
+		async.setAttribute("asyncContext", asyncContext(listeners));
+		assertEquals(200, filter(async, servlet(null)).getStatus());
+		assertEquals(1, listeners.size());
+		assertEquals(429, filter(request("POST", "/api/account/1/order/asynch", "token-b"), servlet(null)).getStatus());
+		listeners.get(0).onComplete(new AsyncEvent(null));
+		listeners.get(0).onComplete(new AsyncEvent(null));
+		assertEquals(200, filter(request("POST", "/api/account/1/order/asynch", "token-b"), servlet(null)).getStatus());
+		assertEquals(200, filter(request("PUT", "/api/account/1/order/2", "token-b"), servlet(null)).getStatus());
+	}
+
+	@Test
+	public void adminRequestsAreNotLimited() throws Exception {
+		admissionControlFilter.setLimits(limits(0.5, 1, 1, 1));
+		HttpServlet ok = servlet(null);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(200, filter(request("GET", "/api/admin/limits", "token-a"), ok).getStatus());
+			assertEquals(200, filter(request("OPTIONS", "/api/quotes", "token-a"), ok).getStatus());
+		}
+	}
+
+	@Test
+	public void limitsAreChangedThroughTheAdminApi() throws Exception {
+		webAppContextSetup(wac).build()
+				.perform(put("/admin/limits").accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+						.content("{\"requestsPerSecond\":5,\"burst\":10,\"orderConcurrency\":2,\"readConcurrency\":4}".getBytes()))
+				.andExpect(status().isOk());
+		assertEquals(10, admissionControlFilter.getLimits().getBurst());
+		webAppContextSetup(wac).build().perform(get("/admin/limits").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.requestsPerSecond").value(5.0))
+				.andExpect(jsonPath("$.orderConcurrency").value(2))
+				.andExpect(jsonPath("$.readConcurrency").value(4));
+		webAppContextSetup(wac).build()
+				.perform(put("/admin/limits").accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+						.content("{\"requestsPerSecond\":0,\"burst\":10,\"orderConcurrency\":2,\"readConcurrency\":4}".getBytes()))
+				.andExpect(status().isBadRequest());
+		assertEquals(5.0, admissionControlFilter.getLimits().getRequestsPerSecond(), 0);
+	}
+
+	@Test
+	public void idleBucketsAreDropped() {
+		admissionControlFilter.setLimits(limits(1000, 1, 1, 1));
+		admissionControlFilter.setMaxBuckets(2);
+		try {
+			long now = System.nanoTime() + 60000000000L;
+			for (int i = 0; i < 5; i++) {
+				admissionControlFilter.take("idle-" + i, admissionControlFilter.getLimits(), now + i);
+			}
+			assertTrue(admissionControlFilter.bucketCount() < 5);
+		}
+		finally {
+			admissionControlFilter.setMaxBuckets(10000);
+		}
+	}
+
+	private AdmissionLimits limits(double requestsPerSecond, int burst, int orderConcurrency, int readConcurrency) {
+		AdmissionLimits limits = new AdmissionLimits();
+		limits.setRequestsPerSecond(requestsPerSecond);
+		limits.setBurst(burst);
+		limits.setOrderConcurrency(orderConcurrency);
+		limits.setReadConcurrency(readConcurrency);
+		return limits;
+	}
+
+	private MockHttpServletResponse filter(MockHttpServletRequest request, HttpServlet servlet) {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			admissionControlFilter.doFilter(request, response, new MockFilterChain(servlet));
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return response;
+	}
+
+	private HttpServlet servlet(final Runnable whileInFlight) {
+		return new HttpServlet() {
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+				if (whileInFlight != null) {
+					whileInFlight.run();
+				}
+			}
+		};
+	}
+
+	/**
+	 * The mock request predates Servlet 3, so the dispatch type and async state are filled in here; a
+	 * request is async when it carries an "asyncContext" attribute.
+	 */
+	private MockHttpServletRequest request(String method, String uri, String token) {
+		return request(method, uri, token, "127.0.0.1");
+	}
+
+	private MockHttpServletRequest request(String method, String uri, String token, String address) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri) {
+
+			@Override
+			public DispatcherType getDispatcherType() {
+				return DispatcherType.REQUEST;
+			}
+
+			@Override
+			public boolean isAsyncStarted() {
+				return getAttribute("asyncContext") != null;
+			}
+
+			@Override
+			public AsyncContext getAsyncContext() {
+				return (AsyncContext) getAttribute("asyncContext");
+			}
+		};
+		if (token != null) {
+			request.addHeader("API_TOKEN", token);
+		}
+		request.setRemoteAddr(address);
+		return request;
+	}
+
+	private AsyncContext asyncContext(final List<AsyncListener> listeners) {
+		return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class },
+				new InvocationHandler() {
+
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("addListener")) {
+							listeners.add((AsyncListener) args[0]);
+						}
+						return null;
+					}
+				});
+	}
+}
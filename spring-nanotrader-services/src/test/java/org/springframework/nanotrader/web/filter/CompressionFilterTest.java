@@ -0,0 +1,222 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.nanotrader.service.configuration.MappingConfig;
+import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+import org.springframework.nanotrader.web.configuration.WebConfig;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * CompressionFilterTest checks when responses are gzipped and that shared payloads are compressed once
+ * per version.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = { WebConfig.class, MappingConfig.class, ServiceTestConfiguration.class })
+@ActiveProfiles("test")
+public class CompressionFilterTest {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private CompressionFilter compressionFilter;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		// the test market summary is smaller than the default threshold
+		compressionFilter.setMinimumSize(64);
+		mockMvc = webAppContextSetup(wac).addFilters(compressionFilter).build();
+	}
+
+	@Test
+	public void sharedPayloadIsCompressedOnce() throws Exception {
+		long sharedHits = compressionFilter.getStatistics().getSharedHits();
+		MockHttpServletResponse first = getMarketSummary("gzip, deflate");
+		MockHttpServletResponse second = getMarketSummary("gzip, deflate");
+		assertEquals("gzip", first.getHeader("Content-Encoding"));
+		assertEquals("gzip", second.getHeader("Content-Encoding"));
+		assertArrayEquals(first.getContentAsByteArray(), second.getContentAsByteArray());
+		assertEquals(first.getContentAsByteArray().length, first.getContentLength());
+		assertTrue(gunzip(second.getContentAsByteArray()).contains("\"tradeStockIndexAverage\""));
+		assertEquals(sharedHits + 1, compressionFilter.getStatistics().getSharedHits());
+	}
+
+	@Test
+	public void notCompressedWithoutAcceptEncoding() throws Exception {
+		MockHttpServletResponse response = getMarketSummary(null);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertTrue(response.getContentAsString().contains("\"tradeStockIndexAverage\""));
+		assertNull(getMarketSummary("gzip;q=0").getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void smallResponseIsNotCompressed() throws Exception {
+		MockHttpServletResponse response = filter(new byte[10], 10);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(10, response.getContentLength());
+		assertEquals(10, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void largeResponseIsCompressedWhileWritten() throws Exception {
+		final byte[] row = "{\"symbol\":\"VMW\",\"companyname\":\"VMware\",\"price\":100.00},".getBytes("UTF-8");
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		HttpServlet servlet = new HttpServlet() {
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+				for (int i = 0; i < 1000; i++) {
+					res.getOutputStream().write(row);
+					expected.write(row);
+				}
+				// past the threshold the compressed body is already on its way
+				assertEquals("gzip", response.getHeader("Content-Encoding"));
+				assertTrue(response.getContentAsByteArray().length > 0);
+			}
+		};
+		compressionFilter.doFilter(gzipRequest(), response, new MockFilterChain(servlet));
+		assertEquals(expected.toString("UTF-8"), gunzip(response.getContentAsByteArray()));
+		assertTrue(response.getContentAsByteArray().length * 10 < row.length * 1000);
+	}
+
+	@Test
+	public void asyncResponseIsCompressedOnDispatch() throws Exception {
+		final byte[] row = "{\"orderid\":1,\"orderstatus\":\"open\"},".getBytes("UTF-8");
+		MockHttpServletRequest request = gzipRequest(new DispatcherType[] { DispatcherType.REQUEST, DispatcherType.ASYNC },
+				new boolean[] { true, false });
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		HttpServlet startAsync = new HttpServlet() {
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse res) {
+				// the body is written later, on the async dispatch
+			}
+		};
+		HttpServlet dispatch = new HttpServlet() {
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+				for (int i = 0; i < 100; i++) {
+					res.getOutputStream().write(row);
+				}
+			}
+		};
+		compressionFilter.doFilter(request, response, new MockFilterChain(startAsync));
+		assertEquals(0, response.getContentAsByteArray().length);
+		// the async dispatch; the filter carries its own wrapper over to it
+		compressionFilter.doFilter(request, response, new MockFilterChain(dispatch));
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals(100 * row.length, gunzip(response.getContentAsByteArray()).length());
+		assertEquals(1, response.getHeaders("Vary").size());
+	}
+
+	private MockHttpServletResponse getMarketSummary(String acceptEncoding) throws Exception {
+		if (acceptEncoding == null) {
+			return mockMvc.perform(get("/marketSummary").accept(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+		}
+		return mockMvc.perform(get("/marketSummary").accept(MediaType.APPLICATION_JSON).header("Accept-Encoding", acceptEncoding))
+				.andReturn().getResponse();
+	}
+
+	private MockHttpServletResponse filter(final byte[] body, final int contentLength) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		HttpServlet servlet = new HttpServlet() {
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+				res.setContentLength(contentLength);
+				res.getOutputStream().write(body);
+			}
+		};
+		compressionFilter.doFilter(gzipRequest(), response, new MockFilterChain(servlet));
+		return response;
+	}
+
+	private MockHttpServletRequest gzipRequest() {
+		return gzipRequest(new DispatcherType[] { DispatcherType.REQUEST }, new boolean[] { false });
+	}
+
+	/**
+	 * The mock request predates Servlet 3, so dispatch types and async state are scripted here,
+	 * one entry per pass through the filter.
+	 */
+	private MockHttpServletRequest gzipRequest(final DispatcherType[] dispatcherTypes, final boolean[] asyncStarted) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/quotes") {
+
+			private int pass;
+
+			@Override
+			public DispatcherType getDispatcherType() {
+				return dispatcherTypes[pass];
+			}
+
+			@Override
+			public boolean isAsyncStarted() {
+				return asyncStarted[pass++];
+			}
+		};
+		request.addHeader("Accept-Encoding", "gzip");
+		return request;
+	}
+
+	private String gunzip(byte[] bytes) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		for (int n; (n = in.read(chunk)) != -1;) {
+			out.write(chunk, 0, n);
+		}
+		return out.toString("UTF-8");
+	}
+}
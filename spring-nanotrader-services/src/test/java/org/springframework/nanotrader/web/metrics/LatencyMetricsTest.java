@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.nanotrader.service.configuration.MappingConfig;
+import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+import org.springframework.nanotrader.web.configuration.WebConfig;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * LatencyMetricsTest checks the precision of the latency histograms, the interval and cumulative views
+ * and the admin metrics endpoint.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = { WebConfig.class, MappingConfig.class, ServiceTestConfiguration.class })
+@ActiveProfiles("test")
+public class LatencyMetricsTest {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private LatencyMetrics latencyMetrics;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		latencyMetrics.reset();
+		mockMvc = webAppContextSetup(wac).build();
+	}
+
+	@Test
+	public void bucketsKeepValuesWithinTheirPrecision() {
+		for (long value = 0; value < LatencyHistogram.HIGHEST_TRACKABLE; value = value * 3 / 2 + 1) {
+			long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value));
+			assertTrue(value + " counted as " + highest, highest >= value && highest <= value + value / 64);
+			assertEquals(LatencyHistogram.index(value), LatencyHistogram.index(highest));
+		}
+	}
+
+	@Test
+	public void percentilesOfRecordedLatencies() {
+		for (int micros = 1; micros <= 1000; micros++) {
+			latencyMetrics.record("Test.uniform", micros * 1000L);
+		}
+		LatencySummary summary = summary(latencyMetrics.report(LatencyMetrics.CUMULATIVE), "Test.uniform");
+		assertEquals(1000, summary.getCount());
+		assertEquals(0.5, summary.getP50(), 0.5 / 64);
+		assertEquals(0.99, summary.getP99(), 0.99 / 64);
+		assertEquals(1.0, summary.getP999(), 1.0 / 64);
+		assertEquals(1.0, summary.getMax(), 1.0 / 64);
+	}
+
+	@Test
+	public void intervalViewStartsOverOnEveryRead() {
+		latencyMetrics.record("Test.interval", 1000000L);
+		assertEquals(1, summary(latencyMetrics.report(LatencyMetrics.INTERVAL), "Test.interval").getCount());
+		latencyMetrics.record("Test.interval", 2000000L);
+		LatencySummary interval = summary(latencyMetrics.report(LatencyMetrics.INTERVAL), "Test.interval");
+		assertEquals(1, interval.getCount());
+		assertEquals(2.0, interval.getMax(), 2.0 / 64);
+		assertEquals(0, summary(latencyMetrics.report(LatencyMetrics.INTERVAL), "Test.interval").getCount());
+		assertEquals(2, summary(latencyMetrics.report(LatencyMetrics.CUMULATIVE), "Test.interval").getCount());
+		latencyMetrics.reset();
+		assertEquals(0, summary(latencyMetrics.report(LatencyMetrics.CUMULATIVE), "Test.interval").getCount());
+		assertEquals(0, summary(latencyMetrics.report(LatencyMetrics.INTERVAL), "Test.interval").getCount());
+	}
+
+	@Test
+	public void controllerLatenciesAreServedAndReset() throws Exception {
+		mockMvc.perform(get("/marketSummary").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+		mockMvc.perform(get("/marketSummary").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+		JsonNode endpoint = endpoint(metrics("cumulative"), "MarketSummaryController.findMarketSummary");
+		assertEquals(2, endpoint.get("count").getLongValue());
+		assertTrue(endpoint.get("max").getDoubleValue() >= endpoint.get("p50").getDoubleValue());
+		assertEquals(2, endpoint(metrics("interval"), "MarketSummaryController.findMarketSummary").get("count")
+				.getLongValue());
+		mockMvc.perform(delete("/admin/metrics")).andExpect(status().isOk());
+		assertEquals(0, endpoint(metrics("cumulative"), "MarketSummaryController.findMarketSummary").get("count")
+				.getLongValue());
+		mockMvc.perform(get("/admin/metrics").param("view", "weekly").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isBadRequest()).andExpect(jsonPath("$.detail").exists());
+	}
+
+	private JsonNode metrics(String view) throws Exception {
+		String json = mockMvc.perform(get("/admin/metrics").param("view", view).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.view").value(view))
+				.andReturn().getResponse().getContentAsString();
+		return new ObjectMapper().readTree(json);
+	}
+
+	private JsonNode endpoint(JsonNode metrics, String name) {
+		for (JsonNode endpoint : metrics.get("endpoints")) {
+			if (endpoint.get("name").getTextValue().equals(name)) {
+				return endpoint;
+			}
+		}
+		throw new AssertionError("no latencies for " + name);
+	}
+
+	private LatencySummary summary(MetricsReport report, String name) {
+		for (LatencySummary summary : report.getEndpoints()) {
+			if (summary.getName().equals(name)) {
+				return summary;
+			}
+		}
+		throw new AssertionError("no latencies for " + name);
+	}
+}
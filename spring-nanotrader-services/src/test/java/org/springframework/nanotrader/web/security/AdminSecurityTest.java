@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.nanotrader.web.security;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.nanotrader.data.domain.Account;
+import org.springframework.nanotrader.data.domain.Accountprofile;
+import org.springframework.nanotrader.data.service.TradingService;
+import org.springframework.nanotrader.service.configuration.MappingConfig;
+import org.springframework.nanotrader.web.configuration.ServiceTestConfiguration;
+import org.springframework.nanotrader.web.configuration.WebConfig;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * AdminSecurityTest sends admin requests through the security filter chain and checks that every
+ * admin endpoint, however deep its path, is refused to a user token and open to the admin token.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = { WebConfig.class, MappingConfig.class, ServiceTestConfiguration.class })
+@ActiveProfiles("test")
+public class AdminSecurityTest {
+
+	private static final String ADMIN_TOKEN = "admin-token";
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private FilterChainProxy springSecurityFilterChain;
+
+	@Autowired
+	private TradingService tradingService;
+
+	@Autowired
+	private Accountprofile accountProfile;
+
+	@Autowired
+	private Account account;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		Accountprofile admin = new Accountprofile();
+		admin.setProfileid(1);
+		admin.setUserid("admin");
+		admin.setPasswd("admin");
+		admin.setAuthtoken(ADMIN_TOKEN);
+		admin.setAccounts(Collections.singleton(account));
+		when(tradingService.findByAuthtoken(ServiceTestConfiguration.AUTH_TOKEN)).thenReturn(accountProfile);
+		when(tradingService.findByAuthtoken(ADMIN_TOKEN)).thenReturn(admin);
+		mockMvc = webAppContextSetup(wac).addFilters(springSecurityFilterChain).build();
+	}
+
+	@Test
+	public void userTokenCannotExportOrImportSnapshots() throws Exception {
+		mockMvc.perform(asUser(snapshot("/api/admin/snapshot/export"))).andExpect(status().isForbidden());
+		mockMvc.perform(asUser(snapshot("/api/admin/snapshot/import"))).andExpect(status().isForbidden());
+	}
+
+	@Test
+	public void userTokenCannotReadOrCancelJobs() throws Exception {
+		mockMvc.perform(asUser(get("/api/admin/jobs/1"))).andExpect(status().isForbidden());
+		mockMvc.perform(asUser(delete("/api/admin/jobs/1"))).andExpect(status().isForbidden());
+	}
+
+	@Test
+	public void adminTokenReachesTheAdminEndpoints() throws Exception {
+		mockMvc.perform(asAdmin(get("/api/admin/jobs"))).andExpect(status().isOk());
+	}
+
+	private static MockHttpServletRequestBuilder snapshot(String path) {
+		return post(path).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"nightly\"}");
+	}
+
+	private static RequestBuilder asUser(MockHttpServletRequestBuilder request) {
+		return request.servletPath("/api").header("API_TOKEN", ServiceTestConfiguration.AUTH_TOKEN);
+	}
+
+	private static RequestBuilder asAdmin(MockHttpServletRequestBuilder request) {
+		return request.servletPath("/api").header("API_TOKEN", ADMIN_TOKEN);
+	}
+}
@@ -32,6 +32,7 @@ nano.conf.urls = {
     marketSummary : nano.conf.urlRoot + 'marketSummary',
     holdingSummary : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/holdingSummary',
     portfolioSummary : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/portfolioSummary',
+    dashboard : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/dashboard',
     holdings : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/holdings',
     sellHolding : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/order/asynch',
     orders : nano.conf.urlRoot + 'account/' + nano.conf.accountIdUrlKey + '/orders', 
@@ -208,6 +208,19 @@ nano.models.HoldingSummary = Backbone.Model.extend({
     }
 });
 
+/**
+ * Model to fetch everything the Dashboard shows (account, summaries and a page of orders) in one request
+ */
+nano.models.Dashboard = Backbone.Model.extend({
+    initialize: function(options) {
+        this.accountid = options.accountid;
+    },
+    urlRoot : nano.conf.urls.dashboard,
+    url: function() {
+        return this.urlRoot.replace(nano.conf.accountIdUrlKey, this.accountid);
+    }
+});
+
 /**
  * Model to interact with the Holding Object
  * @author Carlos Soto <carlos.soto>
@@ -356,4 +369,4 @@ nano.models.Orders = Backbone.Collection.extend({
     * @return array of that for the collection
     */
     parse: nano.utils.collectionParse
-});
+});
@@ -155,22 +155,30 @@ nano.Router = Backbone.Router.extend({
 		if (isNaN(page)) {
 			page = 1;
 		}
-		var modelCount = 0,
-			models = {},	    
+		var dashboard,
+			data = { pageSize : nano.conf.pageSize },
 			/**
-			 * Function that checks if all data has been fetched so that it can then render the page
+			 * Splits the aggregate response into the models the Dashboard views render
 			 */
 			onFetchSuccess = function () {
-				if (++modelCount === _.keys(models).length) {
-					// If all models have been fetched, then render all of the views needed for the Dashboard
-					nano.containers.loading.hide();
-					nano.instances.userStatistics.render(models.account);
-					nano.instances.accountSummary.render(models.account, models.portfolioSummary);					
-					nano.instances.portfolio.render(models.account, models.portfolioSummary);
-					nano.instances.positions.render(models.holdingSummary);
-					nano.instances.orders.render(models.orders, page, nano.conf.hash.dashboardWithPage);
-					nano.instances.footer.render();
-				}
+				var accountid = nano.session.accountid,
+					account = new nano.models.Account(dashboard.get('account')),
+					portfolioSummary = new nano.models.PortfolioSummary({ accountid : accountid }),
+					holdingSummary = new nano.models.HoldingSummary({ accountid : accountid }),
+					orders = new nano.models.Orders({ accountid : accountid });
+
+				portfolioSummary.set(dashboard.get('portfolioSummary'));
+				holdingSummary.set(dashboard.get('holdingSummary'));
+				orders.requestedPage = Number(page);
+				orders.reset(orders.parse(dashboard.get('orders')));
+
+				nano.containers.loading.hide();
+				nano.instances.userStatistics.render(account);
+				nano.instances.accountSummary.render(account, portfolioSummary);
+				nano.instances.portfolio.render(account, portfolioSummary);
+				nano.instances.positions.render(holdingSummary);
+				nano.instances.orders.render(orders, page, nano.conf.hash.dashboardWithPage);
+				nano.instances.footer.render();
 			};
 		
 		// Render the Dashboard of logged in or the Login otherwise
@@ -184,18 +192,19 @@ nano.Router = Backbone.Router.extend({
 			nano.containers.loading.show();
 			nano.instances.navbar.render();
 	
-			models = {
-			account : new nano.models.Account({accountid : nano.session.accountid}),
-			holdingSummary : new nano.models.HoldingSummary({ accountid : nano.session.accountid }),
-			portfolioSummary : new nano.models.PortfolioSummary({ accountid : nano.session.accountid }),
-			orders : new nano.models.Orders({ accountid : nano.session.accountid })
-			};
-				for (var i in models) {
-					models[i].fetch({
-						success : onFetchSuccess,
-						error : nano.utils.onApiError
-					});
-				}
+			// The first page is read with a cursor, the same way the Orders collection does it
+			if (Number(page) === 1) {
+				data.after = '';
+				data.count = true;
+			} else {
+				data.page = page - 1;
+			}
+			dashboard = new nano.models.Dashboard({ accountid : nano.session.accountid });
+			dashboard.fetch({
+				data : data,
+				success : onFetchSuccess,
+				error : nano.utils.onApiError
+			});
 		} else {
 			nano.instances.router.navigate(nano.conf.hash.login, true);
 		}
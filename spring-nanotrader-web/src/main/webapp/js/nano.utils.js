@@ -429,7 +429,10 @@ nano.utils.isMobile = function() {
 };
 
 /**
- * Sync function to be used by the Backbone.js Collections in order to include pagination of the results
+ * Sync function to be used by the Backbone.js Collections in order to include pagination of the results.
+ * Pages whose opaque cursor is already known (the first page, and every page following one that has been
+ * fetched) are requested with keyset pagination ("after"), the rest fall back to the page offset.
+ * The total record count is only requested on the first fetch of the collection.
  * @author Carlos Soto <carlos.soto>
  * @param string method: HTTP method
  * @param object model: the model calling the request
@@ -442,8 +445,17 @@ nano.utils.collectionSync = function(method, model, options) {
         if ( _.isUndefined(options.data) ) {
             options.data = {};
         }
+        var page = Number(options.data.page || this.page);
+        this.cursors = this.cursors || { 1 : '' };
+        this.requestedPage = page;
         options.data.pageSize = nano.conf.pageSize;
-        options.data.page = (options.data.page || this.page) -1;
+        if ( _.isString(this.cursors[page]) ) {
+            delete options.data.page;
+            options.data.after = this.cursors[page];
+            options.data.count = _.isUndefined(this.totalRecords);
+        } else {
+            options.data.page = page - 1;
+        }
     }
     return Backbone.sync(method, model, options);
 }
@@ -456,8 +468,15 @@ nano.utils.collectionSync = function(method, model, options) {
  */
 nano.utils.collectionParse = function(response) {
     this.pageSize = response.pageSize;
-    this.totalRecords = response.totalRecords
-    this.page = response.page;
+    if ( response.totalRecords !== null && !_.isUndefined(response.totalRecords) ) {
+        this.totalRecords = response.totalRecords;
+    }
+    this.page = this.requestedPage || response.page;
+    this.cursors = this.cursors || { 1 : '' };
+    if ( response.next ) {
+        // Remember the cursor so that moving to the next page is a seek instead of an offset scan
+        this.cursors[this.page + 1] = response.next;
+    }
     return response.results;
 }
 
@@ -518,32 +537,30 @@ nano.utils.loadSymbols = function() {
  */
 nano.utils.setUsers = function(userCount, callbacks) {
     $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('dataPop') + '</div>');
-        // Fetch the recreateData progress
-        // Set the recreate data progress interval to 1 sec
-        var progress = window.setInterval(function(){
-            $.ajax({
-                url : nano.conf.urls.adminUserData,
-                type : 'GET',
-                headers : nano.utils.getHttpHeaders(),
-                dataType : 'json',
-                success : function(data){
-                	$('#showprogress').remove();  
-                	if (data.usercount != null) {
-                      $('#progress').append('<div class="well show-quote-box" id="showprogress">' + data.usercount + " " + translate('userCreationMessage') + '</div>');  
-                	} else {
-                	  $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('userCreationProgressMsg') + '</div>');
-                	}
-                },
-                error: function(){
-                    $('#setUsersBtn').removeAttr("disabled", "disabled");
-                    $('#showprogress').remove();
-                    if (_.isFunction(callbacks.error))
-                    {
-                        callbacks.error(jqXHR, textStatus, errorThrown);
-                    }
-                }
+        var failed = function(jqXHR, textStatus, errorThrown){
+            $('#setUsersBtn').removeAttr("disabled", "disabled");
+            $('#showprogress').remove();
+            if (_.isFunction(callbacks.error))
+            {
+                callbacks.error(jqXHR, textStatus, errorThrown);
+            }
+        };
+        var completed = function(){
+            $('#setUsersBtn').removeAttr("disabled", "disabled");
+            //logout current user.
+            $('#showprogress').remove();
+            $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('dataPopComplete') + '</div>');
+            $('#showprogress').fadeOut(3000, function() {
+                $('#showprogress').remove();
+                $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('loggingOut') + '</div>');
+                $('#showprogress').fadeOut(3000, function() {
+                   $('#showprogress').remove();
+                   nano.utils.logout();
+                   nano.instances.router.navigate(nano.conf.hash.login, true);
+                });
             });
-        }, 1000);
+        };
+        // The users are created by a background job: poll its progress every second until it finishes
         $.ajax({
             url : nano.conf.urls.adminUserData,
             type : 'POST',
@@ -552,31 +569,40 @@ nano.utils.setUsers = function(userCount, callbacks) {
             data : JSON.stringify({
                 usercount : userCount
             }),
-            success : function(data, textStatus, jqXHR){
-                window.clearInterval(progress);
-                $('#setUsersBtn').removeAttr("disabled", "disabled");
-                //logout current user.
-                $('#showprogress').remove();               	
-                $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('dataPopComplete') + '</div>');
-                $('#showprogress').fadeOut(3000, function() {
-                    $('#showprogress').remove();
-                    $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('loggingOut') + '</div>');
-                    $('#showprogress').fadeOut(3000, function() {
-                       $('#showprogress').remove();
-                       nano.utils.logout();
-                       nano.instances.router.navigate(nano.conf.hash.login, true);
+            success : function(job){
+                var progress = window.setInterval(function(){
+                    $.ajax({
+                        url : nano.conf.urls.adminUserData,
+                        type : 'GET',
+                        headers : nano.utils.getHttpHeaders(),
+                        dataType : 'json',
+                        success : function(data){
+                            if (data.jobid != job.jobid) {
+                                return;
+                            }
+                            if (data.status == 'completed') {
+                                window.clearInterval(progress);
+                                completed();
+                            } else if (data.status == 'failed' || data.status == 'cancelled') {
+                                window.clearInterval(progress);
+                                failed();
+                            } else {
+                                $('#showprogress').remove();
+                                if (data.usercount != null) {
+                                  $('#progress').append('<div class="well show-quote-box" id="showprogress">' + data.usercount + " " + translate('userCreationMessage') + '</div>');
+                                } else {
+                                  $('#progress').append('<div class="well show-quote-box" id="showprogress">' + translate('userCreationProgressMsg') + '</div>');
+                                }
+                            }
+                        },
+                        error : function(jqXHR, textStatus, errorThrown){
+                            window.clearInterval(progress);
+                            failed(jqXHR, textStatus, errorThrown);
+                        }
                     });
-                });
+                }, 1000);
             },
-            error : function(jqXHR, textStatus, errorThrown){
-                window.clearInterval(progress);
-                $('#setUsersBtn').removeAttr("disabled", "disabled");
-                $('#showprogress').remove();
-                if (_.isFunction(callbacks.error))
-                {
-                    callbacks.error(jqXHR, textStatus, errorThrown);
-                }
-            }
+            error : failed
         });
 };
 